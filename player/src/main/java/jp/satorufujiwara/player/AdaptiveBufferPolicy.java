@@ -0,0 +1,256 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.upstream.Allocation;
+import com.google.android.exoplayer.upstream.Allocator;
+import com.google.android.exoplayer.util.Util;
+
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+/**
+ * Sizes player buffers for the device and shrinks them under memory pressure.
+ * <p>
+ * Segment counts are scaled by the memory class of the device when renderers are built. While
+ * playing, {@link #onTrimMemory(int)} lowers the share of the target buffer the player may fill.
+ * Buffered data is not dropped: the player stops loading until playback has consumed enough of
+ * it, so playback is never interrupted. The share is restored once an activity of the
+ * application starts again after it was sent to the background, and otherwise doubles back
+ * towards the whole buffer every {@link #RECOVERY_INTERVAL_MS} without memory pressure. One
+ * instance is usually shared by every source and registered with {@link #register(Context)}.
+ */
+public class AdaptiveBufferPolicy implements ComponentCallbacks2 {
+
+    public static final long RECOVERY_INTERVAL_MS = 30000;
+
+    private static final int MIN_SEGMENT_COUNT = 2;
+
+    private final float deviceScale;
+    private volatile float trimScale = 1f;
+    private volatile long trimTimeMs;
+    // Set while the application is in the background, where the share does not recover.
+    private volatile boolean backgroundTrim;
+    private Context registeredContext;
+    private final Application.ActivityLifecycleCallbacks lifecycleCallbacks =
+            new Application.ActivityLifecycleCallbacks() {
+                @Override
+                public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+                    //no op
+                }
+
+                @Override
+                public void onActivityStarted(Activity activity) {
+                    if (backgroundTrim) {
+                        reset();
+                    }
+                }
+
+                @Override
+                public void onActivityResumed(Activity activity) {
+                    //no op
+                }
+
+                @Override
+                public void onActivityPaused(Activity activity) {
+                    //no op
+                }
+
+                @Override
+                public void onActivityStopped(Activity activity) {
+                    //no op
+                }
+
+                @Override
+                public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+                    //no op
+                }
+
+                @Override
+                public void onActivityDestroyed(Activity activity) {
+                    //no op
+                }
+            };
+
+    public static AdaptiveBufferPolicy fromContext(Context context) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        boolean lowRamDevice = Util.SDK_INT >= 19 && activityManager.isLowRamDevice();
+        return new AdaptiveBufferPolicy(activityManager.getMemoryClass(), lowRamDevice);
+    }
+
+    /**
+     * @param memoryClassMb The heap limit of the application, as returned by
+     *                      {@link ActivityManager#getMemoryClass()}.
+     * @param lowRamDevice  Whether the device is a low RAM device.
+     */
+    public AdaptiveBufferPolicy(int memoryClassMb, boolean lowRamDevice) {
+        if (lowRamDevice || memoryClassMb < 64) {
+            deviceScale = 0.25f;
+        } else if (memoryClassMb < 128) {
+            deviceScale = 0.5f;
+        } else if (memoryClassMb < 256) {
+            deviceScale = 1f;
+        } else {
+            deviceScale = 1.5f;
+        }
+    }
+
+    /**
+     * Registers this policy for trim memory callbacks of the application, and for the start of
+     * its activities.
+     */
+    public void register(Context context) {
+        if (registeredContext == null) {
+            registeredContext = context.getApplicationContext();
+            registeredContext.registerComponentCallbacks(this);
+            if (registeredContext instanceof Application) {
+                ((Application) registeredContext)
+                        .registerActivityLifecycleCallbacks(lifecycleCallbacks);
+            }
+        }
+    }
+
+    public void unregister() {
+        if (registeredContext != null) {
+            registeredContext.unregisterComponentCallbacks(this);
+            if (registeredContext instanceof Application) {
+                ((Application) registeredContext)
+                        .unregisterActivityLifecycleCallbacks(lifecycleCallbacks);
+            }
+            registeredContext = null;
+        }
+    }
+
+    /**
+     * Returns the segment count to use on this device in place of {@code requestedCount}.
+     */
+    public int scaleSegmentCount(int requestedCount) {
+        return Math.max(MIN_SEGMENT_COUNT, (int) (requestedCount * deviceScale));
+    }
+
+    /**
+     * Returns the share of the target buffer that players may currently fill.
+     */
+    public float getTrimScale() {
+        return getTrimScale(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Lets players fill their whole target buffer again.
+     */
+    public void reset() {
+        backgroundTrim = false;
+        trimScale = 1f;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        onTrimMemory(level, SystemClock.elapsedRealtime());
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim(0.25f, SystemClock.elapsedRealtime());
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // Do nothing.
+    }
+
+    void onTrimMemory(int level, long nowMs) {
+        float scale;
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            backgroundTrim = true;
+            scale = 0.25f;
+        } else if (level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            scale = 0.25f;
+        } else if (level == TRIM_MEMORY_RUNNING_LOW) {
+            scale = 0.5f;
+        } else if (level == TRIM_MEMORY_RUNNING_MODERATE) {
+            scale = 0.75f;
+        } else {
+            return;
+        }
+        trim(scale, nowMs);
+    }
+
+    void trim(float scale, long nowMs) {
+        trimScale = Math.min(getTrimScale(nowMs), scale);
+        trimTimeMs = nowMs;
+    }
+
+    float getTrimScale(long nowMs) {
+        float scale = trimScale;
+        if (scale >= 1f || backgroundTrim) {
+            return scale;
+        }
+        long intervals = (nowMs - trimTimeMs) / RECOVERY_INTERVAL_MS;
+        while (intervals-- > 0 && scale < 1f) {
+            scale *= 2;
+        }
+        return Math.min(1f, scale);
+    }
+
+    /**
+     * Wraps {@code allocator} so that it reports a full buffer once it holds more than the
+     * current share of {@code targetBufferSize}.
+     */
+    Allocator wrap(Allocator allocator, int targetBufferSize) {
+        return new TrimmableAllocator(allocator, targetBufferSize);
+    }
+
+    private final class TrimmableAllocator implements Allocator {
+
+        private final Allocator allocator;
+        private final int targetBufferSize;
+
+        TrimmableAllocator(Allocator allocator, int targetBufferSize) {
+            this.allocator = allocator;
+            this.targetBufferSize = targetBufferSize;
+        }
+
+        @Override
+        public Allocation allocate() {
+            return allocator.allocate();
+        }
+
+        @Override
+        public void release(Allocation allocation) {
+            allocator.release(allocation);
+        }
+
+        @Override
+        public void release(Allocation[] allocations) {
+            allocator.release(allocations);
+        }
+
+        @Override
+        public void trim(int targetSize) {
+            allocator.trim((int) (targetSize * getTrimScale()));
+        }
+
+        @Override
+        public void blockWhileTotalBytesAllocatedExceeds(int limit) throws InterruptedException {
+            allocator.blockWhileTotalBytesAllocatedExceeds((int) (limit * getTrimScale()));
+        }
+
+        @Override
+        public int getTotalBytesAllocated() {
+            int allocated = allocator.getTotalBytesAllocated();
+            return allocated >= targetBufferSize * getTrimScale() ? Integer.MAX_VALUE
+                    : allocated;
+        }
+
+        @Override
+        public int getIndividualAllocationLength() {
+            return allocator.getIndividualAllocationLength();
+        }
+    }
+
+}
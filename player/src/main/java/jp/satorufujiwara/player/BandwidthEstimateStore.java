@@ -0,0 +1,151 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+/**
+ * Saves the last bandwidth estimate so that the next session does not start without one.
+ * <p>
+ * Estimates are keyed by the active network type and, optionally, by host. A saved estimate
+ * halves every {@code halfLifeMs} and is discarded after {@code maxAgeMs}, so an old value only
+ * seeds a conservative first variant. The network type is read from {@link ConnectivityManager},
+ * which needs the {@code ACCESS_NETWORK_STATE} permission. Without it every network shares one
+ * key. The type is read when a saved estimate is read and when connectivity changes, not per
+ * saved estimate, so that loader threads do not wait on the system service. One instance is
+ * usually shared by every source; {@link #release()} stops listening for connectivity changes.
+ */
+public class BandwidthEstimateStore {
+
+    public static final String DEFAULT_PREFERENCES_NAME = "jp.satorufujiwara.player.bandwidth";
+    public static final long DEFAULT_HALF_LIFE_MS = 2 * 60 * 60 * 1000;
+    public static final long DEFAULT_MAX_AGE_MS = 12 * 60 * 60 * 1000;
+
+    private static final String KEY_BITRATE = ".bitrate";
+    private static final String KEY_TIME = ".time";
+    // Writes of an unchanged estimate are skipped until this much time has passed.
+    private static final long MIN_WRITE_INTERVAL_MS = 10000;
+    private static final float MIN_CHANGE_RATIO = 0.1f;
+
+    private final Context context;
+    private final SharedPreferences preferences;
+    private final long halfLifeMs;
+    private final long maxAgeMs;
+    private final BroadcastReceiver connectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            networkType = queryNetworkType();
+        }
+    };
+    private volatile String networkType;
+    private boolean released;
+    private String lastWrittenKey;
+    private long lastWrittenBitrate;
+    private long lastWriteTimeMs;
+
+    public BandwidthEstimateStore(Context context) {
+        this(context, DEFAULT_PREFERENCES_NAME, DEFAULT_HALF_LIFE_MS, DEFAULT_MAX_AGE_MS);
+    }
+
+    public BandwidthEstimateStore(Context context, String preferencesName, long halfLifeMs,
+            long maxAgeMs) {
+        this.context = context.getApplicationContext();
+        this.preferences = this.context.getSharedPreferences(preferencesName,
+                Context.MODE_PRIVATE);
+        this.halfLifeMs = halfLifeMs;
+        this.maxAgeMs = maxAgeMs;
+        this.context.registerReceiver(connectivityReceiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    /**
+     * Returns the saved estimate for the current network and {@code host} decayed by its age, or
+     * {@link BandwidthMeter#NO_ESTIMATE} if there is none.
+     *
+     * @param host The host the estimate was measured against, or null to share the estimate
+     *             between hosts.
+     */
+    public long get(String host) {
+        networkType = queryNetworkType();
+        final String key = buildKey(host);
+        final long bitrate = preferences.getLong(key + KEY_BITRATE, BandwidthMeter.NO_ESTIMATE);
+        if (bitrate == BandwidthMeter.NO_ESTIMATE) {
+            return BandwidthMeter.NO_ESTIMATE;
+        }
+        final long ageMs = System.currentTimeMillis() - preferences.getLong(key + KEY_TIME, 0);
+        if (ageMs < 0 || ageMs > maxAgeMs) {
+            return BandwidthMeter.NO_ESTIMATE;
+        }
+        return (long) (bitrate * Math.pow(0.5, (double) ageMs / halfLifeMs));
+    }
+
+    /**
+     * Saves {@code bitrate} as the estimate for the current network and {@code host}.
+     */
+    public synchronized void put(String host, long bitrate) {
+        if (bitrate == BandwidthMeter.NO_ESTIMATE || bitrate <= 0) {
+            return;
+        }
+        final String key = buildKey(host);
+        final long nowMs = System.currentTimeMillis();
+        if (key.equals(lastWrittenKey) && nowMs - lastWriteTimeMs < MIN_WRITE_INTERVAL_MS
+                && Math.abs(bitrate - lastWrittenBitrate) < lastWrittenBitrate * MIN_CHANGE_RATIO) {
+            return;
+        }
+        preferences.edit()
+                .putLong(key + KEY_BITRATE, bitrate)
+                .putLong(key + KEY_TIME, nowMs)
+                .apply();
+        lastWrittenKey = key;
+        lastWrittenBitrate = bitrate;
+        lastWriteTimeMs = nowMs;
+    }
+
+    public synchronized void clear() {
+        preferences.edit().clear().apply();
+        lastWrittenKey = null;
+    }
+
+    /**
+     * Stops listening for connectivity changes. Estimates saved afterwards are keyed by the
+     * network type of the last read.
+     */
+    public synchronized void release() {
+        if (!released) {
+            released = true;
+            context.unregisterReceiver(connectivityReceiver);
+        }
+    }
+
+    String buildKey(String host) {
+        String network = networkType;
+        if (network == null) {
+            network = queryNetworkType();
+            networkType = network;
+        }
+        return host == null ? network : network + "@" + host;
+    }
+
+    private String queryNetworkType() {
+        final NetworkInfo info;
+        try {
+            ConnectivityManager manager =
+                    (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            info = manager.getActiveNetworkInfo();
+        } catch (SecurityException e) {
+            return "unknown";
+        }
+        if (info == null) {
+            return "none";
+        }
+        // The subtype tells LTE from 3G on mobile networks and is 0 elsewhere.
+        return info.getType() + "." + info.getSubtype();
+    }
+
+}
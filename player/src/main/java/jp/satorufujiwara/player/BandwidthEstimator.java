@@ -0,0 +1,21 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+
+/**
+ * Turns completed transfers into a bitrate estimate for a {@link LimitedBandwidthMeter}. Calls
+ * are serialized by the meter.
+ */
+public interface BandwidthEstimator {
+
+    /**
+     * Adds a transfer of {@code bytes} that took {@code elapsedMs}, which is always positive.
+     */
+    void addSample(long bytes, int elapsedMs);
+
+    /**
+     * Returns the estimate in bits per second, or {@link BandwidthMeter#NO_ESTIMATE}.
+     */
+    long getEstimate();
+
+}
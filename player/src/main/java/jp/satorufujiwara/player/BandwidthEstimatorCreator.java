@@ -0,0 +1,7 @@
+package jp.satorufujiwara.player;
+
+public interface BandwidthEstimatorCreator {
+
+    BandwidthEstimator create();
+
+}
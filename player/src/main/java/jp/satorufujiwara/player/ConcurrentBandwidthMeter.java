@@ -0,0 +1,116 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Clock;
+import com.google.android.exoplayer.util.SystemClock;
+
+import android.os.Handler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link LimitedBandwidthMeter} whose hot paths do not take a lock.
+ * <p>
+ * {@link #onBytesTransferred(int)} adds to one of several striped counters chosen by the calling
+ * thread, and {@link #getBitrateEstimate()} reads a published volatile estimate. Only
+ * {@link #onTransferEnd()}, which runs once per loaded chunk, serializes on a private lock to
+ * drain the counters and update the estimator, so the estimates match those of
+ * {@link LimitedBandwidthMeter} for the same sequence of transfers.
+ */
+public class ConcurrentBandwidthMeter extends LimitedBandwidthMeter {
+
+    private static final int STRIPE_COUNT = 8;
+    // Stripes are spread 8 longs (64 bytes) apart so that they do not share a cache line.
+    private static final int STRIPE_SHIFT = 3;
+
+    private final AtomicLongArray stripes = new AtomicLongArray(STRIPE_COUNT << STRIPE_SHIFT);
+    private final AtomicInteger streamCount = new AtomicInteger();
+    private final Object sampleLock = new Object();
+    private volatile long startTimeMs;
+    private volatile long bitrateEstimate = NO_ESTIMATE;
+
+    public ConcurrentBandwidthMeter() {
+        this(null, null);
+    }
+
+    public ConcurrentBandwidthMeter(Handler eventHandler, EventListener eventListener) {
+        this(eventHandler, eventListener, DEFAULT_MAX_WEIGHT);
+    }
+
+    public ConcurrentBandwidthMeter(Handler eventHandler, EventListener eventListener,
+            int maxWeight) {
+        this(eventHandler, eventListener, new SystemClock(), maxWeight);
+    }
+
+    public ConcurrentBandwidthMeter(Handler eventHandler, EventListener eventListener,
+            Clock clock, int maxWeight) {
+        super(eventHandler, eventListener, clock, maxWeight);
+    }
+
+    public ConcurrentBandwidthMeter(Handler eventHandler, EventListener eventListener,
+            BandwidthEstimator estimator) {
+        this(eventHandler, eventListener, new SystemClock(), estimator);
+    }
+
+    public ConcurrentBandwidthMeter(Handler eventHandler, EventListener eventListener,
+            Clock clock, BandwidthEstimator estimator) {
+        super(eventHandler, eventListener, clock, estimator);
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+        return Math.min(bitrateEstimate, getLimitBitrate());
+    }
+
+    @Override
+    void seedEstimate(long estimate) {
+        synchronized (sampleLock) {
+            if (bitrateEstimate == NO_ESTIMATE) {
+                bitrateEstimate = estimate;
+            }
+        }
+    }
+
+    @Override
+    public void onTransferStart() {
+        synchronized (sampleLock) {
+            if (streamCount.getAndIncrement() == 0) {
+                startTimeMs = clock.elapsedRealtime();
+            }
+        }
+    }
+
+    @Override
+    public void onBytesTransferred(int bytes) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPE_COUNT - 1);
+        stripes.addAndGet(stripe << STRIPE_SHIFT, bytes);
+    }
+
+    @Override
+    public void onTransferEnd() {
+        synchronized (sampleLock) {
+            Assertions.checkState(streamCount.get() > 0);
+            long nowMs = clock.elapsedRealtime();
+            int elapsedMs = (int) (nowMs - startTimeMs);
+            long bytes = drainStripes();
+            if (elapsedMs > 0) {
+                long estimate = addSample(elapsedMs, bytes);
+                bitrateEstimate = estimate;
+                notifyBandwidthSample(elapsedMs, bytes, estimate);
+            }
+            if (streamCount.decrementAndGet() > 0) {
+                startTimeMs = nowMs;
+            }
+        }
+    }
+
+    private long drainStripes() {
+        long total = 0;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            total += stripes.getAndSet(i << STRIPE_SHIFT, 0);
+        }
+        return total;
+    }
+
+}
@@ -0,0 +1,15 @@
+package jp.satorufujiwara.player;
+
+/**
+ * A {@link DataSourceCreator} whose data sources depend on the content they read, such as a
+ * cache keyed by {@link VideoSource#contentId}. Sources built with a content id pass it to their
+ * creator with {@link #forContent(String)}.
+ */
+public interface ContentDataSourceCreator extends DataSourceCreator {
+
+    /**
+     * Returns a creator for the data sources of the content with {@code contentId}.
+     */
+    DataSourceCreator forContent(String contentId);
+
+}
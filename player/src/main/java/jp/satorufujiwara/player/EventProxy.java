@@ -84,6 +84,8 @@ public class EventProxy implements
     private CaptionListener captionListener;
     private Id3MetadataListener id3MetadataListener;
     private Player player;
+    private volatile long bytesTransferred;
+    private SessionMetricsCollector metricsCollector;
 
     // for debug
     private Format videoFormat;
@@ -106,14 +108,54 @@ public class EventProxy implements
         this.id3MetadataListener = id3MetadataListener;
     }
 
+    /**
+     * Aggregates the events of this proxy into {@code collector}.
+     */
+    public void setMetricsCollector(SessionMetricsCollector collector) {
+        this.metricsCollector = collector;
+    }
+
+    public SessionMetricsCollector getMetricsCollector() {
+        return metricsCollector;
+    }
+
     protected void setVideoFormat(Format videoFormat) {
         this.videoFormat = videoFormat;
+        if (metricsCollector != null) {
+            metricsCollector.onVideoFormat(videoFormat);
+        }
+    }
+
+    /**
+     * Returns the number of bytes reported by the bandwidth meter since this proxy was created.
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred;
     }
 
     void setPlayer(Player player) {
         this.player = player;
     }
 
+    /**
+     * Returns the player this proxy receives the events of, or null before it is set.
+     */
+    protected Player getPlayer() {
+        return player;
+    }
+
+    void invokeOnStateChanged(boolean playWhenReady, int playbackState) {
+        if (metricsCollector != null) {
+            metricsCollector.onStateChanged(playWhenReady, playbackState);
+        }
+    }
+
+    void invokeOnSeek(long positionMs, long currentPositionMs) {
+        if (metricsCollector != null) {
+            metricsCollector.onSeek(positionMs, currentPositionMs);
+        }
+    }
+
     void invokeOnCues(List<Cue> cues) {
         if (captionListener != null) {
             captionListener.onCues(cues);
@@ -160,6 +202,10 @@ public class EventProxy implements
     /** BandwidthMeter.EventListener */
     @Override
     public void onBandwidthSample(int elapsedMs, long bytes, long bitrateEstimate) {
+        bytesTransferred += bytes;
+        if (metricsCollector != null) {
+            metricsCollector.onBytesDownloaded(bytes);
+        }
         if (infoListener != null) {
             infoListener.onBandwidthSample(elapsedMs, bytes, bitrateEstimate);
         }
@@ -168,6 +214,9 @@ public class EventProxy implements
     /** MediaCodecVideoTrackRenderer.EventListener */
     @Override
     public void onDroppedFrames(int count, long elapsed) {
+        if (metricsCollector != null) {
+            metricsCollector.onDroppedFrames(count);
+        }
         if (infoListener != null) {
             infoListener.onDroppedFrames(count, elapsed);
         }
@@ -184,7 +233,12 @@ public class EventProxy implements
     /** MediaCodecVideoTrackRenderer.EventListener */
     @Override
     public void onDrawnToSurface(Surface surface) {
-        // Do nothing.
+        if (metricsCollector != null) {
+            metricsCollector.onDrawnToSurface();
+        }
+        if (player != null) {
+            player.invokeOnDrawnToSurface(surface);
+        }
     }
 
     /** MediaCodecVideoTrackRenderer.EventListener */
@@ -234,6 +288,9 @@ public class EventProxy implements
     @Override
     public void onAudioTrackUnderrun(int bufferSize, long bufferSizeMs,
             long elapsedSinceLastFeedMs) {
+        if (metricsCollector != null) {
+            metricsCollector.onAudioTrackUnderrun();
+        }
         if (internalErrorListener != null) {
             internalErrorListener.onAudioTrackUnderrun(bufferSize, bufferSizeMs,
                     elapsedSinceLastFeedMs);
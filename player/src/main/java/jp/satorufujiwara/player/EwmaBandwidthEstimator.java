@@ -0,0 +1,76 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+
+/**
+ * Estimates throughput with two exponentially weighted moving averages, weighted by transfer
+ * duration, and returns the lower one. The fast average follows a collapsing link within a few
+ * seconds while the slow one keeps short bursts from raising the estimate.
+ */
+public class EwmaBandwidthEstimator implements BandwidthEstimator {
+
+    public static final double DEFAULT_FAST_HALF_LIFE_SECS = 2;
+    public static final double DEFAULT_SLOW_HALF_LIFE_SECS = 5;
+    /**
+     * Transfers smaller than this mostly measure latency and are ignored.
+     */
+    public static final long DEFAULT_MIN_SAMPLE_BYTES = 16 * 1024;
+
+    private final Ewma fast;
+    private final Ewma slow;
+    private final long minSampleBytes;
+
+    public EwmaBandwidthEstimator() {
+        this(DEFAULT_FAST_HALF_LIFE_SECS, DEFAULT_SLOW_HALF_LIFE_SECS, DEFAULT_MIN_SAMPLE_BYTES);
+    }
+
+    public EwmaBandwidthEstimator(double fastHalfLifeSecs, double slowHalfLifeSecs,
+            long minSampleBytes) {
+        this.fast = new Ewma(fastHalfLifeSecs);
+        this.slow = new Ewma(slowHalfLifeSecs);
+        this.minSampleBytes = minSampleBytes;
+    }
+
+    @Override
+    public void addSample(long bytes, int elapsedMs) {
+        if (bytes < minSampleBytes) {
+            return;
+        }
+        double weightSecs = elapsedMs / 1000d;
+        double bitsPerSecond = bytes * 8000d / elapsedMs;
+        fast.addSample(weightSecs, bitsPerSecond);
+        slow.addSample(weightSecs, bitsPerSecond);
+    }
+
+    @Override
+    public long getEstimate() {
+        if (fast.totalWeight == 0) {
+            return BandwidthMeter.NO_ESTIMATE;
+        }
+        return (long) Math.min(fast.getEstimate(), slow.getEstimate());
+    }
+
+    private static final class Ewma {
+
+        private final double alpha;
+        private double estimate;
+        private double totalWeight;
+
+        Ewma(double halfLifeSecs) {
+            alpha = Math.exp(Math.log(0.5) / halfLifeSecs);
+        }
+
+        void addSample(double weight, double value) {
+            double adjustedAlpha = Math.pow(alpha, weight);
+            estimate = value * (1 - adjustedAlpha) + adjustedAlpha * estimate;
+            totalWeight += weight;
+        }
+
+        double getEstimate() {
+            // Correct the bias towards the initial value of zero.
+            double zeroFactor = 1 - Math.pow(alpha, totalWeight);
+            return estimate / zeroFactor;
+        }
+    }
+
+}
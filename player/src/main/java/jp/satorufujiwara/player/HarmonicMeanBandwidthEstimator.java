@@ -0,0 +1,53 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+
+/**
+ * Estimates throughput as the harmonic mean of the last transfers. Slow transfers dominate a
+ * harmonic mean, so a single fast short segment does not raise the estimate much.
+ */
+public class HarmonicMeanBandwidthEstimator implements BandwidthEstimator {
+
+    public static final int DEFAULT_SAMPLE_COUNT = 5;
+
+    private final double[] inverseBitrates;
+    private int sampleCount;
+    private int nextIndex;
+    private double inverseSum;
+
+    public HarmonicMeanBandwidthEstimator() {
+        this(DEFAULT_SAMPLE_COUNT);
+    }
+
+    /**
+     * @param sampleCount The number of last transfers averaged. Must be positive.
+     */
+    public HarmonicMeanBandwidthEstimator(int sampleCount) {
+        if (sampleCount <= 0) {
+            throw new IllegalArgumentException("sampleCount must be positive.");
+        }
+        this.inverseBitrates = new double[sampleCount];
+    }
+
+    @Override
+    public void addSample(long bytes, int elapsedMs) {
+        if (bytes <= 0) {
+            return;
+        }
+        double inverse = elapsedMs / (bytes * 8000d);
+        if (sampleCount == inverseBitrates.length) {
+            inverseSum -= inverseBitrates[nextIndex];
+        } else {
+            sampleCount++;
+        }
+        inverseBitrates[nextIndex] = inverse;
+        inverseSum += inverse;
+        nextIndex = (nextIndex + 1) % inverseBitrates.length;
+    }
+
+    @Override
+    public long getEstimate() {
+        return sampleCount == 0 ? BandwidthMeter.NO_ESTIMATE : (long) (sampleCount / inverseSum);
+    }
+
+}
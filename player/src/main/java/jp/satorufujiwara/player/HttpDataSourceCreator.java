@@ -0,0 +1,21 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.upstream.HttpDataSource;
+import com.google.android.exoplayer.upstream.TransferListener;
+
+import android.content.Context;
+
+/**
+ * A {@link DataSourceCreator} whose data sources read http uris with an {@link HttpDataSource}.
+ * Wrapping creators that need to set request headers or read response headers take that
+ * source from {@link #createHttpDataSource}.
+ */
+public interface HttpDataSourceCreator extends DataSourceCreator {
+
+    /**
+     * Returns the http data source the data sources of this creator read http uris with.
+     */
+    HttpDataSource createHttpDataSource(Context context, TransferListener listener,
+            String userAgent);
+
+}
@@ -3,20 +3,25 @@ package jp.satorufujiwara.player;
 import com.google.android.exoplayer.upstream.BandwidthMeter;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.Clock;
-import com.google.android.exoplayer.util.SlidingPercentile;
 import com.google.android.exoplayer.util.SystemClock;
 
 import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
 
 public class LimitedBandwidthMeter implements BandwidthMeter {
 
-    public static final int DEFAULT_MAX_WEIGHT = 2000;
-
-    private long limitBitrate = Long.MAX_VALUE;
-    private final Handler eventHandler;
-    private final BandwidthMeter.EventListener eventListener;
-    private final Clock clock;
-    private final SlidingPercentile slidingPercentile;
+    public static final int DEFAULT_MAX_WEIGHT = PercentileBandwidthEstimator.DEFAULT_MAX_WEIGHT;
+    // A single transfer is too noisy to be remembered across sessions.
+    private static final int MIN_SAMPLES_TO_STORE = 3;
+
+    private volatile long limitBitrate = Long.MAX_VALUE;
+    private final SampleDispatcher sampleDispatcher;
+    final Clock clock;
+    private final BandwidthEstimator estimator;
+    private volatile BandwidthEstimateStore estimateStore;
+    private volatile String estimateHost;
+    private int sampleCount;
     private long bytesAccumulator;
     private long startTimeMs;
     private long bitrateEstimate;
@@ -36,10 +41,21 @@ public class LimitedBandwidthMeter implements BandwidthMeter {
 
     public LimitedBandwidthMeter(Handler eventHandler, EventListener eventListener, Clock clock,
             int maxWeight) {
-        this.eventHandler = eventHandler;
-        this.eventListener = eventListener;
+        this(eventHandler, eventListener, clock, new PercentileBandwidthEstimator(maxWeight,
+                PercentileBandwidthEstimator.DEFAULT_PERCENTILE));
+    }
+
+    public LimitedBandwidthMeter(Handler eventHandler, EventListener eventListener,
+            BandwidthEstimator estimator) {
+        this(eventHandler, eventListener, new SystemClock(), estimator);
+    }
+
+    public LimitedBandwidthMeter(Handler eventHandler, EventListener eventListener, Clock clock,
+            BandwidthEstimator estimator) {
+        this.sampleDispatcher = eventHandler != null && eventListener != null
+                ? new SampleDispatcher(eventHandler.getLooper(), eventListener) : null;
         this.clock = clock;
-        this.slidingPercentile = new SlidingPercentile(maxWeight);
+        this.estimator = estimator;
         bitrateEstimate = NO_ESTIMATE;
     }
 
@@ -67,11 +83,7 @@ public class LimitedBandwidthMeter implements BandwidthMeter {
         long nowMs = clock.elapsedRealtime();
         int elapsedMs = (int) (nowMs - startTimeMs);
         if (elapsedMs > 0) {
-            float bitsPerSecond = (bytesAccumulator * 8000) / elapsedMs;
-            slidingPercentile.addSample((int) Math.sqrt(bytesAccumulator), bitsPerSecond);
-            float bandwidthEstimateFloat = slidingPercentile.getPercentile(0.5f);
-            bitrateEstimate = Float.isNaN(bandwidthEstimateFloat) ? NO_ESTIMATE
-                    : (long) bandwidthEstimateFloat;
+            bitrateEstimate = addSample(elapsedMs, bytesAccumulator);
             notifyBandwidthSample(elapsedMs, bytesAccumulator, bitrateEstimate);
         }
         streamCount--;
@@ -85,15 +97,120 @@ public class LimitedBandwidthMeter implements BandwidthMeter {
         this.limitBitrate = limitBitrate;
     }
 
-    private void notifyBandwidthSample(final int elapsedMs, final long bytes, final long bitrate) {
-        if (eventHandler != null && eventListener != null) {
-            eventHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    eventListener.onBandwidthSample(elapsedMs, bytes, bitrate);
-                }
-            });
+    long getLimitBitrate() {
+        return limitBitrate;
+    }
+
+    /**
+     * Starts from the estimate saved in {@code store} until the first transfer completes, and
+     * saves later estimates to it.
+     *
+     * @param host The host of the stream, or null to share the estimate between hosts.
+     */
+    public void setEstimateStore(BandwidthEstimateStore store, String host) {
+        estimateHost = host;
+        estimateStore = store;
+        if (store != null) {
+            long estimate = store.get(host);
+            if (estimate != NO_ESTIMATE) {
+                seedEstimate(estimate);
+            }
+        }
+    }
+
+    synchronized void seedEstimate(long estimate) {
+        if (bitrateEstimate == NO_ESTIMATE) {
+            bitrateEstimate = estimate;
         }
     }
 
+    /**
+     * Adds a transfer to the estimator and returns the new estimate. Callers must serialize calls
+     * to this method.
+     */
+    long addSample(int elapsedMs, long bytes) {
+        estimator.addSample(bytes, elapsedMs);
+        return estimator.getEstimate();
+    }
+
+    /**
+     * Reports a new estimate. Callers must hold the lock they serialize {@link #addSample} with.
+     */
+    void notifyBandwidthSample(int elapsedMs, long bytes, long bitrate) {
+        final BandwidthEstimateStore store = estimateStore;
+        if (store != null && ++sampleCount >= MIN_SAMPLES_TO_STORE) {
+            store.put(estimateHost, bitrate);
+        }
+        if (sampleDispatcher != null) {
+            sampleDispatcher.dispatch(elapsedMs, bytes, bitrate);
+        }
+    }
+
+    /**
+     * Delivers samples to the listener on the looper of the event handler. Messages come from
+     * the pool of {@link Message} and samples from a {@link SamplePool}, so that steady playback
+     * does not allocate per transfer.
+     */
+    private static final class SampleDispatcher implements Handler.Callback {
+
+        private static final int MSG_BANDWIDTH_SAMPLE = 0;
+
+        private final Handler handler;
+        private final BandwidthMeter.EventListener listener;
+        private final SamplePool pool = new SamplePool();
+
+        SampleDispatcher(Looper looper, BandwidthMeter.EventListener listener) {
+            this.handler = new Handler(looper, this);
+            this.listener = listener;
+        }
+
+        void dispatch(int elapsedMs, long bytes, long bitrate) {
+            handler.obtainMessage(MSG_BANDWIDTH_SAMPLE, pool.obtain(elapsedMs, bytes, bitrate))
+                    .sendToTarget();
+        }
+
+        @Override
+        public boolean handleMessage(Message msg) {
+            final Sample sample = (Sample) msg.obj;
+            listener.onBandwidthSample(sample.elapsedMs, sample.bytes, sample.bitrate);
+            pool.recycle(sample);
+            return true;
+        }
+    }
+
+    /**
+     * A free list of samples, which grows only to the number of samples in flight.
+     */
+    static final class SamplePool {
+
+        private Sample recycled;
+
+        synchronized Sample obtain(int elapsedMs, long bytes, long bitrate) {
+            Sample sample = recycled;
+            if (sample != null) {
+                recycled = sample.next;
+                sample.next = null;
+            } else {
+                sample = new Sample();
+            }
+            sample.elapsedMs = elapsedMs;
+            sample.bytes = bytes;
+            sample.bitrate = bitrate;
+            return sample;
+        }
+
+        synchronized void recycle(Sample sample) {
+            sample.next = recycled;
+            recycled = sample;
+        }
+    }
+
+    static final class Sample {
+
+        int elapsedMs;
+        long bytes;
+        long bitrate;
+        Sample next;
+    }
+
 }
@@ -0,0 +1,56 @@
+package jp.satorufujiwara.player;
+
+import java.util.Arrays;
+
+/**
+ * A list of listeners that can be dispatched to without allocating.
+ * <p>
+ * The listeners are held in an array that is replaced whenever a listener is added or removed,
+ * so a dispatch loop over {@link #get()} is not affected by listeners that add or remove
+ * listeners, and no iterator is created per event.
+ */
+final class ListenerArray<T> {
+
+    private final T[] empty;
+    private volatile T[] listeners;
+
+    /**
+     * @param empty An empty array of the listener type.
+     */
+    ListenerArray(T[] empty) {
+        this.empty = empty;
+        listeners = empty;
+    }
+
+    synchronized void add(T listener) {
+        final T[] current = listeners;
+        final T[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    synchronized void remove(T listener) {
+        final T[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].equals(listener)) {
+                final T[] updated = Arrays.copyOf(empty, current.length - 1);
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    synchronized void clear() {
+        listeners = empty;
+    }
+
+    /**
+     * Returns the current listeners. The array must not be modified.
+     */
+    T[] get() {
+        return listeners;
+    }
+
+}
@@ -0,0 +1,12 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.LoadControl;
+import com.google.android.exoplayer.upstream.Allocator;
+
+import android.os.Handler;
+
+public interface LoadControlCreator {
+
+    LoadControl create(Allocator allocator, Handler eventHandler);
+
+}
@@ -0,0 +1,69 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.DefaultLoadControl;
+import com.google.android.exoplayer.LoadControl;
+import com.google.android.exoplayer.upstream.Allocator;
+
+import android.os.Handler;
+
+/**
+ * A set of buffering thresholds trading startup latency against rebuffer risk: the watermarks of
+ * a {@link DefaultLoadControl} and the buffer the {@link Player} needs before it starts or
+ * resumes playback.
+ */
+public class LoadControlProfile implements LoadControlCreator {
+
+    /**
+     * The ExoPlayer defaults.
+     */
+    public static final LoadControlProfile DEFAULT = new LoadControlProfile(
+            DefaultLoadControl.DEFAULT_LOW_WATERMARK_MS,
+            DefaultLoadControl.DEFAULT_HIGH_WATERMARK_MS,
+            DefaultLoadControl.DEFAULT_LOW_BUFFER_LOAD,
+            DefaultLoadControl.DEFAULT_HIGH_BUFFER_LOAD,
+            Player.DEFAULT_MIN_BUFFER_MS, Player.DEFAULT_MIN_REBUFFER_MS);
+
+    /**
+     * Starts as soon as possible and keeps a short buffer, for short autoplay clips.
+     */
+    public static final LoadControlProfile FAST_START = new LoadControlProfile(
+            3000, 10000, 0.2f, 0.8f, 500, 2500);
+
+    /**
+     * Keeps a long buffer and waits for more data before resuming, for long-form content.
+     */
+    public static final LoadControlProfile STEADY = new LoadControlProfile(
+            30000, 60000, 0.2f, 0.8f, 2500, 10000);
+
+    public final int lowWatermarkMs;
+    public final int highWatermarkMs;
+    public final float lowBufferLoad;
+    public final float highBufferLoad;
+    public final int minBufferMs;
+    public final int minRebufferMs;
+
+    /**
+     * @param lowWatermarkMs  See {@link DefaultLoadControl}.
+     * @param highWatermarkMs See {@link DefaultLoadControl}.
+     * @param lowBufferLoad   See {@link DefaultLoadControl}.
+     * @param highBufferLoad  See {@link DefaultLoadControl}.
+     * @param minBufferMs     The buffer the player needs to start playback.
+     * @param minRebufferMs   The buffer the player needs to resume playback after a rebuffer.
+     */
+    public LoadControlProfile(int lowWatermarkMs, int highWatermarkMs, float lowBufferLoad,
+            float highBufferLoad, int minBufferMs, int minRebufferMs) {
+        this.lowWatermarkMs = lowWatermarkMs;
+        this.highWatermarkMs = highWatermarkMs;
+        this.lowBufferLoad = lowBufferLoad;
+        this.highBufferLoad = highBufferLoad;
+        this.minBufferMs = minBufferMs;
+        this.minRebufferMs = minRebufferMs;
+    }
+
+    @Override
+    public LoadControl create(Allocator allocator, Handler eventHandler) {
+        return new DefaultLoadControl(allocator, null, null, lowWatermarkMs, highWatermarkMs,
+                lowBufferLoad, highBufferLoad);
+    }
+
+}
@@ -0,0 +1,16 @@
+package jp.satorufujiwara.player;
+
+/**
+ * A {@link DataSourceCreator} that tells which creator manifests are fetched with. Manifests
+ * are fetched with {@code DefaultUriDataSource} unless the creator of the source is one, so
+ * that they are not cached, prefetched or rewritten by wrapping creators.
+ */
+public interface ManifestDataSourceCreator extends DataSourceCreator {
+
+    /**
+     * Returns the creator of the data sources manifests are fetched with, or null to fetch them
+     * with {@code DefaultUriDataSource}.
+     */
+    DataSourceCreator forManifest();
+
+}
@@ -0,0 +1,46 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.util.SlidingPercentile;
+
+/**
+ * Estimates a percentile of the throughput of recent transfers, weighted by the square root of
+ * their size. The median is the estimate of ExoPlayer's {@code DefaultBandwidthMeter}.
+ */
+public class PercentileBandwidthEstimator implements BandwidthEstimator {
+
+    public static final int DEFAULT_MAX_WEIGHT = 2000;
+    public static final float DEFAULT_PERCENTILE = 0.5f;
+
+    private final SlidingPercentile slidingPercentile;
+    private final float percentile;
+    private long estimate = BandwidthMeter.NO_ESTIMATE;
+
+    public PercentileBandwidthEstimator() {
+        this(DEFAULT_MAX_WEIGHT, DEFAULT_PERCENTILE);
+    }
+
+    /**
+     * @param maxWeight  The maximum total weight of the sliding window.
+     * @param percentile The percentile to estimate, between 0 and 1. Lower values are more
+     *                   conservative.
+     */
+    public PercentileBandwidthEstimator(int maxWeight, float percentile) {
+        this.slidingPercentile = new SlidingPercentile(maxWeight);
+        this.percentile = percentile;
+    }
+
+    @Override
+    public void addSample(long bytes, int elapsedMs) {
+        float bitsPerSecond = (bytes * 8000) / elapsedMs;
+        slidingPercentile.addSample((int) Math.sqrt(bytes), bitsPerSecond);
+        float estimateFloat = slidingPercentile.getPercentile(percentile);
+        estimate = Float.isNaN(estimateFloat) ? BandwidthMeter.NO_ESTIMATE : (long) estimateFloat;
+    }
+
+    @Override
+    public long getEstimate() {
+        return estimate;
+    }
+
+}
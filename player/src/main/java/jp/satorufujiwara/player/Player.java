@@ -3,6 +3,7 @@ package jp.satorufujiwara.player;
 import com.google.android.exoplayer.DummyTrackRenderer;
 import com.google.android.exoplayer.ExoPlaybackException;
 import com.google.android.exoplayer.ExoPlayer;
+import com.google.android.exoplayer.MediaCodecAudioTrackRenderer;
 import com.google.android.exoplayer.MediaCodecVideoTrackRenderer;
 import com.google.android.exoplayer.MediaFormat;
 import com.google.android.exoplayer.TrackRenderer;
@@ -10,10 +11,12 @@ import com.google.android.exoplayer.text.Cue;
 import com.google.android.exoplayer.upstream.BandwidthMeter;
 import com.google.android.exoplayer.util.PlayerControl;
 
+import android.annotation.TargetApi;
+import android.media.PlaybackParams;
+import android.os.Build;
 import android.view.Surface;
 
 import java.util.Collections;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A wrapper around {@link ExoPlayer} that provides a higher level interface. It can be prepared
@@ -35,6 +38,18 @@ public class Player implements ExoPlayer.Listener {
                 float pixelWidthHeightRatio);
     }
 
+    /**
+     * A listener for frames drawn to the surface.
+     */
+    public interface DrawListener {
+
+        /**
+         * Called when the first frame is drawn after the surface was set or the renderers were
+         * built.
+         */
+        void onDrawnToSurface(Surface surface);
+    }
+
     // Constants pulled into this class for convenience.
     public static final int STATE_IDLE = ExoPlayer.STATE_IDLE;
     public static final int STATE_PREPARING = ExoPlayer.STATE_PREPARING;
@@ -45,6 +60,9 @@ public class Player implements ExoPlayer.Listener {
     public static final int TRACK_DISABLED = ExoPlayer.TRACK_DISABLED;
     public static final int TRACK_DEFAULT = ExoPlayer.TRACK_DEFAULT;
 
+    public static final int DEFAULT_MIN_BUFFER_MS = 1000;
+    public static final int DEFAULT_MIN_REBUFFER_MS = 5000;
+
     public static final int RENDERER_COUNT = 4;
     public static final int TYPE_VIDEO = 0;
     public static final int TYPE_AUDIO = 1;
@@ -57,7 +75,8 @@ public class Player implements ExoPlayer.Listener {
 
     private final ExoPlayer player;
     private final PlayerControl playerControl;
-    private final CopyOnWriteArrayList<Listener> listeners;
+    private final ListenerArray<Listener> listeners;
+    private DrawListener drawListener;
 
     private RendererBuilder rendererBuilder;
     private EventProxy eventProxy;
@@ -67,6 +86,8 @@ public class Player implements ExoPlayer.Listener {
 
     private Surface surface;
     private TrackRenderer videoRenderer;
+    private TrackRenderer audioRenderer;
+    private float playbackSpeed = 1f;
     private int videoTrackToRestore;
     private int audioTrackToRestore;
 
@@ -74,12 +95,20 @@ public class Player implements ExoPlayer.Listener {
     private boolean isMute;
 
     public Player() {
+        this(DEFAULT_MIN_BUFFER_MS, DEFAULT_MIN_REBUFFER_MS);
+    }
+
+    /**
+     * @param minBufferMs   The buffer needed to start playback.
+     * @param minRebufferMs The buffer needed to resume playback after a rebuffer.
+     */
+    public Player(int minBufferMs, int minRebufferMs) {
         eventProxy = new EventProxy();
         eventProxy.setPlayer(this);
-        player = ExoPlayer.Factory.newInstance(RENDERER_COUNT, 1000, 5000);
+        player = ExoPlayer.Factory.newInstance(RENDERER_COUNT, minBufferMs, minRebufferMs);
         player.addListener(this);
         playerControl = new PlayerControl(player);
-        listeners = new CopyOnWriteArrayList<>();
+        listeners = new ListenerArray<>(new Listener[0]);
         lastReportedPlaybackState = STATE_IDLE;
         rendererBuildingState = RENDERER_BUILDING_STATE_IDLE;
         // Disable text initially.
@@ -94,8 +123,9 @@ public class Player implements ExoPlayer.Listener {
     @Override
     public void onPlayerError(ExoPlaybackException exception) {
         rendererBuildingState = RENDERER_BUILDING_STATE_IDLE;
-        for (Listener listener : listeners) {
-            listener.onError(exception);
+        final Listener[] listeners = this.listeners.get();
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onError(exception);
         }
     }
 
@@ -116,6 +146,10 @@ public class Player implements ExoPlayer.Listener {
         listeners.remove(listener);
     }
 
+    public void setDrawListener(DrawListener drawListener) {
+        this.drawListener = drawListener;
+    }
+
     public void setRendererBuilder(RendererBuilder rendererBuilder) {
         this.rendererBuilder = rendererBuilder;
         eventProxy = rendererBuilder.eventProxy;
@@ -187,6 +221,33 @@ public class Player implements ExoPlayer.Listener {
         }
     }
 
+    /**
+     * Sets the playback speed, which needs API 23. Video follows the speed of the audio.
+     *
+     * @return Whether the speed could be set.
+     */
+    public boolean setPlaybackSpeed(float speed) {
+        if (!isPlaybackSpeedSupported()) {
+            return false;
+        }
+        if (playbackSpeed != speed) {
+            playbackSpeed = speed;
+            pushPlaybackSpeed();
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether {@link #setPlaybackSpeed(float)} can change the speed on this device.
+     */
+    public static boolean isPlaybackSpeedSupported() {
+        return Build.VERSION.SDK_INT >= 23;
+    }
+
+        public float getPlaybackSpeed() {
+        return playbackSpeed;
+    }
+
     public void prepare() {
         if (rendererBuildingState == RENDERER_BUILDING_STATE_BUILT) {
             player.stop();
@@ -194,6 +255,7 @@ public class Player implements ExoPlayer.Listener {
         rendererBuilder.cancel();
         eventProxy.setVideoFormat(null);
         videoRenderer = null;
+        audioRenderer = null;
         rendererBuildingState = RENDERER_BUILDING_STATE_BUILDING;
         maybeReportPlayerState();
         rendererBuilder.buildRenderers(eventProxy);
@@ -208,6 +270,38 @@ public class Player implements ExoPlayer.Listener {
         player.release();
     }
 
+    /**
+     * Stops playback and returns this player to the state of a newly created one, keeping the
+     * underlying {@link ExoPlayer} and its playback thread so that it can be reused.
+     */
+    void reset() {
+        if (rendererBuilder != null) {
+            rendererBuilder.cancel();
+        }
+        player.stop();
+        // ExoPlayer keeps its position across stop and prepare.
+        player.seekTo(0);
+        player.setPlayWhenReady(false);
+        listeners.clear();
+        drawListener = null;
+        rendererBuilder = null;
+        eventProxy = new EventProxy();
+        eventProxy.setPlayer(this);
+        rendererBuildingState = RENDERER_BUILDING_STATE_IDLE;
+        lastReportedPlaybackState = STATE_IDLE;
+        lastReportedPlayWhenReady = false;
+        surface = null;
+        videoRenderer = null;
+        audioRenderer = null;
+        playbackSpeed = 1f;
+        backgrounded = false;
+        isMute = false;
+        player.setSelectedTrack(TYPE_VIDEO, TRACK_DEFAULT);
+        player.setSelectedTrack(TYPE_AUDIO, TRACK_DEFAULT);
+        player.setSelectedTrack(TYPE_METADATA, TRACK_DEFAULT);
+        player.setSelectedTrack(TYPE_TEXT, TRACK_DISABLED);
+    }
+
     public void stop() {
         player.stop();
     }
@@ -237,6 +331,7 @@ public class Player implements ExoPlayer.Listener {
     }
 
     public void seekTo(long positionMs) {
+        eventProxy.invokeOnSeek(positionMs, player.getCurrentPosition());
         player.seekTo(positionMs);
     }
 
@@ -271,14 +366,19 @@ public class Player implements ExoPlayer.Listener {
         }
         // Complete preparation.
         this.videoRenderer = renderers[TYPE_VIDEO];
+        this.audioRenderer = renderers[TYPE_AUDIO];
         pushSurface(false);
         player.prepare(renderers);
+        if (playbackSpeed != 1f) {
+            pushPlaybackSpeed();
+        }
         rendererBuildingState = RENDERER_BUILDING_STATE_BUILT;
     }
 
     void invokeOnRenderersError(Exception e) {
-        for (Listener listener : listeners) {
-            listener.onError(e);
+        final Listener[] listeners = this.listeners.get();
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onError(e);
         }
         rendererBuildingState = RENDERER_BUILDING_STATE_IDLE;
         maybeReportPlayerState();
@@ -286,12 +386,19 @@ public class Player implements ExoPlayer.Listener {
 
     void invokeOnVideoSizeChanged(int width, int height, int unappliedRotationDegrees,
             float pixelWidthHeightRatio) {
-        for (Listener listener : listeners) {
-            listener.onVideoSizeChanged(width, height, unappliedRotationDegrees,
+        final Listener[] listeners = this.listeners.get();
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onVideoSizeChanged(width, height, unappliedRotationDegrees,
                     pixelWidthHeightRatio);
         }
     }
 
+    void invokeOnDrawnToSurface(Surface surface) {
+        if (drawListener != null) {
+            drawListener.onDrawnToSurface(surface);
+        }
+    }
+
     boolean isDisabledTrack(int type) {
         return getSelectedTrack(TYPE_TEXT) != TRACK_DISABLED;
     }
@@ -301,16 +408,28 @@ public class Player implements ExoPlayer.Listener {
         int playbackState = getPlaybackState();
         if (lastReportedPlayWhenReady != playWhenReady
                 || lastReportedPlaybackState != playbackState) {
-            for (Listener listener : listeners) {
-                listener.onStateChanged(playWhenReady, playbackState);
+            eventProxy.invokeOnStateChanged(playWhenReady, playbackState);
+            final Listener[] listeners = this.listeners.get();
+            for (int i = 0; i < listeners.length; i++) {
+                listeners[i].onStateChanged(playWhenReady, playbackState);
             }
             lastReportedPlayWhenReady = playWhenReady;
             lastReportedPlaybackState = playbackState;
         }
     }
 
+    @TargetApi(23)
+    private void pushPlaybackSpeed() {
+        if (!(audioRenderer instanceof MediaCodecAudioTrackRenderer)) {
+            return;
+        }
+        player.sendMessage(audioRenderer, MediaCodecAudioTrackRenderer.MSG_SET_PLAYBACK_PARAMS,
+                new PlaybackParams().setSpeed(playbackSpeed));
+    }
+
     private void pushSurface(boolean blockForSurfacePush) {
-        if (videoRenderer == null || surface == null) {
+        // A cleared surface is pushed too, so that the decoder lets go of the old one.
+        if (videoRenderer == null || (surface == null && !blockForSurfacePush)) {
             return;
         }
         if (blockForSurfacePush) {
@@ -0,0 +1,118 @@
+package jp.satorufujiwara.player;
+
+import java.util.ArrayDeque;
+
+/**
+ * A bounded pool of {@link Player}s, so that presenters in a scrolling feed reuse playback
+ * threads instead of creating and releasing one per item.
+ * <p>
+ * Returned players are reset and kept idle up to {@code maxIdlePlayers}; beyond that they are
+ * released. At most {@code maxActivePlayers} players can be borrowed at the same time. This
+ * class must be used from the thread the players are used on, usually the main thread.
+ */
+public class PlayerPool {
+
+    public static final int DEFAULT_MAX_IDLE_PLAYERS = 2;
+    public static final int DEFAULT_MAX_ACTIVE_PLAYERS = 4;
+
+    private final int maxIdlePlayers;
+    private final int maxActivePlayers;
+    private final int minBufferMs;
+    private final int minRebufferMs;
+    private final ArrayDeque<Player> idlePlayers = new ArrayDeque<>();
+    private int activeCount;
+    private int createdCount;
+    private int reusedCount;
+    private int evictedCount;
+
+    public PlayerPool() {
+        this(DEFAULT_MAX_IDLE_PLAYERS, DEFAULT_MAX_ACTIVE_PLAYERS);
+    }
+
+    public PlayerPool(int maxIdlePlayers, int maxActivePlayers) {
+        this(maxIdlePlayers, maxActivePlayers, Player.DEFAULT_MIN_BUFFER_MS,
+                Player.DEFAULT_MIN_REBUFFER_MS);
+    }
+
+    /**
+     * @param minBufferMs   The buffer pooled players need to start playback. Pooled players
+     *                      ignore the thresholds of the sources they play.
+     * @param minRebufferMs The buffer pooled players need to resume playback after a rebuffer.
+     */
+    public PlayerPool(int maxIdlePlayers, int maxActivePlayers, int minBufferMs,
+            int minRebufferMs) {
+        if (maxActivePlayers <= 0) {
+            throw new IllegalArgumentException("maxActivePlayers must be positive.");
+        }
+        this.maxIdlePlayers = maxIdlePlayers;
+        this.maxActivePlayers = maxActivePlayers;
+        this.minBufferMs = minBufferMs;
+        this.minRebufferMs = minRebufferMs;
+    }
+
+    /**
+     * Borrows a player, reusing an idle one when available.
+     *
+     * @return The player, or null if {@code maxActivePlayers} players are already borrowed.
+     */
+    public Player acquire() {
+        if (activeCount >= maxActivePlayers) {
+            return null;
+        }
+        Player player = idlePlayers.pollFirst();
+        if (player != null) {
+            reusedCount++;
+        } else {
+            player = new Player(minBufferMs, minRebufferMs);
+            createdCount++;
+        }
+        activeCount++;
+        return player;
+    }
+
+    /**
+     * Returns a player borrowed with {@link #acquire()}. The player must not be used afterwards.
+     */
+    public void release(Player player) {
+        activeCount--;
+        player.reset();
+        if (idlePlayers.size() < maxIdlePlayers) {
+            idlePlayers.addFirst(player);
+        } else {
+            player.release();
+            evictedCount++;
+        }
+    }
+
+    /**
+     * Releases every idle player.
+     */
+    public void clear() {
+        Player player;
+        while ((player = idlePlayers.pollFirst()) != null) {
+            player.release();
+            evictedCount++;
+        }
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public int getIdleCount() {
+        return idlePlayers.size();
+    }
+
+    public int getCreatedCount() {
+        return createdCount;
+    }
+
+    public int getReusedCount() {
+        return reusedCount;
+    }
+
+    public int getEvictedCount() {
+        return evictedCount;
+    }
+
+}
@@ -1,5 +1,12 @@
 package jp.satorufujiwara.player;
 
+import com.google.android.exoplayer.DefaultLoadControl;
+import com.google.android.exoplayer.LoadControl;
+import com.google.android.exoplayer.upstream.Allocator;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DefaultAllocator;
+import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+import com.google.android.exoplayer.upstream.UriDataSource;
 
 import android.content.Context;
 import android.net.Uri;
@@ -19,9 +26,23 @@ public abstract class RendererBuilder<T extends EventProxy> {
     public final T eventProxy;
     public final int bufferSegmentSize;
     public final int bufferSegmentCount;
+    public final SharedAllocator sharedAllocator;
+    public final AdaptiveBufferPolicy bufferPolicy;
+    public final LoadControlCreator loadControlCreator;
+    public final int minBufferMs;
+    public final int minRebufferMs;
 
     protected RendererBuilder(Context context, Handler eventHandler, T eventProxy,
             String userAgent, Uri uri, int bufferSegmentSize, int bufferSegmentCount) {
+        this(context, eventHandler, eventProxy, userAgent, uri, bufferSegmentSize,
+                bufferSegmentCount, null, null, null, Player.DEFAULT_MIN_BUFFER_MS,
+                Player.DEFAULT_MIN_REBUFFER_MS);
+    }
+
+    protected RendererBuilder(Context context, Handler eventHandler, T eventProxy,
+            String userAgent, Uri uri, int bufferSegmentSize, int bufferSegmentCount,
+            SharedAllocator sharedAllocator, AdaptiveBufferPolicy bufferPolicy,
+            LoadControlCreator loadControlCreator, int minBufferMs, int minRebufferMs) {
         this.context = context;
         this.eventHandler = eventHandler;
         this.eventProxy = eventProxy;
@@ -29,6 +50,80 @@ public abstract class RendererBuilder<T extends EventProxy> {
         this.uri = uri;
         this.bufferSegmentSize = bufferSegmentSize;
         this.bufferSegmentCount = bufferSegmentCount;
+        this.sharedAllocator = sharedAllocator;
+        this.bufferPolicy = bufferPolicy;
+        this.loadControlCreator = loadControlCreator;
+        this.minBufferMs = minBufferMs;
+        this.minRebufferMs = minRebufferMs;
+    }
+
+    /**
+     * Returns the load control for one build, created by {@link #loadControlCreator} or a
+     * {@link DefaultLoadControl}, over {@link #createAllocator(int)}.
+     *
+     * @param targetBufferSize The sum of the buffer sizes of the sample sources using it.
+     */
+    protected LoadControl createLoadControl(int targetBufferSize) {
+        Allocator allocator = createAllocator(targetBufferSize);
+        return loadControlCreator != null ? loadControlCreator.create(allocator, eventHandler)
+                : new DefaultLoadControl(allocator);
+    }
+
+    /**
+     * Returns the allocator for one build: taken from {@link #sharedAllocator} when its segment
+     * size matches {@link #bufferSegmentSize}, otherwise a new {@link DefaultAllocator}.
+     *
+     * @param targetBufferSize The sum of the buffer sizes of the sample sources using it.
+     */
+    protected Allocator createAllocator(int targetBufferSize) {
+        Allocator allocator;
+        if (sharedAllocator != null
+                && sharedAllocator.getIndividualAllocationLength() == bufferSegmentSize) {
+            allocator = sharedAllocator.newAllocator();
+        } else {
+            allocator = new DefaultAllocator(bufferSegmentSize);
+        }
+        return bufferPolicy != null ? bufferPolicy.wrap(allocator, targetBufferSize) : allocator;
+    }
+
+    /**
+     * Returns a bandwidth meter for one build that reports its samples to {@link #eventProxy}.
+     *
+     * @param concurrent       Whether to create a {@link ConcurrentBandwidthMeter}.
+     * @param estimatorCreator Creates the estimator of the meter, or null for a
+     *                         {@link PercentileBandwidthEstimator}.
+     */
+    protected LimitedBandwidthMeter createBandwidthMeter(boolean concurrent,
+            BandwidthEstimatorCreator estimatorCreator) {
+        final BandwidthEstimator estimator = estimatorCreator != null
+                ? estimatorCreator.create() : new PercentileBandwidthEstimator();
+        return concurrent ? new ConcurrentBandwidthMeter(eventHandler, eventProxy, estimator)
+                : new LimitedBandwidthMeter(eventHandler, eventProxy, estimator);
+    }
+
+    /**
+     * Returns the data source the manifest is fetched with. It is created by the creator
+     * {@code creator} gives for manifests when it is a {@link ManifestDataSourceCreator}, so
+     * that manifests share its http stack. Otherwise it is a {@link DefaultUriDataSource}.
+     */
+    protected UriDataSource createManifestDataSource(DataSourceCreator creator) {
+        if (creator instanceof ManifestDataSourceCreator) {
+            DataSourceCreator manifestCreator = ((ManifestDataSourceCreator) creator).forManifest();
+            if (manifestCreator != null) {
+                DataSource dataSource = manifestCreator.create(context, null, userAgent);
+                if (dataSource instanceof UriDataSource) {
+                    return (UriDataSource) dataSource;
+                }
+            }
+        }
+        return new DefaultUriDataSource(context, userAgent);
+    }
+
+    /**
+     * Returns {@code count} scaled for this device by {@link #bufferPolicy}, if any.
+     */
+    protected int scaleSegmentCount(int count) {
+        return bufferPolicy != null ? bufferPolicy.scaleSegmentCount(count) : count;
     }
 
     /**
@@ -51,4 +146,30 @@ public abstract class RendererBuilder<T extends EventProxy> {
 
     protected abstract void setLimitBitrate(long bitrate);
 
+    /**
+     * Returns a new builder for a rendition of the same content made of keyframes only, which
+     * {@link VideoTexturePresenter} shows while scrubbing, or null if there is none. Called once
+     * the renderers of this builder were built. Returns null by default.
+     */
+    protected RendererBuilder createTrickPlayRendererBuilder() {
+        return null;
+    }
+
+    /**
+     * Returns the position to seek to so that the keyframe at or before {@code positionMs} is
+     * shown, for builders created by {@link #createTrickPlayRendererBuilder()}. Returns
+     * {@code positionMs} by default.
+     */
+    protected long getKeyframePosition(long positionMs) {
+        return positionMs;
+    }
+
+    /**
+     * Releases what this builder keeps across builds, such as DRM sessions. Called once the
+     * builder is no longer used by any player. A released builder may still build again.
+     * Does nothing by default.
+     */
+    protected void release() {
+    }
+
 }
@@ -0,0 +1,72 @@
+package jp.satorufujiwara.player;
+
+/**
+ * An immutable snapshot of the quality of experience of a playback session, taken by
+ * {@link SessionMetricsCollector#getSnapshot()}.
+ */
+public final class SessionMetrics {
+
+    public static final long UNSET = -1;
+
+    /** The time from prepare to the first rendered frame, or {@link #UNSET}. */
+    public final long timeToFirstFrameMs;
+    /** The time spent playing, excluding rebuffers. */
+    public final long playingTimeMs;
+    /** The number of times playback stalled after it had started, excluding seeks. */
+    public final int rebufferCount;
+    /** The time spent stalled after playback had started, excluding seeks. */
+    public final long rebufferTimeMs;
+    /** The number of video format switches after the first format. */
+    public final int switchCount;
+    /** The average bitrate of the played video formats weighted by playing time. */
+    public final long averageBitrate;
+    /** The highest bitrate of the played video formats. */
+    public final long peakBitrate;
+    public final int droppedFrames;
+    public final int audioUnderrunCount;
+    /** The number of bytes reported by the bandwidth meter. */
+    public final long bytesDownloaded;
+
+    SessionMetrics(long timeToFirstFrameMs, long playingTimeMs, int rebufferCount,
+            long rebufferTimeMs, int switchCount, long averageBitrate, long peakBitrate,
+            int droppedFrames, int audioUnderrunCount, long bytesDownloaded) {
+        this.timeToFirstFrameMs = timeToFirstFrameMs;
+        this.playingTimeMs = playingTimeMs;
+        this.rebufferCount = rebufferCount;
+        this.rebufferTimeMs = rebufferTimeMs;
+        this.switchCount = switchCount;
+        this.averageBitrate = averageBitrate;
+        this.peakBitrate = peakBitrate;
+        this.droppedFrames = droppedFrames;
+        this.audioUnderrunCount = audioUnderrunCount;
+        this.bytesDownloaded = bytesDownloaded;
+    }
+
+    /**
+     * Returns the share of the session spent rebuffering, between 0 and 1.
+     */
+    public float getRebufferRatio() {
+        final long totalMs = playingTimeMs + rebufferTimeMs;
+        return totalMs == 0 ? 0f : (float) rebufferTimeMs / totalMs;
+    }
+
+    public float getDroppedFramesPerMinute() {
+        return playingTimeMs == 0 ? 0f : droppedFrames * 60000f / playingTimeMs;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionMetrics{"
+                + "timeToFirstFrameMs=" + timeToFirstFrameMs
+                + ", playingTimeMs=" + playingTimeMs
+                + ", rebufferCount=" + rebufferCount
+                + ", rebufferRatio=" + getRebufferRatio()
+                + ", switchCount=" + switchCount
+                + ", averageBitrate=" + averageBitrate
+                + ", peakBitrate=" + peakBitrate
+                + ", droppedFramesPerMinute=" + getDroppedFramesPerMinute()
+                + ", audioUnderrunCount=" + audioUnderrunCount
+                + ", bytesDownloaded=" + bytesDownloaded
+                + '}';
+    }
+}
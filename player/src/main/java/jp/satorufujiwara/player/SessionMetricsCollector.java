@@ -0,0 +1,149 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.util.Clock;
+import com.google.android.exoplayer.util.SystemClock;
+
+/**
+ * Aggregates the callbacks of an {@link EventProxy} into {@link SessionMetrics}.
+ * <p>
+ * Set it with {@link EventProxy#setMetricsCollector(SessionMetricsCollector)} before the source
+ * is prepared. It is updated on the event thread and {@link #getSnapshot()} may be called from
+ * any thread. Video formats are reported by sources that track them, such as HLS.
+ */
+public class SessionMetricsCollector {
+
+    private final Clock clock;
+
+    private long prepareTimeMs = SessionMetrics.UNSET;
+    private long timeToFirstFrameMs = SessionMetrics.UNSET;
+    private boolean started;
+    private boolean seeking;
+    private boolean playing;
+    private boolean rebuffering;
+    private long stateStartTimeMs;
+    private long playingTimeMs;
+    private int rebufferCount;
+    private long rebufferTimeMs;
+    private int switchCount;
+    private long currentBitrate = SessionMetrics.UNSET;
+    private long bitrateTimeProduct;
+    private long peakBitrate;
+    private int droppedFrames;
+    private int audioUnderrunCount;
+    private long bytesDownloaded;
+
+    public SessionMetricsCollector() {
+        this(new SystemClock());
+    }
+
+    public SessionMetricsCollector(Clock clock) {
+        this.clock = clock;
+    }
+
+    public synchronized SessionMetrics getSnapshot() {
+        final long nowMs = clock.elapsedRealtime();
+        final long currentMs = nowMs - stateStartTimeMs;
+        final long playingMs = playingTimeMs + (playing ? currentMs : 0);
+        final long rebufferMs = rebufferTimeMs + (rebuffering ? currentMs : 0);
+        long bitrateProduct = bitrateTimeProduct;
+        if (playing && currentBitrate != SessionMetrics.UNSET) {
+            bitrateProduct += currentBitrate * currentMs;
+        }
+        return new SessionMetrics(timeToFirstFrameMs, playingMs, rebufferCount, rebufferMs,
+                switchCount, playingMs == 0 ? 0 : bitrateProduct / playingMs, peakBitrate,
+                droppedFrames, audioUnderrunCount, bytesDownloaded);
+    }
+
+    /**
+     * Clears the metrics to start a new session.
+     */
+    public synchronized void reset() {
+        prepareTimeMs = SessionMetrics.UNSET;
+        timeToFirstFrameMs = SessionMetrics.UNSET;
+        started = false;
+        seeking = false;
+        playing = false;
+        rebuffering = false;
+        playingTimeMs = 0;
+        rebufferCount = 0;
+        rebufferTimeMs = 0;
+        switchCount = 0;
+        currentBitrate = SessionMetrics.UNSET;
+        bitrateTimeProduct = 0;
+        peakBitrate = 0;
+        droppedFrames = 0;
+        audioUnderrunCount = 0;
+        bytesDownloaded = 0;
+    }
+
+    synchronized void onStateChanged(boolean playWhenReady, int playbackState) {
+        final long nowMs = clock.elapsedRealtime();
+        if (playbackState == Player.STATE_PREPARING && prepareTimeMs == SessionMetrics.UNSET) {
+            prepareTimeMs = nowMs;
+        }
+        closeState(nowMs);
+        if (playbackState == Player.STATE_READY) {
+            started = true;
+            seeking = false;
+        }
+        playing = playWhenReady && playbackState == Player.STATE_READY;
+        final boolean stalled = started && !seeking && playWhenReady
+                && playbackState == Player.STATE_BUFFERING;
+        if (stalled && !rebuffering) {
+            rebufferCount++;
+        }
+        rebuffering = stalled;
+    }
+
+    synchronized void onSeek(long positionMs, long currentPositionMs) {
+        // ExoPlayer ignores a seek to the current position, so no state change would end it.
+        if (positionMs != currentPositionMs) {
+            seeking = true;
+        }
+    }
+
+    synchronized void onDrawnToSurface() {
+        if (timeToFirstFrameMs == SessionMetrics.UNSET && prepareTimeMs != SessionMetrics.UNSET) {
+            timeToFirstFrameMs = clock.elapsedRealtime() - prepareTimeMs;
+        }
+    }
+
+    synchronized void onVideoFormat(Format format) {
+        if (format == null || format.bitrate == currentBitrate) {
+            return;
+        }
+        closeState(clock.elapsedRealtime());
+        if (currentBitrate != SessionMetrics.UNSET) {
+            switchCount++;
+        }
+        currentBitrate = format.bitrate;
+        peakBitrate = Math.max(peakBitrate, currentBitrate);
+    }
+
+    synchronized void onDroppedFrames(int count) {
+        droppedFrames += count;
+    }
+
+    synchronized void onAudioTrackUnderrun() {
+        audioUnderrunCount++;
+    }
+
+    synchronized void onBytesDownloaded(long bytes) {
+        bytesDownloaded += bytes;
+    }
+
+    private void closeState(long nowMs) {
+        final long elapsedMs = nowMs - stateStartTimeMs;
+        if (playing) {
+            playingTimeMs += elapsedMs;
+            if (currentBitrate != SessionMetrics.UNSET) {
+                bitrateTimeProduct += currentBitrate * elapsedMs;
+            }
+        } else if (rebuffering) {
+            rebufferTimeMs += elapsedMs;
+        }
+        stateStartTimeMs = nowMs;
+    }
+
+}
@@ -0,0 +1,184 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.upstream.Allocation;
+import com.google.android.exoplayer.upstream.Allocator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A process-wide pool of buffer segments shared by every player, bounded by a global byte
+ * budget.
+ * <p>
+ * Each renderer build takes its own {@link Allocator} from {@link #newAllocator()}. The budget is
+ * split evenly between the allocators that currently hold segments: an allocator that holds its
+ * share reports itself as full to its load control, which stops loading until playback consumes
+ * some of its buffer. Released segments are kept for reuse, up to the budget, so that rebuilding
+ * a player does not allocate new arrays.
+ */
+public class SharedAllocator {
+
+    private final int individualAllocationLength;
+    private final long budgetBytes;
+    private final ArrayDeque<Allocation> availableAllocations = new ArrayDeque<>();
+    private final List<PlayerAllocator> activeAllocators = new ArrayList<>();
+    private int allocatedCount;
+
+    /**
+     * @param individualAllocationLength The length of each segment. Must match the
+     *                                   {@code bufferSegmentSize} of the sources using this pool.
+     * @param budgetBytes                The maximum number of bytes held by all players.
+     */
+    public SharedAllocator(int individualAllocationLength, long budgetBytes) {
+        if (individualAllocationLength <= 0 || budgetBytes < individualAllocationLength) {
+            throw new IllegalArgumentException("Invalid allocation length or budget.");
+        }
+        this.individualAllocationLength = individualAllocationLength;
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Returns a new allocator for one renderer build.
+     */
+    public Allocator newAllocator() {
+        return new PlayerAllocator();
+    }
+
+    public int getIndividualAllocationLength() {
+        return individualAllocationLength;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Returns the number of bytes held by players.
+     */
+    public synchronized long getAllocatedBytes() {
+        return (long) allocatedCount * individualAllocationLength;
+    }
+
+    /**
+     * Returns the number of bytes kept for reuse.
+     */
+    public synchronized long getPooledBytes() {
+        return (long) availableAllocations.size() * individualAllocationLength;
+    }
+
+    /**
+     * Returns the number of allocators that currently hold segments.
+     */
+    public synchronized int getActiveAllocatorCount() {
+        return activeAllocators.size();
+    }
+
+    /**
+     * Drops every segment kept for reuse.
+     */
+    public synchronized void trim() {
+        availableAllocations.clear();
+    }
+
+    private synchronized Allocation allocate(PlayerAllocator allocator) {
+        if (allocator.allocatedCount++ == 0) {
+            activeAllocators.add(allocator);
+        }
+        allocatedCount++;
+        Allocation allocation = availableAllocations.pollFirst();
+        return allocation != null ? allocation
+                : new Allocation(new byte[individualAllocationLength], 0);
+    }
+
+    private synchronized void release(PlayerAllocator allocator, Allocation[] allocations,
+            int count) {
+        long maxAvailable = budgetBytes / individualAllocationLength - allocatedCount + count;
+        for (int i = 0; i < count; i++) {
+            if (availableAllocations.size() < maxAvailable) {
+                availableAllocations.addFirst(allocations[i]);
+            }
+        }
+        allocatedCount -= count;
+        allocator.allocatedCount -= count;
+        if (allocator.allocatedCount == 0) {
+            activeAllocators.remove(allocator);
+        }
+        notifyAll();
+    }
+
+    private synchronized boolean isFull(PlayerAllocator allocator) {
+        int activeCount = activeAllocators.size() + (allocator.allocatedCount == 0 ? 1 : 0);
+        long fairShare = budgetBytes / activeCount;
+        long allocatedBytes = (long) allocatedCount * individualAllocationLength;
+        return (long) allocator.allocatedCount * individualAllocationLength >= fairShare
+                || allocatedBytes >= budgetBytes;
+    }
+
+    private synchronized void blockWhileExceeds(PlayerAllocator allocator, int limit)
+            throws InterruptedException {
+        while ((long) allocator.allocatedCount * individualAllocationLength > limit
+                || isFull(allocator)) {
+            wait();
+        }
+    }
+
+    private final class PlayerAllocator implements Allocator {
+
+        private final Allocation[] singleAllocationReleaseHolder = new Allocation[1];
+        private int allocatedCount;
+
+        @Override
+        public Allocation allocate() {
+            return SharedAllocator.this.allocate(this);
+        }
+
+        @Override
+        public void release(Allocation allocation) {
+            synchronized (SharedAllocator.this) {
+                singleAllocationReleaseHolder[0] = allocation;
+                SharedAllocator.this.release(this, singleAllocationReleaseHolder, 1);
+                singleAllocationReleaseHolder[0] = null;
+            }
+        }
+
+        @Override
+        public void release(Allocation[] allocations) {
+            SharedAllocator.this.release(this, allocations, allocations.length);
+        }
+
+        @Override
+        public void trim(int targetSize) {
+            // Released segments go back to the shared pool, which is bounded by the budget.
+        }
+
+        /**
+         * Also blocks while this allocator holds its share of the budget, since sources that
+         * throttle through this method never read {@link #getTotalBytesAllocated()}.
+         */
+        @Override
+        public void blockWhileTotalBytesAllocatedExceeds(int limit) throws InterruptedException {
+            blockWhileExceeds(this, limit);
+        }
+
+        /**
+         * Returns {@link Integer#MAX_VALUE} once this allocator holds its share of the budget, so
+         * that the load control sees a full buffer and stops loading.
+         */
+        @Override
+        public int getTotalBytesAllocated() {
+            if (isFull(this)) {
+                return Integer.MAX_VALUE;
+            }
+            synchronized (SharedAllocator.this) {
+                return allocatedCount * individualAllocationLength;
+            }
+        }
+
+        @Override
+        public int getIndividualAllocationLength() {
+            return individualAllocationLength;
+        }
+    }
+
+}
@@ -31,4 +31,15 @@ public abstract class VideoSource {
 
     public abstract RendererBuilder createRendererBuilder(final Context context);
 
+    /**
+     * Returns {@code creator} for the content with {@code contentId} if it is a
+     * {@link ContentDataSourceCreator} and the id is not null, otherwise {@code creator}.
+     */
+    protected static DataSourceCreator forContent(DataSourceCreator creator, String contentId) {
+        if (contentId != null && creator instanceof ContentDataSourceCreator) {
+            return ((ContentDataSourceCreator) creator).forContent(contentId);
+        }
+        return creator;
+    }
+
 }
@@ -1,42 +1,139 @@
 package jp.satorufujiwara.player;
 
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.ExoPlayer;
 import com.google.android.exoplayer.audio.AudioCapabilities;
 import com.google.android.exoplayer.audio.AudioCapabilitiesReceiver;
+import com.google.android.exoplayer.util.MimeTypes;
 
 import android.graphics.SurfaceTexture;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.view.Surface;
 import android.view.TextureView;
+import android.view.View;
 
-import java.util.ArrayList;
-import java.util.List;
-
-public class VideoTexturePresenter implements Player.Listener,
+public class VideoTexturePresenter implements Player.Listener, Player.DrawListener,
         AudioCapabilitiesReceiver.Listener {
 
+    public static final long DEFAULT_NEXT_SOURCE_LEAD_MS = 10000;
+    private static final long NEXT_SOURCE_CHECK_INTERVAL_MS = 1000;
+
     private final VideoTextureView textureView;
-    private final List<OnStateChangedListener> onStateChangedListeners = new ArrayList<>();
-    private final List<OnErrorListener> onErrorListeners = new ArrayList<>();
-    private final List<OnVideoSizeChangedListener> onVideoSizeChangedListeners = new ArrayList<>();
+    private final PlayerPool playerPool;
+    private final ListenerArray<OnStateChangedListener> onStateChangedListeners =
+            new ListenerArray<>(new OnStateChangedListener[0]);
+    private final ListenerArray<OnErrorListener> onErrorListeners =
+            new ListenerArray<>(new OnErrorListener[0]);
+    private final ListenerArray<OnVideoSizeChangedListener> onVideoSizeChangedListeners =
+            new ListenerArray<>(new OnVideoSizeChangedListener[0]);
+    private final ListenerArray<OnPreloadedListener> onPreloadedListeners =
+            new ListenerArray<>(new OnPreloadedListener[0]);
+    private final ListenerArray<OnSourceSwitchedListener> onSourceSwitchedListeners =
+            new ListenerArray<>(new OnSourceSwitchedListener[0]);
 
     private Player player;
     private AudioCapabilitiesReceiver audioCapabilitiesReceiver;
+    private AudioCapabilities audioCapabilities;
     private RendererBuilder rendererBuilder;
+    private RendererBuilder retiredRendererBuilder;
+    // The builder the player was last prepared with, whose renderers may be playing.
+    private RendererBuilder builtRendererBuilder;
     private long limitBitrate = Long.MAX_VALUE;
     private boolean playerNeedsPrepare;
     private SurfaceTexture surfaceTexture;
+    private Surface surface;
+    private boolean retainSurfaceTexture;
+    private boolean surfaceTextureDetached;
+    private boolean preloading;
+    private long preloadStartTimeMs;
+    private long preloadStartBytes;
+    private Player scrubPlayer;
+    private RendererBuilder trickPlayRendererBuilder;
+    private boolean scrubbing;
+    private boolean scrubSeeking;
+    private boolean playWhenReadyBeforeScrubbing;
+    private long scrubPositionMs;
+    private long shownKeyframeMs;
+    private VideoSource nextSource;
+    private RendererBuilder nextRendererBuilder;
+    private Player nextPlayer;
+    private long switchStartTimeMs = -1;
+    private long nextSourceLeadMs = DEFAULT_NEXT_SOURCE_LEAD_MS;
+    private final Handler handler = new Handler();
+    private final Runnable nextPlayerStarter = new Runnable() {
+        @Override
+        public void run() {
+            maybePrepareNextPlayer();
+        }
+    };
+    private final Player.Listener nextPlayerListener = new Player.Listener() {
+        @Override
+        public void onStateChanged(boolean playWhenReady, int playbackState) {
+            //no op
+        }
+
+        @Override
+        public void onError(Exception e) {
+            // Switch the usual way once the current source ends.
+            releaseNextPlayer();
+        }
+
+        @Override
+        public void onVideoSizeChanged(int width, int height, int unappliedRotationDegrees,
+                float pixelWidthHeightRatio) {
+            //no op
+        }
+    };
+    private final Player.Listener scrubListener = new Player.Listener() {
+        @Override
+        public void onStateChanged(boolean playWhenReady, int playbackState) {
+            if (playbackState == Player.STATE_READY || playbackState == Player.STATE_ENDED) {
+                scrubSeeking = false;
+                maybeSeekScrubPlayer();
+            }
+        }
+
+        @Override
+        public void onError(Exception e) {
+            // Keyframes cannot be shown, so scrub with the player itself.
+            releaseScrubPlayer();
+            if (scrubbing && player != null) {
+                player.seekTo(scrubPositionMs);
+            }
+        }
+
+        @Override
+        public void onVideoSizeChanged(int width, int height, int unappliedRotationDegrees,
+                float pixelWidthHeightRatio) {
+            //no op
+        }
+    };
 
     public VideoTexturePresenter(final VideoTextureView view) {
+        this(view, null);
+    }
+
+    /**
+     * @param playerPool The pool players are borrowed from and returned to. May be null to
+     *                   create a player on each prepare.
+     */
+    public VideoTexturePresenter(final VideoTextureView view, final PlayerPool playerPool) {
         this.textureView = view;
+        this.playerPool = playerPool;
         audioCapabilitiesReceiver = new AudioCapabilitiesReceiver(view.getContext(), this);
         textureView.setSurfaceTextureListener(
                 new TextureView.SurfaceTextureListener() {
                     @Override
                     public void onSurfaceTextureAvailable(SurfaceTexture surface, int width,
                             int height) {
-                        surfaceTexture = surface;
-                        if (player != null) {
-                            player.setSurface(new Surface(surface));
+                        if (surfaceTextureDetached && surfaceTexture != surface) {
+                            // The view was given a new texture before the retained one could be
+                            // reattached.
+                            reattachSurfaceTexture();
+                            return;
                         }
+                        setSurfaceTexture(surface);
                     }
 
                     @Override
@@ -47,10 +144,16 @@ public class VideoTexturePresenter implements Player.Listener,
 
                     @Override
                     public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
-                        surfaceTexture = null;
-                        if (player != null) {
-                            player.blockingClearSurface();
+                        if (retainSurfaceTexture) {
+                            // Keep the texture and the decoder's output surface alive until the
+                            // view is attached again.
+                            surfaceTextureDetached = true;
+                            return false;
                         }
+                        if (getSurfacePlayer() != null) {
+                            getSurfacePlayer().blockingClearSurface();
+                        }
+                        setSurfaceTexture(null);
                         playerNeedsPrepare = true;
                         return true;
                     }
@@ -62,18 +165,54 @@ public class VideoTexturePresenter implements Player.Listener,
                 }
 
         );
+        textureView.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
+            @Override
+            public void onViewAttachedToWindow(View v) {
+                if (surfaceTextureDetached) {
+                    reattachSurfaceTexture();
+                }
+            }
+
+            @Override
+            public void onViewDetachedFromWindow(View v) {
+                //no op
+            }
+        });
     }
 
     @Override
     public void onStateChanged(boolean playWhenReady, int playbackState) {
+        if (playbackState == Player.STATE_ENDED && nextSource != null) {
+            switchToNextSource();
+            return;
+        }
+        if (preloading && playbackState == Player.STATE_READY) {
+            preloading = false;
+            EventProxy eventProxy = eventListeners();
+            long bytes = eventProxy == null ? 0
+                    : eventProxy.getBytesTransferred() - preloadStartBytes;
+            fireOnPreloaded(SystemClock.elapsedRealtime() - preloadStartTimeMs, bytes);
+        }
         fireOnStateChanged(playWhenReady, playbackState);
     }
 
     @Override
     public void onError(Exception e) {
+        preloading = false;
+        switchStartTimeMs = -1;
         fireOnError(e);
     }
 
+    @Override
+    public void onDrawnToSurface(Surface surface) {
+        if (switchStartTimeMs == -1) {
+            return;
+        }
+        final long switchTimeMs = SystemClock.elapsedRealtime() - switchStartTimeMs;
+        switchStartTimeMs = -1;
+        fireOnSourceSwitched(switchTimeMs);
+    }
+
 
     @Override
     public void onVideoSizeChanged(int width, int height, int unappliedRotationDegrees,
@@ -85,15 +224,34 @@ public class VideoTexturePresenter implements Player.Listener,
 
     @Override
     public void onAudioCapabilitiesChanged(AudioCapabilities audioCapabilities) {
-        if (player == null) {
+        AudioCapabilities previous = this.audioCapabilities;
+        this.audioCapabilities = audioCapabilities;
+        if (player == null || !changesPassthrough(previous, audioCapabilities)) {
+            // Decoded PCM plays on any output, so the current renderers can be kept as they are.
             return;
         }
+        // Renderers cannot be swapped on a prepared ExoPlayer, so rebuild them and resume from
+        // the current position.
         boolean backgrounded = player.getBackgrounded();
         boolean playWhenReady = player.getPlayWhenReady();
+        boolean wasPrepared = !playerNeedsPrepare;
+        long positionMs = player.getCurrentPosition();
+        VideoSource next = nextSource;
         release();
         prepare();
-        if (playWhenReady) {
-            play();
+        if (player == null || rendererBuilder == null) {
+            return;
+        }
+        if (next != null) {
+            setNextSource(next);
+        }
+        if (wasPrepared) {
+            player.seekTo(positionMs);
+            player.setPlayWhenReady(playWhenReady);
+            player.prepare();
+            playerNeedsPrepare = false;
+            builtRendererBuilder = rendererBuilder;
+            maybePrepareNextPlayer();
         }
         player.setBackgrounded(backgrounded);
     }
@@ -110,25 +268,56 @@ public class VideoTexturePresenter implements Player.Listener,
     }
 
     public void setSource(final VideoSource source) {
+        cancelScrubbing();
+        clearNextSource();
+        retireRendererBuilder();
         rendererBuilder = source.createRendererBuilder(textureView.getContext());
         rendererBuilder.setLimitBitrate(limitBitrate);
         playerNeedsPrepare = true;
     }
 
     public void onCreate() {
-        audioCapabilitiesReceiver.register();
+        audioCapabilities = audioCapabilitiesReceiver.register();
     }
 
     public void onDestroy() {
         audioCapabilitiesReceiver.unregister();
+        clearNextSource();
+        retireRendererBuilder();
+        if (surfaceTextureDetached) {
+            // No view owns the retained texture any more.
+            surfaceTextureDetached = false;
+            if (getSurfacePlayer() != null) {
+                getSurfacePlayer().blockingClearSurface();
+            }
+            surface.release();
+            surfaceTexture.release();
+            setSurfaceTexture(null);
+        }
+    }
+
+    /**
+     * Sets whether the {@link SurfaceTexture} is kept alive while the view is detached, for
+     * example on a RecyclerView rebind or when the view is moved to another parent. The texture is
+     * reattached to the view when it is attached again, so the player keeps its decoder and
+     * buffer instead of being prepared again. The retained texture is released in
+     * {@link #onDestroy()}.
+     */
+    public void setRetainSurfaceTexture(final boolean retain) {
+        retainSurfaceTexture = retain;
     }
 
     public void prepare() {
         if (player == null) {
-            player = new Player();
+            player = acquirePlayer(rendererBuilder);
+            if (player == null) {
+                // Too many players are active.
+                return;
+            }
             player.addListener(this);
-            if (surfaceTexture != null) {
-                player.setSurface(new Surface(surfaceTexture));
+            player.setDrawListener(this);
+            if (surface != null) {
+                player.setSurface(surface);
             }
         }
         playerNeedsPrepare = true;
@@ -142,25 +331,75 @@ public class VideoTexturePresenter implements Player.Listener,
         if (player == null) {
             return;
         }
+        cancelScrubbing();
+        clearNextSource();
         player.removeListener(this);
-        player.release();
+        player.setDrawListener(null);
+        releasePlayer(player);
         player = null;
+        preloading = false;
+        switchStartTimeMs = -1;
+        builtRendererBuilder = null;
+        if (retiredRendererBuilder != null) {
+            retiredRendererBuilder.release();
+            retiredRendererBuilder = null;
+        }
     }
 
     public void play() {
         if (player == null) {
             prepare();
         }
-        if (rendererBuilder == null) {
+        if (player == null || rendererBuilder == null) {
             return;
         }
         if (playerNeedsPrepare) {
             player.prepare();
             playerNeedsPrepare = false;
+            builtRendererBuilder = rendererBuilder;
+            maybePrepareNextPlayer();
         }
         player.setPlayWhenReady(true);
     }
 
+    /**
+     * Sets {@code source} and preloads it. See {@link #preload()}.
+     */
+    public void preload(final VideoSource source) {
+        setSource(source);
+        preload();
+    }
+
+    /**
+     * Builds the renderers and starts buffering without starting playback, even if the view has
+     * no surface yet. How far ahead the player buffers is governed by its load control.
+     * {@link OnPreloadedListener}s are notified once the player is ready, and a later call to
+     * {@link #play()} starts playback from the buffered data.
+     */
+    public void preload() {
+        if (player == null) {
+            prepare();
+        }
+        if (player == null || rendererBuilder == null) {
+            return;
+        }
+        if (playerNeedsPrepare) {
+            EventProxy eventProxy = eventListeners();
+            preloading = true;
+            preloadStartTimeMs = SystemClock.elapsedRealtime();
+            preloadStartBytes = eventProxy == null ? 0 : eventProxy.getBytesTransferred();
+            player.setPlayWhenReady(false);
+            player.prepare();
+            playerNeedsPrepare = false;
+            builtRendererBuilder = rendererBuilder;
+            maybePrepareNextPlayer();
+        }
+    }
+
+    public boolean isPreloading() {
+        return preloading;
+    }
+
     public void pause() {
         if (player == null) {
             return;
@@ -183,6 +422,134 @@ public class VideoTexturePresenter implements Player.Listener,
         player.seekTo(positionMs);
     }
 
+    /**
+     * Queues {@code source} to play once the current source ends. Once less than the lead set
+     * by {@link #setNextSourceLeadMs(long)} remains of the current source, the renderers of
+     * {@code source} are built and its start is buffered on a standby player, so that the
+     * switch skips the manifest load and the initial buffering, and the view keeps the last
+     * frame until the first frame of the next source is drawn. The time the switch took is
+     * reported to {@link OnSourceSwitchedListener}s. If no standby player can be acquired from
+     * the pool or it fails, the source is switched to the usual way when the current one ends.
+     * Replaces the queued source, if any.
+     */
+    public void setNextSource(final VideoSource source) {
+        clearNextSource();
+        nextSource = source;
+        maybePrepareNextPlayer();
+    }
+
+    /**
+     * Sets how long before the end of the current source the standby player of the next source
+     * starts buffering. The standby player buffers as much as its load control allows, so a
+     * short lead keeps it from taking memory and bandwidth from the current source.
+     */
+    public void setNextSourceLeadMs(final long leadMs) {
+        nextSourceLeadMs = leadMs;
+        maybePrepareNextPlayer();
+    }
+
+    public boolean hasNextSource() {
+        return nextSource != null;
+    }
+
+    /**
+     * Removes the queued source and releases its standby player.
+     */
+    public void clearNextSource() {
+        nextSource = null;
+        handler.removeCallbacks(nextPlayerStarter);
+        releaseNextPlayer();
+    }
+
+    /**
+     * Starts scrubbing and pauses playback. If the source has a rendition made of keyframes only,
+     * such as the I-frame playlists of HLS, {@link #scrubTo(long)} shows its keyframes instead of
+     * seeking the player, so that only the keyframes are loaded. The keyframes are shown by a
+     * player borrowed from the pool, if any, and the player is seeked instead if none can be
+     * acquired. Must be called once the player is prepared.
+     *
+     * @return Whether scrubbing shows a keyframe-only rendition. If not, {@link #scrubTo(long)}
+     * seeks the player.
+     */
+    public boolean startScrubbing() {
+        if (scrubbing || player == null || rendererBuilder == null) {
+            return scrubPlayer != null;
+        }
+        scrubbing = true;
+        playWhenReadyBeforeScrubbing = player.getPlayWhenReady();
+        scrubPositionMs = player.getCurrentPosition();
+        player.setPlayWhenReady(false);
+        if (playerNeedsPrepare) {
+            return false;
+        }
+        trickPlayRendererBuilder = rendererBuilder.createTrickPlayRendererBuilder();
+        if (trickPlayRendererBuilder == null) {
+            return false;
+        }
+        scrubPlayer = acquirePlayer(trickPlayRendererBuilder);
+        if (scrubPlayer == null) {
+            // Too many players are active.
+            trickPlayRendererBuilder.release();
+            trickPlayRendererBuilder = null;
+            return false;
+        }
+        trickPlayRendererBuilder.setLimitBitrate(limitBitrate);
+        scrubPlayer.addListener(scrubListener);
+        scrubPlayer.setRendererBuilder(trickPlayRendererBuilder);
+        if (surface != null) {
+            // A surface takes frames from one decoder at a time.
+            player.blockingClearSurface();
+            scrubPlayer.setSurface(surface);
+        }
+        // Keyframe positions are known once the rendition is loaded, so the first keyframe is
+        // shown once the scrub player is ready.
+        scrubSeeking = true;
+        shownKeyframeMs = -1;
+        scrubPlayer.seekTo(scrubPositionMs);
+        scrubPlayer.setPlayWhenReady(false);
+        scrubPlayer.prepare();
+        return true;
+    }
+
+    /**
+     * Shows the keyframe at or before {@code positionMs} while scrubbing. Positions requested
+     * while a keyframe is loading are coalesced into the last one, and positions within the
+     * keyframe shown load nothing.
+     */
+    public void scrubTo(final long positionMs) {
+        if (!scrubbing) {
+            return;
+        }
+        scrubPositionMs = positionMs;
+        if (scrubPlayer == null) {
+            if (player != null) {
+                player.seekTo(positionMs);
+            }
+            return;
+        }
+        maybeSeekScrubPlayer();
+    }
+
+    /**
+     * Stops scrubbing, seeks the player to the last scrub position and resumes playback if it
+     * was playing when scrubbing started.
+     */
+    public void stopScrubbing() {
+        if (!scrubbing) {
+            return;
+        }
+        scrubbing = false;
+        releaseScrubPlayer();
+        if (player != null) {
+            player.seekTo(scrubPositionMs);
+            player.setPlayWhenReady(playWhenReadyBeforeScrubbing);
+        }
+    }
+
+    public boolean isScrubbing() {
+        return scrubbing;
+    }
+
     public void setMute(final boolean isMute) {
         if (player == null) {
             return;
@@ -195,6 +562,9 @@ public class VideoTexturePresenter implements Player.Listener,
     }
 
     public long getCurrentPosition() {
+        if (scrubbing) {
+            return scrubPositionMs;
+        }
         return player == null ? 0 : player.getCurrentPosition();
     }
 
@@ -256,22 +626,284 @@ public class VideoTexturePresenter implements Player.Listener,
         onVideoSizeChangedListeners.clear();
     }
 
+    public void addOnPreloadedListener(OnPreloadedListener l) {
+        if (l != null) {
+            onPreloadedListeners.add(l);
+        }
+    }
+
+    public void removeOnPreloadedListener(OnPreloadedListener l) {
+        onPreloadedListeners.remove(l);
+    }
+
+    public void clearOnPreloadedListener() {
+        onPreloadedListeners.clear();
+    }
+
+    public void addOnSourceSwitchedListener(OnSourceSwitchedListener l) {
+        if (l != null) {
+            onSourceSwitchedListeners.add(l);
+        }
+    }
+
+    public void removeOnSourceSwitchedListener(OnSourceSwitchedListener l) {
+        onSourceSwitchedListeners.remove(l);
+    }
+
+    public void clearOnSourceSwitchedListener() {
+        onSourceSwitchedListeners.clear();
+    }
+
+    /**
+     * Releases the current builder, or keeps it until {@link #release()} if the player was
+     * prepared with it and may still be playing what it built.
+     */
+    private void retireRendererBuilder() {
+        if (rendererBuilder == null) {
+            return;
+        }
+        if (player == null || rendererBuilder != builtRendererBuilder) {
+            // Never built, or its player is gone.
+            rendererBuilder.release();
+        } else {
+            if (retiredRendererBuilder != null) {
+                retiredRendererBuilder.release();
+            }
+            retiredRendererBuilder = rendererBuilder;
+        }
+    }
+
+    private Player acquirePlayer(RendererBuilder builder) {
+        if (playerPool != null) {
+            return playerPool.acquire();
+        } else if (builder != null) {
+            return new Player(builder.minBufferMs, builder.minRebufferMs);
+        }
+        return new Player();
+    }
+
+    private void releasePlayer(Player player) {
+        if (playerPool != null) {
+            playerPool.release(player);
+        } else {
+            player.release();
+        }
+    }
+
+    /**
+     * Starts the standby player once the current source is close to its end, or checks again
+     * later.
+     */
+    private void maybePrepareNextPlayer() {
+        handler.removeCallbacks(nextPlayerStarter);
+        if (nextSource == null || nextPlayer != null || player == null || playerNeedsPrepare) {
+            // Already built, or nothing plays yet and prepare checks again.
+            return;
+        }
+        final long durationMs = player.getDuration();
+        if (durationMs != ExoPlayer.UNKNOWN_TIME
+                && durationMs - player.getCurrentPosition() <= nextSourceLeadMs) {
+            prepareNextPlayer();
+            return;
+        }
+        handler.postDelayed(nextPlayerStarter, NEXT_SOURCE_CHECK_INTERVAL_MS);
+    }
+
+    private void prepareNextPlayer() {
+        nextRendererBuilder = nextSource.createRendererBuilder(textureView.getContext());
+        nextRendererBuilder.setLimitBitrate(limitBitrate);
+        nextPlayer = acquirePlayer(nextRendererBuilder);
+        if (nextPlayer == null) {
+            // Too many players are active.
+            nextRendererBuilder.release();
+            nextRendererBuilder = null;
+            return;
+        }
+        nextPlayer.addListener(nextPlayerListener);
+        nextPlayer.setRendererBuilder(nextRendererBuilder);
+        nextPlayer.setPlayWhenReady(false);
+        nextPlayer.prepare();
+    }
+
+    private void releaseNextPlayer() {
+        if (nextPlayer != null) {
+            nextPlayer.removeListener(nextPlayerListener);
+            releasePlayer(nextPlayer);
+            nextPlayer = null;
+        }
+        if (nextRendererBuilder != null) {
+            nextRendererBuilder.release();
+            nextRendererBuilder = null;
+        }
+    }
+
+    /**
+     * Hands the surface to the standby player and starts it, or prepares the next source the
+     * usual way if it has none.
+     */
+    private void switchToNextSource() {
+        switchStartTimeMs = SystemClock.elapsedRealtime();
+        final VideoSource source = nextSource;
+        nextSource = null;
+        if (nextPlayer == null) {
+            setSource(source);
+            prepare();
+            play();
+            return;
+        }
+        final Player previous = player;
+        // A surface takes frames from one decoder at a time.
+        previous.blockingClearSurface();
+        previous.removeListener(this);
+        previous.setDrawListener(null);
+        releasePlayer(previous);
+        if (retiredRendererBuilder != null) {
+            retiredRendererBuilder.release();
+            retiredRendererBuilder = null;
+        }
+        rendererBuilder.release();
+
+        player = nextPlayer;
+        rendererBuilder = nextRendererBuilder;
+        builtRendererBuilder = rendererBuilder;
+        nextPlayer = null;
+        nextRendererBuilder = null;
+        playerNeedsPrepare = false;
+        preloading = false;
+        player.removeListener(nextPlayerListener);
+        player.addListener(this);
+        player.setDrawListener(this);
+        if (surface != null) {
+            player.setSurface(surface);
+        }
+        player.setPlayWhenReady(true);
+    }
+
+    private void maybeSeekScrubPlayer() {
+        if (scrubPlayer == null || scrubSeeking) {
+            return;
+        }
+        final long keyframeMs = trickPlayRendererBuilder.getKeyframePosition(scrubPositionMs);
+        if (keyframeMs == shownKeyframeMs) {
+            return;
+        }
+        shownKeyframeMs = keyframeMs;
+        if (keyframeMs == scrubPlayer.getCurrentPosition()) {
+            // ExoPlayer ignores a seek to the current position, so no state change would end it.
+            return;
+        }
+        scrubSeeking = true;
+        scrubPlayer.seekTo(keyframeMs);
+    }
+
+    private void releaseScrubPlayer() {
+        if (scrubPlayer == null) {
+            return;
+        }
+        scrubPlayer.removeListener(scrubListener);
+        releasePlayer(scrubPlayer);
+        scrubPlayer = null;
+        trickPlayRendererBuilder.release();
+        trickPlayRendererBuilder = null;
+        if (player != null && surface != null) {
+            player.setSurface(surface);
+        }
+    }
+
+    private void cancelScrubbing() {
+        scrubbing = false;
+        releaseScrubPlayer();
+    }
+
+    /**
+     * Returns the player the surface is given to, which is the scrub player while it shows
+     * keyframes.
+     */
+    private Player getSurfacePlayer() {
+        return scrubPlayer != null ? scrubPlayer : player;
+    }
+
+    private void setSurfaceTexture(SurfaceTexture surfaceTexture) {
+        this.surfaceTexture = surfaceTexture;
+        surface = surfaceTexture != null ? new Surface(surfaceTexture) : null;
+        if (getSurfacePlayer() != null && surface != null) {
+            getSurfacePlayer().setSurface(surface);
+        }
+    }
+
+    private void reattachSurfaceTexture() {
+        surfaceTextureDetached = false;
+        if (textureView.getSurfaceTexture() != surfaceTexture) {
+            textureView.setSurfaceTexture(surfaceTexture);
+        }
+    }
+
+    /**
+     * Returns whether the change of capabilities changes whether any audio track of the current
+     * player can be played through passthrough.
+     */
+    private boolean changesPassthrough(AudioCapabilities previous, AudioCapabilities current) {
+        if (previous == null || current == null) {
+            return previous != current;
+        }
+        int trackCount = player.getTrackCount(Player.TYPE_AUDIO);
+        for (int i = 0; i < trackCount; i++) {
+            int encoding = getPassthroughEncoding(
+                    player.getTrackFormat(Player.TYPE_AUDIO, i).mimeType);
+            if (encoding != C.ENCODING_INVALID
+                    && previous.supportsEncoding(encoding) != current.supportsEncoding(encoding)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int getPassthroughEncoding(String mimeType) {
+        if (MimeTypes.AUDIO_AC3.equals(mimeType)) {
+            return C.ENCODING_AC3;
+        } else if (MimeTypes.AUDIO_E_AC3.equals(mimeType)) {
+            return C.ENCODING_E_AC3;
+        } else if (MimeTypes.AUDIO_DTS.equals(mimeType)) {
+            return C.ENCODING_DTS;
+        } else if (MimeTypes.AUDIO_DTS_HD.equals(mimeType)) {
+            return C.ENCODING_DTS_HD;
+        }
+        return C.ENCODING_INVALID;
+    }
+
     private void fireOnStateChanged(final boolean playWhenReady, final int playbackState) {
-        for (OnStateChangedListener l : onStateChangedListeners) {
-            l.onStateChanged(playWhenReady, playbackState);
+        final OnStateChangedListener[] listeners = onStateChangedListeners.get();
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onStateChanged(playWhenReady, playbackState);
         }
     }
 
     private void fireOnError(final Exception e) {
-        for (OnErrorListener l : onErrorListeners) {
-            l.onError(e);
+        final OnErrorListener[] listeners = onErrorListeners.get();
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onError(e);
         }
     }
 
     private void fireOnVideoSizeChanged(final int width, final int height,
             final float pixelWidthHeightRatio) {
-        for (OnVideoSizeChangedListener l : onVideoSizeChangedListeners) {
-            l.onVideoSizeChanged(width, height, pixelWidthHeightRatio);
+        final OnVideoSizeChangedListener[] listeners = onVideoSizeChangedListeners.get();
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onVideoSizeChanged(width, height, pixelWidthHeightRatio);
+        }
+    }
+
+    private void fireOnPreloaded(final long elapsedMs, final long bytesLoaded) {
+        final OnPreloadedListener[] listeners = onPreloadedListeners.get();
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onPreloaded(elapsedMs, bytesLoaded);
+        }
+    }
+
+    private void fireOnSourceSwitched(final long switchTimeMs) {
+        final OnSourceSwitchedListener[] listeners = onSourceSwitchedListeners.get();
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onSourceSwitched(switchTimeMs);
         }
     }
 
@@ -289,4 +921,23 @@ public class VideoTexturePresenter implements Player.Listener,
 
         void onVideoSizeChanged(int width, int height, float pixelWidthHeightRatio);
     }
+
+    public interface OnPreloadedListener {
+
+        /**
+         * @param elapsedMs   The time from {@link #preload()} until the player became ready.
+         * @param bytesLoaded The bytes loaded while preloading, as reported by the bandwidth
+         *                    meter.
+         */
+        void onPreloaded(long elapsedMs, long bytesLoaded);
+    }
+
+    public interface OnSourceSwitchedListener {
+
+        /**
+         * @param switchTimeMs The time from the end of the previous source until the first
+         *                     frame of the next one was drawn.
+         */
+        void onSourceSwitched(long switchTimeMs);
+    }
 }
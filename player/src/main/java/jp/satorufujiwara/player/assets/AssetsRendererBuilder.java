@@ -9,7 +9,6 @@ import com.google.android.exoplayer.extractor.ExtractorSampleSource;
 import com.google.android.exoplayer.text.TextTrackRenderer;
 import com.google.android.exoplayer.upstream.Allocator;
 import com.google.android.exoplayer.upstream.DataSource;
-import com.google.android.exoplayer.upstream.DefaultAllocator;
 import com.google.android.exoplayer.upstream.DefaultUriDataSource;
 
 import android.content.Context;
@@ -18,10 +17,12 @@ import android.media.MediaCodec;
 import android.net.Uri;
 import android.os.Handler;
 
+import jp.satorufujiwara.player.AdaptiveBufferPolicy;
 import jp.satorufujiwara.player.LimitedBandwidthMeter;
 import jp.satorufujiwara.player.Player;
 import jp.satorufujiwara.player.RendererBuilder;
 import jp.satorufujiwara.player.RendererBuilderCallback;
+import jp.satorufujiwara.player.SharedAllocator;
 
 /**
  * A {@link RendererBuilder} for assets.
@@ -32,17 +33,21 @@ public class AssetsRendererBuilder extends RendererBuilder<AssetsEventProxy> {
     LimitedBandwidthMeter bandwidthMeter;
 
     AssetsRendererBuilder(Context context, Handler eventHandler, AssetsEventProxy eventProxy,
-            String userAgent, Uri uri, int bufferSegmentSize, int bufferSegmentCount) {
+            String userAgent, Uri uri, int bufferSegmentSize, int bufferSegmentCount,
+            SharedAllocator sharedAllocator, AdaptiveBufferPolicy bufferPolicy, int minBufferMs,
+            int minRebufferMs) {
         super(context, eventHandler, eventProxy, userAgent, uri, bufferSegmentSize,
-                bufferSegmentCount);
+                bufferSegmentCount, sharedAllocator, bufferPolicy, null, minBufferMs,
+                minRebufferMs);
     }
 
     @Override
     protected void buildRenderers(RendererBuilderCallback callback) {
-        Allocator allocator = new DefaultAllocator(bufferSegmentSize);
+        int bufferSize = bufferSegmentSize * scaleSegmentCount(bufferSegmentCount);
+        Allocator allocator = createAllocator(bufferSize);
         DataSource dataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
         ExtractorSampleSource sampleSource = new ExtractorSampleSource(uri, dataSource,
-                allocator, bufferSegmentSize * bufferSegmentCount);
+                allocator, bufferSize);
         MediaCodecVideoTrackRenderer videoRenderer = new MediaCodecVideoTrackRenderer(context,
                 sampleSource, MediaCodecSelector.DEFAULT,
                 MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT, 5000,
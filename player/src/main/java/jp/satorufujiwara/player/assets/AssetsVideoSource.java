@@ -7,23 +7,36 @@ import android.os.Handler;
 import android.os.Looper;
 import android.text.TextUtils;
 
+import jp.satorufujiwara.player.AdaptiveBufferPolicy;
+import jp.satorufujiwara.player.LoadControlProfile;
+import jp.satorufujiwara.player.Player;
 import jp.satorufujiwara.player.RendererBuilder;
+import jp.satorufujiwara.player.SharedAllocator;
 import jp.satorufujiwara.player.VideoSource;
 
 public class AssetsVideoSource extends VideoSource {
 
     private final AssetsEventProxy eventProxy;
+    private final SharedAllocator sharedAllocator;
+    private final AdaptiveBufferPolicy bufferPolicy;
+    private final int minBufferMs;
+    private final int minRebufferMs;
 
     private AssetsVideoSource(Builder builder) {
         super(builder.uri, builder.userAgent, builder.eventHandler, builder.bufferSegmentSize,
                 builder.bufferSegmentCount);
         eventProxy = builder.eventProxy;
+        sharedAllocator = builder.sharedAllocator;
+        bufferPolicy = builder.bufferPolicy;
+        minBufferMs = builder.minBufferMs;
+        minRebufferMs = builder.minRebufferMs;
     }
 
     @Override
     public RendererBuilder createRendererBuilder(Context context) {
         return new AssetsRendererBuilder(context, eventHandler, eventProxy, userAgent, uri,
-                bufferSegmentSize, bufferSegmentCount);
+                bufferSegmentSize, bufferSegmentCount, sharedAllocator, bufferPolicy, minBufferMs,
+                minRebufferMs);
     }
 
     public static Builder newBuilder(final Uri uri, final String userAgent) {
@@ -38,6 +51,10 @@ public class AssetsVideoSource extends VideoSource {
         Handler eventHandler;
         int bufferSegmentSize = RendererBuilder.DEFAULT_BUFFER_SEGMENT_SIZE;
         int bufferSegmentCount = RendererBuilder.DEFAULT_MAIN_BUFFER_SEGMENT_COUNT;
+        SharedAllocator sharedAllocator;
+        AdaptiveBufferPolicy bufferPolicy;
+        int minBufferMs = Player.DEFAULT_MIN_BUFFER_MS;
+        int minRebufferMs = Player.DEFAULT_MIN_REBUFFER_MS;
 
         private Builder(final Uri uri, final String userAgent) {
             this.uri = uri;
@@ -64,6 +81,42 @@ public class AssetsVideoSource extends VideoSource {
             return this;
         }
 
+        /**
+         * Takes buffer segments from {@code allocator}, which bounds the memory of every player
+         * sharing it. Its segment size must match {@link #bufferSegmentSize(int)}.
+         */
+        public Builder sharedAllocator(SharedAllocator allocator) {
+            sharedAllocator = allocator;
+            return this;
+        }
+
+        /**
+         * Scales buffer segment counts for the device and shrinks the buffer on memory pressure
+         * according to {@code policy}.
+         */
+        public Builder bufferPolicy(AdaptiveBufferPolicy policy) {
+            bufferPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Sets the buffer the player needs to start playback and to resume it after a
+         * rebuffer.
+         */
+        public Builder playerBufferMs(int minBufferMs, int minRebufferMs) {
+            this.minBufferMs = minBufferMs;
+            this.minRebufferMs = minRebufferMs;
+            return this;
+        }
+
+        /**
+         * Sets the player thresholds from {@code profile}. Local files are read by an extractor
+         * that buffers by size, so the load control watermarks of the profile do not apply.
+         */
+        public Builder loadControlProfile(LoadControlProfile profile) {
+            return playerBufferMs(profile.minBufferMs, profile.minRebufferMs);
+        }
+
         public AssetsVideoSource build() {
             if (TextUtils.isEmpty(userAgent)) {
                 throw new IllegalArgumentException("UserAgent must not be null.");
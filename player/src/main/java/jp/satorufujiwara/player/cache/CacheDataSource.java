@@ -0,0 +1,173 @@
+package jp.satorufujiwara.player.cache;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.UriDataSource;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A {@link UriDataSource} that serves segments from a {@link SegmentCache} and writes segments
+ * read from upstream into it. Manifests, playlists, keys and non-http uris are passed through
+ * untouched.
+ */
+final class CacheDataSource implements UriDataSource {
+
+    private static final String TAG = "CacheDataSource";
+
+    private final SegmentCache cache;
+    private final String contentId;
+    private final DataSource upstream;
+
+    private DataSpec dataSpec;
+    private FileInputStream cacheInput;
+    private boolean readingUpstream;
+    private String key;
+    private File tempFile;
+    private FileOutputStream tempOutput;
+    private long bytesWritten;
+    private long upstreamLength;
+    private boolean upstreamEnded;
+
+    CacheDataSource(SegmentCache cache, String contentId, DataSource upstream) {
+        this.cache = cache;
+        this.contentId = contentId;
+        this.upstream = upstream;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        this.dataSpec = dataSpec;
+        if (!isCacheable(dataSpec)) {
+            readingUpstream = true;
+            return upstream.open(dataSpec);
+        }
+        key = SegmentCache.buildKey(contentId, dataSpec);
+        File file = cache.get(key);
+        if (file != null) {
+            cacheInput = new FileInputStream(file);
+            return file.length();
+        }
+        readingUpstream = true;
+        upstreamLength = upstream.open(dataSpec);
+        openTempFile();
+        return upstreamLength;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        if (cacheInput != null) {
+            int read = cacheInput.read(buffer, offset, readLength);
+            return read == -1 ? C.RESULT_END_OF_INPUT : read;
+        }
+        int read = upstream.read(buffer, offset, readLength);
+        if (read == C.RESULT_END_OF_INPUT) {
+            upstreamEnded = true;
+        } else if (tempOutput != null) {
+            try {
+                tempOutput.write(buffer, offset, read);
+                bytesWritten += read;
+            } catch (IOException e) {
+                // A full or broken disk must not fail playback.
+                Log.w(TAG, "Failed to write to cache.", e);
+                discardTempFile();
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (cacheInput != null) {
+                cacheInput.close();
+            } else if (readingUpstream) {
+                upstream.close();
+            }
+        } finally {
+            if (tempOutput != null) {
+                boolean complete = upstreamEnded || (upstreamLength != C.LENGTH_UNBOUNDED
+                        && bytesWritten == upstreamLength);
+                if (complete) {
+                    commitTempFile();
+                } else {
+                    discardTempFile();
+                }
+            }
+            cacheInput = null;
+            readingUpstream = false;
+            upstreamEnded = false;
+            bytesWritten = 0;
+            key = null;
+        }
+    }
+
+    @Override
+    public String getUri() {
+        if (upstream instanceof UriDataSource && readingUpstream) {
+            return ((UriDataSource) upstream).getUri();
+        }
+        return dataSpec == null ? null : dataSpec.uri.toString();
+    }
+
+    private void openTempFile() {
+        tempFile = cache.createTempFile(key);
+        try {
+            tempOutput = new FileOutputStream(tempFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to open cache file.", e);
+            tempFile = null;
+        }
+    }
+
+    private void commitTempFile() {
+        try {
+            tempOutput.flush();
+            tempOutput.getFD().sync();
+            tempOutput.close();
+            cache.commit(key, tempFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to commit cache file.", e);
+            tempFile.delete();
+        }
+        tempOutput = null;
+        tempFile = null;
+    }
+
+    private void discardTempFile() {
+        try {
+            tempOutput.close();
+        } catch (IOException e) {
+            // Ignore.
+        }
+        tempFile.delete();
+        tempOutput = null;
+        tempFile = null;
+    }
+
+    private static boolean isCacheable(DataSpec dataSpec) {
+        String scheme = dataSpec.uri.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+            return false;
+        }
+        if (dataSpec.postBody != null) {
+            return false;
+        }
+        // ExoPlayer allows gzip for manifests, playlists and encryption keys, but never for
+        // media, whose byte ranges it would break. Manifests change over time, and keys must
+        // not be stored in plaintext.
+        if ((dataSpec.flags & DataSpec.FLAG_ALLOW_GZIP) != 0) {
+            return false;
+        }
+        // Playlists change over time for live streams.
+        String path = dataSpec.uri.getPath();
+        return path == null || !(path.endsWith(".m3u8") || path.endsWith(".m3u"));
+    }
+
+}
@@ -0,0 +1,74 @@
+package jp.satorufujiwara.player.cache;
+
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+import com.google.android.exoplayer.upstream.TransferListener;
+
+import android.content.Context;
+
+import jp.satorufujiwara.player.ContentDataSourceCreator;
+import jp.satorufujiwara.player.DataSourceCreator;
+import jp.satorufujiwara.player.ManifestDataSourceCreator;
+import jp.satorufujiwara.player.VideoSource;
+
+/**
+ * A {@link DataSourceCreator} that stores segments in a {@link SegmentCache}, so that replays,
+ * seeks back and looping clips do not fetch them again. Cache hits are not reported to the
+ * {@link TransferListener}, so they do not inflate bandwidth estimates.
+ * <p>
+ * Without a content id, segments are keyed by url. Sources built with a content id key their
+ * segments by {@link VideoSource#contentId}.
+ */
+public class CacheDataSourceCreator implements ContentDataSourceCreator,
+        ManifestDataSourceCreator {
+
+    private final SegmentCache cache;
+    private final String contentId;
+    private final DataSourceCreator upstreamCreator;
+
+    public CacheDataSourceCreator(SegmentCache cache) {
+        this(cache, null, null);
+    }
+
+    public CacheDataSourceCreator(SegmentCache cache, String contentId) {
+        this(cache, contentId, null);
+    }
+
+    /**
+     * @param cache           The cache to read from and write to.
+     * @param contentId       The id segments are keyed by. May be null to key by url, or by
+     *                        the content id of the source.
+     * @param upstreamCreator Creates the data source used on cache misses. May be null to use
+     *                        {@link DefaultUriDataSource}.
+     */
+    public CacheDataSourceCreator(SegmentCache cache, String contentId,
+            DataSourceCreator upstreamCreator) {
+        this.cache = cache;
+        this.contentId = contentId;
+        this.upstreamCreator = upstreamCreator;
+    }
+
+    @Override
+    public DataSource create(Context context, TransferListener listener, String userAgent) {
+        DataSource upstream = upstreamCreator != null
+                ? upstreamCreator.create(context, listener, userAgent)
+                : new DefaultUriDataSource(context, listener, userAgent);
+        return new CacheDataSource(cache, contentId, upstream);
+    }
+
+    @Override
+    public DataSourceCreator forContent(String contentId) {
+        return this.contentId != null ? this
+                : new CacheDataSourceCreator(cache, contentId, upstreamCreator);
+    }
+
+    /**
+     * Returns the manifest creator of the upstream creator, so that manifests are not cached.
+     */
+    @Override
+    public DataSourceCreator forManifest() {
+        return upstreamCreator instanceof ManifestDataSourceCreator
+                ? ((ManifestDataSourceCreator) upstreamCreator).forManifest() : null;
+    }
+
+}
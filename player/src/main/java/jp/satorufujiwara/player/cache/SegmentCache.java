@@ -0,0 +1,220 @@
+package jp.satorufujiwara.player.cache;
+
+import com.google.android.exoplayer.upstream.DataSpec;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded, least-recently-used cache of media segments stored as files in a directory.
+ * <p>
+ * Segments are written to a temporary file and renamed into place only once they are complete,
+ * so a crash never leaves a truncated entry behind. Temporary files left over from a previous
+ * process are deleted when the cache is created. Use a single instance per directory.
+ */
+public class SegmentCache {
+
+    private static final String TAG = "SegmentCache";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private int tempFileCounter;
+
+    public SegmentCache(File directory, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive.");
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        initialize();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Removes every entry from the cache.
+     */
+    public synchronized void clear() {
+        for (String key : entries.keySet()) {
+            deleteFile(new File(directory, key));
+        }
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * Returns the cache key of a segment. Segments are keyed by {@code contentId} when it is not
+     * null, so that the same title is shared between signed or rotating CDN urls, otherwise by
+     * the url without its query.
+     */
+    public static String buildKey(String contentId, DataSpec dataSpec) {
+        String resource;
+        if (!TextUtils.isEmpty(dataSpec.key)) {
+            resource = dataSpec.key;
+        } else if (contentId != null) {
+            resource = contentId + "|" + dataSpec.uri.getPath();
+        } else {
+            resource = dataSpec.uri.buildUpon().clearQuery().build().toString();
+        }
+        return md5(resource + "|" + dataSpec.absoluteStreamPosition + "|" + dataSpec.length);
+    }
+
+    /**
+     * Returns the file of the entry for {@code key}, marking it as recently used, or null.
+     */
+    synchronized File get(String key) {
+        // Unlike containsKey, get moves the entry to the end of the access order.
+        final Long length = entries.get(key);
+        if (length == null) {
+            missCount++;
+            return null;
+        }
+        File file = new File(directory, key);
+        if (!file.exists()) {
+            entries.remove(key);
+            totalBytes -= length;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        // Persist the access order so that it survives process death.
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    synchronized File createTempFile(String key) {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        return new File(directory, key + "." + (tempFileCounter++) + TEMP_SUFFIX);
+    }
+
+    /**
+     * Moves a fully written temporary file into the cache and evicts entries beyond the size
+     * bound.
+     */
+    synchronized void commit(String key, File tempFile) {
+        File file = new File(directory, key);
+        Long previous = entries.remove(key);
+        if (previous != null) {
+            totalBytes -= previous;
+        }
+        if (!tempFile.renameTo(file)) {
+            Log.w(TAG, "Failed to commit " + tempFile);
+            deleteFile(tempFile);
+            deleteFile(file);
+            return;
+        }
+        long length = file.length();
+        entries.put(key, length);
+        totalBytes += length;
+        trimToSize();
+    }
+
+    private void initialize() {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Failed to create " + directory);
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        synchronized (this) {
+            for (File file : files) {
+                if (file.getName().endsWith(TEMP_SUFFIX)) {
+                    // Left over from a write that never completed.
+                    deleteFile(file);
+                    continue;
+                }
+                long length = file.length();
+                entries.put(file.getName(), length);
+                totalBytes += length;
+            }
+            trimToSize();
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            evictionCount++;
+            deleteFile(new File(directory, eldest.getKey()));
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete " + file);
+        }
+    }
+
+    private static String md5(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(value.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
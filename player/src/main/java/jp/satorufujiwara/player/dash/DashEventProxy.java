@@ -1,11 +1,17 @@
 package jp.satorufujiwara.player.dash;
 
 import com.google.android.exoplayer.TimeRange;
+import com.google.android.exoplayer.chunk.ChunkSampleSource;
+import com.google.android.exoplayer.chunk.Format;
 import com.google.android.exoplayer.dash.DashChunkSource;
 
+import java.io.IOException;
+
 import jp.satorufujiwara.player.EventProxy;
+import jp.satorufujiwara.player.Player;
 
-public class DashEventProxy extends EventProxy implements DashChunkSource.EventListener {
+public class DashEventProxy extends EventProxy implements DashChunkSource.EventListener,
+        ChunkSampleSource.EventListener {
 
     /**
      * A listener for debugging information.
@@ -15,12 +21,41 @@ public class DashEventProxy extends EventProxy implements DashChunkSource.EventL
         void onAvailableRangeChanged(TimeRange seekRange);
     }
 
+    public interface LoadInfoListener {
+
+        void onVideoFormatEnabled(Format format, int trigger, long mediaTimeMs);
+
+        void onAudioFormatEnabled(Format format, int trigger, long mediaTimeMs);
+
+        void onLoadStarted(int sourceId, long length, int type, int trigger, Format format,
+                long mediaStartTimeMs, long mediaEndTimeMs);
+
+        void onLoadCompleted(int sourceId, long bytesLoaded, int type, int trigger, Format format,
+                long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
+                long loadDurationMs);
+    }
+
+    public interface InternalErrorListener {
+
+        void onLoadError(int sourceId, IOException e);
+    }
+
     private InfoListener infoListener;
+    private LoadInfoListener loadInfoListener;
+    private InternalErrorListener internalErrorListener;
 
     public void setDashInfoListener(InfoListener infoListener) {
         this.infoListener = infoListener;
     }
 
+    public void setDashLoadInfoListener(LoadInfoListener loadInfoListener) {
+        this.loadInfoListener = loadInfoListener;
+    }
+
+    public void setDashInternalErrorListener(InternalErrorListener internalErrorListener) {
+        this.internalErrorListener = internalErrorListener;
+    }
+
     /** DashChunkSource.EventListener */
     @Override
     public void onAvailableRangeChanged(int sourceId, TimeRange timeRange) {
@@ -29,4 +64,62 @@ public class DashEventProxy extends EventProxy implements DashChunkSource.EventL
         }
     }
 
+    /** ChunkSampleSource.EventListener */
+    @Override
+    public void onLoadStarted(int sourceId, long length, int type, int trigger, Format format,
+            long mediaStartTimeMs, long mediaEndTimeMs) {
+        if (loadInfoListener != null) {
+            loadInfoListener.onLoadStarted(sourceId, length, type, trigger, format,
+                    mediaStartTimeMs, mediaEndTimeMs);
+        }
+    }
+
+    /** ChunkSampleSource.EventListener */
+    @Override
+    public void onLoadCompleted(int sourceId, long bytesLoaded, int type, int trigger,
+            Format format, long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
+            long loadDurationMs) {
+        if (loadInfoListener != null) {
+            loadInfoListener.onLoadCompleted(sourceId, bytesLoaded, type, trigger, format,
+                    mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs, loadDurationMs);
+        }
+    }
+
+    /** ChunkSampleSource.EventListener */
+    @Override
+    public void onLoadCanceled(int sourceId, long bytesLoaded) {
+        // Do nothing.
+    }
+
+    /** ChunkSampleSource.EventListener */
+    @Override
+    public void onLoadError(int sourceId, IOException e) {
+        if (internalErrorListener != null) {
+            internalErrorListener.onLoadError(sourceId, e);
+        }
+    }
+
+    /** ChunkSampleSource.EventListener */
+    @Override
+    public void onUpstreamDiscarded(int sourceId, long mediaStartTimeMs, long mediaEndTimeMs) {
+        // Do nothing.
+    }
+
+    /** ChunkSampleSource.EventListener */
+    @Override
+    public void onDownstreamFormatChanged(int sourceId, Format format, int trigger,
+            long mediaTimeMs) {
+        if (sourceId == Player.TYPE_VIDEO) {
+            setVideoFormat(format);
+        }
+        if (loadInfoListener == null) {
+            return;
+        }
+        if (sourceId == Player.TYPE_VIDEO) {
+            loadInfoListener.onVideoFormatEnabled(format, trigger, mediaTimeMs);
+        } else if (sourceId == Player.TYPE_AUDIO) {
+            loadInfoListener.onAudioFormatEnabled(format, trigger, mediaTimeMs);
+        }
+    }
+
 }
@@ -0,0 +1,276 @@
+package jp.satorufujiwara.player.dash;
+
+import com.google.android.exoplayer.LoadControl;
+import com.google.android.exoplayer.MediaCodecAudioTrackRenderer;
+import com.google.android.exoplayer.MediaCodecSelector;
+import com.google.android.exoplayer.MediaCodecVideoTrackRenderer;
+import com.google.android.exoplayer.TrackRenderer;
+import com.google.android.exoplayer.audio.AudioCapabilities;
+import com.google.android.exoplayer.chunk.ChunkSampleSource;
+import com.google.android.exoplayer.chunk.ChunkSource;
+import com.google.android.exoplayer.chunk.FormatEvaluator.AdaptiveEvaluator;
+import com.google.android.exoplayer.dash.DashChunkSource;
+import com.google.android.exoplayer.dash.DefaultDashTrackSelector;
+import com.google.android.exoplayer.dash.mpd.AdaptationSet;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescriptionParser;
+import com.google.android.exoplayer.dash.mpd.Period;
+import com.google.android.exoplayer.dash.mpd.UtcTimingElement;
+import com.google.android.exoplayer.dash.mpd.UtcTimingElementResolver;
+import com.google.android.exoplayer.dash.mpd.UtcTimingElementResolver.UtcTimingCallback;
+import com.google.android.exoplayer.drm.UnsupportedDrmException;
+import com.google.android.exoplayer.text.TextTrackRenderer;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+import com.google.android.exoplayer.upstream.TransferListener;
+import com.google.android.exoplayer.upstream.UriDataSource;
+import com.google.android.exoplayer.util.ManifestFetcher;
+import com.google.android.exoplayer.util.ManifestFetcher.ManifestCallback;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaCodec;
+import android.net.Uri;
+import android.os.Handler;
+
+import java.io.IOException;
+
+import jp.satorufujiwara.player.AdaptiveBufferPolicy;
+import jp.satorufujiwara.player.BandwidthEstimateStore;
+import jp.satorufujiwara.player.BandwidthEstimatorCreator;
+import jp.satorufujiwara.player.DataSourceCreator;
+import jp.satorufujiwara.player.LimitedBandwidthMeter;
+import jp.satorufujiwara.player.LoadControlCreator;
+import jp.satorufujiwara.player.Player;
+import jp.satorufujiwara.player.RendererBuilder;
+import jp.satorufujiwara.player.RendererBuilderCallback;
+import jp.satorufujiwara.player.SharedAllocator;
+
+/**
+ * A {@link RendererBuilder} for DASH.
+ * <p>
+ * The manifest is parsed by ExoPlayer, which resolves SegmentBase, SegmentList and
+ * SegmentTemplate (with or without SegmentTimeline) representations. Dynamic manifests are
+ * refreshed by the chunk sources while they are enabled. Protected content is not supported.
+ */
+public class DashRendererBuilder extends RendererBuilder<DashEventProxy> {
+
+    public static final int DEFAULT_LIVE_EDGE_LATENCY_MS = 30000;
+
+    long limitBitrate = Long.MAX_VALUE;
+    LimitedBandwidthMeter bandwidthMeter;
+    final DataSourceCreator dataSourceCreator;
+    final int audioBufferSegmentCount;
+    final int textBufferSegmentCount;
+    final long liveEdgeLatencyMs;
+    final boolean concurrentBandwidthMeter;
+    final BandwidthEstimatorCreator bandwidthEstimatorCreator;
+    final BandwidthEstimateStore estimateStore;
+    final boolean estimatePerHost;
+    private AsyncRendererBuilder currentAsyncBuilder;
+
+    DashRendererBuilder(Context context, Handler eventHandler, DashEventProxy eventProxy,
+            String userAgent, Uri uri, int bufferSegmentSize, int bufferSegmentCount,
+            int audioBufferSegmentCount, int textBufferSegmentCount, long liveEdgeLatencyMs,
+            DataSourceCreator dataSourceCreator, boolean concurrentBandwidthMeter,
+            BandwidthEstimatorCreator bandwidthEstimatorCreator,
+            BandwidthEstimateStore estimateStore, boolean estimatePerHost,
+            SharedAllocator sharedAllocator, AdaptiveBufferPolicy bufferPolicy,
+            LoadControlCreator loadControlCreator, int minBufferMs, int minRebufferMs) {
+        super(context, eventHandler, eventProxy, userAgent, uri, bufferSegmentSize,
+                bufferSegmentCount, sharedAllocator, bufferPolicy, loadControlCreator,
+                minBufferMs, minRebufferMs);
+        this.audioBufferSegmentCount = audioBufferSegmentCount;
+        this.textBufferSegmentCount = textBufferSegmentCount;
+        this.liveEdgeLatencyMs = liveEdgeLatencyMs;
+        this.dataSourceCreator = dataSourceCreator;
+        this.concurrentBandwidthMeter = concurrentBandwidthMeter;
+        this.bandwidthEstimatorCreator = bandwidthEstimatorCreator;
+        this.estimateStore = estimateStore;
+        this.estimatePerHost = estimatePerHost;
+    }
+
+    @Override
+    protected void buildRenderers(RendererBuilderCallback callback) {
+        currentAsyncBuilder = new AsyncRendererBuilder(this, callback);
+        currentAsyncBuilder.init();
+    }
+
+    @Override
+    protected void cancel() {
+        if (currentAsyncBuilder != null) {
+            currentAsyncBuilder.cancel();
+            currentAsyncBuilder = null;
+        }
+    }
+
+    @Override
+    protected void setLimitBitrate(long bitrate) {
+        limitBitrate = bitrate;
+        if (bandwidthMeter != null) {
+            bandwidthMeter.setLimitBitrate(bitrate);
+        }
+    }
+
+    private final class AsyncRendererBuilder implements
+            ManifestCallback<MediaPresentationDescription>, UtcTimingCallback {
+
+        private DashRendererBuilder rendererBuilder;
+        private final RendererBuilderCallback callback;
+        private final UriDataSource manifestDataSource;
+        private final ManifestFetcher<MediaPresentationDescription> manifestFetcher;
+
+        private boolean canceled;
+        private MediaPresentationDescription manifest;
+        private long elapsedRealtimeOffset;
+
+        public AsyncRendererBuilder(DashRendererBuilder rendererBuilder,
+                RendererBuilderCallback callback) {
+            this.rendererBuilder = rendererBuilder;
+            this.callback = callback;
+            manifestDataSource = rendererBuilder.createManifestDataSource(
+                    rendererBuilder.dataSourceCreator);
+            manifestFetcher = new ManifestFetcher<>(rendererBuilder.uri.toString(),
+                    manifestDataSource, new MediaPresentationDescriptionParser());
+        }
+
+        public void init() {
+            manifestFetcher.singleLoad(rendererBuilder.eventHandler.getLooper(), this);
+        }
+
+        public void cancel() {
+            canceled = true;
+            rendererBuilder = null;
+        }
+
+        @Override
+        public void onSingleManifest(MediaPresentationDescription manifest) {
+            if (canceled) {
+                return;
+            }
+            this.manifest = manifest;
+            if (manifest.dynamic && manifest.utcTiming != null) {
+                UtcTimingElementResolver.resolveTimingElement(manifestDataSource,
+                        manifest.utcTiming, manifestFetcher.getManifestLoadCompleteTimestamp(),
+                        this);
+            } else {
+                buildRenderers();
+            }
+        }
+
+        @Override
+        public void onSingleManifestError(IOException e) {
+            if (canceled) {
+                return;
+            }
+            callback.onRenderersError(e);
+        }
+
+        @Override
+        public void onTimestampResolved(UtcTimingElement utcTiming, long elapsedRealtimeOffset) {
+            if (canceled) {
+                return;
+            }
+            this.elapsedRealtimeOffset = elapsedRealtimeOffset;
+            buildRenderers();
+        }
+
+        @Override
+        public void onTimestampError(UtcTimingElement utcTiming, IOException e) {
+            if (canceled) {
+                return;
+            }
+            // Continue in the hope that the device clock is correct.
+            buildRenderers();
+        }
+
+        private void buildRenderers() {
+            final Period period = manifest.getPeriod(0);
+            for (int i = 0; i < period.adaptationSets.size(); i++) {
+                AdaptationSet adaptationSet = period.adaptationSets.get(i);
+                if (adaptationSet.type != AdaptationSet.TYPE_UNKNOWN
+                        && adaptationSet.hasContentProtection()) {
+                    callback.onRenderersError(new UnsupportedDrmException(
+                            UnsupportedDrmException.REASON_UNSUPPORTED_SCHEME));
+                    return;
+                }
+            }
+
+            final Context context = rendererBuilder.context;
+            final Handler handler = rendererBuilder.eventHandler;
+            final DashEventProxy eventProxy = rendererBuilder.eventProxy;
+            final LimitedBandwidthMeter bandwidthMeter = rendererBuilder.createBandwidthMeter(
+                    rendererBuilder.concurrentBandwidthMeter,
+                    rendererBuilder.bandwidthEstimatorCreator);
+            bandwidthMeter.setLimitBitrate(limitBitrate);
+            if (rendererBuilder.estimateStore != null) {
+                // AdaptiveEvaluator picks the first representation from the seeded estimate.
+                bandwidthMeter.setEstimateStore(rendererBuilder.estimateStore,
+                        rendererBuilder.estimatePerHost ? rendererBuilder.uri.getHost() : null);
+            }
+            rendererBuilder.bandwidthMeter = bandwidthMeter;
+
+            final int bufferSegmentSize = rendererBuilder.bufferSegmentSize;
+            final int videoBufferSize = bufferSegmentSize
+                    * rendererBuilder.scaleSegmentCount(rendererBuilder.bufferSegmentCount);
+            final int audioBufferSize = bufferSegmentSize
+                    * rendererBuilder.scaleSegmentCount(rendererBuilder.audioBufferSegmentCount);
+            final int textBufferSize = bufferSegmentSize * rendererBuilder.textBufferSegmentCount;
+            final LoadControl loadControl = rendererBuilder.createLoadControl(
+                    videoBufferSize + audioBufferSize + textBufferSize);
+            final long liveEdgeLatencyMs = rendererBuilder.liveEdgeLatencyMs;
+
+            // Build the video renderer.
+            DataSource videoDataSource = createDataSource(context, bandwidthMeter);
+            ChunkSource videoChunkSource = new DashChunkSource(manifestFetcher,
+                    DefaultDashTrackSelector.newVideoInstance(context, true, false),
+                    videoDataSource, new AdaptiveEvaluator(bandwidthMeter), liveEdgeLatencyMs,
+                    elapsedRealtimeOffset, handler, eventProxy, Player.TYPE_VIDEO);
+            ChunkSampleSource videoSampleSource = new ChunkSampleSource(videoChunkSource,
+                    loadControl, videoBufferSize, handler, eventProxy, Player.TYPE_VIDEO);
+            MediaCodecVideoTrackRenderer videoRenderer = new MediaCodecVideoTrackRenderer(context,
+                    videoSampleSource, MediaCodecSelector.DEFAULT,
+                    MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT, 5000, handler, eventProxy, 50);
+
+            // Build the audio renderer.
+            DataSource audioDataSource = createDataSource(context, bandwidthMeter);
+            ChunkSource audioChunkSource = new DashChunkSource(manifestFetcher,
+                    DefaultDashTrackSelector.newAudioInstance(), audioDataSource, null,
+                    liveEdgeLatencyMs, elapsedRealtimeOffset, handler, eventProxy,
+                    Player.TYPE_AUDIO);
+            ChunkSampleSource audioSampleSource = new ChunkSampleSource(audioChunkSource,
+                    loadControl, audioBufferSize, handler, eventProxy, Player.TYPE_AUDIO);
+            MediaCodecAudioTrackRenderer audioRenderer = new MediaCodecAudioTrackRenderer(
+                    audioSampleSource, MediaCodecSelector.DEFAULT, null, true, handler,
+                    eventProxy, AudioCapabilities.getCapabilities(context),
+                    AudioManager.STREAM_MUSIC);
+
+            // Build the text renderer.
+            DataSource textDataSource = createDataSource(context, bandwidthMeter);
+            ChunkSource textChunkSource = new DashChunkSource(manifestFetcher,
+                    DefaultDashTrackSelector.newTextInstance(), textDataSource, null,
+                    liveEdgeLatencyMs, elapsedRealtimeOffset, handler, eventProxy,
+                    Player.TYPE_TEXT);
+            ChunkSampleSource textSampleSource = new ChunkSampleSource(textChunkSource,
+                    loadControl, textBufferSize, handler, eventProxy, Player.TYPE_TEXT);
+            TrackRenderer textRenderer = new TextTrackRenderer(textSampleSource, eventProxy,
+                    handler.getLooper());
+
+            TrackRenderer[] renderers = new TrackRenderer[Player.RENDERER_COUNT];
+            renderers[Player.TYPE_VIDEO] = videoRenderer;
+            renderers[Player.TYPE_AUDIO] = audioRenderer;
+            renderers[Player.TYPE_TEXT] = textRenderer;
+            callback.onRenderers(renderers, bandwidthMeter);
+        }
+
+        private DataSource createDataSource(Context context, TransferListener listener) {
+            if (rendererBuilder.dataSourceCreator != null) {
+                return rendererBuilder.dataSourceCreator.create(context, listener,
+                        rendererBuilder.userAgent);
+            }
+            return new DefaultUriDataSource(context, listener, rendererBuilder.userAgent);
+        }
+
+    }
+
+}
@@ -0,0 +1,241 @@
+package jp.satorufujiwara.player.dash;
+
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+
+import jp.satorufujiwara.player.AdaptiveBufferPolicy;
+import jp.satorufujiwara.player.BandwidthEstimateStore;
+import jp.satorufujiwara.player.BandwidthEstimatorCreator;
+import jp.satorufujiwara.player.DataSourceCreator;
+import jp.satorufujiwara.player.LoadControlCreator;
+import jp.satorufujiwara.player.LoadControlProfile;
+import jp.satorufujiwara.player.Player;
+import jp.satorufujiwara.player.RendererBuilder;
+import jp.satorufujiwara.player.SharedAllocator;
+import jp.satorufujiwara.player.VideoSource;
+
+public class DashVideoSource extends VideoSource {
+
+    private final DashEventProxy eventProxy;
+    private final DataSourceCreator dataSourceCreator;
+    private final int audioBufferSegmentCount;
+    private final int textBufferSegmentCount;
+    private final long liveEdgeLatencyMs;
+    private final boolean concurrentBandwidthMeter;
+    private final BandwidthEstimatorCreator bandwidthEstimatorCreator;
+    private final BandwidthEstimateStore estimateStore;
+    private final boolean estimatePerHost;
+    private final SharedAllocator sharedAllocator;
+    private final AdaptiveBufferPolicy bufferPolicy;
+    private final LoadControlCreator loadControlCreator;
+    private final int minBufferMs;
+    private final int minRebufferMs;
+
+    private DashVideoSource(Builder builder) {
+        super(builder.uri, builder.contentId != null ? builder.contentId : builder.uri.toString(),
+                builder.userAgent, builder.eventHandler, builder.bufferSegmentSize,
+                builder.bufferSegmentCount);
+        eventProxy = builder.eventProxy;
+        dataSourceCreator = forContent(builder.dataSourceCreator, builder.contentId);
+        audioBufferSegmentCount = builder.audioBufferSegmentCount;
+        textBufferSegmentCount = builder.textBufferSegmentCount;
+        liveEdgeLatencyMs = builder.liveEdgeLatencyMs;
+        concurrentBandwidthMeter = builder.concurrentBandwidthMeter;
+        bandwidthEstimatorCreator = builder.bandwidthEstimatorCreator;
+        estimateStore = builder.estimateStore;
+        estimatePerHost = builder.estimatePerHost;
+        sharedAllocator = builder.sharedAllocator;
+        bufferPolicy = builder.bufferPolicy;
+        loadControlCreator = builder.loadControlCreator;
+        minBufferMs = builder.minBufferMs;
+        minRebufferMs = builder.minRebufferMs;
+    }
+
+    @Override
+    public RendererBuilder createRendererBuilder(Context context) {
+        return new DashRendererBuilder(context, eventHandler, eventProxy, userAgent, uri,
+                bufferSegmentSize, bufferSegmentCount, audioBufferSegmentCount,
+                textBufferSegmentCount, liveEdgeLatencyMs, dataSourceCreator,
+                concurrentBandwidthMeter, bandwidthEstimatorCreator, estimateStore,
+                estimatePerHost, sharedAllocator, bufferPolicy, loadControlCreator, minBufferMs,
+                minRebufferMs);
+    }
+
+    public static Builder newBuilder(final Uri uri, final String userAgent) {
+        return new Builder(uri, userAgent);
+    }
+
+    public static class Builder {
+
+        final String userAgent;
+        final Uri uri;
+        String contentId;
+        DashEventProxy eventProxy;
+        Handler eventHandler;
+        int bufferSegmentSize = RendererBuilder.DEFAULT_BUFFER_SEGMENT_SIZE;
+        int bufferSegmentCount = RendererBuilder.DEFAULT_MAIN_BUFFER_SEGMENT_COUNT;
+        int audioBufferSegmentCount = RendererBuilder.DEFAULT_AUDIO_BUFFER_SEGMENTS;
+        int textBufferSegmentCount = RendererBuilder.DEFAULT_TEXT_BUFFER_SEGMENT_COUNT;
+        long liveEdgeLatencyMs = DashRendererBuilder.DEFAULT_LIVE_EDGE_LATENCY_MS;
+        DataSourceCreator dataSourceCreator;
+        boolean concurrentBandwidthMeter;
+        BandwidthEstimatorCreator bandwidthEstimatorCreator;
+        BandwidthEstimateStore estimateStore;
+        boolean estimatePerHost;
+        SharedAllocator sharedAllocator;
+        AdaptiveBufferPolicy bufferPolicy;
+        LoadControlCreator loadControlCreator;
+        int minBufferMs = Player.DEFAULT_MIN_BUFFER_MS;
+        int minRebufferMs = Player.DEFAULT_MIN_REBUFFER_MS;
+
+        private Builder(final Uri uri, final String userAgent) {
+            this.uri = uri;
+            this.userAgent = userAgent;
+        }
+
+        /**
+         * Sets the id of the content, which a
+         * {@link jp.satorufujiwara.player.ContentDataSourceCreator} such as a cache keys its data
+         * by. Defaults to the uri, which is not passed to the creator.
+         */
+        public Builder contentId(String contentId) {
+            this.contentId = contentId;
+            return this;
+        }
+
+        public Builder eventProxy(DashEventProxy eventProxy) {
+            this.eventProxy = eventProxy;
+            return this;
+        }
+
+        public Builder eventHandler(Handler eventHandler) {
+            this.eventHandler = eventHandler;
+            return this;
+        }
+
+        public Builder bufferSegmentSize(int size) {
+            bufferSegmentSize = size;
+            return this;
+        }
+
+        public Builder bufferSegmentCount(int count) {
+            bufferSegmentCount = count;
+            return this;
+        }
+
+        public Builder audioBufferSegmentCount(int count) {
+            audioBufferSegmentCount = count;
+            return this;
+        }
+
+        public Builder textBufferSegmentCount(int count) {
+            textBufferSegmentCount = count;
+            return this;
+        }
+
+        /**
+         * Sets how far behind the live edge playback of a dynamic manifest starts.
+         */
+        public Builder liveEdgeLatencyMs(long latencyMs) {
+            liveEdgeLatencyMs = latencyMs;
+            return this;
+        }
+
+        public Builder dataSourceCreator(DataSourceCreator creator) {
+            dataSourceCreator = creator;
+            return this;
+        }
+
+        /**
+         * Uses a {@link jp.satorufujiwara.player.ConcurrentBandwidthMeter}, which does not lock on
+         * every read of the loader threads, instead of a synchronized one.
+         */
+        public Builder concurrentBandwidthMeter(boolean enabled) {
+            concurrentBandwidthMeter = enabled;
+            return this;
+        }
+
+        /**
+         * Sets how bandwidth is estimated from completed transfers. Defaults to the sliding
+         * median of {@link jp.satorufujiwara.player.PercentileBandwidthEstimator}.
+         */
+        public Builder bandwidthEstimatorCreator(BandwidthEstimatorCreator creator) {
+            bandwidthEstimatorCreator = creator;
+            return this;
+        }
+
+        /**
+         * Starts from the estimate saved in {@code store} by earlier sessions on the same
+         * network, and saves the estimates of this one.
+         *
+         * @param perHost Whether to keep a separate estimate for the host of the uri.
+         */
+        public Builder bandwidthEstimateStore(BandwidthEstimateStore store, boolean perHost) {
+            estimateStore = store;
+            estimatePerHost = perHost;
+            return this;
+        }
+
+        /**
+         * Takes buffer segments from {@code allocator}, which bounds the memory of every player
+         * sharing it. Its segment size must match {@link #bufferSegmentSize(int)}.
+         */
+        public Builder sharedAllocator(SharedAllocator allocator) {
+            sharedAllocator = allocator;
+            return this;
+        }
+
+        /**
+         * Scales buffer segment counts for the device and shrinks the buffer on memory pressure
+         * according to {@code policy}.
+         */
+        public Builder bufferPolicy(AdaptiveBufferPolicy policy) {
+            bufferPolicy = policy;
+            return this;
+        }
+
+        public Builder loadControlCreator(LoadControlCreator creator) {
+            loadControlCreator = creator;
+            return this;
+        }
+
+        /**
+         * Sets the buffer the player needs to start playback and to resume it after a
+         * rebuffer.
+         */
+        public Builder playerBufferMs(int minBufferMs, int minRebufferMs) {
+            this.minBufferMs = minBufferMs;
+            this.minRebufferMs = minRebufferMs;
+            return this;
+        }
+
+        /**
+         * Sets the load control and player thresholds from {@code profile}, for example
+         * {@link LoadControlProfile#FAST_START} or {@link LoadControlProfile#STEADY}.
+         */
+        public Builder loadControlProfile(LoadControlProfile profile) {
+            loadControlCreator = profile;
+            return playerBufferMs(profile.minBufferMs, profile.minRebufferMs);
+        }
+
+        public DashVideoSource build() {
+            if (TextUtils.isEmpty(userAgent)) {
+                throw new IllegalArgumentException("UserAgent must not be null.");
+            }
+            if (uri == null) {
+                throw new IllegalArgumentException("Url must not be null.");
+            }
+            if (eventHandler == null) {
+                eventHandler = new Handler(Looper.getMainLooper());
+            }
+            if (eventProxy == null) {
+                eventProxy = new DashEventProxy();
+            }
+            return new DashVideoSource(this);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package jp.satorufujiwara.player.hls;
+
+import com.google.android.exoplayer.ParserException;
+import com.google.android.exoplayer.hls.HlsPlaylist;
+import com.google.android.exoplayer.hls.HlsPlaylistParser;
+import com.google.android.exoplayer.upstream.UriLoadable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Parses playlists with {@link HlsPlaylistParser} while keeping their raw bytes, and stores them
+ * in a {@link HlsPlaylistCache} when one is given.
+ * <p>
+ * Persisted playlists start with a header line holding the url they were loaded from, so that
+ * relative segment urls still resolve against the network location when the playlist is read
+ * back from disk.
+ */
+final class CachingPlaylistParser implements UriLoadable.Parser<HlsPlaylist> {
+
+    private static final String HEADER_PREFIX = "#X-CACHED-FROM:";
+
+    private final HlsPlaylistParser parser = new HlsPlaylistParser();
+    private final String uri;
+    private final HlsPlaylistCache cache;
+    private final boolean fromDisk;
+    private volatile byte[] lastRawPlaylist;
+
+    CachingPlaylistParser(String uri, HlsPlaylistCache cache, boolean fromDisk) {
+        this.uri = uri;
+        this.cache = cache;
+        this.fromDisk = fromDisk;
+    }
+
+    /**
+     * Returns the raw bytes of the last parsed playlist, or null.
+     */
+    byte[] getLastRawPlaylist() {
+        return lastRawPlaylist;
+    }
+
+    @Override
+    public HlsPlaylist parse(String connectionUrl, InputStream inputStream)
+            throws IOException, ParserException {
+        byte[] raw = readFully(inputStream);
+        int offset = 0;
+        if (fromDisk) {
+            int lineEnd = indexOf(raw, (byte) '\n');
+            String header = new String(raw, 0, Math.max(lineEnd, 0), "UTF-8");
+            if (lineEnd < 0 || !header.startsWith(HEADER_PREFIX)) {
+                throw new ParserException("Invalid cached playlist.");
+            }
+            connectionUrl = header.substring(HEADER_PREFIX.length());
+            offset = lineEnd + 1;
+        }
+        byte[] playlistBytes = offset == 0 ? raw : Arrays.copyOfRange(raw, offset, raw.length);
+        HlsPlaylist playlist = parser.parse(connectionUrl,
+                new ByteArrayInputStream(playlistBytes));
+        lastRawPlaylist = playlistBytes;
+        if (cache != null) {
+            cache.put(uri, connectionUrl, playlistBytes, playlist, !fromDisk);
+        }
+        return playlist;
+    }
+
+    static byte[] encodeHeader(String connectionUrl) throws UnsupportedEncodingException {
+        return (HEADER_PREFIX + connectionUrl + "\n").getBytes("UTF-8");
+    }
+
+    static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    private static int indexOf(byte[] data, byte value) {
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
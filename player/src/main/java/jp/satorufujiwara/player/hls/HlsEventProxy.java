@@ -1,8 +1,11 @@
 package jp.satorufujiwara.player.hls;
 
+import com.google.android.exoplayer.chunk.Chunk;
 import com.google.android.exoplayer.chunk.Format;
 import com.google.android.exoplayer.hls.HlsSampleSource;
 
+import android.os.Handler;
+
 import java.io.IOException;
 
 import jp.satorufujiwara.player.EventProxy;
@@ -10,6 +13,8 @@ import jp.satorufujiwara.player.Player;
 
 public class HlsEventProxy extends EventProxy implements HlsSampleSource.EventListener {
 
+    public static final long UNKNOWN_LIVE_LATENCY = -1;
+
     public interface InfoListener {
 
         void onVideoFormatEnabled(Format format, int trigger, long mediaTimeMs);
@@ -29,8 +34,27 @@ public class HlsEventProxy extends EventProxy implements HlsSampleSource.EventLi
         void onLoadError(int sourceId, IOException e);
     }
 
+    /**
+     * Receives the latency of low-latency live playback, once a second while it is known.
+     */
+    public interface LiveLatencyListener {
+
+        /**
+         * @param latencyMs     How far playback is behind the live edge, or
+         *                      {@link #UNKNOWN_LIVE_LATENCY} once playback stopped.
+         * @param playbackSpeed The speed playback runs at to catch up.
+         */
+        void onLiveLatency(long latencyMs, float playbackSpeed);
+    }
+
     private InfoListener infoListener;
     private InternalErrorListener internalErrorListener;
+    private int batchIntervalMs;
+    private int batchSize;
+    private LoadEventBatcher loadEventBatcher;
+    private LiveLatencyListener liveLatencyListener;
+    private LiveEdgeTracker liveEdgeTracker;
+    private volatile long liveLatencyMs = UNKNOWN_LIVE_LATENCY;
 
     public void setHlsInfoListener(InfoListener infoListener) {
         this.infoListener = infoListener;
@@ -41,6 +65,68 @@ public class HlsEventProxy extends EventProxy implements HlsSampleSource.EventLi
         this.internalErrorListener = internalErrorListener;
     }
 
+    public void setLiveLatencyListener(LiveLatencyListener liveLatencyListener) {
+        this.liveLatencyListener = liveLatencyListener;
+    }
+
+    /**
+     * Returns how far playback is behind the live edge in low-latency live mode, or
+     * {@link #UNKNOWN_LIVE_LATENCY}.
+     */
+    public long getLiveLatencyMs() {
+        return liveLatencyMs;
+    }
+
+    /**
+     * Delivers the load events of the sample sources in batches, at most {@code intervalMs}
+     * after they happen or once {@code batchSize} events are pending, instead of one message per
+     * event. Listeners still receive every event in order. Must be called before the source is
+     * prepared.
+     */
+    public void setLoadEventBatching(int intervalMs, int batchSize) {
+        if (intervalMs <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("intervalMs and batchSize must be positive.");
+        }
+        this.batchIntervalMs = intervalMs;
+        this.batchSize = batchSize;
+        loadEventBatcher = null;
+    }
+
+    /**
+     * Returns the handler to pass to sample sources together with
+     * {@link #getSampleSourceListener(Handler)}.
+     */
+    Handler getSampleSourceHandler(Handler eventHandler) {
+        return batchSize > 0 ? getLoadEventBatcher(eventHandler).getHandler() : eventHandler;
+    }
+
+    HlsSampleSource.EventListener getSampleSourceListener(Handler eventHandler) {
+        return batchSize > 0 ? getLoadEventBatcher(eventHandler) : this;
+    }
+
+    void setLiveEdgeTracker(LiveEdgeTracker liveEdgeTracker) {
+        this.liveEdgeTracker = liveEdgeTracker;
+    }
+
+    Player getAttachedPlayer() {
+        return getPlayer();
+    }
+
+    void invokeOnLiveLatency(long latencyMs, float playbackSpeed) {
+        liveLatencyMs = latencyMs;
+        if (liveLatencyListener != null) {
+            liveLatencyListener.onLiveLatency(latencyMs, playbackSpeed);
+        }
+    }
+
+    private LoadEventBatcher getLoadEventBatcher(Handler eventHandler) {
+        if (loadEventBatcher == null) {
+            loadEventBatcher = new LoadEventBatcher(this, eventHandler, batchIntervalMs,
+                    batchSize);
+        }
+        return loadEventBatcher;
+    }
+
     /** HlsSampleSource.EventListener */
     @Override
     public void onLoadStarted(int sourceId, long length, int type, int trigger, Format format,
@@ -57,6 +143,10 @@ public class HlsEventProxy extends EventProxy implements HlsSampleSource.EventLi
             Format format,
             long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
             long loadDurationMs) {
+        if (liveEdgeTracker != null && sourceId == Player.TYPE_VIDEO
+                && type == Chunk.TYPE_MEDIA) {
+            liveEdgeTracker.onMediaLoadCompleted(mediaEndTimeMs);
+        }
         if (infoListener != null) {
             infoListener
                     .onLoadCompleted(sourceId, bytesLoaded, type, trigger, format, mediaStartTimeMs,
@@ -88,11 +178,13 @@ public class HlsEventProxy extends EventProxy implements HlsSampleSource.EventLi
     @Override
     public void onDownstreamFormatChanged(int sourceId, Format format, int trigger,
             long mediaTimeMs) {
+        if (sourceId == Player.TYPE_VIDEO) {
+            setVideoFormat(format);
+        }
         if (infoListener == null) {
             return;
         }
         if (sourceId == Player.TYPE_VIDEO) {
-            setVideoFormat(format);
             infoListener.onVideoFormatEnabled(format, trigger, mediaTimeMs);
         } else if (sourceId == Player.TYPE_AUDIO) {
             infoListener.onAudioFormatEnabled(format, trigger, mediaTimeMs);
@@ -0,0 +1,221 @@
+package jp.satorufujiwara.player.hls;
+
+import com.google.android.exoplayer.hls.HlsMediaPlaylist;
+import com.google.android.exoplayer.hls.HlsPlaylist;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An in-memory cache of parsed {@link HlsPlaylist}s keyed by uri, so that preparing the same
+ * source again does not wait for the playlist round trip.
+ * <p>
+ * Master playlists and VOD media playlists live for {@code vodTtlMs}. Live media playlists go
+ * stale as soon as a new segment is published, so they live for {@code liveTtlMs}. When a disk
+ * directory is given, VOD playlists are also persisted there and survive process death for
+ * {@code diskTtlMs}.
+ */
+public class HlsPlaylistCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+    public static final long DEFAULT_VOD_TTL_MS = 30 * 60 * 1000;
+    public static final long DEFAULT_LIVE_TTL_MS = 2000;
+    public static final long DEFAULT_DISK_TTL_MS = 24 * 60 * 60 * 1000;
+
+    private static final String TAG = "HlsPlaylistCache";
+    private static final String FILE_SUFFIX = ".m3u8";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final int maxEntries;
+    private final long vodTtlMs;
+    private final long liveTtlMs;
+    private final File diskDirectory;
+    private final long diskTtlMs;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public HlsPlaylistCache() {
+        this(null);
+    }
+
+    public HlsPlaylistCache(File diskDirectory) {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_VOD_TTL_MS, DEFAULT_LIVE_TTL_MS, diskDirectory,
+                DEFAULT_DISK_TTL_MS);
+    }
+
+    /**
+     * @param maxEntries    The maximum number of playlists kept in memory.
+     * @param vodTtlMs      How long master and VOD media playlists stay fresh in memory.
+     * @param liveTtlMs     How long live media playlists stay fresh in memory.
+     * @param diskDirectory The directory VOD playlists are persisted to. May be null.
+     * @param diskTtlMs     How long persisted playlists stay fresh, in wall clock time.
+     */
+    public HlsPlaylistCache(int maxEntries, long vodTtlMs, long liveTtlMs, File diskDirectory,
+            long diskTtlMs) {
+        this.maxEntries = maxEntries;
+        this.vodTtlMs = vodTtlMs;
+        this.liveTtlMs = liveTtlMs;
+        this.diskDirectory = diskDirectory;
+        this.diskTtlMs = diskTtlMs;
+    }
+
+    /**
+     * Returns a fresh playlist for {@code uri} from memory, or null.
+     */
+    public synchronized HlsPlaylist get(String uri) {
+        Entry entry = getFreshEntry(uri);
+        return entry == null ? null : entry.playlist;
+    }
+
+    /**
+     * Returns the raw bytes of a fresh playlist for {@code uri} from memory, or null.
+     */
+    public synchronized byte[] getRawPlaylist(String uri) {
+        Entry entry = getFreshEntry(uri);
+        return entry == null ? null : entry.rawPlaylist;
+    }
+
+    public synchronized void remove(String uri) {
+        entries.remove(uri);
+        File file = getDiskFile(uri);
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the persisted playlist file for {@code uri} if it exists and is fresh, or null.
+     */
+    File getFreshDiskFile(String uri) {
+        File file = getDiskFile(uri);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        if (System.currentTimeMillis() - file.lastModified() > diskTtlMs) {
+            file.delete();
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Stores a playlist loaded from {@code connectionUrl}. Called on the loading thread.
+     */
+    void put(String uri, String connectionUrl, byte[] rawPlaylist, HlsPlaylist playlist,
+            boolean persist) {
+        boolean live = isLive(playlist);
+        synchronized (this) {
+            entries.put(uri, new Entry(playlist, rawPlaylist, SystemClock.elapsedRealtime(),
+                    live ? liveTtlMs : vodTtlMs));
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        if (persist && !live) {
+            writeDiskFile(uri, connectionUrl, rawPlaylist);
+        }
+    }
+
+    private Entry getFreshEntry(String uri) {
+        Entry entry = entries.get(uri);
+        if (entry == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() - entry.loadTimeMs > entry.ttlMs) {
+            entries.remove(uri);
+            return null;
+        }
+        return entry;
+    }
+
+    private File getDiskFile(String uri) {
+        if (diskDirectory == null) {
+            return null;
+        }
+        return new File(diskDirectory, sha1(uri) + FILE_SUFFIX);
+    }
+
+    private void writeDiskFile(String uri, String connectionUrl, byte[] rawPlaylist) {
+        File file = getDiskFile(uri);
+        if (file == null) {
+            return;
+        }
+        if (!diskDirectory.exists() && !diskDirectory.mkdirs()) {
+            return;
+        }
+        File tempFile = new File(file.getPath() + TEMP_SUFFIX);
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(tempFile);
+            output.write(CachingPlaylistParser.encodeHeader(connectionUrl));
+            output.write(rawPlaylist);
+            output.getFD().sync();
+            output.close();
+            output = null;
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to persist playlist.", e);
+            tempFile.delete();
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+        }
+    }
+
+    private static String sha1(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(value.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isLive(HlsPlaylist playlist) {
+        return playlist instanceof HlsMediaPlaylist && ((HlsMediaPlaylist) playlist).live;
+    }
+
+    private static final class Entry {
+
+        final HlsPlaylist playlist;
+        final byte[] rawPlaylist;
+        final long loadTimeMs;
+        final long ttlMs;
+
+        Entry(HlsPlaylist playlist, byte[] rawPlaylist, long loadTimeMs, long ttlMs) {
+            this.playlist = playlist;
+            this.rawPlaylist = rawPlaylist;
+            this.loadTimeMs = loadTimeMs;
+            this.ttlMs = ttlMs;
+        }
+    }
+
+}
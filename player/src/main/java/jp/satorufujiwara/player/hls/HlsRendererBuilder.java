@@ -1,6 +1,5 @@
 package jp.satorufujiwara.player.hls;
 
-import com.google.android.exoplayer.DefaultLoadControl;
 import com.google.android.exoplayer.LoadControl;
 import com.google.android.exoplayer.MediaCodecAudioTrackRenderer;
 import com.google.android.exoplayer.MediaCodecSelector;
@@ -13,18 +12,21 @@ import com.google.android.exoplayer.chunk.VideoFormatSelectorUtil;
 import com.google.android.exoplayer.hls.DefaultHlsTrackSelector;
 import com.google.android.exoplayer.hls.HlsChunkSource;
 import com.google.android.exoplayer.hls.HlsMasterPlaylist;
+import com.google.android.exoplayer.hls.HlsMediaPlaylist;
 import com.google.android.exoplayer.hls.HlsPlaylist;
-import com.google.android.exoplayer.hls.HlsPlaylistParser;
 import com.google.android.exoplayer.hls.HlsSampleSource;
 import com.google.android.exoplayer.hls.PtsTimestampAdjusterProvider;
+import com.google.android.exoplayer.hls.Variant;
 import com.google.android.exoplayer.metadata.MetadataTrackRenderer;
 import com.google.android.exoplayer.metadata.id3.Id3Frame;
 import com.google.android.exoplayer.metadata.id3.Id3Parser;
 import com.google.android.exoplayer.text.TextTrackRenderer;
 import com.google.android.exoplayer.text.eia608.Eia608TrackRenderer;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
 import com.google.android.exoplayer.upstream.DataSource;
-import com.google.android.exoplayer.upstream.DefaultAllocator;
 import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+import com.google.android.exoplayer.upstream.TransferListener;
+import com.google.android.exoplayer.upstream.UriDataSource;
 import com.google.android.exoplayer.util.ManifestFetcher;
 import com.google.android.exoplayer.util.ManifestFetcher.ManifestCallback;
 
@@ -34,38 +36,83 @@ import android.media.MediaCodec;
 import android.net.Uri;
 import android.os.Handler;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import jp.satorufujiwara.player.AdaptiveBufferPolicy;
+import jp.satorufujiwara.player.BandwidthEstimateStore;
+import jp.satorufujiwara.player.BandwidthEstimatorCreator;
 import jp.satorufujiwara.player.DataSourceCreator;
 import jp.satorufujiwara.player.LimitedBandwidthMeter;
+import jp.satorufujiwara.player.LoadControlCreator;
 import jp.satorufujiwara.player.Player;
 import jp.satorufujiwara.player.RendererBuilder;
 import jp.satorufujiwara.player.RendererBuilderCallback;
+import jp.satorufujiwara.player.SharedAllocator;
 
 /**
  * A {@link RendererBuilder} for HLS.
  */
 public class HlsRendererBuilder extends RendererBuilder<HlsEventProxy> {
 
+    public static final long DEFAULT_LIVE_CATCH_UP_THRESHOLD_MS = 1000;
+    public static final long DEFAULT_LIVE_SEEK_THRESHOLD_MS = 10000;
+
+    // Matches the share of the estimate HlsChunkSource spends when it picks a variant.
+    private static final float SEED_BANDWIDTH_FRACTION = 0.8f;
+    // A few keyframes ahead of the scrub position, instead of the buffer of normal playback.
+    private static final int TRICK_PLAY_BUFFER_SEGMENT_COUNT = 4;
+
     long limitBitrate = Long.MAX_VALUE;
     LimitedBandwidthMeter bandwidthMeter;
     final DataSourceCreator dataSourceCreator;
     final HlsChunkSourceCreator hlsChunkSourceCreator;
     final int audioBufferSegmentCount;
     final int textBufferSegmentCount;
+    final boolean concurrentBandwidthMeter;
+    final HlsPlaylistCache playlistCache;
+    final BandwidthEstimatorCreator bandwidthEstimatorCreator;
+    final BandwidthEstimateStore estimateStore;
+    final boolean estimatePerHost;
+    final long liveTargetOffsetMs;
+    final long liveCatchUpThresholdMs;
+    final long liveSeekThresholdMs;
+    boolean trickPlay;
+    List<IFrameVariant> iFrameVariants = Collections.emptyList();
+    long[] keyframeTimesMs;
     private AsyncRendererBuilder currentAsyncBuilder;
+    private LiveLatencyController liveLatencyController;
 
     HlsRendererBuilder(Context context, Handler eventHandler, HlsEventProxy eventProxy,
             String userAgent, Uri uri, int bufferSegmentSize, int bufferSegmentCount,
             int audioBufferSegmentCount, int textBufferSegmentCount,
-            DataSourceCreator dataSourceCreator, HlsChunkSourceCreator hlsChunkSourceCreator) {
+            DataSourceCreator dataSourceCreator, HlsChunkSourceCreator hlsChunkSourceCreator,
+            boolean concurrentBandwidthMeter, HlsPlaylistCache playlistCache,
+            SharedAllocator sharedAllocator, AdaptiveBufferPolicy bufferPolicy,
+            LoadControlCreator loadControlCreator, int minBufferMs, int minRebufferMs,
+            BandwidthEstimatorCreator bandwidthEstimatorCreator,
+            BandwidthEstimateStore estimateStore, boolean estimatePerHost,
+            long liveTargetOffsetMs, long liveCatchUpThresholdMs, long liveSeekThresholdMs) {
         super(context, eventHandler, eventProxy, userAgent, uri, bufferSegmentSize,
-                bufferSegmentCount);
+                bufferSegmentCount, sharedAllocator, bufferPolicy, loadControlCreator,
+                minBufferMs, minRebufferMs);
         this.audioBufferSegmentCount = audioBufferSegmentCount;
         this.textBufferSegmentCount = textBufferSegmentCount;
         this.dataSourceCreator = dataSourceCreator;
         this.hlsChunkSourceCreator = hlsChunkSourceCreator;
+        this.concurrentBandwidthMeter = concurrentBandwidthMeter;
+        this.playlistCache = playlistCache;
+        this.bandwidthEstimatorCreator = bandwidthEstimatorCreator;
+        this.estimateStore = estimateStore;
+        this.estimatePerHost = estimatePerHost;
+        this.liveTargetOffsetMs = liveTargetOffsetMs;
+        this.liveCatchUpThresholdMs = liveCatchUpThresholdMs;
+        this.liveSeekThresholdMs = liveSeekThresholdMs;
     }
 
     @Override
@@ -80,6 +127,12 @@ public class HlsRendererBuilder extends RendererBuilder<HlsEventProxy> {
             currentAsyncBuilder.cancel();
             currentAsyncBuilder = null;
         }
+        stopLiveLatencyController();
+    }
+
+    @Override
+    protected void release() {
+        stopLiveLatencyController();
     }
 
     @Override
@@ -90,25 +143,127 @@ public class HlsRendererBuilder extends RendererBuilder<HlsEventProxy> {
         }
     }
 
+    /**
+     * Returns the I-frame renditions of the master playlist of the last build, which may be
+     * empty.
+     */
+    public List<IFrameVariant> getIFrameVariants() {
+        return iFrameVariants;
+    }
+
+    /**
+     * Returns a builder for the I-frame rendition that fits the bandwidth estimate, or the lowest
+     * one. Its playlist is read through {@link KeyframePlaylistDataSource}, so that
+     * {@link #getKeyframePosition(long)} of the builder seeks exactly onto keyframes. Its buffer
+     * counts against the shared allocator and buffer policy of this builder.
+     */
+    @Override
+    protected RendererBuilder createTrickPlayRendererBuilder() {
+        final IFrameVariant variant = selectIFrameVariant();
+        if (variant == null) {
+            return null;
+        }
+        HlsRendererBuilder builder = new HlsRendererBuilder(context, eventHandler,
+                new HlsEventProxy(), userAgent, Uri.parse(variant.url), bufferSegmentSize,
+                TRICK_PLAY_BUFFER_SEGMENT_COUNT, audioBufferSegmentCount, textBufferSegmentCount,
+                dataSourceCreator, null, false, null, sharedAllocator, bufferPolicy, null, 0, 0,
+                bandwidthEstimatorCreator, null, false, -1, DEFAULT_LIVE_CATCH_UP_THRESHOLD_MS,
+                DEFAULT_LIVE_SEEK_THRESHOLD_MS);
+        builder.trickPlay = true;
+        return builder;
+    }
+
+    @Override
+    protected long getKeyframePosition(long positionMs) {
+        final long[] timesMs = keyframeTimesMs;
+        if (timesMs == null || timesMs.length == 0) {
+            return positionMs;
+        }
+        int index = Arrays.binarySearch(timesMs, positionMs);
+        if (index < 0) {
+            index = Math.max(0, -index - 2);
+        }
+        return timesMs[index];
+    }
+
+    private IFrameVariant selectIFrameVariant() {
+        final long estimate = bandwidthMeter != null ? bandwidthMeter.getBitrateEstimate()
+                : BandwidthMeter.NO_ESTIMATE;
+        final long availableBitrate = estimate == BandwidthMeter.NO_ESTIMATE ? 0
+                : Math.min((long) (estimate * SEED_BANDWIDTH_FRACTION), limitBitrate);
+        IFrameVariant selected = null;
+        IFrameVariant lowest = null;
+        for (IFrameVariant variant : iFrameVariants) {
+            if (variant.bandwidth <= availableBitrate
+                    && (selected == null || variant.bandwidth > selected.bandwidth)) {
+                selected = variant;
+            }
+            if (lowest == null || variant.bandwidth < lowest.bandwidth) {
+                lowest = variant;
+            }
+        }
+        return selected != null ? selected : lowest;
+    }
+
+    private void stopLiveLatencyController() {
+        if (liveLatencyController != null) {
+            liveLatencyController.stop();
+            liveLatencyController = null;
+        }
+        eventProxy.setLiveEdgeTracker(null);
+    }
+
     private final class AsyncRendererBuilder implements ManifestCallback<HlsPlaylist> {
 
         private HlsRendererBuilder rendererBuilder;
         private final RendererBuilderCallback callback;
+        private final CachingPlaylistParser parser;
         private final ManifestFetcher<HlsPlaylist> playlistFetcher;
 
         private boolean canceled;
+        private boolean loadingFromDisk;
 
         public AsyncRendererBuilder(HlsRendererBuilder rendererBuilder,
                 RendererBuilderCallback callback) {
             this.rendererBuilder = rendererBuilder;
             this.callback = callback;
-            HlsPlaylistParser parser = new HlsPlaylistParser();
+            parser = new CachingPlaylistParser(rendererBuilder.uri.toString(),
+                    rendererBuilder.playlistCache, false);
+            UriDataSource manifestDataSource =
+                    rendererBuilder.createManifestDataSource(rendererBuilder.dataSourceCreator);
+            if (rendererBuilder.trickPlay) {
+                manifestDataSource = new KeyframePlaylistDataSource(manifestDataSource);
+            }
             playlistFetcher = new ManifestFetcher<>(rendererBuilder.uri.toString(),
-                    new DefaultUriDataSource(rendererBuilder.context,
-                            rendererBuilder.userAgent), parser);
+                    manifestDataSource, parser);
         }
 
         public void init() {
+            final HlsPlaylistCache cache = rendererBuilder.playlistCache;
+            final String uri = rendererBuilder.uri.toString();
+            if (cache != null) {
+                final HlsPlaylist cached = cache.get(uri);
+                if (cached != null) {
+                    // Keep the callback asynchronous as it is for a network load.
+                    rendererBuilder.eventHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onSingleManifest(cached);
+                        }
+                    });
+                    return;
+                }
+                File diskFile = cache.getFreshDiskFile(uri);
+                if (diskFile != null) {
+                    loadingFromDisk = true;
+                    new ManifestFetcher<>(Uri.fromFile(diskFile).toString(),
+                            new DefaultUriDataSource(rendererBuilder.context,
+                                    rendererBuilder.userAgent),
+                            new CachingPlaylistParser(uri, cache, true))
+                            .singleLoad(rendererBuilder.eventHandler.getLooper(), this);
+                    return;
+                }
+            }
             playlistFetcher.singleLoad(rendererBuilder.eventHandler.getLooper(), this);
         }
 
@@ -122,6 +277,13 @@ public class HlsRendererBuilder extends RendererBuilder<HlsEventProxy> {
             if (canceled) {
                 return;
             }
+            if (loadingFromDisk) {
+                // The persisted playlist is unreadable. Fall back to the network.
+                loadingFromDisk = false;
+                rendererBuilder.playlistCache.remove(rendererBuilder.uri.toString());
+                playlistFetcher.singleLoad(rendererBuilder.eventHandler.getLooper(), this);
+                return;
+            }
             callback.onRenderersError(e);
         }
 
@@ -132,12 +294,25 @@ public class HlsRendererBuilder extends RendererBuilder<HlsEventProxy> {
             }
             final Context context = rendererBuilder.context;
             final Handler handler = rendererBuilder.eventHandler;
-            final LoadControl loadControl = new DefaultLoadControl(
-                    new DefaultAllocator(rendererBuilder.bufferSegmentSize));
-            final LimitedBandwidthMeter bandwidthMeter = new LimitedBandwidthMeter(handler,
-                    eventProxy);
+            final LimitedBandwidthMeter bandwidthMeter = rendererBuilder.createBandwidthMeter(
+                    rendererBuilder.concurrentBandwidthMeter,
+                    rendererBuilder.bandwidthEstimatorCreator);
             bandwidthMeter.setLimitBitrate(limitBitrate);
+            if (rendererBuilder.estimateStore != null) {
+                bandwidthMeter.setEstimateStore(rendererBuilder.estimateStore,
+                        rendererBuilder.estimatePerHost ? rendererBuilder.uri.getHost() : null);
+                // HlsChunkSource loads the first chunk from the variant listed first.
+                if (manifest instanceof HlsMasterPlaylist) {
+                    manifest = preferVariant((HlsMasterPlaylist) manifest,
+                            bandwidthMeter.getBitrateEstimate());
+                }
+            }
             rendererBuilder.bandwidthMeter = bandwidthMeter;
+            if (manifest instanceof HlsMasterPlaylist) {
+                rendererBuilder.iFrameVariants = readIFrameVariants(manifest.baseUri);
+            } else if (rendererBuilder.trickPlay && manifest instanceof HlsMediaPlaylist) {
+                rendererBuilder.keyframeTimesMs = getStartTimesMs((HlsMediaPlaylist) manifest);
+            }
             PtsTimestampAdjusterProvider timestampAdjusterProvider
                     = new PtsTimestampAdjusterProvider();
 
@@ -153,6 +328,9 @@ public class HlsRendererBuilder extends RendererBuilder<HlsEventProxy> {
                 }
             }
             final HlsEventProxy eventProxy = rendererBuilder.eventProxy;
+            final Handler loadEventHandler = eventProxy.getSampleSourceHandler(handler);
+            final HlsSampleSource.EventListener loadEventListener
+                    = eventProxy.getSampleSourceListener(handler);
 
             boolean haveSubtitles = false;
             boolean haveAudios = false;
@@ -162,14 +340,23 @@ public class HlsRendererBuilder extends RendererBuilder<HlsEventProxy> {
                 haveAudios = !masterPlaylist.audios.isEmpty();
             }
 
+            final int bufferSegmentSize = rendererBuilder.bufferSegmentSize;
+            final int mainBufferSize = bufferSegmentSize
+                    * rendererBuilder.scaleSegmentCount(rendererBuilder.bufferSegmentCount);
+            final int audioBufferSize = bufferSegmentSize
+                    * rendererBuilder.scaleSegmentCount(rendererBuilder.audioBufferSegmentCount);
+            final int textBufferSize = bufferSegmentSize * rendererBuilder.textBufferSegmentCount;
+            final LoadControl loadControl = rendererBuilder.createLoadControl(
+                    mainBufferSize + (haveAudios ? audioBufferSize : 0)
+                            + (haveSubtitles ? textBufferSize : 0));
+
             // Build the video/metadata renderers.
-            final DataSource dataSource;
-            if (rendererBuilder.dataSourceCreator != null) {
-                dataSource = rendererBuilder.dataSourceCreator.create(context, bandwidthMeter,
-                        rendererBuilder.userAgent);
-            } else {
-                dataSource = new DefaultUriDataSource(context, bandwidthMeter,
-                        rendererBuilder.userAgent);
+            DataSource dataSource = createDataSource(context, bandwidthMeter);
+            LiveEdgeTracker liveEdgeTracker = null;
+            if (rendererBuilder.liveTargetOffsetMs >= 0) {
+                liveEdgeTracker = new LiveEdgeTracker();
+                dataSource = new LiveEdgeDataSource(dataSource, liveEdgeTracker);
+                eventProxy.setLiveEdgeTracker(liveEdgeTracker);
             }
 
             final HlsChunkSource chunkSource;
@@ -183,8 +370,7 @@ public class HlsRendererBuilder extends RendererBuilder<HlsEventProxy> {
 
             }
             HlsSampleSource sampleSource = new HlsSampleSource(chunkSource, loadControl,
-                    rendererBuilder.bufferSegmentSize * rendererBuilder.bufferSegmentCount,
-                    handler, eventProxy, Player.TYPE_VIDEO);
+                    mainBufferSize, loadEventHandler, loadEventListener, Player.TYPE_VIDEO);
             MediaCodecVideoTrackRenderer videoRenderer = new MediaCodecVideoTrackRenderer(context,
                     sampleSource, MediaCodecSelector.DEFAULT,
                     MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT, 5000, handler, eventProxy, 50);
@@ -194,16 +380,14 @@ public class HlsRendererBuilder extends RendererBuilder<HlsEventProxy> {
             // Build the audio renderer.
             MediaCodecAudioTrackRenderer audioRenderer;
             if (haveAudios) {
-                DataSource audioDataSource = new DefaultUriDataSource(context, bandwidthMeter,
-                        userAgent);
+                DataSource audioDataSource = createDataSource(context, bandwidthMeter);
                 HlsChunkSource audioChunkSource = new HlsChunkSource(false /* isMaster */,
                         audioDataSource, manifest,
                         DefaultHlsTrackSelector.newAudioInstance(),
                         bandwidthMeter, timestampAdjusterProvider);
                 HlsSampleSource audioSampleSource = new HlsSampleSource(audioChunkSource,
-                        loadControl,
-                        rendererBuilder.bufferSegmentSize * rendererBuilder.audioBufferSegmentCount,
-                        handler, eventProxy, Player.TYPE_AUDIO);
+                        loadControl, audioBufferSize, loadEventHandler, loadEventListener,
+                        Player.TYPE_AUDIO);
                 audioRenderer = new MediaCodecAudioTrackRenderer(
                         new SampleSource[]{sampleSource, audioSampleSource},
                         MediaCodecSelector.DEFAULT, null,
@@ -218,16 +402,13 @@ public class HlsRendererBuilder extends RendererBuilder<HlsEventProxy> {
             // Build the text renderer.
             TrackRenderer textRenderer;
             if (haveSubtitles) {
-                DataSource textDataSource = new DefaultUriDataSource(context, bandwidthMeter,
-                        userAgent);
+                DataSource textDataSource = createDataSource(context, bandwidthMeter);
                 HlsChunkSource textChunkSource = new HlsChunkSource(false /* isMaster */,
                         textDataSource, manifest,
                         DefaultHlsTrackSelector.newSubtitleInstance(), bandwidthMeter,
                         timestampAdjusterProvider);
                 HlsSampleSource textSampleSource = new HlsSampleSource(textChunkSource, loadControl,
-                        rendererBuilder.textBufferSegmentCount * bufferSegmentSize, handler,
-                        eventProxy,
-                        Player.TYPE_TEXT);
+                        textBufferSize, loadEventHandler, loadEventListener, Player.TYPE_TEXT);
                 textRenderer = new TextTrackRenderer(textSampleSource, eventProxy,
                         handler.getLooper());
             } else {
@@ -241,6 +422,92 @@ public class HlsRendererBuilder extends RendererBuilder<HlsEventProxy> {
             renderers[Player.TYPE_METADATA] = id3Renderer;
             renderers[Player.TYPE_TEXT] = textRenderer;
             callback.onRenderers(renderers, bandwidthMeter);
+            if (liveEdgeTracker != null) {
+                // Playlists with EXT-X-ENDLIST never give an edge, so this stays idle for VOD.
+                rendererBuilder.liveLatencyController = new LiveLatencyController(eventProxy,
+                        liveEdgeTracker, handler, rendererBuilder.liveTargetOffsetMs,
+                        rendererBuilder.liveCatchUpThresholdMs,
+                        rendererBuilder.liveSeekThresholdMs);
+                rendererBuilder.liveLatencyController.start();
+            }
+        }
+
+        /**
+         * Returns {@code playlist} with the variant that fits {@code bitrateEstimate} listed
+         * first, or the lowest variant if none fits.
+         */
+        private HlsMasterPlaylist preferVariant(HlsMasterPlaylist playlist,
+                long bitrateEstimate) {
+            if (bitrateEstimate == BandwidthMeter.NO_ESTIMATE || playlist.variants.isEmpty()) {
+                return playlist;
+            }
+            final long effectiveBitrate = (long) (bitrateEstimate * SEED_BANDWIDTH_FRACTION);
+            Variant preferred = null;
+            Variant lowest = null;
+            for (Variant variant : playlist.variants) {
+                final int bitrate = variant.format.bitrate;
+                if (bitrate <= effectiveBitrate
+                        && (preferred == null || bitrate > preferred.format.bitrate)) {
+                    preferred = variant;
+                }
+                if (lowest == null || bitrate < lowest.format.bitrate) {
+                    lowest = variant;
+                }
+            }
+            if (preferred == null) {
+                preferred = lowest;
+            }
+            if (preferred == playlist.variants.get(0)) {
+                return playlist;
+            }
+            List<Variant> variants = new ArrayList<>(playlist.variants);
+            variants.remove(preferred);
+            variants.add(0, preferred);
+            return new HlsMasterPlaylist(playlist.baseUri, variants, playlist.audios,
+                    playlist.subtitles, playlist.muxedAudioLanguage,
+                    playlist.muxedCaptionLanguage);
+        }
+
+        /**
+         * Returns the I-frame renditions of the master playlist just loaded, from the raw
+         * playlist kept by the cache or the parser.
+         */
+        private List<IFrameVariant> readIFrameVariants(String baseUri) {
+            final HlsPlaylistCache cache = rendererBuilder.playlistCache;
+            byte[] raw = cache != null ? cache.getRawPlaylist(rendererBuilder.uri.toString())
+                    : null;
+            if (raw == null) {
+                raw = parser.getLastRawPlaylist();
+            }
+            if (raw == null) {
+                return Collections.emptyList();
+            }
+            try {
+                return IFrameVariant.parse(baseUri, new String(raw, "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                return Collections.emptyList();
+            }
+        }
+
+        private long[] getStartTimesMs(HlsMediaPlaylist playlist) {
+            final long[] timesMs = new long[playlist.segments.size()];
+            for (int i = 0; i < timesMs.length; i++) {
+                timesMs[i] = playlist.segments.get(i).startTimeUs / 1000;
+            }
+            return timesMs;
+        }
+
+        private DataSource createDataSource(Context context, TransferListener listener) {
+            DataSource dataSource;
+            if (rendererBuilder.dataSourceCreator != null) {
+                dataSource = rendererBuilder.dataSourceCreator.create(context, listener,
+                        rendererBuilder.userAgent);
+            } else {
+                dataSource = new DefaultUriDataSource(context, listener,
+                        rendererBuilder.userAgent);
+            }
+            return rendererBuilder.trickPlay ? new KeyframePlaylistDataSource(dataSource)
+                    : dataSource;
         }
 
     }
@@ -7,8 +7,15 @@ import android.os.Handler;
 import android.os.Looper;
 import android.text.TextUtils;
 
+import jp.satorufujiwara.player.AdaptiveBufferPolicy;
+import jp.satorufujiwara.player.BandwidthEstimateStore;
+import jp.satorufujiwara.player.BandwidthEstimatorCreator;
 import jp.satorufujiwara.player.DataSourceCreator;
+import jp.satorufujiwara.player.LoadControlCreator;
+import jp.satorufujiwara.player.LoadControlProfile;
+import jp.satorufujiwara.player.Player;
 import jp.satorufujiwara.player.RendererBuilder;
+import jp.satorufujiwara.player.SharedAllocator;
 import jp.satorufujiwara.player.VideoSource;
 
 public class HlsVideoSource extends VideoSource {
@@ -18,22 +25,53 @@ public class HlsVideoSource extends VideoSource {
     private final HlsChunkSourceCreator hlsChunkSourceCreator;
     private final int audioBufferSegmentCount;
     private final int textBufferSegmentCount;
+    private final boolean concurrentBandwidthMeter;
+    private final HlsPlaylistCache playlistCache;
+    private final SharedAllocator sharedAllocator;
+    private final AdaptiveBufferPolicy bufferPolicy;
+    private final LoadControlCreator loadControlCreator;
+    private final int minBufferMs;
+    private final int minRebufferMs;
+    private final BandwidthEstimatorCreator bandwidthEstimatorCreator;
+    private final BandwidthEstimateStore estimateStore;
+    private final boolean estimatePerHost;
+    private final long liveTargetOffsetMs;
+    private final long liveCatchUpThresholdMs;
+    private final long liveSeekThresholdMs;
 
     private HlsVideoSource(Builder builder) {
-        super(builder.uri, builder.userAgent, builder.eventHandler, builder.bufferSegmentSize,
+        super(builder.uri, builder.contentId != null ? builder.contentId : builder.uri.toString(),
+                builder.userAgent, builder.eventHandler, builder.bufferSegmentSize,
                 builder.bufferSegmentCount);
         eventProxy = builder.eventProxy;
-        dataSourceCreator = builder.dataSourceCreator;
+        dataSourceCreator = forContent(builder.dataSourceCreator, builder.contentId);
         hlsChunkSourceCreator = builder.hlsChunkSourceCreator;
         audioBufferSegmentCount = builder.audioBufferSegmentCount;
         textBufferSegmentCount = builder.textBufferSegmentCount;
+        concurrentBandwidthMeter = builder.concurrentBandwidthMeter;
+        playlistCache = builder.playlistCache;
+        sharedAllocator = builder.sharedAllocator;
+        bufferPolicy = builder.bufferPolicy;
+        loadControlCreator = builder.loadControlCreator;
+        minBufferMs = builder.minBufferMs;
+        minRebufferMs = builder.minRebufferMs;
+        bandwidthEstimatorCreator = builder.bandwidthEstimatorCreator;
+        estimateStore = builder.estimateStore;
+        estimatePerHost = builder.estimatePerHost;
+        liveTargetOffsetMs = builder.liveTargetOffsetMs;
+        liveCatchUpThresholdMs = builder.liveCatchUpThresholdMs;
+        liveSeekThresholdMs = builder.liveSeekThresholdMs;
     }
 
     @Override
     public RendererBuilder createRendererBuilder(Context context) {
         return new HlsRendererBuilder(context, eventHandler, eventProxy, userAgent, uri,
-                bufferSegmentSize, bufferSegmentCount, textBufferSegmentCount,
-                audioBufferSegmentCount, dataSourceCreator, hlsChunkSourceCreator);
+                bufferSegmentSize, bufferSegmentCount, audioBufferSegmentCount,
+                textBufferSegmentCount, dataSourceCreator, hlsChunkSourceCreator,
+                concurrentBandwidthMeter, playlistCache, sharedAllocator, bufferPolicy,
+                loadControlCreator, minBufferMs, minRebufferMs, bandwidthEstimatorCreator,
+                estimateStore, estimatePerHost, liveTargetOffsetMs, liveCatchUpThresholdMs,
+                liveSeekThresholdMs);
     }
 
     public static Builder newBuilder(final Uri uri, final String userAgent) {
@@ -44,6 +82,7 @@ public class HlsVideoSource extends VideoSource {
 
         final String userAgent;
         final Uri uri;
+        String contentId;
         HlsEventProxy eventProxy;
         Handler eventHandler;
         int bufferSegmentSize = RendererBuilder.DEFAULT_BUFFER_SEGMENT_SIZE;
@@ -52,12 +91,35 @@ public class HlsVideoSource extends VideoSource {
         int textBufferSegmentCount = RendererBuilder.DEFAULT_TEXT_BUFFER_SEGMENT_COUNT;
         DataSourceCreator dataSourceCreator;
         HlsChunkSourceCreator hlsChunkSourceCreator;
+        boolean concurrentBandwidthMeter;
+        HlsPlaylistCache playlistCache;
+        SharedAllocator sharedAllocator;
+        AdaptiveBufferPolicy bufferPolicy;
+        LoadControlCreator loadControlCreator;
+        int minBufferMs = Player.DEFAULT_MIN_BUFFER_MS;
+        int minRebufferMs = Player.DEFAULT_MIN_REBUFFER_MS;
+        BandwidthEstimatorCreator bandwidthEstimatorCreator;
+        BandwidthEstimateStore estimateStore;
+        boolean estimatePerHost;
+        long liveTargetOffsetMs = -1;
+        long liveCatchUpThresholdMs = HlsRendererBuilder.DEFAULT_LIVE_CATCH_UP_THRESHOLD_MS;
+        long liveSeekThresholdMs = HlsRendererBuilder.DEFAULT_LIVE_SEEK_THRESHOLD_MS;
 
         private Builder(final Uri uri, final String userAgent) {
             this.uri = uri;
             this.userAgent = userAgent;
         }
 
+        /**
+         * Sets the id of the content, which a
+         * {@link jp.satorufujiwara.player.ContentDataSourceCreator} such as a cache keys its data
+         * by. Defaults to the uri, which is not passed to the creator.
+         */
+        public Builder contentId(String contentId) {
+            this.contentId = contentId;
+            return this;
+        }
+
         public Builder eventProxy(HlsEventProxy eventProxy) {
             this.eventProxy = eventProxy;
             return this;
@@ -88,6 +150,10 @@ public class HlsVideoSource extends VideoSource {
             return this;
         }
 
+        /**
+         * Sets how playlists and segments are read, for example by a
+         * {@link PrefetchDataSourceCreator} that fetches the next segments in parallel.
+         */
         public Builder dataSourceCreator(DataSourceCreator creator) {
             dataSourceCreator = creator;
             return this;
@@ -98,6 +164,112 @@ public class HlsVideoSource extends VideoSource {
             return this;
         }
 
+        /**
+         * Uses a {@link jp.satorufujiwara.player.ConcurrentBandwidthMeter}, which does not lock on
+         * every read of the loader threads, instead of a synchronized one.
+         */
+        public Builder concurrentBandwidthMeter(boolean enabled) {
+            concurrentBandwidthMeter = enabled;
+            return this;
+        }
+
+        /**
+         * Reuses playlists from {@code cache} instead of loading them on every prepare. The
+         * same cache is usually shared by every source.
+         */
+        public Builder playlistCache(HlsPlaylistCache cache) {
+            playlistCache = cache;
+            return this;
+        }
+
+        /**
+         * Takes buffer segments from {@code allocator}, which bounds the memory of every player
+         * sharing it. Its segment size must match {@link #bufferSegmentSize(int)}.
+         */
+        public Builder sharedAllocator(SharedAllocator allocator) {
+            sharedAllocator = allocator;
+            return this;
+        }
+
+        /**
+         * Scales buffer segment counts for the device and shrinks the buffer on memory pressure
+         * according to {@code policy}.
+         */
+        public Builder bufferPolicy(AdaptiveBufferPolicy policy) {
+            bufferPolicy = policy;
+            return this;
+        }
+
+        public Builder loadControlCreator(LoadControlCreator creator) {
+            loadControlCreator = creator;
+            return this;
+        }
+
+        /**
+         * Sets the buffer the player needs to start playback and to resume it after a
+         * rebuffer.
+         */
+        public Builder playerBufferMs(int minBufferMs, int minRebufferMs) {
+            this.minBufferMs = minBufferMs;
+            this.minRebufferMs = minRebufferMs;
+            return this;
+        }
+
+        /**
+         * Sets the load control and player thresholds from {@code profile}, for example
+         * {@link LoadControlProfile#FAST_START} or {@link LoadControlProfile#STEADY}.
+         */
+        public Builder loadControlProfile(LoadControlProfile profile) {
+            loadControlCreator = profile;
+            return playerBufferMs(profile.minBufferMs, profile.minRebufferMs);
+        }
+
+        /**
+         * Sets how bandwidth is estimated from completed transfers. Defaults to the sliding
+         * median of {@link jp.satorufujiwara.player.PercentileBandwidthEstimator}.
+         */
+        public Builder bandwidthEstimatorCreator(BandwidthEstimatorCreator creator) {
+            bandwidthEstimatorCreator = creator;
+            return this;
+        }
+
+        /**
+         * Starts from the estimate saved in {@code store} by earlier sessions on the same
+         * network, and saves the estimates of this one.
+         *
+         * @param perHost Whether to keep a separate estimate for the host of the uri.
+         */
+        public Builder bandwidthEstimateStore(BandwidthEstimateStore store, boolean perHost) {
+            estimateStore = store;
+            estimatePerHost = perHost;
+            return this;
+        }
+
+        /**
+         * Keeps live playback {@code targetOffsetMs} behind the live edge, with the default
+         * thresholds of {@link #lowLatencyLive(long, long, long)}.
+         */
+        public Builder lowLatencyLive(long targetOffsetMs) {
+            return lowLatencyLive(targetOffsetMs,
+                    HlsRendererBuilder.DEFAULT_LIVE_CATCH_UP_THRESHOLD_MS,
+                    HlsRendererBuilder.DEFAULT_LIVE_SEEK_THRESHOLD_MS);
+        }
+
+        /**
+         * Keeps live playback {@code targetOffsetMs} behind the live edge. Once it falls further
+         * behind by {@code catchUpThresholdMs}, it plays slightly faster on API 23 and above,
+         * or seeks below. Once it falls behind by {@code seekThresholdMs}, it seeks to the
+         * target. The latency is reported through
+         * {@link HlsEventProxy#setLiveLatencyListener}.
+         */
+        public Builder lowLatencyLive(long targetOffsetMs, long catchUpThresholdMs,
+                long seekThresholdMs) {
+            liveTargetOffsetMs = targetOffsetMs;
+            liveCatchUpThresholdMs = catchUpThresholdMs;
+            liveSeekThresholdMs = seekThresholdMs;
+            return this;
+        }
+
         public HlsVideoSource build() {
             if (TextUtils.isEmpty(userAgent)) {
                 throw new IllegalArgumentException("UserAgent must not be null.");
@@ -105,6 +277,11 @@ public class HlsVideoSource extends VideoSource {
             if (uri == null) {
                 throw new IllegalArgumentException("Url must not be null.");
             }
+            if (liveTargetOffsetMs >= 0 && (liveCatchUpThresholdMs <= 0
+                    || liveSeekThresholdMs < liveCatchUpThresholdMs)) {
+                throw new IllegalArgumentException(
+                        "Live thresholds must be positive and the seek one the larger.");
+            }
             if (eventHandler == null) {
                 eventHandler = new Handler(Looper.getMainLooper());
             }
@@ -0,0 +1,114 @@
+package jp.satorufujiwara.player.hls;
+
+import com.google.android.exoplayer.util.UriUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An {@code EXT-X-I-FRAME-STREAM-INF} rendition of a master playlist, whose media playlist lists
+ * the byte ranges of the keyframes of a variant.
+ * {@link com.google.android.exoplayer.hls.HlsPlaylistParser} skips these, so they are read from
+ * the raw master playlist.
+ */
+public final class IFrameVariant {
+
+    private static final String TAG = "#EXT-X-I-FRAME-STREAM-INF:";
+
+    public final String url;
+    public final int bandwidth;
+    /** The width, or -1 if it is not known. */
+    public final int width;
+    /** The height, or -1 if it is not known. */
+    public final int height;
+
+    IFrameVariant(String url, int bandwidth, int width, int height) {
+        this.url = url;
+        this.bandwidth = bandwidth;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the I-frame renditions listed in {@code masterPlaylist}, which may be empty.
+     */
+    static List<IFrameVariant> parse(String baseUri, String masterPlaylist) {
+        List<IFrameVariant> variants = null;
+        for (String line : masterPlaylist.split("\r?\n")) {
+            line = line.trim();
+            if (!line.startsWith(TAG)) {
+                continue;
+            }
+            final String attributes = line.substring(TAG.length());
+            final String uri = getAttribute(attributes, "URI");
+            if (uri == null) {
+                continue;
+            }
+            int width = -1;
+            int height = -1;
+            final String resolution = getAttribute(attributes, "RESOLUTION");
+            if (resolution != null) {
+                final int x = resolution.indexOf('x');
+                if (x != -1) {
+                    width = parseInt(resolution.substring(0, x), -1);
+                    height = parseInt(resolution.substring(x + 1), -1);
+                }
+            }
+            if (variants == null) {
+                variants = new ArrayList<>();
+            }
+            variants.add(new IFrameVariant(UriUtil.resolve(baseUri, uri),
+                    parseInt(getAttribute(attributes, "BANDWIDTH"), 0), width, height));
+        }
+        return variants == null ? Collections.<IFrameVariant>emptyList()
+                : Collections.unmodifiableList(variants);
+    }
+
+    /**
+     * Returns the value of {@code name} in an attribute list, without quotes, or null.
+     */
+    private static String getAttribute(String attributes, String name) {
+        int start = 0;
+        while (start < attributes.length()) {
+            final int equals = attributes.indexOf('=', start);
+            if (equals == -1) {
+                return null;
+            }
+            final String key = attributes.substring(start, equals).trim();
+            int end;
+            String value;
+            if (equals + 1 < attributes.length() && attributes.charAt(equals + 1) == '"') {
+                end = attributes.indexOf('"', equals + 2);
+                if (end == -1) {
+                    return null;
+                }
+                value = attributes.substring(equals + 2, end);
+                end = attributes.indexOf(',', end);
+            } else {
+                end = attributes.indexOf(',', equals);
+                value = attributes.substring(equals + 1, end == -1 ? attributes.length() : end);
+            }
+            if (key.equals(name)) {
+                return value;
+            }
+            if (end == -1) {
+                return null;
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+}
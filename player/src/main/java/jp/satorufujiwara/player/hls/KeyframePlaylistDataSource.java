@@ -0,0 +1,143 @@
+package jp.satorufujiwara.player.hls;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.UriDataSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * A {@link UriDataSource} that aligns the keyframes of I-frame playlists to whole milliseconds.
+ * <p>
+ * {@link jp.satorufujiwara.player.Player#seekTo(long)} takes milliseconds. A seek before the
+ * start of a keyframe selects the segment before it. A seek after it marks the keyframe decode
+ * only, so it is never shown. Each {@code EXTINF} is therefore rewritten so that every segment
+ * starts on a millisecond, at most a millisecond before it did. Other uris are read from
+ * upstream.
+ */
+final class KeyframePlaylistDataSource implements UriDataSource {
+
+    private static final String I_FRAMES_ONLY_TAG = "#EXT-X-I-FRAMES-ONLY";
+    private static final String EXTINF_TAG = "#EXTINF:";
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private final DataSource upstream;
+
+    private DataSpec dataSpec;
+    private boolean readingUpstream;
+    private byte[] data;
+    private int dataOffset;
+
+    KeyframePlaylistDataSource(DataSource upstream) {
+        this.upstream = upstream;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        this.dataSpec = dataSpec;
+        final String path = dataSpec.uri.getPath();
+        if (path == null || !(path.endsWith(".m3u8") || path.endsWith(".m3u"))) {
+            readingUpstream = true;
+            return upstream.open(dataSpec);
+        }
+        try {
+            upstream.open(dataSpec);
+            data = alignKeyframes(new String(readFully(upstream), "UTF-8")).getBytes("UTF-8");
+        } finally {
+            upstream.close();
+        }
+        dataOffset = 0;
+        return data.length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        if (readingUpstream) {
+            return upstream.read(buffer, offset, readLength);
+        }
+        if (dataOffset == data.length) {
+            return C.RESULT_END_OF_INPUT;
+        }
+        int read = Math.min(readLength, data.length - dataOffset);
+        System.arraycopy(data, dataOffset, buffer, offset, read);
+        dataOffset += read;
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        data = null;
+        if (readingUpstream) {
+            readingUpstream = false;
+            upstream.close();
+        }
+    }
+
+    @Override
+    public String getUri() {
+        return dataSpec == null ? null : dataSpec.uri.toString();
+    }
+
+    /**
+     * Returns {@code playlist} with the durations rewritten so that segments start on whole
+     * milliseconds as {@link com.google.android.exoplayer.hls.HlsPlaylistParser} sums them, or
+     * unchanged if it is not an I-frame playlist.
+     */
+    static String alignKeyframes(String playlist) {
+        if (!playlist.contains(I_FRAMES_ONLY_TAG)) {
+            return playlist;
+        }
+        final String[] lines = playlist.split("\r?\n");
+        final StringBuilder builder = new StringBuilder(playlist.length() + lines.length * 4);
+        long endUs = 0;
+        long endMs = 0;
+        for (String line : lines) {
+            if (line.startsWith(EXTINF_TAG)) {
+                final int comma = line.indexOf(',');
+                final String value = line.substring(EXTINF_TAG.length(),
+                        comma == -1 ? line.length() : comma);
+                double durationSecs;
+                try {
+                    durationSecs = Double.parseDouble(value.trim());
+                } catch (NumberFormatException e) {
+                    builder.append(line).append('\n');
+                    continue;
+                }
+                // The parser truncates every duration to microseconds and sums them.
+                endUs += (long) (durationSecs * C.MICROS_PER_SECOND);
+                final long startMs = endMs;
+                endMs = endUs / 1000;
+                builder.append(EXTINF_TAG).append(formatDuration(endMs - startMs));
+                if (comma != -1) {
+                    builder.append(line, comma, line.length());
+                }
+                builder.append('\n');
+            } else {
+                builder.append(line).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Formats whole milliseconds with a tenth of a microsecond added, so that the truncation of
+     * the parser does not drop below them.
+     */
+    private static String formatDuration(long durationMs) {
+        return String.format(Locale.US, "%d.%03d0001", durationMs / 1000, durationMs % 1000);
+    }
+
+    private static byte[] readFully(DataSource source) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int read;
+        while ((read = source.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+}
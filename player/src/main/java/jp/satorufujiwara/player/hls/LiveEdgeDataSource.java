@@ -0,0 +1,77 @@
+package jp.satorufujiwara.player.hls;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.UriDataSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * A {@link UriDataSource} that reports the media playlists and segments read through it to a
+ * {@link LiveEdgeTracker}.
+ */
+final class LiveEdgeDataSource implements UriDataSource {
+
+    private final DataSource upstream;
+    private final LiveEdgeTracker tracker;
+
+    private DataSpec dataSpec;
+    private ByteArrayOutputStream playlistOutput;
+    private boolean segment;
+
+    LiveEdgeDataSource(DataSource upstream, LiveEdgeTracker tracker) {
+        this.upstream = upstream;
+        this.tracker = tracker;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        this.dataSpec = dataSpec;
+        final String path = dataSpec.uri.getPath();
+        if (path != null && (path.endsWith(".m3u8") || path.endsWith(".m3u"))) {
+            playlistOutput = new ByteArrayOutputStream();
+        } else {
+            segment = dataSpec.position == 0 && dataSpec.length == C.LENGTH_UNBOUNDED;
+        }
+        return upstream.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        int read = upstream.read(buffer, offset, readLength);
+        if (read != C.RESULT_END_OF_INPUT) {
+            if (playlistOutput != null) {
+                playlistOutput.write(buffer, offset, read);
+            }
+            return read;
+        }
+        final String uri = dataSpec.uri.toString();
+        if (playlistOutput != null) {
+            SegmentList list = SegmentList.parse(uri, new String(playlistOutput.toByteArray(),
+                    "UTF-8"));
+            playlistOutput = null;
+            if (list != null) {
+                tracker.onPlaylistLoaded(uri, list);
+            }
+        } else if (segment) {
+            segment = false;
+            tracker.onSegmentLoaded(uri);
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        playlistOutput = null;
+        segment = false;
+        upstream.close();
+    }
+
+    @Override
+    public String getUri() {
+        return dataSpec == null ? null : dataSpec.uri.toString();
+    }
+
+}
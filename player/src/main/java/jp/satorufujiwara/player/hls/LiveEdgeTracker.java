@@ -0,0 +1,117 @@
+package jp.satorufujiwara.player.hls;
+
+import com.google.android.exoplayer.util.Clock;
+import com.google.android.exoplayer.util.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Estimates the live edge of an HLS stream in the time base of the player.
+ * <p>
+ * A {@link LiveEdgeDataSource} reports the live media playlists and the segments read by the
+ * main chunk source. For every segment it records how much media the playlist listed after it.
+ * When the matching load completes, the end time of the loaded media plus that duration is the
+ * live edge at the time the playlist was loaded, and the edge is then advanced with the clock.
+ */
+final class LiveEdgeTracker {
+
+    static final long UNKNOWN = -1;
+
+    // Bounds the segments read but not reported as loaded, as canceled loads are never reported.
+    private static final int MAX_PENDING = 8;
+
+    private final Clock clock;
+    private final HashMap<String, LoadedPlaylist> playlists = new HashMap<>();
+    private final ArrayDeque<PendingSegment> pending = new ArrayDeque<>();
+    private long edgeMs = UNKNOWN;
+    private long edgeAtMs;
+
+    LiveEdgeTracker() {
+        this(new SystemClock());
+    }
+
+    LiveEdgeTracker(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Called on the loading thread when a media playlist was read.
+     */
+    synchronized void onPlaylistLoaded(String uri, SegmentList list) {
+        if (list.ended) {
+            playlists.remove(uri);
+        } else {
+            playlists.put(uri, new LoadedPlaylist(list, clock.elapsedRealtime()));
+        }
+    }
+
+    /**
+     * Called on the loading thread when a segment was read completely.
+     */
+    synchronized void onSegmentLoaded(String uri) {
+        for (LoadedPlaylist playlist : playlists.values()) {
+            final int index = playlist.list.uris.indexOf(uri);
+            if (index != -1) {
+                if (pending.size() == MAX_PENDING) {
+                    pending.poll();
+                }
+                pending.add(new PendingSegment(playlist.list.getDurationAfterMs(index),
+                        playlist.loadedAtMs));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Called when a media load of the main sample source completed, in the order the loads
+     * were read.
+     */
+    synchronized void onMediaLoadCompleted(long mediaEndTimeMs) {
+        PendingSegment segment = pending.poll();
+        if (segment == null) {
+            return;
+        }
+        edgeMs = mediaEndTimeMs + segment.durationAfterMs;
+        edgeAtMs = segment.playlistLoadedAtMs;
+    }
+
+    /**
+     * Returns the current live edge in the time base of the player, or {@link #UNKNOWN}.
+     */
+    synchronized long getLiveEdgeMs() {
+        if (edgeMs == UNKNOWN) {
+            return UNKNOWN;
+        }
+        return edgeMs + clock.elapsedRealtime() - edgeAtMs;
+    }
+
+    synchronized void reset() {
+        playlists.clear();
+        pending.clear();
+        edgeMs = UNKNOWN;
+    }
+
+    private static final class LoadedPlaylist {
+
+        final SegmentList list;
+        final long loadedAtMs;
+
+        LoadedPlaylist(SegmentList list, long loadedAtMs) {
+            this.list = list;
+            this.loadedAtMs = loadedAtMs;
+        }
+    }
+
+    private static final class PendingSegment {
+
+        final long durationAfterMs;
+        final long playlistLoadedAtMs;
+
+        PendingSegment(long durationAfterMs, long playlistLoadedAtMs) {
+            this.durationAfterMs = durationAfterMs;
+            this.playlistLoadedAtMs = playlistLoadedAtMs;
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package jp.satorufujiwara.player.hls;
+
+import android.os.Handler;
+
+import jp.satorufujiwara.player.Player;
+
+/**
+ * Keeps live playback near a target offset from the live edge estimated by a
+ * {@link LiveEdgeTracker}. Once playback drifts further behind than the catch-up threshold, it
+ * plays slightly faster until it is back at the target. Once it drifts beyond the seek
+ * threshold, or cannot change speed below API 23, it seeks to the target instead.
+ */
+final class LiveLatencyController implements Runnable {
+
+    static final long CHECK_INTERVAL_MS = 1000;
+
+    private final HlsEventProxy eventProxy;
+    private final Handler handler;
+    private final LiveLatencyPolicy policy;
+    private boolean running;
+
+    LiveLatencyController(HlsEventProxy eventProxy, LiveEdgeTracker tracker, Handler handler,
+            long targetOffsetMs, long catchUpThresholdMs, long seekThresholdMs) {
+        this.eventProxy = eventProxy;
+        this.handler = handler;
+        policy = new LiveLatencyPolicy(tracker, targetOffsetMs, catchUpThresholdMs,
+                seekThresholdMs);
+    }
+
+    void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        handler.postDelayed(this, CHECK_INTERVAL_MS);
+    }
+
+    void stop() {
+        running = false;
+        handler.removeCallbacks(this);
+        final Player player = eventProxy.getAttachedPlayer();
+        if (policy.reset() && player != null) {
+            player.setPlaybackSpeed(1f);
+        }
+        eventProxy.invokeOnLiveLatency(HlsEventProxy.UNKNOWN_LIVE_LATENCY, 1f);
+    }
+
+    @Override
+    public void run() {
+        if (!running) {
+            return;
+        }
+        update();
+        handler.postDelayed(this, CHECK_INTERVAL_MS);
+    }
+
+    /**
+     * Measures the latency and corrects it.
+     */
+    void update() {
+        final Player player = eventProxy.getAttachedPlayer();
+        if (player == null) {
+            return;
+        }
+        final long latencyMs = policy.getLatencyMs(player.getCurrentPosition());
+        if (latencyMs == LiveEdgeTracker.UNKNOWN) {
+            return;
+        }
+        eventProxy.invokeOnLiveLatency(latencyMs,
+                policy.isCatchingUp() ? LiveLatencyPolicy.CATCH_UP_SPEED : 1f);
+        if (player.getPlaybackState() != Player.STATE_READY || !player.getPlayWhenReady()) {
+            return;
+        }
+        switch (policy.decide(latencyMs, Player.isPlaybackSpeedSupported())) {
+            case LiveLatencyPolicy.ACTION_SEEK:
+                player.setPlaybackSpeed(1f);
+                final long targetMs = policy.getTargetPositionMs();
+                if (targetMs != LiveEdgeTracker.UNKNOWN) {
+                    player.seekTo(targetMs);
+                }
+                break;
+            case LiveLatencyPolicy.ACTION_CATCH_UP:
+                player.setPlaybackSpeed(LiveLatencyPolicy.CATCH_UP_SPEED);
+                break;
+            case LiveLatencyPolicy.ACTION_STOP_CATCHING_UP:
+                player.setPlaybackSpeed(1f);
+                break;
+            default:
+                break;
+        }
+    }
+
+}
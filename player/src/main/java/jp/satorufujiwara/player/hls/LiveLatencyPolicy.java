@@ -0,0 +1,88 @@
+package jp.satorufujiwara.player.hls;
+
+/**
+ * Decides how a {@link LiveLatencyController} corrects the latency behind the live edge
+ * estimated by a {@link LiveEdgeTracker}, and remembers whether playback is catching up.
+ */
+final class LiveLatencyPolicy {
+
+    static final float CATCH_UP_SPEED = 1.05f;
+    // Playback returns to normal speed this close to the target, so that it does not oscillate.
+    static final long CAUGHT_UP_MS = 250;
+
+    static final int ACTION_NONE = 0;
+    static final int ACTION_CATCH_UP = 1;
+    static final int ACTION_STOP_CATCHING_UP = 2;
+    static final int ACTION_SEEK = 3;
+
+    private final LiveEdgeTracker tracker;
+    private final long targetOffsetMs;
+    private final long catchUpThresholdMs;
+    private final long seekThresholdMs;
+    private boolean catchingUp;
+
+    LiveLatencyPolicy(LiveEdgeTracker tracker, long targetOffsetMs, long catchUpThresholdMs,
+            long seekThresholdMs) {
+        this.tracker = tracker;
+        this.targetOffsetMs = targetOffsetMs;
+        this.catchUpThresholdMs = catchUpThresholdMs;
+        this.seekThresholdMs = seekThresholdMs;
+    }
+
+    /**
+     * Returns how far {@code positionMs} is behind the live edge, or
+     * {@link LiveEdgeTracker#UNKNOWN}.
+     */
+    long getLatencyMs(long positionMs) {
+        final long edgeMs = tracker.getLiveEdgeMs();
+        return edgeMs == LiveEdgeTracker.UNKNOWN ? LiveEdgeTracker.UNKNOWN
+                : Math.max(0, edgeMs - positionMs);
+    }
+
+    /**
+     * Returns the position that is the target offset behind the live edge, or
+     * {@link LiveEdgeTracker#UNKNOWN}.
+     */
+    long getTargetPositionMs() {
+        final long edgeMs = tracker.getLiveEdgeMs();
+        return edgeMs == LiveEdgeTracker.UNKNOWN ? LiveEdgeTracker.UNKNOWN
+                : Math.max(0, edgeMs - targetOffsetMs);
+    }
+
+    /**
+     * Returns one of the {@code ACTION_*} constants for {@code latencyMs} of latency while
+     * playing. Catching up is only chosen if {@code canChangeSpeed}, and a seek otherwise.
+     */
+    int decide(long latencyMs, boolean canChangeSpeed) {
+        final long driftMs = latencyMs - targetOffsetMs;
+        if (driftMs > seekThresholdMs) {
+            catchingUp = false;
+            return ACTION_SEEK;
+        } else if (driftMs > catchUpThresholdMs && !catchingUp) {
+            if (!canChangeSpeed) {
+                // The speed cannot be changed, so seeking is the only way to catch up.
+                return ACTION_SEEK;
+            }
+            catchingUp = true;
+            return ACTION_CATCH_UP;
+        } else if (driftMs <= CAUGHT_UP_MS && catchingUp) {
+            catchingUp = false;
+            return ACTION_STOP_CATCHING_UP;
+        }
+        return ACTION_NONE;
+    }
+
+    boolean isCatchingUp() {
+        return catchingUp;
+    }
+
+    /**
+     * Forgets that playback is catching up, and returns whether it was.
+     */
+    boolean reset() {
+        final boolean wasCatchingUp = catchingUp;
+        catchingUp = false;
+        return wasCatchingUp;
+    }
+
+}
@@ -0,0 +1,225 @@
+package jp.satorufujiwara.player.hls;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * The last known state of one live media playlist, which refreshes are merged into.
+ * <p>
+ * A refresh is scanned line by line. The playlist tags before the first segment and the lines
+ * after the last one are taken from the refresh. A segment is its uri and the segment tags
+ * before it. Segments are kept by media sequence number, so segments that are already known
+ * with the same lines are not copied again, and segments left out of a delta update by
+ * {@code EXT-X-SKIP} are taken from the known ones.
+ */
+final class LivePlaylist {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String TAG_MEDIA_SEQUENCE = "#EXT-X-MEDIA-SEQUENCE:";
+    private static final String TAG_SERVER_CONTROL = "#EXT-X-SERVER-CONTROL:";
+    private static final String TAG_SKIP = "#EXT-X-SKIP:";
+    private static final String TAG_DISCONTINUITY = "#EXT-X-DISCONTINUITY";
+    private static final String TAG_ENDLIST = "#EXT-X-ENDLIST";
+    private static final String TAG_STREAM_INF = "#EXT-X-STREAM-INF";
+    private static final String ATTR_CAN_SKIP_UNTIL = "CAN-SKIP-UNTIL=";
+    private static final String ATTR_SKIPPED_SEGMENTS = "SKIPPED-SEGMENTS=";
+    // Tags that apply to the segment after them. EXT-X-DISCONTINUITY is matched as a whole line,
+    // as EXT-X-DISCONTINUITY-SEQUENCE is a playlist tag.
+    private static final String[] SEGMENT_TAGS = {"#EXTINF", "#EXT-X-BYTERANGE",
+            "#EXT-X-KEY", "#EXT-X-MAP", "#EXT-X-PROGRAM-DATE-TIME", "#EXT-X-DATERANGE",
+            "#EXT-X-GAP", "#EXT-X-BITRATE", "#EXT-X-PART:"};
+
+    String etag;
+    String lastModified;
+    String lastRequestUri;
+
+    private long loadedAtMs;
+    private long canSkipUntilMs = -1;
+    private boolean live;
+    private long mediaSequence;
+    private ArrayList<String> segments = new ArrayList<>();
+    private byte[] data;
+    private int lastNewSegments;
+
+    /**
+     * Returns whether a delta update may be requested, which the server allows while the last
+     * update is younger than half its skip boundary.
+     */
+    synchronized boolean canRequestDelta(long nowMs) {
+        return canSkipUntilMs > 0 && live && nowMs - loadedAtMs < canSkipUntilMs / 2;
+    }
+
+    /**
+     * Returns whether the last update was a media playlist without {@code EXT-X-ENDLIST}.
+     */
+    synchronized boolean isLive() {
+        return live;
+    }
+
+    /**
+     * Returns the merged playlist.
+     */
+    synchronized byte[] getData() {
+        return data;
+    }
+
+    synchronized int getLastNewSegments() {
+        return lastNewSegments;
+    }
+
+    /**
+     * Marks the playlist as loaded without changes.
+     */
+    synchronized void onNotModified(long nowMs) {
+        loadedAtMs = nowMs;
+        lastNewSegments = 0;
+    }
+
+    /**
+     * Merges a refresh. Returns false, leaving the state unchanged, if it skips segments that
+     * are not known.
+     */
+    synchronized boolean update(byte[] body, long nowMs) {
+        final String text = new String(body, UTF_8);
+        final int length = text.length();
+        StringBuilder header = new StringBuilder();
+        long sequence = 0;
+        long skipUntilMs = -1;
+        boolean end = false;
+        boolean master = false;
+        ArrayList<String> merged = new ArrayList<>();
+        int newSegments = 0;
+        boolean inSegments = false;
+        int segmentStart = -1;
+        int lineStart = 0;
+        int tailStart = length;
+        while (lineStart < length) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            final int next = lineEnd == -1 ? length : lineEnd + 1;
+            if (lineEnd == -1) {
+                lineEnd = length;
+            }
+            if (lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            if (lineEnd == lineStart) {
+                lineStart = next;
+                continue;
+            }
+            if (text.startsWith(TAG_STREAM_INF, lineStart)) {
+                master = true;
+                break;
+            } else if (text.startsWith(TAG_SKIP, lineStart)) {
+                final long skipped = parseAttribute(text, lineStart, lineEnd,
+                        ATTR_SKIPPED_SEGMENTS);
+                final long first = sequence - mediaSequence;
+                if (skipped < 0 || first < 0 || first + skipped > segments.size()) {
+                    return false;
+                }
+                merged.addAll(segments.subList((int) first, (int) (first + skipped)));
+                inSegments = true;
+                segmentStart = next;
+                tailStart = next;
+            } else if (text.charAt(lineStart) != '#') {
+                // A segment uri ends the lines of its segment.
+                if (segmentStart == -1) {
+                    segmentStart = lineStart;
+                }
+                final long index = sequence + merged.size() - mediaSequence;
+                final boolean known = index >= 0 && index < segments.size();
+                final String segment = known ? segments.get((int) index) : null;
+                if (segment != null && segment.length() == lineEnd - segmentStart + 1
+                        && text.regionMatches(segmentStart, segment, 0, segment.length() - 1)) {
+                    merged.add(segment);
+                } else {
+                    merged.add(text.substring(segmentStart, lineEnd) + "\n");
+                    if (!known) {
+                        newSegments++;
+                    }
+                }
+                inSegments = true;
+                segmentStart = next;
+                tailStart = next;
+            } else if (!inSegments) {
+                if (isSegmentTag(text, lineStart, lineEnd)) {
+                    inSegments = true;
+                    segmentStart = lineStart;
+                } else {
+                    if (text.startsWith(TAG_MEDIA_SEQUENCE, lineStart)) {
+                        sequence = Math.max(0, parseLong(text,
+                                lineStart + TAG_MEDIA_SEQUENCE.length(), lineEnd));
+                    } else if (text.startsWith(TAG_SERVER_CONTROL, lineStart)) {
+                        final long seconds = parseAttribute(text, lineStart, lineEnd,
+                                ATTR_CAN_SKIP_UNTIL);
+                        skipUntilMs = seconds < 0 ? -1 : seconds * 1000;
+                    }
+                    header.append(text, lineStart, lineEnd).append('\n');
+                }
+            } else if (text.startsWith(TAG_ENDLIST, lineStart)) {
+                end = true;
+            }
+            lineStart = next;
+        }
+        if (master || end) {
+            // Not refreshed, so there is nothing to merge into.
+            live = false;
+            segments = new ArrayList<>();
+            data = body;
+            lastNewSegments = 0;
+            return true;
+        }
+
+        StringBuilder out = new StringBuilder(length + header.length());
+        out.append(header);
+        for (int i = 0; i < merged.size(); i++) {
+            out.append(merged.get(i));
+        }
+        out.append(text, tailStart, length);
+        mediaSequence = sequence;
+        segments = merged;
+        canSkipUntilMs = skipUntilMs;
+        live = true;
+        data = out.toString().getBytes(UTF_8);
+        loadedAtMs = nowMs;
+        lastNewSegments = newSegments;
+        return true;
+    }
+
+    private static boolean isSegmentTag(String text, int lineStart, int lineEnd) {
+        if (lineEnd - lineStart == TAG_DISCONTINUITY.length()
+                && text.startsWith(TAG_DISCONTINUITY, lineStart)) {
+            return true;
+        }
+        for (String tag : SEGMENT_TAGS) {
+            if (text.startsWith(tag, lineStart)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the integer part of attribute {@code name} in the line, or -1 if it is missing.
+     */
+    private static long parseAttribute(String text, int lineStart, int lineEnd, String name) {
+        int start = text.indexOf(name, lineStart);
+        if (start == -1 || start >= lineEnd) {
+            return -1;
+        }
+        return parseLong(text, start + name.length(), lineEnd);
+    }
+
+    private static long parseLong(String text, int start, int end) {
+        long value = 0;
+        int i = start;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return i == start ? -1 : value;
+    }
+
+}
@@ -0,0 +1,190 @@
+package jp.satorufujiwara.player.hls;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+import com.google.android.exoplayer.upstream.HttpDataSource.InvalidResponseCodeException;
+import com.google.android.exoplayer.upstream.UriDataSource;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link UriDataSource} that refreshes live media playlists with conditional requests and
+ * delta updates, and serves them merged into their last known state. Playlists are requested
+ * with the http data source of the upstream, if known, so that conditional headers can be set,
+ * and otherwise with the upstream. Other uris are read from upstream.
+ */
+final class LivePlaylistDataSource implements UriDataSource {
+
+    private static final String SKIP_PARAMETER = "_HLS_skip";
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private final LivePlaylistDataSourceCreator creator;
+    private final DataSource upstream;
+    private final HttpDataSource httpSource;
+
+    private DataSpec dataSpec;
+    private boolean readingUpstream;
+    private byte[] data;
+    private int dataOffset;
+
+    /**
+     * @param upstream   The data source segments are read from.
+     * @param httpSource The http data source of {@code upstream}, or null if it is not known.
+     */
+    LivePlaylistDataSource(LivePlaylistDataSourceCreator creator, DataSource upstream,
+            HttpDataSource httpSource) {
+        this.creator = creator;
+        this.upstream = upstream;
+        this.httpSource = httpSource;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        this.dataSpec = dataSpec;
+        if (!isPlaylistRequest(dataSpec)) {
+            readingUpstream = true;
+            return upstream.open(dataSpec);
+        }
+        final String uri = dataSpec.uri.toString();
+        LivePlaylist playlist = creator.getPlaylist(uri);
+        final boolean known = playlist != null;
+        if (!known) {
+            playlist = new LivePlaylist();
+        }
+        data = load(uri, playlist,
+                known && playlist.canRequestDelta(SystemClock.elapsedRealtime()));
+        if (playlist.isLive()) {
+            creator.putPlaylist(uri, playlist);
+        } else if (known) {
+            creator.removePlaylist(uri);
+        }
+        dataOffset = 0;
+        return data.length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        if (readingUpstream) {
+            return upstream.read(buffer, offset, readLength);
+        }
+        if (dataOffset == data.length) {
+            return C.RESULT_END_OF_INPUT;
+        }
+        int read = Math.min(readLength, data.length - dataOffset);
+        System.arraycopy(data, dataOffset, buffer, offset, read);
+        dataOffset += read;
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        data = null;
+        if (readingUpstream) {
+            readingUpstream = false;
+            upstream.close();
+        }
+    }
+
+    @Override
+    public String getUri() {
+        return dataSpec == null ? null : dataSpec.uri.toString();
+    }
+
+    private byte[] load(String uri, LivePlaylist playlist, boolean delta) throws IOException {
+        final Uri requestUri = delta
+                ? dataSpec.uri.buildUpon().appendQueryParameter(SKIP_PARAMETER, "YES").build()
+                : dataSpec.uri;
+        final String request = requestUri.toString();
+        final DataSource source = httpSource != null ? httpSource : upstream;
+        if (httpSource != null && request.equals(playlist.lastRequestUri)) {
+            if (playlist.etag != null) {
+                httpSource.setRequestProperty("If-None-Match", playlist.etag);
+            }
+            if (playlist.lastModified != null) {
+                httpSource.setRequestProperty("If-Modified-Since", playlist.lastModified);
+            }
+        }
+        byte[] body;
+        try {
+            source.open(new DataSpec(requestUri, 0, C.LENGTH_UNBOUNDED, null, dataSpec.flags));
+            body = readFully(source);
+            if (httpSource != null) {
+                playlist.etag = getHeader(httpSource.getResponseHeaders(), "ETag");
+                playlist.lastModified = getHeader(httpSource.getResponseHeaders(),
+                        "Last-Modified");
+            }
+            playlist.lastRequestUri = request;
+        } catch (InvalidResponseCodeException e) {
+            if (e.responseCode != 304 || playlist.getData() == null) {
+                throw e;
+            }
+            playlist.onNotModified(SystemClock.elapsedRealtime());
+            creator.onRefreshed(uri, 0, playlist.getData().length, 0, 0);
+            return playlist.getData();
+        } finally {
+            if (httpSource != null) {
+                // The http source may be shared with upstream, which must not send them.
+                httpSource.clearRequestProperty("If-None-Match");
+                httpSource.clearRequestProperty("If-Modified-Since");
+            }
+            source.close();
+        }
+
+        final long startNs = System.nanoTime();
+        if (!playlist.update(body, SystemClock.elapsedRealtime())) {
+            // Skipped segments are not known any more, so the whole playlist is needed.
+            playlist.lastRequestUri = null;
+            return load(uri, playlist, false);
+        }
+        final long mergeTimeUs = (System.nanoTime() - startNs) / 1000;
+        final byte[] merged = playlist.getData();
+        creator.onRefreshed(uri, body.length, merged.length, mergeTimeUs,
+                playlist.getLastNewSegments());
+        return merged;
+    }
+
+    private static byte[] readFully(DataSource source) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int read;
+        while ((read = source.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    private static String getHeader(Map<String, List<String>> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey()) && entry.getValue() != null
+                    && !entry.getValue().isEmpty()) {
+                return entry.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isPlaylistRequest(DataSpec dataSpec) {
+        final String scheme = dataSpec.uri.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+            return false;
+        }
+        if (dataSpec.position != 0 || dataSpec.length != C.LENGTH_UNBOUNDED
+                || dataSpec.postBody != null) {
+            return false;
+        }
+        String path = dataSpec.uri.getPath();
+        return path != null && (path.endsWith(".m3u8") || path.endsWith(".m3u"));
+    }
+
+}
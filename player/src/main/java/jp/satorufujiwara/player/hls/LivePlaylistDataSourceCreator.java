@@ -0,0 +1,151 @@
+package jp.satorufujiwara.player.hls;
+
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DefaultHttpDataSource;
+import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+import com.google.android.exoplayer.upstream.TransferListener;
+
+import android.content.Context;
+
+import java.util.HashMap;
+
+import jp.satorufujiwara.player.ContentDataSourceCreator;
+import jp.satorufujiwara.player.DataSourceCreator;
+import jp.satorufujiwara.player.HttpDataSourceCreator;
+import jp.satorufujiwara.player.ManifestDataSourceCreator;
+
+/**
+ * A {@link DataSourceCreator} that makes refreshes of live media playlists cheaper, which
+ * matters for long DVR windows. Playlists are requested with {@code If-None-Match} and
+ * {@code If-Modified-Since}. They are also requested as delta updates with {@code _HLS_skip}
+ * when the server announces {@code CAN-SKIP-UNTIL}. The refresh is merged into the last known
+ * playlist, so that only segments after the known ones are copied. The chunk source still
+ * reads the whole merged playlist. Segments and playlists are read from the upstream creator.
+ * Conditional requests need it to be an {@link HttpDataSourceCreator}, or to create
+ * {@link HttpDataSource}s. Otherwise every refresh transfers the playlist, or its delta.
+ */
+public class LivePlaylistDataSourceCreator implements ContentDataSourceCreator,
+        ManifestDataSourceCreator {
+
+    /**
+     * Receives how each refresh compared to transferring the whole playlist, on the loading
+     * thread.
+     */
+    public interface RefreshListener {
+
+        /**
+         * @param uri              The playlist uri.
+         * @param transferredBytes The bytes transferred, which is 0 if it was not modified.
+         * @param playlistBytes    The bytes of the merged playlist, which a plain request would
+         *                         have transferred.
+         * @param mergeTimeUs      The time taken to merge the refresh.
+         * @param newSegments      The number of segments that were not known.
+         */
+        void onPlaylistRefreshed(String uri, int transferredBytes, int playlistBytes,
+                long mergeTimeUs, int newSegments);
+
+    }
+
+    private final DataSourceCreator upstreamCreator;
+    private final RefreshListener refreshListener;
+    private final HashMap<String, LivePlaylist> playlists;
+
+    public LivePlaylistDataSourceCreator() {
+        this(null, null);
+    }
+
+    /**
+     * @param upstreamCreator Creates the data source segments and playlists are read from. May
+     *                        be null to use {@link DefaultUriDataSource}.
+     * @param refreshListener Receives the result of every refresh. May be null.
+     */
+    public LivePlaylistDataSourceCreator(DataSourceCreator upstreamCreator,
+            RefreshListener refreshListener) {
+        this(upstreamCreator, refreshListener, new HashMap<String, LivePlaylist>());
+    }
+
+    private LivePlaylistDataSourceCreator(DataSourceCreator upstreamCreator,
+            RefreshListener refreshListener, HashMap<String, LivePlaylist> playlists) {
+        this.upstreamCreator = upstreamCreator;
+        this.refreshListener = refreshListener;
+        this.playlists = playlists;
+    }
+
+    @Override
+    public DataSource create(Context context, TransferListener listener, String userAgent) {
+        if (upstreamCreator == null) {
+            return new LivePlaylistDataSource(this,
+                    new DefaultUriDataSource(context, listener, userAgent),
+                    new DefaultHttpDataSource(userAgent, null, listener));
+        }
+        DataSource upstream = upstreamCreator.create(context, listener, userAgent);
+        HttpDataSource httpSource = null;
+        if (upstreamCreator instanceof HttpDataSourceCreator) {
+            httpSource = ((HttpDataSourceCreator) upstreamCreator).createHttpDataSource(context,
+                    listener, userAgent);
+        } else if (upstream instanceof HttpDataSource) {
+            httpSource = (HttpDataSource) upstream;
+        }
+        return new LivePlaylistDataSource(this, upstream, httpSource);
+    }
+
+    /**
+     * Passes {@code contentId} to the upstream creator. The known playlists stay shared.
+     */
+    @Override
+    public DataSourceCreator forContent(String contentId) {
+        if (upstreamCreator instanceof ContentDataSourceCreator) {
+            return new LivePlaylistDataSourceCreator(
+                    ((ContentDataSourceCreator) upstreamCreator).forContent(contentId),
+                    refreshListener, playlists);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the manifest creator of the upstream creator, so that manifests are
+     * not kept as live playlists.
+     */
+    @Override
+    public DataSourceCreator forManifest() {
+        return upstreamCreator instanceof ManifestDataSourceCreator
+                ? ((ManifestDataSourceCreator) upstreamCreator).forManifest() : null;
+    }
+
+    /**
+     * Forgets the known playlists.
+     */
+    public void clear() {
+        synchronized (playlists) {
+            playlists.clear();
+        }
+    }
+
+    LivePlaylist getPlaylist(String uri) {
+        synchronized (playlists) {
+            return playlists.get(uri);
+        }
+    }
+
+    void putPlaylist(String uri, LivePlaylist playlist) {
+        synchronized (playlists) {
+            playlists.put(uri, playlist);
+        }
+    }
+
+    void removePlaylist(String uri) {
+        synchronized (playlists) {
+            playlists.remove(uri);
+        }
+    }
+
+    void onRefreshed(String uri, int transferredBytes, int playlistBytes, long mergeTimeUs,
+            int newSegments) {
+        if (refreshListener != null) {
+            refreshListener.onPlaylistRefreshed(uri, transferredBytes, playlistBytes,
+                    mergeTimeUs, newSegments);
+        }
+    }
+
+}
@@ -0,0 +1,286 @@
+package jp.satorufujiwara.player.hls;
+
+import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.hls.HlsSampleSource;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+
+import java.io.IOException;
+
+/**
+ * Receives the events of {@link HlsSampleSource}s on a background thread and replays them to a
+ * listener on the event thread in batches.
+ * <p>
+ * Events are kept in a ring buffer of reused slots and delivered, in order, once
+ * {@code batchSize} events are pending or {@code intervalMs} after the first pending event. Load
+ * errors are delivered without delay together with the events before them.
+ */
+final class LoadEventBatcher implements HlsSampleSource.EventListener, Handler.Callback {
+
+    private static final int MSG_FLUSH = 0;
+
+    private static final int EVENT_LOAD_STARTED = 0;
+    private static final int EVENT_LOAD_COMPLETED = 1;
+    private static final int EVENT_LOAD_CANCELED = 2;
+    private static final int EVENT_LOAD_ERROR = 3;
+    private static final int EVENT_UPSTREAM_DISCARDED = 4;
+    private static final int EVENT_DOWNSTREAM_FORMAT_CHANGED = 5;
+
+    private static HandlerThread batchThread;
+
+    private final HlsSampleSource.EventListener listener;
+    private final Handler eventHandler;
+    private final Handler handler;
+    private final int intervalMs;
+    private final int batchSize;
+    private final Runnable deliverRunnable = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+
+    private LoadEvent[] events;
+    private int head;
+    private int size;
+    private boolean deliveryPending;
+    // Only accessed on the batch thread.
+    private boolean flushScheduled;
+
+    LoadEventBatcher(HlsSampleSource.EventListener listener, Handler eventHandler,
+            int intervalMs, int batchSize) {
+        this.listener = listener;
+        this.eventHandler = eventHandler;
+        this.handler = new Handler(getBatchLooper(), this);
+        this.intervalMs = intervalMs;
+        this.batchSize = batchSize;
+        events = new LoadEvent[batchSize * 2];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new LoadEvent();
+        }
+    }
+
+    /**
+     * Returns the handler sample sources should post their events to.
+     */
+    Handler getHandler() {
+        return handler;
+    }
+
+    @Override
+    public void onLoadStarted(int sourceId, long length, int type, int trigger, Format format,
+            long mediaStartTimeMs, long mediaEndTimeMs) {
+        synchronized (this) {
+            LoadEvent event = append(EVENT_LOAD_STARTED, sourceId);
+            event.bytes = length;
+            event.type = type;
+            event.trigger = trigger;
+            event.format = format;
+            event.mediaStartTimeMs = mediaStartTimeMs;
+            event.mediaEndTimeMs = mediaEndTimeMs;
+        }
+        onEventAppended();
+    }
+
+    @Override
+    public void onLoadCompleted(int sourceId, long bytesLoaded, int type, int trigger,
+            Format format, long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
+            long loadDurationMs) {
+        synchronized (this) {
+            LoadEvent event = append(EVENT_LOAD_COMPLETED, sourceId);
+            event.bytes = bytesLoaded;
+            event.type = type;
+            event.trigger = trigger;
+            event.format = format;
+            event.mediaStartTimeMs = mediaStartTimeMs;
+            event.mediaEndTimeMs = mediaEndTimeMs;
+            event.elapsedRealtimeMs = elapsedRealtimeMs;
+            event.loadDurationMs = loadDurationMs;
+        }
+        onEventAppended();
+    }
+
+    @Override
+    public void onLoadCanceled(int sourceId, long bytesLoaded) {
+        synchronized (this) {
+            append(EVENT_LOAD_CANCELED, sourceId).bytes = bytesLoaded;
+        }
+        onEventAppended();
+    }
+
+    @Override
+    public void onLoadError(int sourceId, IOException e) {
+        synchronized (this) {
+            append(EVENT_LOAD_ERROR, sourceId).error = e;
+        }
+        flush();
+    }
+
+    @Override
+    public void onUpstreamDiscarded(int sourceId, long mediaStartTimeMs, long mediaEndTimeMs) {
+        synchronized (this) {
+            LoadEvent event = append(EVENT_UPSTREAM_DISCARDED, sourceId);
+            event.mediaStartTimeMs = mediaStartTimeMs;
+            event.mediaEndTimeMs = mediaEndTimeMs;
+        }
+        onEventAppended();
+    }
+
+    @Override
+    public void onDownstreamFormatChanged(int sourceId, Format format, int trigger,
+            long mediaTimeMs) {
+        synchronized (this) {
+            LoadEvent event = append(EVENT_DOWNSTREAM_FORMAT_CHANGED, sourceId);
+            event.format = format;
+            event.trigger = trigger;
+            event.mediaStartTimeMs = mediaTimeMs;
+        }
+        onEventAppended();
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        if (msg.what == MSG_FLUSH) {
+            flush();
+            return true;
+        }
+        return false;
+    }
+
+    private void onEventAppended() {
+        final int pending;
+        synchronized (this) {
+            pending = size;
+        }
+        if (pending >= batchSize) {
+            flush();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            handler.sendEmptyMessageDelayed(MSG_FLUSH, intervalMs);
+        }
+    }
+
+    private void flush() {
+        if (flushScheduled) {
+            handler.removeMessages(MSG_FLUSH);
+            flushScheduled = false;
+        }
+        synchronized (this) {
+            if (deliveryPending || size == 0) {
+                return;
+            }
+            deliveryPending = true;
+        }
+        eventHandler.post(deliverRunnable);
+    }
+
+    /**
+     * Replays the pending events on the event thread. Slots are only reused once they have been
+     * delivered, so they are read without holding the lock.
+     */
+    private void deliver() {
+        final LoadEvent[] snapshot;
+        final int start;
+        final int count;
+        synchronized (this) {
+            deliveryPending = false;
+            snapshot = events;
+            start = head;
+            count = size;
+        }
+        for (int i = 0; i < count; i++) {
+            snapshot[(start + i) % snapshot.length].deliverTo(listener);
+        }
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                events[(head + i) % events.length].clear();
+            }
+            head = (head + count) % events.length;
+            size -= count;
+        }
+    }
+
+    /**
+     * Returns the next free slot. Must be called with the lock held.
+     */
+    private LoadEvent append(int kind, int sourceId) {
+        if (size == events.length) {
+            // The event thread is behind. Grow rather than drop events.
+            LoadEvent[] grown = new LoadEvent[events.length * 2];
+            for (int i = 0; i < size; i++) {
+                grown[i] = events[(head + i) % events.length];
+            }
+            for (int i = size; i < grown.length; i++) {
+                grown[i] = new LoadEvent();
+            }
+            events = grown;
+            head = 0;
+        }
+        LoadEvent event = events[(head + size) % events.length];
+        size++;
+        event.kind = kind;
+        event.sourceId = sourceId;
+        return event;
+    }
+
+    private static synchronized Looper getBatchLooper() {
+        if (batchThread == null) {
+            batchThread = new HandlerThread("HlsLoadEvents", Process.THREAD_PRIORITY_BACKGROUND);
+            batchThread.start();
+        }
+        return batchThread.getLooper();
+    }
+
+    private static final class LoadEvent {
+
+        int kind;
+        int sourceId;
+        long bytes;
+        int type;
+        int trigger;
+        Format format;
+        long mediaStartTimeMs;
+        long mediaEndTimeMs;
+        long elapsedRealtimeMs;
+        long loadDurationMs;
+        IOException error;
+
+        void deliverTo(HlsSampleSource.EventListener listener) {
+            switch (kind) {
+                case EVENT_LOAD_STARTED:
+                    listener.onLoadStarted(sourceId, bytes, type, trigger, format,
+                            mediaStartTimeMs, mediaEndTimeMs);
+                    break;
+                case EVENT_LOAD_COMPLETED:
+                    listener.onLoadCompleted(sourceId, bytes, type, trigger, format,
+                            mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs, loadDurationMs);
+                    break;
+                case EVENT_LOAD_CANCELED:
+                    listener.onLoadCanceled(sourceId, bytes);
+                    break;
+                case EVENT_LOAD_ERROR:
+                    listener.onLoadError(sourceId, error);
+                    break;
+                case EVENT_UPSTREAM_DISCARDED:
+                    listener.onUpstreamDiscarded(sourceId, mediaStartTimeMs, mediaEndTimeMs);
+                    break;
+                case EVENT_DOWNSTREAM_FORMAT_CHANGED:
+                    listener.onDownstreamFormatChanged(sourceId, format, trigger,
+                            mediaStartTimeMs);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void clear() {
+            format = null;
+            error = null;
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+package jp.satorufujiwara.player.hls;
+
+import android.os.Process;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded store of segments fetched ahead of playback, shared by the data sources of a
+ * {@link PrefetchDataSourceCreator}. Each segment is taken at most once. Segments that are not
+ * taken are dropped oldest first once the store holds more than its limit, or when another
+ * data source needs the room, so that segments left by a released player do not hold the store.
+ * Fetches in flight count against the limit with the average size of the segments fetched so
+ * far.
+ */
+final class LookaheadStore {
+
+    private static final long KEEP_ALIVE_MS = 30000;
+    private static final float ESTIMATE_WEIGHT = 0.3f;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "HlsPrefetch");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    interface Fetcher {
+
+        /**
+         * Reads {@code uri} completely. Fails if it is longer than {@code maxLength}.
+         */
+        byte[] fetch(String uri, long maxLength) throws IOException;
+
+    }
+
+    private final long maxBytes;
+    private final ExecutorService executor;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private long bytes;
+    private long estimatedBytes;
+
+    LookaheadStore(int maxParallelism, long maxBytes) {
+        this(newExecutor(maxParallelism), maxParallelism, maxBytes);
+    }
+
+    LookaheadStore(ExecutorService executor, int maxParallelism, long maxBytes) {
+        this.executor = executor;
+        this.maxBytes = maxBytes;
+        estimatedBytes = maxBytes / maxParallelism;
+    }
+
+    private static ExecutorService newExecutor(int maxParallelism) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxParallelism, maxParallelism,
+                KEEP_ALIVE_MS, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                THREAD_FACTORY);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Starts fetching {@code uri} for {@code owner}, unless it is already stored or being
+     * fetched, or the estimated size of the segment does not fit in the store. Fetched segments
+     * of other owners are dropped oldest first to make room.
+     */
+    synchronized void fetch(final String uri, Object owner, final Fetcher fetcher) {
+        if (entries.containsKey(uri)) {
+            return;
+        }
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes + estimatedBytes > maxBytes && it.hasNext()) {
+            Entry oldest = it.next();
+            if (oldest.owner != owner && oldest.isDone()) {
+                it.remove();
+                bytes -= oldest.charged;
+            }
+        }
+        if (bytes + estimatedBytes > maxBytes) {
+            return;
+        }
+        final Entry entry = new Entry(uri, owner);
+        entry.charged = estimatedBytes;
+        bytes += entry.charged;
+        entries.put(uri, entry);
+        entry.future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                byte[] data = null;
+                IOException error = null;
+                try {
+                    data = fetcher.fetch(uri, maxBytes);
+                } catch (IOException e) {
+                    error = e;
+                }
+                onFetched(entry, data, error);
+            }
+        });
+    }
+
+    /**
+     * Removes and returns the entry of {@code uri}, which may still be being fetched, or null.
+     */
+    synchronized Entry take(String uri) {
+        Entry entry = entries.remove(uri);
+        if (entry != null) {
+            bytes -= entry.charged;
+        }
+        return entry;
+    }
+
+    /**
+     * Drops the entries of {@code owner} whose uri is not in {@code keep}, cancelling their
+     * fetches.
+     */
+    synchronized void retain(Object owner, Collection<String> keep) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.owner == owner && !keep.contains(entry.uri)) {
+                it.remove();
+                drop(entry);
+            }
+        }
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            drop(entry);
+        }
+        entries.clear();
+    }
+
+    private void drop(Entry entry) {
+        bytes -= entry.charged;
+        entry.future.cancel(true);
+    }
+
+    private synchronized void onFetched(Entry entry, byte[] data, IOException error) {
+        entry.complete(data, error);
+        if (entries.get(entry.uri) != entry) {
+            // Taken or dropped while being fetched.
+            return;
+        }
+        if (data == null) {
+            entries.remove(entry.uri);
+            bytes -= entry.charged;
+            return;
+        }
+        estimatedBytes += (long) (ESTIMATE_WEIGHT * (data.length - estimatedBytes));
+        bytes += data.length - entry.charged;
+        entry.charged = data.length;
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Entry oldest = it.next();
+            if (oldest != entry && oldest.isDone()) {
+                it.remove();
+                bytes -= oldest.charged;
+            }
+        }
+    }
+
+    static final class Entry {
+
+        final String uri;
+        final Object owner;
+        Future<?> future;
+        // The bytes counted against the store, guarded by the store.
+        long charged;
+        private boolean done;
+        private byte[] data;
+        private IOException error;
+
+        Entry(String uri, Object owner) {
+            this.uri = uri;
+            this.owner = owner;
+        }
+
+        synchronized void complete(byte[] data, IOException error) {
+            this.data = data;
+            this.error = error;
+            done = true;
+            notifyAll();
+        }
+
+        synchronized boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Blocks until the fetch completed and returns the segment, or throws its error.
+         */
+        synchronized byte[] await() throws IOException {
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+            return data;
+        }
+    }
+
+}
@@ -0,0 +1,270 @@
+package jp.satorufujiwara.player.hls;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.TransferListener;
+import com.google.android.exoplayer.upstream.UriDataSource;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+
+/**
+ * A {@link UriDataSource} for the {@code HlsChunkSource} of one rendition, that serves
+ * segments from a {@link LookaheadStore} and keeps the next segments of the requested playlist
+ * being fetched into it.
+ * <p>
+ * Media playlists are read through to upstream and parsed on the way. When a segment of a
+ * parsed playlist is opened, the segments after it are fetched in parallel. Their number covers
+ * the request latency, so that {@code 1 + rtt / transferTime} requests are in flight, and is
+ * lowered to one as the buffer ahead of playback grows from {@link #LOW_BUFFER_MS} to
+ * {@link #HIGH_BUFFER_MS}. The buffer is estimated from the media requested in sequence minus
+ * the time passed since the sequence started. Segments given by byte range are not prefetched.
+ */
+final class PrefetchDataSource implements UriDataSource {
+
+    static final long LOW_BUFFER_MS = 15000;
+    static final long HIGH_BUFFER_MS = 30000;
+
+    private static final float TIMING_WEIGHT = 0.3f;
+    private static final int FETCH_BUFFER_SIZE = 16 * 1024;
+
+    private final PrefetchDataSourceCreator creator;
+    private final LookaheadStore store;
+    private final Context context;
+    private final TransferListener listener;
+    private final String userAgent;
+    private final DataSource upstream;
+    private final HashMap<String, SegmentList> playlists = new HashMap<>();
+    private final LookaheadStore.Fetcher fetcher = new LookaheadStore.Fetcher() {
+        @Override
+        public byte[] fetch(String uri, long maxLength) throws IOException {
+            return fetchSegment(uri, maxLength);
+        }
+    };
+
+    private DataSpec dataSpec;
+    private boolean readingUpstream;
+    private byte[] stored;
+    private int storedOffset;
+    private ByteArrayOutputStream playlistOutput;
+    private long openStartMs;
+    private long openEndMs;
+    private boolean timingTransfer;
+
+    private long lastSequence = -1;
+    private long sequenceStartMs;
+    private long sequenceMediaMs;
+
+    // Guarded by this, as fetch threads update them.
+    private float rttMs = -1;
+    private float transferMs = -1;
+
+    PrefetchDataSource(PrefetchDataSourceCreator creator, Context context,
+            TransferListener listener, String userAgent) {
+        this.creator = creator;
+        this.store = creator.store;
+        this.context = context;
+        this.listener = listener;
+        this.userAgent = userAgent;
+        this.upstream = creator.createUpstream(context, listener, userAgent);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        this.dataSpec = dataSpec;
+        if (isPlaylist(dataSpec.uri)) {
+            playlistOutput = new ByteArrayOutputStream();
+            return openUpstream(dataSpec, false);
+        }
+        if (dataSpec.position != 0 || dataSpec.length != C.LENGTH_UNBOUNDED
+                || dataSpec.postBody != null) {
+            return openUpstream(dataSpec, false);
+        }
+        final String uri = dataSpec.uri.toString();
+        if (!onSegmentRequested(uri)) {
+            return openUpstream(dataSpec, false);
+        }
+        LookaheadStore.Entry entry = store.take(uri);
+        if (entry != null) {
+            try {
+                stored = entry.await();
+                storedOffset = 0;
+                return stored.length;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                // The prefetch failed, so the segment is requested again.
+            }
+        }
+        return openUpstream(dataSpec, true);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        if (stored != null) {
+            if (storedOffset == stored.length) {
+                return C.RESULT_END_OF_INPUT;
+            }
+            int read = Math.min(readLength, stored.length - storedOffset);
+            System.arraycopy(stored, storedOffset, buffer, offset, read);
+            storedOffset += read;
+            return read;
+        }
+        int read = upstream.read(buffer, offset, readLength);
+        if (read == C.RESULT_END_OF_INPUT) {
+            if (timingTransfer) {
+                timingTransfer = false;
+                recordTiming(openEndMs - openStartMs, SystemClock.elapsedRealtime() - openEndMs);
+            }
+            if (playlistOutput != null) {
+                onPlaylistLoaded(dataSpec.uri.toString(), playlistOutput.toByteArray());
+                playlistOutput = null;
+            }
+        } else if (playlistOutput != null) {
+            playlistOutput.write(buffer, offset, read);
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stored = null;
+        playlistOutput = null;
+        timingTransfer = false;
+        if (readingUpstream) {
+            readingUpstream = false;
+            upstream.close();
+        }
+    }
+
+    @Override
+    public String getUri() {
+        return dataSpec == null ? null : dataSpec.uri.toString();
+    }
+
+    private long openUpstream(DataSpec dataSpec, boolean timing) throws IOException {
+        openStartMs = SystemClock.elapsedRealtime();
+        long length = upstream.open(dataSpec);
+        readingUpstream = true;
+        openEndMs = SystemClock.elapsedRealtime();
+        timingTransfer = timing;
+        return length;
+    }
+
+    private void onPlaylistLoaded(String uri, byte[] data) throws IOException {
+        SegmentList list = SegmentList.parse(uri, new String(data, "UTF-8"));
+        if (list != null) {
+            playlists.put(uri, list);
+        } else {
+            playlists.remove(uri);
+        }
+    }
+
+    /**
+     * Updates the buffer estimate and the segments being fetched for a request of {@code uri}.
+     * Returns false if it is not a segment of a parsed playlist.
+     */
+    private boolean onSegmentRequested(String uri) {
+        SegmentList list = null;
+        int index = -1;
+        for (SegmentList candidate : playlists.values()) {
+            index = candidate.uris.indexOf(uri);
+            if (index != -1) {
+                list = candidate;
+                break;
+            }
+        }
+        if (list == null) {
+            return false;
+        }
+        final long nowMs = SystemClock.elapsedRealtime();
+        final long sequence = list.mediaSequence + index;
+        if (sequence != lastSequence + 1) {
+            // Started, seeked or fell out of a live window.
+            sequenceStartMs = nowMs;
+            sequenceMediaMs = 0;
+        }
+        long bufferedMs = sequenceMediaMs - (nowMs - sequenceStartMs);
+        if (bufferedMs < 0) {
+            // The buffer ran out, so playback waited for this segment.
+            sequenceStartMs = nowMs - sequenceMediaMs;
+            bufferedMs = 0;
+        }
+        sequenceMediaMs += list.durationsMs.get(index);
+        lastSequence = sequence;
+
+        final int end = Math.min(index + 1 + creator.maxSegments, list.uris.size());
+        store.retain(this, list.uris.subList(index, end));
+        final int depth = Math.min(getDepth(bufferedMs), end - index - 1);
+        for (int i = 1; i <= depth; i++) {
+            store.fetch(list.uris.get(index + i), this, fetcher);
+        }
+        return true;
+    }
+
+    private int getDepth(long bufferedMs) {
+        int latencyDepth;
+        synchronized (this) {
+            if (rttMs < 0) {
+                return 1;
+            }
+            latencyDepth = 1 + (int) Math.ceil(rttMs / Math.max(transferMs, 1));
+        }
+        float full = (float) (bufferedMs - LOW_BUFFER_MS) / (HIGH_BUFFER_MS - LOW_BUFFER_MS);
+        full = Math.max(0, Math.min(1, full));
+        int depth = Math.round(latencyDepth - (latencyDepth - 1) * full);
+        return Math.max(1, Math.min(depth, creator.maxSegments));
+    }
+
+    private synchronized void recordTiming(long rtt, long transfer) {
+        if (rttMs < 0) {
+            rttMs = rtt;
+            transferMs = transfer;
+        } else {
+            rttMs += TIMING_WEIGHT * (rtt - rttMs);
+            transferMs += TIMING_WEIGHT * (transfer - transferMs);
+        }
+    }
+
+    private byte[] fetchSegment(String uri, long maxLength) throws IOException {
+        DataSource source = creator.createUpstream(context, listener, userAgent);
+        final long startMs = SystemClock.elapsedRealtime();
+        try {
+            long length = source.open(new DataSpec(Uri.parse(uri)));
+            final long openedMs = SystemClock.elapsedRealtime();
+            if (length > maxLength) {
+                throw new IOException("Segment is larger than the lookahead store: " + uri);
+            }
+            ByteArrayOutputStream output = new ByteArrayOutputStream(
+                    length == C.LENGTH_UNBOUNDED ? FETCH_BUFFER_SIZE : (int) length);
+            byte[] buffer = new byte[FETCH_BUFFER_SIZE];
+            int read;
+            while ((read = source.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException();
+                }
+                output.write(buffer, 0, read);
+                if (output.size() > maxLength) {
+                    throw new IOException("Segment is larger than the lookahead store: " + uri);
+                }
+            }
+            recordTiming(openedMs - startMs, SystemClock.elapsedRealtime() - openedMs);
+            return output.toByteArray();
+        } finally {
+            source.close();
+        }
+    }
+
+    private static boolean isPlaylist(Uri uri) {
+        String path = uri.getPath();
+        return path != null && (path.endsWith(".m3u8") || path.endsWith(".m3u"));
+    }
+
+}
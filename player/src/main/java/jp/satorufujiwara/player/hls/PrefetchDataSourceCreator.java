@@ -0,0 +1,104 @@
+package jp.satorufujiwara.player.hls;
+
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+import com.google.android.exoplayer.upstream.TransferListener;
+
+import android.content.Context;
+
+import jp.satorufujiwara.player.ContentDataSourceCreator;
+import jp.satorufujiwara.player.DataSourceCreator;
+import jp.satorufujiwara.player.ManifestDataSourceCreator;
+
+/**
+ * A {@link DataSourceCreator} that fetches the next segments of the playing HLS variant in
+ * parallel, so that the latency of each request is not paid between segments. Segments are kept
+ * in a lookahead store bounded in bytes until the chunk source reads them. More segments are
+ * fetched ahead when requests are slow to answer and the buffer is low, and a single one when
+ * the buffer is full.
+ * <p>
+ * It can wrap another creator, for example
+ * {@code new PrefetchDataSourceCreator(new CacheDataSourceCreator(cache))}.
+ */
+public class PrefetchDataSourceCreator implements ContentDataSourceCreator,
+        ManifestDataSourceCreator {
+
+    public static final int DEFAULT_MAX_SEGMENTS = 4;
+    public static final long DEFAULT_MAX_LOOKAHEAD_BYTES = 16 * 1024 * 1024;
+
+    final DataSourceCreator upstreamCreator;
+    final int maxSegments;
+    final LookaheadStore store;
+
+    public PrefetchDataSourceCreator() {
+        this(null);
+    }
+
+    public PrefetchDataSourceCreator(DataSourceCreator upstreamCreator) {
+        this(upstreamCreator, DEFAULT_MAX_SEGMENTS, DEFAULT_MAX_LOOKAHEAD_BYTES);
+    }
+
+    /**
+     * @param upstreamCreator   Creates the data sources segments and playlists are read from.
+     *                          May be null to use {@link DefaultUriDataSource}.
+     * @param maxSegments       The most segments fetched ahead of each rendition.
+     * @param maxLookaheadBytes The most bytes kept for segments that were not read yet.
+     */
+    public PrefetchDataSourceCreator(DataSourceCreator upstreamCreator, int maxSegments,
+            long maxLookaheadBytes) {
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("maxSegments must be positive.");
+        }
+        this.upstreamCreator = upstreamCreator;
+        this.maxSegments = maxSegments;
+        store = new LookaheadStore(maxSegments, maxLookaheadBytes);
+    }
+
+    private PrefetchDataSourceCreator(PrefetchDataSourceCreator creator,
+            DataSourceCreator upstreamCreator) {
+        this.upstreamCreator = upstreamCreator;
+        this.maxSegments = creator.maxSegments;
+        this.store = creator.store;
+    }
+
+    @Override
+    public DataSource create(Context context, TransferListener listener, String userAgent) {
+        return new PrefetchDataSource(this, context, listener, userAgent);
+    }
+
+    /**
+     * Passes {@code contentId} to the upstream creator. The lookahead store stays shared.
+     */
+    @Override
+    public DataSourceCreator forContent(String contentId) {
+        if (upstreamCreator instanceof ContentDataSourceCreator) {
+            return new PrefetchDataSourceCreator(this,
+                    ((ContentDataSourceCreator) upstreamCreator).forContent(contentId));
+        }
+        return this;
+    }
+
+    /**
+     * Returns the manifest creator of the upstream creator, so that manifests are
+     * not parsed for prefetching.
+     */
+    @Override
+    public DataSourceCreator forManifest() {
+        return upstreamCreator instanceof ManifestDataSourceCreator
+                ? ((ManifestDataSourceCreator) upstreamCreator).forManifest() : null;
+    }
+
+    /**
+     * Drops the segments fetched ahead and cancels the fetches in progress.
+     */
+    public void clear() {
+        store.clear();
+    }
+
+    DataSource createUpstream(Context context, TransferListener listener, String userAgent) {
+        return upstreamCreator != null
+                ? upstreamCreator.create(context, listener, userAgent)
+                : new DefaultUriDataSource(context, listener, userAgent);
+    }
+
+}
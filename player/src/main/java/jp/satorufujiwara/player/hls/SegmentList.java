@@ -0,0 +1,86 @@
+package jp.satorufujiwara.player.hls;
+
+import com.google.android.exoplayer.util.UriUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The segments of a media playlist, as far as the data sources of this package need them.
+ */
+final class SegmentList {
+
+    final long mediaSequence;
+    final List<String> uris;
+    final List<Long> durationsMs;
+    /** Whether the playlist has {@code EXT-X-ENDLIST}, so that it is not refreshed. */
+    final boolean ended;
+
+    private SegmentList(long mediaSequence, List<String> uris, List<Long> durationsMs,
+            boolean ended) {
+        this.mediaSequence = mediaSequence;
+        this.uris = uris;
+        this.durationsMs = durationsMs;
+        this.ended = ended;
+    }
+
+    /**
+     * Returns the total duration of the segments after {@code index}.
+     */
+    long getDurationAfterMs(int index) {
+        long durationMs = 0;
+        for (int i = index + 1; i < durationsMs.size(); i++) {
+            durationMs += durationsMs.get(i);
+        }
+        return durationMs;
+    }
+
+    /**
+     * Returns the segments of {@code playlist}, or null if it is a master playlist, has no
+     * segments or addresses them by byte range.
+     */
+    static SegmentList parse(String baseUri, String playlist) {
+        long mediaSequence = 0;
+        long durationMs = 0;
+        boolean ended = false;
+        List<String> uris = new ArrayList<>();
+        List<Long> durationsMs = new ArrayList<>();
+        for (String line : playlist.split("\r?\n")) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("#EXT-X-STREAM-INF") || line.startsWith("#EXT-X-BYTERANGE")) {
+                return null;
+            } else if (line.startsWith("#EXT-X-MEDIA-SEQUENCE:")) {
+                mediaSequence = parseLong(line.substring(line.indexOf(':') + 1), 0);
+            } else if (line.startsWith("#EXT-X-ENDLIST")) {
+                ended = true;
+            } else if (line.startsWith("#EXTINF:")) {
+                String value = line.substring(line.indexOf(':') + 1);
+                int comma = value.indexOf(',');
+                try {
+                    durationMs = (long) (1000 * Double.parseDouble(
+                            comma == -1 ? value : value.substring(0, comma)));
+                } catch (NumberFormatException e) {
+                    durationMs = 0;
+                }
+            } else if (!line.startsWith("#")) {
+                uris.add(UriUtil.resolve(baseUri, line));
+                durationsMs.add(durationMs);
+                durationMs = 0;
+            }
+        }
+        return uris.isEmpty() ? null
+                : new SegmentList(mediaSequence, uris, durationsMs, ended);
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package jp.satorufujiwara.player.okhttp;
+
+import android.os.SystemClock;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.List;
+
+import okhttp3.Dns;
+
+/**
+ * A {@link Dns} that keeps resolved addresses for a while, so that the requests of a stream do
+ * not each wait for a lookup.
+ */
+final class CachingDns implements Dns {
+
+    private final Dns delegate;
+    private final long ttlMs;
+    private final HashMap<String, Entry> entries = new HashMap<>();
+
+    CachingDns(Dns delegate, long ttlMs) {
+        this.delegate = delegate;
+        this.ttlMs = ttlMs;
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        final long nowMs = SystemClock.elapsedRealtime();
+        synchronized (entries) {
+            Entry entry = entries.get(hostname);
+            if (entry != null && entry.expiresMs > nowMs) {
+                return entry.addresses;
+            }
+        }
+        List<InetAddress> addresses = delegate.lookup(hostname);
+        synchronized (entries) {
+            entries.put(hostname, new Entry(addresses, nowMs + ttlMs));
+        }
+        return addresses;
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static final class Entry {
+
+        final List<InetAddress> addresses;
+        final long expiresMs;
+
+        Entry(List<InetAddress> addresses, long expiresMs) {
+            this.addresses = addresses;
+            this.expiresMs = expiresMs;
+        }
+    }
+
+}
@@ -0,0 +1,233 @@
+package jp.satorufujiwara.player.okhttp;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+import com.google.android.exoplayer.upstream.TransferListener;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * An {@link HttpDataSource} that reads over an {@link OkHttpClient}, so that connections are
+ * taken from the pool of the client instead of being opened for every request.
+ */
+final class OkHttpDataSource implements HttpDataSource {
+
+    private static final int SKIP_BUFFER_SIZE = 4096;
+
+    private final OkHttpClient client;
+    private final String userAgent;
+    private final TransferListener listener;
+    private final HashMap<String, String> requestProperties = new HashMap<>();
+
+    private DataSpec dataSpec;
+    private Call call;
+    private Response response;
+    private InputStream responseStream;
+    private boolean opened;
+
+    private long bytesToSkip;
+    private long bytesToRead;
+    private long bytesSkipped;
+    private long bytesRead;
+
+    OkHttpDataSource(OkHttpClient client, String userAgent, TransferListener listener) {
+        this.client = client;
+        this.userAgent = userAgent;
+        this.listener = listener;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws HttpDataSourceException {
+        this.dataSpec = dataSpec;
+        bytesRead = 0;
+        bytesSkipped = 0;
+        call = client.newCall(makeRequest(dataSpec));
+        try {
+            response = call.execute();
+            responseStream = response.body().byteStream();
+        } catch (IOException e) {
+            closeQuietly();
+            throw new HttpDataSourceException("Unable to connect to " + dataSpec.uri.toString(),
+                    e, dataSpec);
+        }
+
+        final int responseCode = response.code();
+        if (!response.isSuccessful()) {
+            Map<String, List<String>> headers = response.headers().toMultimap();
+            closeQuietly();
+            throw new InvalidResponseCodeException(responseCode, headers, dataSpec);
+        }
+        MediaType mediaType = response.body().contentType();
+        final String contentType = mediaType != null ? mediaType.toString() : null;
+        if (!REJECT_PAYWALL_TYPES.evaluate(contentType)) {
+            closeQuietly();
+            throw new InvalidContentTypeException(contentType, dataSpec);
+        }
+
+        // A 200 answer to a range request carries the whole resource.
+        bytesToSkip = responseCode == 200 && dataSpec.position != 0 ? dataSpec.position : 0;
+        if (dataSpec.length != C.LENGTH_UNBOUNDED) {
+            bytesToRead = dataSpec.length;
+        } else {
+            long contentLength = response.body().contentLength();
+            bytesToRead = contentLength != -1 ? contentLength - bytesToSkip : C.LENGTH_UNBOUNDED;
+        }
+
+        opened = true;
+        if (listener != null) {
+            listener.onTransferStart();
+        }
+        return bytesToRead;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws HttpDataSourceException {
+        try {
+            skipInternal();
+            return readInternal(buffer, offset, readLength);
+        } catch (IOException e) {
+            throw new HttpDataSourceException(e, dataSpec);
+        }
+    }
+
+    @Override
+    public void close() throws HttpDataSourceException {
+        if (opened) {
+            opened = false;
+            if (listener != null) {
+                listener.onTransferEnd();
+            }
+            closeQuietly();
+        }
+    }
+
+    @Override
+    public String getUri() {
+        return response == null ? null : response.request().url().toString();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return response == null ? null : response.headers().toMultimap();
+    }
+
+    @Override
+    public void setRequestProperty(String name, String value) {
+        synchronized (requestProperties) {
+            requestProperties.put(name, value);
+        }
+    }
+
+    @Override
+    public void clearRequestProperty(String name) {
+        synchronized (requestProperties) {
+            requestProperties.remove(name);
+        }
+    }
+
+    @Override
+    public void clearAllRequestProperties() {
+        synchronized (requestProperties) {
+            requestProperties.clear();
+        }
+    }
+
+    private Request makeRequest(DataSpec dataSpec) {
+        Request.Builder builder = new Request.Builder()
+                .url(dataSpec.uri.toString())
+                .header("User-Agent", userAgent);
+        synchronized (requestProperties) {
+            for (Map.Entry<String, String> property : requestProperties.entrySet()) {
+                builder.header(property.getKey(), property.getValue());
+            }
+        }
+        if (dataSpec.position != 0 || dataSpec.length != C.LENGTH_UNBOUNDED) {
+            String range = "bytes=" + dataSpec.position + "-";
+            if (dataSpec.length != C.LENGTH_UNBOUNDED) {
+                range += (dataSpec.position + dataSpec.length - 1);
+            }
+            builder.header("Range", range);
+        }
+        if ((dataSpec.flags & DataSpec.FLAG_ALLOW_GZIP) == 0) {
+            builder.header("Accept-Encoding", "identity");
+        }
+        if (dataSpec.postBody != null) {
+            builder.post(RequestBody.create(null, dataSpec.postBody));
+        }
+        return builder.build();
+    }
+
+    private void skipInternal() throws IOException {
+        if (bytesSkipped == bytesToSkip) {
+            return;
+        }
+        byte[] skipBuffer = new byte[SKIP_BUFFER_SIZE];
+        while (bytesSkipped != bytesToSkip) {
+            int readLength = (int) Math.min(bytesToSkip - bytesSkipped, skipBuffer.length);
+            int read = responseStream.read(skipBuffer, 0, readLength);
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+            if (read == -1) {
+                throw new EOFException();
+            }
+            bytesSkipped += read;
+            if (listener != null) {
+                listener.onBytesTransferred(read);
+            }
+        }
+    }
+
+    private int readInternal(byte[] buffer, int offset, int readLength) throws IOException {
+        if (bytesToRead != C.LENGTH_UNBOUNDED) {
+            long bytesRemaining = bytesToRead - bytesRead;
+            if (bytesRemaining == 0) {
+                return C.RESULT_END_OF_INPUT;
+            }
+            readLength = (int) Math.min(readLength, bytesRemaining);
+        }
+        int read = responseStream.read(buffer, offset, readLength);
+        if (read == -1) {
+            if (bytesToRead != C.LENGTH_UNBOUNDED && bytesToRead != bytesRead) {
+                // The server closed the connection before the expected length.
+                throw new EOFException();
+            }
+            return C.RESULT_END_OF_INPUT;
+        }
+        bytesRead += read;
+        if (listener != null) {
+            listener.onBytesTransferred(read);
+        }
+        return read;
+    }
+
+    private void closeQuietly() {
+        if (response != null) {
+            ResponseBody body = response.body();
+            if (body != null) {
+                body.close();
+            }
+        } else if (call != null) {
+            call.cancel();
+        }
+        response = null;
+        responseStream = null;
+        call = null;
+    }
+
+}
@@ -0,0 +1,205 @@
+package jp.satorufujiwara.player.okhttp;
+
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+import com.google.android.exoplayer.upstream.TransferListener;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jp.satorufujiwara.player.DataSourceCreator;
+import jp.satorufujiwara.player.HttpDataSourceCreator;
+import jp.satorufujiwara.player.ManifestDataSourceCreator;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dns;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+/**
+ * A {@link DataSourceCreator} that reads http uris over OkHttp. By default every creator shares
+ * one client, so that connections are kept alive and resolved hosts are cached across players
+ * and prepares, and servers offering HTTP/2 are read over a single multiplexed connection.
+ * Other uris are read as by {@link DefaultUriDataSource}. Manifests are fetched with it too.
+ * <p>
+ * OkHttp is not a dependency of this library. Add {@code com.squareup.okhttp3:okhttp} to use
+ * this creator.
+ */
+public class OkHttpDataSourceCreator implements ManifestDataSourceCreator,
+        HttpDataSourceCreator {
+
+    /**
+     * Receives the timing of every request, on the thread that made it.
+     */
+    public interface TimingListener {
+
+        void onRequestTiming(RequestTiming timing);
+
+    }
+
+    public static final long DEFAULT_DNS_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final long TIMEOUT_MS = 8000;
+
+    private static OkHttpClient sharedClient;
+    private static CachingDns sharedDns;
+
+    private final OkHttpClient client;
+
+    public OkHttpDataSourceCreator() {
+        this(getSharedClient(), null);
+    }
+
+    public OkHttpDataSourceCreator(TimingListener timingListener) {
+        this(getSharedClient(), timingListener);
+    }
+
+    /**
+     * @param client         The client requests are made with. Creators given clients built
+     *                       from the same client share its connection pool.
+     * @param timingListener Receives the timing of every request. May be null.
+     */
+    public OkHttpDataSourceCreator(OkHttpClient client, TimingListener timingListener) {
+        this.client = timingListener == null ? client : client.newBuilder()
+                .eventListenerFactory(new TimingEventListenerFactory(timingListener))
+                .build();
+    }
+
+    @Override
+    public DataSource create(Context context, TransferListener listener, String userAgent) {
+        return new DefaultUriDataSource(context, listener,
+                createHttpDataSource(context, listener, userAgent));
+    }
+
+    @Override
+    public HttpDataSource createHttpDataSource(Context context, TransferListener listener,
+            String userAgent) {
+        return new OkHttpDataSource(client, userAgent, listener);
+    }
+
+    /**
+     * Returns this creator, so that manifests are fetched over the same client.
+     */
+    @Override
+    public DataSourceCreator forManifest() {
+        return this;
+    }
+
+    /**
+     * Returns the client shared by creators made without one. Derive clients from it with
+     * {@link OkHttpClient#newBuilder()} to keep sharing its connections.
+     */
+    public static synchronized OkHttpClient getSharedClient() {
+        if (sharedClient == null) {
+            sharedDns = new CachingDns(Dns.SYSTEM, DEFAULT_DNS_TTL_MS);
+            sharedClient = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MS,
+                            TimeUnit.MILLISECONDS))
+                    .dns(sharedDns)
+                    .connectTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                    .readTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+        return sharedClient;
+    }
+
+    /**
+     * Closes the idle connections and forgets the resolved hosts of the shared client, for
+     * example when the network changed.
+     */
+    public static synchronized void evictSharedConnections() {
+        if (sharedClient != null) {
+            sharedClient.connectionPool().evictAll();
+            sharedDns.clear();
+        }
+    }
+
+    private static final class TimingEventListenerFactory implements EventListener.Factory {
+
+        private final TimingListener timingListener;
+
+        TimingEventListenerFactory(TimingListener timingListener) {
+            this.timingListener = timingListener;
+        }
+
+        @Override
+        public EventListener create(Call call) {
+            return new TimingEventListener(call.request().url().toString(), timingListener);
+        }
+    }
+
+    private static final class TimingEventListener extends EventListener {
+
+        private final String url;
+        private final TimingListener timingListener;
+        private long callStartMs;
+        private long dnsStartMs;
+        private long dnsMs;
+        private long connectStartMs;
+        private long connectMs;
+        private long ttfbMs;
+        private boolean connected;
+
+        TimingEventListener(String url, TimingListener timingListener) {
+            this.url = url;
+            this.timingListener = timingListener;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            callStartMs = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStartMs = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> addresses) {
+            dnsMs += SystemClock.elapsedRealtime() - dnsStartMs;
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+            connected = true;
+            connectStartMs = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress address, Proxy proxy,
+                Protocol protocol) {
+            connectMs += SystemClock.elapsedRealtime() - connectStartMs;
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress address, Proxy proxy,
+                Protocol protocol, IOException e) {
+            connectMs += SystemClock.elapsedRealtime() - connectStartMs;
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            ttfbMs = SystemClock.elapsedRealtime() - callStartMs;
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            timingListener.onRequestTiming(new RequestTiming(url, response.protocol().toString(),
+                    !connected, dnsMs, connectMs, ttfbMs));
+        }
+    }
+
+}
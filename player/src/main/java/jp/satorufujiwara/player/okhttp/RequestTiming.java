@@ -0,0 +1,36 @@
+package jp.satorufujiwara.player.okhttp;
+
+/**
+ * The timing of one request made by an {@link OkHttpDataSourceCreator}.
+ */
+public final class RequestTiming {
+
+    public final String url;
+    /** The protocol of the response, such as {@code h2} or {@code http/1.1}. */
+    public final String protocol;
+    /** Whether the request was sent over a pooled connection. */
+    public final boolean connectionReused;
+    /** The time spent resolving the host, or 0 if it was cached or the connection reused. */
+    public final long dnsMs;
+    /** The time spent opening the connection including the TLS handshake, or 0 if reused. */
+    public final long connectMs;
+    /** The time from the start of the call to the first byte of the response headers. */
+    public final long ttfbMs;
+
+    RequestTiming(String url, String protocol, boolean connectionReused, long dnsMs,
+            long connectMs, long ttfbMs) {
+        this.url = url;
+        this.protocol = protocol;
+        this.connectionReused = connectionReused;
+        this.dnsMs = dnsMs;
+        this.connectMs = connectMs;
+        this.ttfbMs = ttfbMs;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestTiming{" + protocol + ", reused=" + connectionReused + ", dns=" + dnsMs
+                + "ms, connect=" + connectMs + "ms, ttfb=" + ttfbMs + "ms, " + url + "}";
+    }
+
+}
@@ -0,0 +1,338 @@
+package jp.satorufujiwara.player.progressive;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.DefaultHttpDataSource;
+import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+import com.google.android.exoplayer.upstream.TransferListener;
+import com.google.android.exoplayer.upstream.UriDataSource;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link UriDataSource} that reads a large http resource over several connections.
+ * <p>
+ * The first range is streamed from the connection opened by {@link #open(DataSpec)}. The ranges
+ * after it are fetched ahead of the reader by worker connections, and returned strictly in
+ * order. After every window of completed ranges the number of connections is raised while the
+ * aggregate throughput keeps growing, and lowered when it drops. Servers that do not answer a
+ * range request with a {@code Content-Range} total, and non-http uris, are read over a single
+ * connection. Range buffers are recycled once the reader consumed them, so that at most
+ * {@code maxParallelism + 1} of them exist.
+ */
+final class ParallelRangeDataSource implements UriDataSource {
+
+    // A window must improve on the previous one by this much to justify another connection.
+    private static final float MIN_GAIN = 1.1f;
+    private static final float MAX_LOSS = 0.9f;
+
+    private final Context context;
+    private final TransferListener listener;
+    private final String userAgent;
+    private final int rangeSize;
+    private final int maxParallelism;
+    private final ArrayDeque<Future<Range>> pending = new ArrayDeque<>();
+    // Range buffers that are not in use, guarded by itself.
+    private final ArrayDeque<byte[]> freeBuffers = new ArrayDeque<>();
+
+    private int parallelism;
+    private UriDataSource current;
+    private ExecutorService executor;
+    private DataSpec dataSpec;
+    private long nextRangePosition;
+    private long endPosition;
+    private Range range;
+    private int rangeOffset;
+
+    private int windowCount;
+    private long windowBytes;
+    private long windowTransferMs;
+    private float lastWindowThroughput;
+
+    ParallelRangeDataSource(Context context, TransferListener listener, String userAgent,
+            int rangeSize, int initialParallelism, int maxParallelism) {
+        this.context = context;
+        this.listener = listener;
+        this.userAgent = userAgent;
+        this.rangeSize = rangeSize;
+        this.maxParallelism = maxParallelism;
+        this.parallelism = initialParallelism;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        this.dataSpec = dataSpec;
+        final String scheme = dataSpec.uri.getScheme();
+        if (!"http".equals(scheme) && !"https".equals(scheme)) {
+            return openSingle(dataSpec);
+        }
+        final long requestedEnd = dataSpec.length == C.LENGTH_UNBOUNDED
+                ? Long.MAX_VALUE : dataSpec.position + dataSpec.length;
+        final long firstEnd = Math.min(requestedEnd, dataSpec.position + rangeSize);
+        HttpDataSource first = newHttpDataSource();
+        first.open(new DataSpec(dataSpec.uri, dataSpec.position, firstEnd - dataSpec.position,
+                dataSpec.key, dataSpec.flags));
+        final long total = parseTotalLength(first.getResponseHeaders());
+        if (total == C.LENGTH_UNBOUNDED) {
+            // Ranges are not supported, or the size is unknown.
+            first.close();
+            return openSingle(dataSpec);
+        }
+        current = first;
+        endPosition = Math.min(requestedEnd, total);
+        nextRangePosition = Math.min(firstEnd, endPosition);
+        executor = Executors.newFixedThreadPool(maxParallelism);
+        resetWindow();
+        scheduleRanges();
+        return endPosition - dataSpec.position;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        while (true) {
+            if (current != null) {
+                int read = current.read(buffer, offset, readLength);
+                if (read != C.RESULT_END_OF_INPUT || executor == null) {
+                    return read;
+                }
+                current.close();
+                current = null;
+            }
+            if (range != null && rangeOffset < range.length) {
+                int read = Math.min(readLength, range.length - rangeOffset);
+                System.arraycopy(range.data, rangeOffset, buffer, offset, read);
+                rangeOffset += read;
+                return read;
+            }
+            releaseRange();
+            if (pending.isEmpty()) {
+                return C.RESULT_END_OF_INPUT;
+            }
+            range = takeRange(pending.poll());
+            rangeOffset = 0;
+            onRangeCompleted(range);
+            scheduleRanges();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (current != null) {
+                current.close();
+            }
+        } finally {
+            current = null;
+            for (Future<Range> future : pending) {
+                if (!future.cancel(true)) {
+                    recycleCompleted(future);
+                }
+            }
+            pending.clear();
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+            releaseRange();
+        }
+    }
+
+    @Override
+    public String getUri() {
+        return dataSpec == null ? null : dataSpec.uri.toString();
+    }
+
+    private long openSingle(DataSpec dataSpec) throws IOException {
+        DefaultUriDataSource single = new DefaultUriDataSource(context, listener, userAgent);
+        current = single;
+        return single.open(dataSpec);
+    }
+
+    private HttpDataSource newHttpDataSource() {
+        return new DefaultHttpDataSource(userAgent, null, listener);
+    }
+
+    private void scheduleRanges() {
+        final DataSpec spec = dataSpec;
+        while (pending.size() < parallelism && nextRangePosition < endPosition) {
+            final long position = nextRangePosition;
+            final int length = (int) Math.min(rangeSize, endPosition - position);
+            nextRangePosition += length;
+            pending.add(executor.submit(new Callable<Range>() {
+                @Override
+                public Range call() throws IOException {
+                    return fetchRange(spec, position, length);
+                }
+            }));
+        }
+    }
+
+    private Range fetchRange(DataSpec spec, long position, int length) throws IOException {
+        final long startMs = SystemClock.elapsedRealtime();
+        final byte[] data = obtainBuffer();
+        boolean fetched = false;
+        HttpDataSource source = newHttpDataSource();
+        try {
+            source.open(new DataSpec(spec.uri, position, length, spec.key, spec.flags));
+            int offset = 0;
+            while (offset < length) {
+                int read = source.read(data, offset, length - offset);
+                if (read == C.RESULT_END_OF_INPUT) {
+                    throw new IOException("Range ended early at " + (position + offset));
+                }
+                offset += read;
+            }
+            fetched = true;
+        } finally {
+            try {
+                source.close();
+            } finally {
+                if (!fetched) {
+                    recycleBuffer(data);
+                }
+            }
+        }
+        return new Range(data, length, SystemClock.elapsedRealtime() - startMs);
+    }
+
+    private byte[] obtainBuffer() {
+        synchronized (freeBuffers) {
+            byte[] buffer = freeBuffers.poll();
+            return buffer != null ? buffer : new byte[rangeSize];
+        }
+    }
+
+    private void recycleBuffer(byte[] buffer) {
+        synchronized (freeBuffers) {
+            if (freeBuffers.size() <= maxParallelism) {
+                freeBuffers.add(buffer);
+            }
+        }
+    }
+
+    /**
+     * Recycles the buffer of the range the reader consumed, if any.
+     */
+    private void releaseRange() {
+        if (range != null) {
+            recycleBuffer(range.data);
+            range = null;
+        }
+    }
+
+    private void recycleCompleted(Future<Range> future) {
+        if (!future.isDone() || future.isCancelled()) {
+            return;
+        }
+        try {
+            recycleBuffer(future.get().data);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // The fetch failed and recycled its buffer.
+        }
+    }
+
+    private static Range takeRange(Future<Range> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Adapts the number of connections once a window of {@code parallelism} ranges completed.
+     * Ranges are only requested as the reader consumes them, so the time between the first
+     * request and the last response of a window includes the pauses of the extractor. The
+     * aggregate throughput is measured from the transfer time of each range instead, as the
+     * bytes of the window over their summed transfer time, times the connections that ran in
+     * parallel.
+     */
+    private void onRangeCompleted(Range range) {
+        windowCount++;
+        windowBytes += range.length;
+        windowTransferMs += range.transferMs;
+        if (windowCount < parallelism) {
+            return;
+        }
+        final long transferMs = Math.max(1, windowTransferMs);
+        final float throughput = (float) windowBytes * parallelism / transferMs;
+        if (lastWindowThroughput == 0 || throughput > lastWindowThroughput * MIN_GAIN) {
+            parallelism = Math.min(parallelism + 1, maxParallelism);
+        } else if (throughput < lastWindowThroughput * MAX_LOSS) {
+            parallelism = Math.max(parallelism - 1, 1);
+        }
+        lastWindowThroughput = throughput;
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowCount = 0;
+        windowBytes = 0;
+        windowTransferMs = 0;
+    }
+
+    /**
+     * Returns the total length from a {@code Content-Range: bytes a-b/total} header, or
+     * {@link C#LENGTH_UNBOUNDED}.
+     */
+    private static long parseTotalLength(Map<String, List<String>> headers) {
+        if (headers == null) {
+            return C.LENGTH_UNBOUNDED;
+        }
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (!"Content-Range".equalsIgnoreCase(entry.getKey())
+                    || entry.getValue() == null || entry.getValue().isEmpty()) {
+                continue;
+            }
+            String value = entry.getValue().get(0);
+            int slash = value.lastIndexOf('/');
+            if (slash == -1) {
+                return C.LENGTH_UNBOUNDED;
+            }
+            try {
+                return Long.parseLong(value.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                // The total is "*".
+                return C.LENGTH_UNBOUNDED;
+            }
+        }
+        return C.LENGTH_UNBOUNDED;
+    }
+
+    private static final class Range {
+
+        // A buffer of rangeSize bytes, of which the first length are the range.
+        final byte[] data;
+        final int length;
+        final long transferMs;
+
+        Range(byte[] data, int length, long transferMs) {
+            this.data = data;
+            this.length = length;
+            this.transferMs = transferMs;
+        }
+    }
+
+}
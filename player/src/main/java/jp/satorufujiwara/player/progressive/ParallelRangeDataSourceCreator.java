@@ -0,0 +1,51 @@
+package jp.satorufujiwara.player.progressive;
+
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.TransferListener;
+
+import android.content.Context;
+
+import jp.satorufujiwara.player.DataSourceCreator;
+
+/**
+ * Creates data sources that read a progressive http file over several connections, each
+ * fetching one byte range, and hand the ranges to the extractor in order. The number of
+ * connections follows the measured throughput between 1 and {@code maxParallelism}.
+ */
+public class ParallelRangeDataSourceCreator implements DataSourceCreator {
+
+    public static final int DEFAULT_RANGE_SIZE = 1024 * 1024;
+    public static final int DEFAULT_INITIAL_PARALLELISM = 2;
+    public static final int DEFAULT_MAX_PARALLELISM = 4;
+
+    private final int rangeSize;
+    private final int initialParallelism;
+    private final int maxParallelism;
+
+    public ParallelRangeDataSourceCreator() {
+        this(DEFAULT_RANGE_SIZE, DEFAULT_INITIAL_PARALLELISM, DEFAULT_MAX_PARALLELISM);
+    }
+
+    /**
+     * @param rangeSize          The size of the range requested by each connection. Up to
+     *                           {@code maxParallelism} ranges are held in memory.
+     * @param initialParallelism The number of ranges fetched ahead at start.
+     * @param maxParallelism     The maximum number of ranges fetched ahead.
+     */
+    public ParallelRangeDataSourceCreator(int rangeSize, int initialParallelism,
+            int maxParallelism) {
+        if (rangeSize <= 0 || initialParallelism <= 0 || maxParallelism < initialParallelism) {
+            throw new IllegalArgumentException("Invalid range size or parallelism.");
+        }
+        this.rangeSize = rangeSize;
+        this.initialParallelism = initialParallelism;
+        this.maxParallelism = maxParallelism;
+    }
+
+    @Override
+    public DataSource create(Context context, TransferListener listener, String userAgent) {
+        return new ParallelRangeDataSource(context, listener, userAgent, rangeSize,
+                initialParallelism, maxParallelism);
+    }
+
+}
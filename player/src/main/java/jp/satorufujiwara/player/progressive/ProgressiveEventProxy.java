@@ -0,0 +1,31 @@
+package jp.satorufujiwara.player.progressive;
+
+import com.google.android.exoplayer.extractor.ExtractorSampleSource;
+
+import java.io.IOException;
+
+import jp.satorufujiwara.player.EventProxy;
+
+public class ProgressiveEventProxy extends EventProxy implements
+        ExtractorSampleSource.EventListener {
+
+    public interface InternalErrorListener {
+
+        void onLoadError(int sourceId, IOException e);
+    }
+
+    private InternalErrorListener internalErrorListener;
+
+    public void setProgressiveInternalErrorListener(InternalErrorListener internalErrorListener) {
+        this.internalErrorListener = internalErrorListener;
+    }
+
+    /** ExtractorSampleSource.EventListener */
+    @Override
+    public void onLoadError(int sourceId, IOException e) {
+        if (internalErrorListener != null) {
+            internalErrorListener.onLoadError(sourceId, e);
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package jp.satorufujiwara.player.progressive;
+
+import com.google.android.exoplayer.MediaCodecAudioTrackRenderer;
+import com.google.android.exoplayer.MediaCodecSelector;
+import com.google.android.exoplayer.MediaCodecVideoTrackRenderer;
+import com.google.android.exoplayer.TrackRenderer;
+import com.google.android.exoplayer.audio.AudioCapabilities;
+import com.google.android.exoplayer.extractor.ExtractorSampleSource;
+import com.google.android.exoplayer.text.TextTrackRenderer;
+import com.google.android.exoplayer.upstream.Allocator;
+import com.google.android.exoplayer.upstream.DataSource;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaCodec;
+import android.net.Uri;
+import android.os.Handler;
+
+import jp.satorufujiwara.player.AdaptiveBufferPolicy;
+import jp.satorufujiwara.player.BandwidthEstimatorCreator;
+import jp.satorufujiwara.player.DataSourceCreator;
+import jp.satorufujiwara.player.LimitedBandwidthMeter;
+import jp.satorufujiwara.player.Player;
+import jp.satorufujiwara.player.RendererBuilder;
+import jp.satorufujiwara.player.RendererBuilderCallback;
+import jp.satorufujiwara.player.SharedAllocator;
+
+/**
+ * A {@link RendererBuilder} for progressive files served over http, such as MP4.
+ */
+public class ProgressiveRendererBuilder extends RendererBuilder<ProgressiveEventProxy> {
+
+    long limitBitrate = Long.MAX_VALUE;
+    LimitedBandwidthMeter bandwidthMeter;
+    final DataSourceCreator dataSourceCreator;
+    final boolean concurrentBandwidthMeter;
+    final BandwidthEstimatorCreator bandwidthEstimatorCreator;
+
+    ProgressiveRendererBuilder(Context context, Handler eventHandler,
+            ProgressiveEventProxy eventProxy, String userAgent, Uri uri, int bufferSegmentSize,
+            int bufferSegmentCount, DataSourceCreator dataSourceCreator,
+            boolean concurrentBandwidthMeter, BandwidthEstimatorCreator bandwidthEstimatorCreator,
+            SharedAllocator sharedAllocator, AdaptiveBufferPolicy bufferPolicy, int minBufferMs,
+            int minRebufferMs) {
+        super(context, eventHandler, eventProxy, userAgent, uri, bufferSegmentSize,
+                bufferSegmentCount, sharedAllocator, bufferPolicy, null, minBufferMs,
+                minRebufferMs);
+        this.dataSourceCreator = dataSourceCreator;
+        this.concurrentBandwidthMeter = concurrentBandwidthMeter;
+        this.bandwidthEstimatorCreator = bandwidthEstimatorCreator;
+    }
+
+    @Override
+    protected void buildRenderers(RendererBuilderCallback callback) {
+        LimitedBandwidthMeter bandwidthMeter = createBandwidthMeter(concurrentBandwidthMeter,
+                bandwidthEstimatorCreator);
+        bandwidthMeter.setLimitBitrate(limitBitrate);
+        this.bandwidthMeter = bandwidthMeter;
+
+        int bufferSize = bufferSegmentSize * scaleSegmentCount(bufferSegmentCount);
+        Allocator allocator = createAllocator(bufferSize);
+        DataSource dataSource = dataSourceCreator.create(context, bandwidthMeter, userAgent);
+        ExtractorSampleSource sampleSource = new ExtractorSampleSource(uri, dataSource,
+                allocator, bufferSize, eventHandler, eventProxy, 0);
+        MediaCodecVideoTrackRenderer videoRenderer = new MediaCodecVideoTrackRenderer(context,
+                sampleSource, MediaCodecSelector.DEFAULT,
+                MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT, 5000,
+                eventHandler, eventProxy, 50);
+        MediaCodecAudioTrackRenderer audioRenderer = new MediaCodecAudioTrackRenderer(sampleSource,
+                MediaCodecSelector.DEFAULT, null, true, eventHandler, eventProxy,
+                AudioCapabilities.getCapabilities(context), AudioManager.STREAM_MUSIC);
+
+        TrackRenderer textRenderer = new TextTrackRenderer(sampleSource, eventProxy,
+                eventHandler.getLooper());
+
+        // Invoke the callback.
+        TrackRenderer[] renderers = new TrackRenderer[Player.RENDERER_COUNT];
+        renderers[Player.TYPE_VIDEO] = videoRenderer;
+        renderers[Player.TYPE_AUDIO] = audioRenderer;
+        renderers[Player.TYPE_TEXT] = textRenderer;
+        callback.onRenderers(renderers, bandwidthMeter);
+    }
+
+    @Override
+    protected void cancel() {
+        //do nothing
+    }
+
+    @Override
+    protected void setLimitBitrate(long bitrate) {
+        limitBitrate = bitrate;
+        if (bandwidthMeter != null) {
+            bandwidthMeter.setLimitBitrate(bitrate);
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+package jp.satorufujiwara.player.progressive;
+
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+
+import jp.satorufujiwara.player.AdaptiveBufferPolicy;
+import jp.satorufujiwara.player.BandwidthEstimatorCreator;
+import jp.satorufujiwara.player.DataSourceCreator;
+import jp.satorufujiwara.player.LoadControlProfile;
+import jp.satorufujiwara.player.Player;
+import jp.satorufujiwara.player.RendererBuilder;
+import jp.satorufujiwara.player.SharedAllocator;
+import jp.satorufujiwara.player.VideoSource;
+
+/**
+ * A progressive file served over http, such as MP4. By default the file is downloaded over
+ * several parallel range requests by a {@link ParallelRangeDataSourceCreator}.
+ */
+public class ProgressiveVideoSource extends VideoSource {
+
+    private final ProgressiveEventProxy eventProxy;
+    private final DataSourceCreator dataSourceCreator;
+    private final boolean concurrentBandwidthMeter;
+    private final BandwidthEstimatorCreator bandwidthEstimatorCreator;
+    private final SharedAllocator sharedAllocator;
+    private final AdaptiveBufferPolicy bufferPolicy;
+    private final int minBufferMs;
+    private final int minRebufferMs;
+
+    private ProgressiveVideoSource(Builder builder) {
+        super(builder.uri, builder.contentId != null ? builder.contentId : builder.uri.toString(),
+                builder.userAgent, builder.eventHandler, builder.bufferSegmentSize,
+                builder.bufferSegmentCount);
+        eventProxy = builder.eventProxy;
+        dataSourceCreator = forContent(builder.dataSourceCreator, builder.contentId);
+        concurrentBandwidthMeter = builder.concurrentBandwidthMeter;
+        bandwidthEstimatorCreator = builder.bandwidthEstimatorCreator;
+        sharedAllocator = builder.sharedAllocator;
+        bufferPolicy = builder.bufferPolicy;
+        minBufferMs = builder.minBufferMs;
+        minRebufferMs = builder.minRebufferMs;
+    }
+
+    @Override
+    public RendererBuilder createRendererBuilder(Context context) {
+        return new ProgressiveRendererBuilder(context, eventHandler, eventProxy, userAgent, uri,
+                bufferSegmentSize, bufferSegmentCount, dataSourceCreator,
+                concurrentBandwidthMeter, bandwidthEstimatorCreator, sharedAllocator,
+                bufferPolicy, minBufferMs, minRebufferMs);
+    }
+
+    public static Builder newBuilder(final Uri uri, final String userAgent) {
+        return new Builder(uri, userAgent);
+    }
+
+    public static class Builder {
+
+        final String userAgent;
+        final Uri uri;
+        String contentId;
+        ProgressiveEventProxy eventProxy;
+        Handler eventHandler;
+        int bufferSegmentSize = RendererBuilder.DEFAULT_BUFFER_SEGMENT_SIZE;
+        int bufferSegmentCount = RendererBuilder.DEFAULT_MAIN_BUFFER_SEGMENT_COUNT;
+        DataSourceCreator dataSourceCreator;
+        boolean concurrentBandwidthMeter = true;
+        BandwidthEstimatorCreator bandwidthEstimatorCreator;
+        SharedAllocator sharedAllocator;
+        AdaptiveBufferPolicy bufferPolicy;
+        int minBufferMs = Player.DEFAULT_MIN_BUFFER_MS;
+        int minRebufferMs = Player.DEFAULT_MIN_REBUFFER_MS;
+
+        private Builder(final Uri uri, final String userAgent) {
+            this.uri = uri;
+            this.userAgent = userAgent;
+        }
+
+        /**
+         * Sets the id of the content, which a
+         * {@link jp.satorufujiwara.player.ContentDataSourceCreator} such as a cache keys its data
+         * by. Defaults to the uri, which is not passed to the creator.
+         */
+        public Builder contentId(String contentId) {
+            this.contentId = contentId;
+            return this;
+        }
+
+        public Builder eventProxy(ProgressiveEventProxy eventProxy) {
+            this.eventProxy = eventProxy;
+            return this;
+        }
+
+        public Builder eventHandler(Handler eventHandler) {
+            this.eventHandler = eventHandler;
+            return this;
+        }
+
+        public Builder bufferSegmentSize(int size) {
+            bufferSegmentSize = size;
+            return this;
+        }
+
+        public Builder bufferSegmentCount(int count) {
+            bufferSegmentCount = count;
+            return this;
+        }
+
+        /**
+         * Sets how the file is read. Defaults to a {@link ParallelRangeDataSourceCreator}.
+         */
+        public Builder dataSourceCreator(DataSourceCreator creator) {
+            dataSourceCreator = creator;
+            return this;
+        }
+
+        /**
+         * Sets whether to use a {@link jp.satorufujiwara.player.ConcurrentBandwidthMeter}, which
+         * suits the parallel connections of the default data source. Enabled by default.
+         */
+        public Builder concurrentBandwidthMeter(boolean enabled) {
+            concurrentBandwidthMeter = enabled;
+            return this;
+        }
+
+        /**
+         * Sets how bandwidth is estimated from completed transfers. Defaults to the sliding
+         * median of {@link jp.satorufujiwara.player.PercentileBandwidthEstimator}.
+         */
+        public Builder bandwidthEstimatorCreator(BandwidthEstimatorCreator creator) {
+            bandwidthEstimatorCreator = creator;
+            return this;
+        }
+
+        /**
+         * Takes buffer segments from {@code allocator}, which bounds the memory of every player
+         * sharing it. Its segment size must match {@link #bufferSegmentSize(int)}.
+         */
+        public Builder sharedAllocator(SharedAllocator allocator) {
+            sharedAllocator = allocator;
+            return this;
+        }
+
+        /**
+         * Scales buffer segment counts for the device and shrinks the buffer on memory pressure
+         * according to {@code policy}.
+         */
+        public Builder bufferPolicy(AdaptiveBufferPolicy policy) {
+            bufferPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Sets the buffer the player needs to start playback and to resume it after a
+         * rebuffer.
+         */
+        public Builder playerBufferMs(int minBufferMs, int minRebufferMs) {
+            this.minBufferMs = minBufferMs;
+            this.minRebufferMs = minRebufferMs;
+            return this;
+        }
+
+        /**
+         * Sets the player thresholds from {@code profile}. Progressive files are read by an
+         * extractor that buffers by size, so the load control watermarks of the profile do not
+         * apply.
+         */
+        public Builder loadControlProfile(LoadControlProfile profile) {
+            return playerBufferMs(profile.minBufferMs, profile.minRebufferMs);
+        }
+
+        public ProgressiveVideoSource build() {
+            if (TextUtils.isEmpty(userAgent)) {
+                throw new IllegalArgumentException("UserAgent must not be null.");
+            }
+            if (uri == null) {
+                throw new IllegalArgumentException("Url must not be null.");
+            }
+            if (eventHandler == null) {
+                eventHandler = new Handler(Looper.getMainLooper());
+            }
+            if (eventProxy == null) {
+                eventProxy = new ProgressiveEventProxy();
+            }
+            if (dataSourceCreator == null) {
+                dataSourceCreator = new ParallelRangeDataSourceCreator();
+            }
+            return new ProgressiveVideoSource(this);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package jp.satorufujiwara.player.streaming;
+
+import com.google.android.exoplayer.drm.DrmInitData;
+import com.google.android.exoplayer.drm.DrmSessionManager;
+import com.google.android.exoplayer.drm.FrameworkMediaCrypto;
+import com.google.android.exoplayer.drm.StreamingDrmSessionManager;
+
+/**
+ * Keeps the session of a {@link StreamingDrmSessionManager} open after its renderers close it,
+ * so that renderers built by a later prepare reuse the loaded keys instead of requesting a new
+ * license. The session is closed by {@link #release()}, or reopened if it failed.
+ */
+final class RetainedDrmSessionManager implements DrmSessionManager<FrameworkMediaCrypto> {
+
+    private final StreamingDrmSessionManager<FrameworkMediaCrypto> delegate;
+    private boolean delegateOpen;
+
+    RetainedDrmSessionManager(StreamingDrmSessionManager<FrameworkMediaCrypto> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public synchronized void open(DrmInitData drmInitData) {
+        if (delegateOpen && delegate.getState() == STATE_ERROR) {
+            delegate.close();
+            delegateOpen = false;
+        }
+        if (!delegateOpen) {
+            delegate.open(drmInitData);
+            delegateOpen = true;
+        }
+    }
+
+    @Override
+    public void close() {
+        // Keep the session and its keys for the next prepare.
+    }
+
+    @Override
+    public int getState() {
+        return delegate.getState();
+    }
+
+    @Override
+    public FrameworkMediaCrypto getMediaCrypto() {
+        return delegate.getMediaCrypto();
+    }
+
+    @Override
+    public boolean requiresSecureDecoderComponent(String mimeType) {
+        return delegate.requiresSecureDecoderComponent(mimeType);
+    }
+
+    @Override
+    public Exception getError() {
+        return delegate.getError();
+    }
+
+    synchronized void release() {
+        if (delegateOpen) {
+            delegate.close();
+            delegateOpen = false;
+        }
+    }
+
+}
@@ -1,12 +1,18 @@
 package jp.satorufujiwara.player.streaming;
 
 
+import com.google.android.exoplayer.chunk.ChunkSampleSource;
+import com.google.android.exoplayer.chunk.Format;
 import com.google.android.exoplayer.drm.StreamingDrmSessionManager;
 
+import java.io.IOException;
+
 import jp.satorufujiwara.player.EventProxy;
+import jp.satorufujiwara.player.Player;
 
 public class StreamingEventProxy extends EventProxy implements
-        StreamingDrmSessionManager.EventListener {
+        StreamingDrmSessionManager.EventListener,
+        ChunkSampleSource.EventListener {
 
     public interface InternalErrorListener {
 
@@ -15,12 +21,33 @@ public class StreamingEventProxy extends EventProxy implements
         void onDrmKeysLoaded();
     }
 
+    public interface LoadInfoListener {
+
+        void onVideoFormatEnabled(Format format, int trigger, long mediaTimeMs);
+
+        void onAudioFormatEnabled(Format format, int trigger, long mediaTimeMs);
+
+        void onLoadStarted(int sourceId, long length, int type, int trigger, Format format,
+                long mediaStartTimeMs, long mediaEndTimeMs);
+
+        void onLoadCompleted(int sourceId, long bytesLoaded, int type, int trigger, Format format,
+                long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
+                long loadDurationMs);
+
+        void onLoadError(int sourceId, IOException e);
+    }
+
     private InternalErrorListener internalErrorListener;
+    private LoadInfoListener loadInfoListener;
 
     public void setStreamingInternalErrorListener(InternalErrorListener internalErrorListener) {
         this.internalErrorListener = internalErrorListener;
     }
 
+    public void setStreamingLoadInfoListener(LoadInfoListener loadInfoListener) {
+        this.loadInfoListener = loadInfoListener;
+    }
+
     /** StreamingDrmSessionManager.EventListener */
     @Override
     public void onDrmSessionManagerError(Exception e) {
@@ -35,4 +62,62 @@ public class StreamingEventProxy extends EventProxy implements
             internalErrorListener.onDrmKeysLoaded();
         }
     }
+
+    /** ChunkSampleSource.EventListener */
+    @Override
+    public void onLoadStarted(int sourceId, long length, int type, int trigger, Format format,
+            long mediaStartTimeMs, long mediaEndTimeMs) {
+        if (loadInfoListener != null) {
+            loadInfoListener.onLoadStarted(sourceId, length, type, trigger, format,
+                    mediaStartTimeMs, mediaEndTimeMs);
+        }
+    }
+
+    /** ChunkSampleSource.EventListener */
+    @Override
+    public void onLoadCompleted(int sourceId, long bytesLoaded, int type, int trigger,
+            Format format, long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
+            long loadDurationMs) {
+        if (loadInfoListener != null) {
+            loadInfoListener.onLoadCompleted(sourceId, bytesLoaded, type, trigger, format,
+                    mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs, loadDurationMs);
+        }
+    }
+
+    /** ChunkSampleSource.EventListener */
+    @Override
+    public void onLoadCanceled(int sourceId, long bytesLoaded) {
+        // Do nothing.
+    }
+
+    /** ChunkSampleSource.EventListener */
+    @Override
+    public void onLoadError(int sourceId, IOException e) {
+        if (loadInfoListener != null) {
+            loadInfoListener.onLoadError(sourceId, e);
+        }
+    }
+
+    /** ChunkSampleSource.EventListener */
+    @Override
+    public void onUpstreamDiscarded(int sourceId, long mediaStartTimeMs, long mediaEndTimeMs) {
+        // Do nothing.
+    }
+
+    /** ChunkSampleSource.EventListener */
+    @Override
+    public void onDownstreamFormatChanged(int sourceId, Format format, int trigger,
+            long mediaTimeMs) {
+        if (sourceId == Player.TYPE_VIDEO) {
+            setVideoFormat(format);
+        }
+        if (loadInfoListener == null) {
+            return;
+        }
+        if (sourceId == Player.TYPE_VIDEO) {
+            loadInfoListener.onVideoFormatEnabled(format, trigger, mediaTimeMs);
+        } else if (sourceId == Player.TYPE_AUDIO) {
+            loadInfoListener.onAudioFormatEnabled(format, trigger, mediaTimeMs);
+        }
+    }
 }
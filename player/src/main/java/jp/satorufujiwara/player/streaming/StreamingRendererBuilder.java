@@ -0,0 +1,282 @@
+package jp.satorufujiwara.player.streaming;
+
+import com.google.android.exoplayer.LoadControl;
+import com.google.android.exoplayer.MediaCodecAudioTrackRenderer;
+import com.google.android.exoplayer.MediaCodecSelector;
+import com.google.android.exoplayer.MediaCodecVideoTrackRenderer;
+import com.google.android.exoplayer.TrackRenderer;
+import com.google.android.exoplayer.audio.AudioCapabilities;
+import com.google.android.exoplayer.chunk.ChunkSampleSource;
+import com.google.android.exoplayer.chunk.ChunkSource;
+import com.google.android.exoplayer.chunk.FormatEvaluator.AdaptiveEvaluator;
+import com.google.android.exoplayer.drm.DrmSessionManager;
+import com.google.android.exoplayer.drm.FrameworkMediaCrypto;
+import com.google.android.exoplayer.drm.MediaDrmCallback;
+import com.google.android.exoplayer.drm.StreamingDrmSessionManager;
+import com.google.android.exoplayer.drm.UnsupportedDrmException;
+import com.google.android.exoplayer.smoothstreaming.DefaultSmoothStreamingTrackSelector;
+import com.google.android.exoplayer.smoothstreaming.SmoothStreamingChunkSource;
+import com.google.android.exoplayer.smoothstreaming.SmoothStreamingManifest;
+import com.google.android.exoplayer.smoothstreaming.SmoothStreamingManifestParser;
+import com.google.android.exoplayer.text.TextTrackRenderer;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+import com.google.android.exoplayer.upstream.TransferListener;
+import com.google.android.exoplayer.util.ManifestFetcher;
+import com.google.android.exoplayer.util.ManifestFetcher.ManifestCallback;
+import com.google.android.exoplayer.util.Util;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaCodec;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import jp.satorufujiwara.player.AdaptiveBufferPolicy;
+import jp.satorufujiwara.player.BandwidthEstimatorCreator;
+import jp.satorufujiwara.player.DataSourceCreator;
+import jp.satorufujiwara.player.LimitedBandwidthMeter;
+import jp.satorufujiwara.player.LoadControlCreator;
+import jp.satorufujiwara.player.Player;
+import jp.satorufujiwara.player.RendererBuilder;
+import jp.satorufujiwara.player.RendererBuilderCallback;
+import jp.satorufujiwara.player.SharedAllocator;
+
+/**
+ * A {@link RendererBuilder} for SmoothStreaming.
+ * <p>
+ * Live manifests are refreshed by the chunk sources while they are enabled. The DRM session of
+ * protected content is kept by this builder until {@link #release()}, so preparing again reuses
+ * the loaded keys instead of requesting a new license. Its callbacks run on a thread owned by
+ * this builder, because the playback thread of a player ends with the player.
+ */
+public class StreamingRendererBuilder extends RendererBuilder<StreamingEventProxy> {
+
+    public static final int DEFAULT_LIVE_EDGE_LATENCY_MS = 30000;
+
+    long limitBitrate = Long.MAX_VALUE;
+    LimitedBandwidthMeter bandwidthMeter;
+    final DataSourceCreator dataSourceCreator;
+    final MediaDrmCallback drmCallback;
+    final HashMap<String, String> keyRequestParameters;
+    final int audioBufferSegmentCount;
+    final int textBufferSegmentCount;
+    final long liveEdgeLatencyMs;
+    final boolean concurrentBandwidthMeter;
+    final BandwidthEstimatorCreator bandwidthEstimatorCreator;
+    private AsyncRendererBuilder currentAsyncBuilder;
+    private HandlerThread drmThread;
+    private RetainedDrmSessionManager drmSessionManager;
+
+    StreamingRendererBuilder(Context context, Handler eventHandler,
+            StreamingEventProxy eventProxy, String userAgent, Uri uri, int bufferSegmentSize,
+            int bufferSegmentCount, int audioBufferSegmentCount, int textBufferSegmentCount,
+            long liveEdgeLatencyMs, DataSourceCreator dataSourceCreator,
+            MediaDrmCallback drmCallback, HashMap<String, String> keyRequestParameters,
+            boolean concurrentBandwidthMeter, BandwidthEstimatorCreator bandwidthEstimatorCreator,
+            SharedAllocator sharedAllocator, AdaptiveBufferPolicy bufferPolicy,
+            LoadControlCreator loadControlCreator, int minBufferMs, int minRebufferMs) {
+        super(context, eventHandler, eventProxy, userAgent, uri, bufferSegmentSize,
+                bufferSegmentCount, sharedAllocator, bufferPolicy, loadControlCreator,
+                minBufferMs, minRebufferMs);
+        this.audioBufferSegmentCount = audioBufferSegmentCount;
+        this.textBufferSegmentCount = textBufferSegmentCount;
+        this.liveEdgeLatencyMs = liveEdgeLatencyMs;
+        this.dataSourceCreator = dataSourceCreator;
+        this.drmCallback = drmCallback;
+        this.keyRequestParameters = keyRequestParameters;
+        this.concurrentBandwidthMeter = concurrentBandwidthMeter;
+        this.bandwidthEstimatorCreator = bandwidthEstimatorCreator;
+    }
+
+    @Override
+    protected void buildRenderers(RendererBuilderCallback callback) {
+        currentAsyncBuilder = new AsyncRendererBuilder(this, callback);
+        currentAsyncBuilder.init();
+    }
+
+    @Override
+    protected void cancel() {
+        if (currentAsyncBuilder != null) {
+            currentAsyncBuilder.cancel();
+            currentAsyncBuilder = null;
+        }
+    }
+
+    @Override
+    protected void setLimitBitrate(long bitrate) {
+        limitBitrate = bitrate;
+        if (bandwidthMeter != null) {
+            bandwidthMeter.setLimitBitrate(bitrate);
+        }
+    }
+
+    /**
+     * Closes the retained DRM session.
+     */
+    @Override
+    protected void release() {
+        cancel();
+        if (drmSessionManager != null) {
+            drmSessionManager.release();
+            drmSessionManager = null;
+        }
+        if (drmThread != null) {
+            drmThread.quit();
+            drmThread = null;
+        }
+    }
+
+    DrmSessionManager<FrameworkMediaCrypto> getDrmSessionManager(
+            SmoothStreamingManifest.ProtectionElement protectionElement)
+            throws UnsupportedDrmException {
+        if (drmSessionManager == null) {
+            if (drmThread == null) {
+                drmThread = new HandlerThread("StreamingDrm");
+                drmThread.start();
+            }
+            drmSessionManager = new RetainedDrmSessionManager(
+                    StreamingDrmSessionManager.newFrameworkInstance(protectionElement.uuid,
+                            drmThread.getLooper(), drmCallback, keyRequestParameters,
+                            eventHandler, eventProxy));
+        }
+        return drmSessionManager;
+    }
+
+    private final class AsyncRendererBuilder implements
+            ManifestCallback<SmoothStreamingManifest> {
+
+        private StreamingRendererBuilder rendererBuilder;
+        private final RendererBuilderCallback callback;
+        private final ManifestFetcher<SmoothStreamingManifest> manifestFetcher;
+
+        private boolean canceled;
+
+        public AsyncRendererBuilder(StreamingRendererBuilder rendererBuilder,
+                RendererBuilderCallback callback) {
+            this.rendererBuilder = rendererBuilder;
+            this.callback = callback;
+            String url = rendererBuilder.uri.toString();
+            if (!Util.toLowerInvariant(url).endsWith("/manifest")) {
+                url += "/Manifest";
+            }
+            manifestFetcher = new ManifestFetcher<>(url,
+                    rendererBuilder.createManifestDataSource(rendererBuilder.dataSourceCreator),
+                    new SmoothStreamingManifestParser());
+        }
+
+        public void init() {
+            manifestFetcher.singleLoad(rendererBuilder.eventHandler.getLooper(), this);
+        }
+
+        public void cancel() {
+            canceled = true;
+            rendererBuilder = null;
+        }
+
+        @Override
+        public void onSingleManifestError(IOException e) {
+            if (canceled) {
+                return;
+            }
+            callback.onRenderersError(e);
+        }
+
+        @Override
+        public void onSingleManifest(SmoothStreamingManifest manifest) {
+            if (canceled) {
+                return;
+            }
+            final Context context = rendererBuilder.context;
+            final Handler handler = rendererBuilder.eventHandler;
+            final StreamingEventProxy eventProxy = rendererBuilder.eventProxy;
+
+            // Check drm support if necessary.
+            DrmSessionManager<FrameworkMediaCrypto> drmSessionManager = null;
+            if (manifest.protectionElement != null) {
+                if (Util.SDK_INT < 18 || rendererBuilder.drmCallback == null) {
+                    callback.onRenderersError(new UnsupportedDrmException(
+                            UnsupportedDrmException.REASON_UNSUPPORTED_SCHEME));
+                    return;
+                }
+                try {
+                    drmSessionManager = rendererBuilder.getDrmSessionManager(
+                            manifest.protectionElement);
+                } catch (UnsupportedDrmException e) {
+                    callback.onRenderersError(e);
+                    return;
+                }
+            }
+
+            final LimitedBandwidthMeter bandwidthMeter = rendererBuilder.createBandwidthMeter(
+                    rendererBuilder.concurrentBandwidthMeter,
+                    rendererBuilder.bandwidthEstimatorCreator);
+            bandwidthMeter.setLimitBitrate(limitBitrate);
+            rendererBuilder.bandwidthMeter = bandwidthMeter;
+
+            final int bufferSegmentSize = rendererBuilder.bufferSegmentSize;
+            final int videoBufferSize = bufferSegmentSize
+                    * rendererBuilder.scaleSegmentCount(rendererBuilder.bufferSegmentCount);
+            final int audioBufferSize = bufferSegmentSize
+                    * rendererBuilder.scaleSegmentCount(rendererBuilder.audioBufferSegmentCount);
+            final int textBufferSize = bufferSegmentSize * rendererBuilder.textBufferSegmentCount;
+            final LoadControl loadControl = rendererBuilder.createLoadControl(
+                    videoBufferSize + audioBufferSize + textBufferSize);
+            final long liveEdgeLatencyMs = rendererBuilder.liveEdgeLatencyMs;
+
+            // Build the video renderer.
+            DataSource videoDataSource = createDataSource(context, bandwidthMeter);
+            ChunkSource videoChunkSource = new SmoothStreamingChunkSource(manifestFetcher,
+                    DefaultSmoothStreamingTrackSelector.newVideoInstance(context, true, false),
+                    videoDataSource, new AdaptiveEvaluator(bandwidthMeter), liveEdgeLatencyMs);
+            ChunkSampleSource videoSampleSource = new ChunkSampleSource(videoChunkSource,
+                    loadControl, videoBufferSize, handler, eventProxy, Player.TYPE_VIDEO);
+            MediaCodecVideoTrackRenderer videoRenderer = new MediaCodecVideoTrackRenderer(context,
+                    videoSampleSource, MediaCodecSelector.DEFAULT,
+                    MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT, 5000, drmSessionManager, true,
+                    handler, eventProxy, 50);
+
+            // Build the audio renderer.
+            DataSource audioDataSource = createDataSource(context, bandwidthMeter);
+            ChunkSource audioChunkSource = new SmoothStreamingChunkSource(manifestFetcher,
+                    DefaultSmoothStreamingTrackSelector.newAudioInstance(), audioDataSource, null,
+                    liveEdgeLatencyMs);
+            ChunkSampleSource audioSampleSource = new ChunkSampleSource(audioChunkSource,
+                    loadControl, audioBufferSize, handler, eventProxy, Player.TYPE_AUDIO);
+            MediaCodecAudioTrackRenderer audioRenderer = new MediaCodecAudioTrackRenderer(
+                    audioSampleSource, MediaCodecSelector.DEFAULT, drmSessionManager, true,
+                    handler, eventProxy, AudioCapabilities.getCapabilities(context),
+                    AudioManager.STREAM_MUSIC);
+
+            // Build the text renderer.
+            DataSource textDataSource = createDataSource(context, bandwidthMeter);
+            ChunkSource textChunkSource = new SmoothStreamingChunkSource(manifestFetcher,
+                    DefaultSmoothStreamingTrackSelector.newTextInstance(), textDataSource, null,
+                    liveEdgeLatencyMs);
+            ChunkSampleSource textSampleSource = new ChunkSampleSource(textChunkSource,
+                    loadControl, textBufferSize, handler, eventProxy, Player.TYPE_TEXT);
+            TrackRenderer textRenderer = new TextTrackRenderer(textSampleSource, eventProxy,
+                    handler.getLooper());
+
+            TrackRenderer[] renderers = new TrackRenderer[Player.RENDERER_COUNT];
+            renderers[Player.TYPE_VIDEO] = videoRenderer;
+            renderers[Player.TYPE_AUDIO] = audioRenderer;
+            renderers[Player.TYPE_TEXT] = textRenderer;
+            callback.onRenderers(renderers, bandwidthMeter);
+        }
+
+        private DataSource createDataSource(Context context, TransferListener listener) {
+            if (rendererBuilder.dataSourceCreator != null) {
+                return rendererBuilder.dataSourceCreator.create(context, listener,
+                        rendererBuilder.userAgent);
+            }
+            return new DefaultUriDataSource(context, listener, rendererBuilder.userAgent);
+        }
+
+    }
+
+}
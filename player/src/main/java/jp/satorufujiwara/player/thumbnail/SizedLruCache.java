@@ -0,0 +1,82 @@
+package jp.satorufujiwara.player.thumbnail;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache bounded by the sum of the sizes of its values, which evicts the least recently used
+ * entries first. Unlike {@link android.util.LruCache}, it runs on the JVM.
+ */
+abstract class SizedLruCache<K, V> {
+
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxSize;
+    private long size;
+
+    SizedLruCache(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive.");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the size of an entry, in the unit of the maximum size.
+     */
+    protected abstract long sizeOf(K key, V value);
+
+    /**
+     * Called with the lock of the cache held when an entry is evicted or replaced. Does nothing
+     * by default.
+     */
+    protected void onEvicted(K key, V value) {
+    }
+
+    synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(K key, V value) {
+        final V previous = entries.put(key, value);
+        if (previous != null) {
+            size -= sizeOf(key, previous);
+            if (previous != value) {
+                onEvicted(key, previous);
+            }
+        }
+        size += sizeOf(key, value);
+        trimToSize(maxSize);
+    }
+
+    synchronized V remove(K key) {
+        final V value = entries.remove(key);
+        if (value != null) {
+            size -= sizeOf(key, value);
+        }
+        return value;
+    }
+
+    synchronized void clear() {
+        trimToSize(-1);
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized int count() {
+        return entries.size();
+    }
+
+    private void trimToSize(long targetSize) {
+        Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator();
+        while (size > targetSize && it.hasNext()) {
+            Map.Entry<K, V> eldest = it.next();
+            it.remove();
+            size -= sizeOf(eldest.getKey(), eldest.getValue());
+            onEvicted(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+}
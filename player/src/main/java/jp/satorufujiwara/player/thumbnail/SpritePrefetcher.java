@@ -0,0 +1,181 @@
+package jp.satorufujiwara.player.thumbnail;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Fetches the images of a {@link ThumbnailTrack} nearest to the seek position first, and keeps
+ * them within a byte budget. The budget is planned with the average size of the images fetched
+ * so far. Once it is exceeded, the images farthest from the position are dropped.
+ */
+final class SpritePrefetcher {
+
+    interface Fetcher {
+
+        /**
+         * Reads {@code uri} completely.
+         */
+        byte[] fetch(String uri) throws IOException;
+
+    }
+
+    interface Listener {
+
+        /**
+         * Called on the fetching thread.
+         *
+         * @param data The image, or null if it could not be fetched.
+         */
+        void onSpriteLoaded(String uri, byte[] data);
+
+    }
+
+    private final ThumbnailTrack track;
+    private final Fetcher fetcher;
+    private final Executor executor;
+    private final long maxBytes;
+    private final int maxParallelism;
+    private final Listener listener;
+    private final HashMap<String, byte[]> sprites = new HashMap<>();
+    private final HashSet<String> loading = new HashSet<>();
+    private final HashSet<String> failed = new HashSet<>();
+    private long bytes;
+    private long fetchedBytes;
+    private int fetchedCount;
+    private long positionMs;
+    private boolean released;
+
+    SpritePrefetcher(ThumbnailTrack track, Fetcher fetcher, Executor executor, long maxBytes,
+            int maxParallelism, Listener listener) {
+        this.track = track;
+        this.fetcher = fetcher;
+        this.executor = executor;
+        this.maxBytes = maxBytes;
+        this.maxParallelism = maxParallelism;
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the image of {@code uri} if it was fetched, or null.
+     */
+    synchronized byte[] get(String uri) {
+        return sprites.get(uri);
+    }
+
+    synchronized boolean isLoading(String uri) {
+        return loading.contains(uri);
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Moves the position the images are fetched around.
+     */
+    synchronized void setPosition(long positionMs) {
+        this.positionMs = positionMs;
+        schedule();
+    }
+
+    /**
+     * Fetches {@code uri} again if it failed before.
+     */
+    synchronized void retry(String uri) {
+        if (failed.remove(uri)) {
+            schedule();
+        }
+    }
+
+    synchronized void release() {
+        released = true;
+        sprites.clear();
+        bytes = 0;
+    }
+
+    private void schedule() {
+        if (released) {
+            return;
+        }
+        final long averageBytes = fetchedCount == 0 ? 0 : fetchedBytes / fetchedCount;
+        final List<String> uris = track.getImageUrisByDistance(positionMs);
+        long plannedBytes = 0;
+        for (int i = 0; i < uris.size() && loading.size() < maxParallelism; i++) {
+            final String uri = uris.get(i);
+            final byte[] data = sprites.get(uri);
+            plannedBytes += data != null ? data.length : averageBytes;
+            if (plannedBytes > maxBytes && i > 0) {
+                // The nearest image is fetched even if it alone exceeds the budget.
+                break;
+            }
+            if (data == null && !loading.contains(uri) && !failed.contains(uri)) {
+                fetch(uri);
+            }
+        }
+    }
+
+    private void fetch(final String uri) {
+        loading.add(uri);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                byte[] data = null;
+                try {
+                    data = fetcher.fetch(uri);
+                } catch (IOException e) {
+                    // Reported as a null image.
+                }
+                onFetched(uri, data);
+            }
+        });
+    }
+
+    private void onFetched(String uri, byte[] data) {
+        synchronized (this) {
+            loading.remove(uri);
+            if (released) {
+                return;
+            }
+            if (data == null) {
+                failed.add(uri);
+            } else {
+                sprites.put(uri, data);
+                bytes += data.length;
+                fetchedBytes += data.length;
+                fetchedCount++;
+                evict(uri);
+            }
+            schedule();
+        }
+        listener.onSpriteLoaded(uri, data);
+    }
+
+    /**
+     * Drops the images farthest from the position until the budget is met, keeping
+     * {@code keepUri}.
+     */
+    private void evict(String keepUri) {
+        while (bytes > maxBytes && sprites.size() > 1) {
+            String farthest = null;
+            long farthestDistanceMs = -1;
+            Iterator<String> it = sprites.keySet().iterator();
+            while (it.hasNext()) {
+                final String uri = it.next();
+                final long distanceMs = track.getDistanceMs(uri, positionMs);
+                if (!uri.equals(keepUri) && distanceMs > farthestDistanceMs) {
+                    farthest = uri;
+                    farthestDistanceMs = distanceMs;
+                }
+            }
+            if (farthest == null) {
+                return;
+            }
+            bytes -= sprites.remove(farthest).length;
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+package jp.satorufujiwara.player.thumbnail;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.WeakHashMap;
+
+/**
+ * Decoded thumbnails, bounded in bytes. The bitmaps of evicted thumbnails are decoded into
+ * again when the next thumbnail has the same size, which is the case for the tiles of sprite
+ * sheets, so that scrubbing does not allocate a bitmap per thumbnail.
+ * <p>
+ * Bitmaps returned by {@link #acquire} and {@link #decode} are in use until they are passed to
+ * {@link #release} as often as they were returned. A bitmap in use is not decoded into, even
+ * if it was evicted, so that it is not changed while it is drawn.
+ */
+final class ThumbnailCache {
+
+    private static final int MAX_REUSABLE_BITMAPS = 4;
+
+    private final SizedLruCache<ThumbnailTile, Bitmap> bitmaps;
+    // Guarded by this, as are the two below. Bitmaps compare by identity, and those that are
+    // never released are collected once they are evicted and dropped by the caller.
+    private final ArrayDeque<Bitmap> reusableBitmaps = new ArrayDeque<>();
+    private final WeakHashMap<Bitmap, Integer> useCounts = new WeakHashMap<>();
+    private final WeakHashMap<Bitmap, Boolean> evictedInUse = new WeakHashMap<>();
+
+    ThumbnailCache(long maxBytes) {
+        bitmaps = new SizedLruCache<ThumbnailTile, Bitmap>(maxBytes) {
+            @Override
+            protected long sizeOf(ThumbnailTile key, Bitmap value) {
+                return value.getByteCount();
+            }
+
+            @Override
+            protected void onEvicted(ThumbnailTile key, Bitmap value) {
+                // Called from put() and clear(), which hold the lock of the thumbnail cache.
+                if (useCounts.containsKey(value)) {
+                    evictedInUse.put(value, Boolean.TRUE);
+                } else {
+                    addReusable(value);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the cached thumbnail of {@code tile} in use, or null.
+     */
+    synchronized Bitmap acquire(ThumbnailTile tile) {
+        final Bitmap bitmap = bitmaps.get(tile);
+        if (bitmap != null) {
+            retain(bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Ends one use of {@code bitmap}. It may be decoded into once it is evicted and no longer
+     * in use.
+     */
+    synchronized void release(Bitmap bitmap) {
+        final Integer count = useCounts.get(bitmap);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            useCounts.put(bitmap, count - 1);
+            return;
+        }
+        useCounts.remove(bitmap);
+        if (evictedInUse.remove(bitmap) != null) {
+            addReusable(bitmap);
+        }
+    }
+
+    /**
+     * Caches {@code bitmap} as the thumbnail of {@code tile}, in use.
+     */
+    synchronized void put(ThumbnailTile tile, Bitmap bitmap) {
+        // Retained first, so that it is not reused if it alone exceeds the cache.
+        retain(bitmap);
+        bitmaps.put(tile, bitmap);
+    }
+
+    /**
+     * Returns the thumbnail of {@code tile} cut from {@code image} in use, decoding it if it is
+     * not cached, or null if the image cannot be decoded.
+     */
+    Bitmap decode(ThumbnailTile tile, byte[] image) {
+        Bitmap bitmap = acquire(tile);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inMutable = true;
+        int width = tile.width;
+        int height = tile.height;
+        if (!tile.hasRegion()) {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(image, 0, image.length, options);
+            options.inJustDecodeBounds = false;
+            width = options.outWidth;
+            height = options.outHeight;
+        }
+        final Bitmap reusable = takeReusable(width, height);
+        options.inBitmap = reusable;
+        try {
+            bitmap = decode(tile, image, options);
+        } catch (IllegalArgumentException e) {
+            // The reused bitmap did not fit.
+            options.inBitmap = null;
+            try {
+                bitmap = decode(tile, image, options);
+            } catch (IllegalArgumentException regionOutsideImage) {
+                bitmap = null;
+            }
+        }
+        if (bitmap == null) {
+            if (reusable != null) {
+                synchronized (this) {
+                    addReusable(reusable);
+                }
+            }
+            return null;
+        }
+        put(tile, bitmap);
+        return bitmap;
+    }
+
+    synchronized void clear() {
+        bitmaps.clear();
+        reusableBitmaps.clear();
+        useCounts.clear();
+        evictedInUse.clear();
+    }
+
+    /**
+     * Removes and returns a reusable bitmap of the given size, or null.
+     */
+    synchronized Bitmap takeReusable(int width, int height) {
+        Iterator<Bitmap> it = reusableBitmaps.iterator();
+        while (it.hasNext()) {
+            Bitmap bitmap = it.next();
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                    && bitmap.getConfig() == Bitmap.Config.RGB_565) {
+                it.remove();
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    private void retain(Bitmap bitmap) {
+        final Integer count = useCounts.get(bitmap);
+        useCounts.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    private void addReusable(Bitmap bitmap) {
+        if (!bitmap.isMutable()) {
+            return;
+        }
+        if (reusableBitmaps.size() == MAX_REUSABLE_BITMAPS) {
+            reusableBitmaps.poll();
+        }
+        reusableBitmaps.add(bitmap);
+    }
+
+    private static Bitmap decode(ThumbnailTile tile, byte[] image,
+            BitmapFactory.Options options) {
+        if (!tile.hasRegion()) {
+            return BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        }
+        BitmapRegionDecoder decoder;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(image, 0, image.length, false);
+        } catch (IOException e) {
+            return null;
+        }
+        try {
+            return decoder.decodeRegion(new Rect(tile.x, tile.y, tile.x + tile.width,
+                    tile.y + tile.height), options);
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+}
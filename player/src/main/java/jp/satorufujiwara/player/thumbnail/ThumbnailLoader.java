@@ -0,0 +1,399 @@
+package jp.satorufujiwara.player.thumbnail;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Process;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import jp.satorufujiwara.player.DataSourceCreator;
+import jp.satorufujiwara.player.VideoSource;
+
+/**
+ * Loads seek bar thumbnails of a {@link VideoSource} from a WebVTT thumbnail track or an HLS
+ * image media playlist. The sprite sheets around the seek position are prefetched in the
+ * background within a byte budget, and decoded thumbnails are kept in a cache bounded in bytes,
+ * so that hovering over the seek bar does not need a request per position.
+ * <p>
+ * Methods must be called on the thread of the event handler of the source, where callbacks are
+ * invoked as well.
+ */
+public class ThumbnailLoader {
+
+    public static final long DEFAULT_MAX_SPRITE_BYTES = 4 * 1024 * 1024;
+    public static final long DEFAULT_MAX_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private static final int MAX_PARALLEL_FETCHES = 2;
+    private static final long KEEP_ALIVE_MS = 30000;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "Thumbnail");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    public interface Callback {
+
+        /**
+         * @param positionMs The position the thumbnail was requested for.
+         * @param bitmap     The thumbnail, or null if there is none. Pass it to
+         *                   {@link #releaseThumbnail(Bitmap)} once it is no longer drawn. Until
+         *                   then it is not decoded into.
+         */
+        void onThumbnail(long positionMs, Bitmap bitmap);
+    }
+
+    private final Context context;
+    private final Uri trackUri;
+    private final String userAgent;
+    private final Handler eventHandler;
+    private final DataSourceCreator dataSourceCreator;
+    private final long maxSpriteBytes;
+    private final ThumbnailCache cache;
+    private final ThreadPoolExecutor fetchExecutor;
+    private final ThreadPoolExecutor decodeExecutor;
+
+    private ThumbnailTrack track;
+    private SpritePrefetcher prefetcher;
+    private boolean preparing;
+    private boolean released;
+    private long positionMs;
+    private long pendingPositionMs;
+    private Callback pendingCallback;
+    private ThumbnailTile pendingTile;
+
+    private ThumbnailLoader(Builder builder) {
+        context = builder.context;
+        trackUri = builder.trackUri;
+        userAgent = builder.source.userAgent;
+        eventHandler = builder.source.eventHandler;
+        dataSourceCreator = builder.dataSourceCreator;
+        maxSpriteBytes = builder.maxSpriteBytes;
+        cache = new ThumbnailCache(builder.maxCacheBytes);
+        fetchExecutor = createExecutor(MAX_PARALLEL_FETCHES);
+        decodeExecutor = createExecutor(1);
+    }
+
+    /**
+     * Loads the thumbnails of an HLS {@code source} from the image media playlist listed in its
+     * master playlist by {@code EXT-X-IMAGE-STREAM-INF}.
+     */
+    public static Builder newBuilder(Context context, VideoSource source) {
+        return new Builder(context, source, source != null ? source.uri : null);
+    }
+
+    /**
+     * Loads the thumbnails of {@code source} from {@code trackUri}, which is a WebVTT thumbnail
+     * track, an HLS image media playlist, or a master playlist listing one.
+     */
+    public static Builder newBuilder(Context context, VideoSource source, Uri trackUri) {
+        return new Builder(context, source, trackUri);
+    }
+
+    /**
+     * Loads the thumbnail track in the background and starts prefetching around the current
+     * position. Called by {@link #load(long, Callback)} if needed, and may be called again after
+     * the track failed to load.
+     */
+    public void prepare() {
+        if (preparing || track != null || released) {
+            return;
+        }
+        preparing = true;
+        fetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ThumbnailTrack loaded = null;
+                try {
+                    loaded = loadTrack();
+                } catch (IOException e) {
+                    // Reported as a missing thumbnail.
+                }
+                final ThumbnailTrack result = loaded;
+                eventHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onTrackLoaded(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns the loaded thumbnail track, or null.
+     */
+    public ThumbnailTrack getTrack() {
+        return track;
+    }
+
+    /**
+     * Moves the position sprite sheets are prefetched around, for example while the seek bar is
+     * dragged.
+     */
+    public void setPosition(long positionMs) {
+        this.positionMs = positionMs;
+        if (prefetcher != null) {
+            prefetcher.setPosition(positionMs);
+        }
+    }
+
+    /**
+     * Loads the thumbnail at {@code positionMs} and moves the prefetch position there. Only the
+     * last request is answered, so that a request that is still loading is replaced by the next
+     * position.
+     */
+    public void load(long positionMs, Callback callback) {
+        if (released) {
+            return;
+        }
+        pendingPositionMs = positionMs;
+        pendingCallback = callback;
+        pendingTile = null;
+        setPosition(positionMs);
+        if (track == null) {
+            prepare();
+            return;
+        }
+        final ThumbnailTile tile = track.getTile(positionMs);
+        if (tile == null) {
+            deliver(null);
+            return;
+        }
+        final Bitmap bitmap = cache.acquire(tile);
+        if (bitmap != null) {
+            deliver(bitmap);
+            return;
+        }
+        pendingTile = tile;
+        maybeDecode(tile);
+    }
+
+    /**
+     * Returns the thumbnail at {@code positionMs} if it is decoded already, or null. Pass it to
+     * {@link #releaseThumbnail(Bitmap)} once it is no longer drawn.
+     */
+    public Bitmap getCachedThumbnail(long positionMs) {
+        final ThumbnailTile tile = track != null ? track.getTile(positionMs) : null;
+        return tile != null ? cache.acquire(tile) : null;
+    }
+
+    /**
+     * Tells that a thumbnail given by this loader is no longer drawn, so that its bitmap may be
+     * decoded into once it is evicted. Pass each thumbnail once for every time it was given.
+     */
+    public void releaseThumbnail(Bitmap bitmap) {
+        if (bitmap != null) {
+            cache.release(bitmap);
+        }
+    }
+
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        if (prefetcher != null) {
+            prefetcher.release();
+        }
+        fetchExecutor.shutdownNow();
+        decodeExecutor.shutdownNow();
+        cache.clear();
+        pendingCallback = null;
+        pendingTile = null;
+    }
+
+    private void onTrackLoaded(ThumbnailTrack loaded) {
+        preparing = false;
+        if (released) {
+            return;
+        }
+        if (loaded == null) {
+            deliver(null);
+            return;
+        }
+        track = loaded;
+        prefetcher = new SpritePrefetcher(loaded, new SpritePrefetcher.Fetcher() {
+            @Override
+            public byte[] fetch(String uri) throws IOException {
+                return ThumbnailLoader.this.fetch(uri);
+            }
+        }, fetchExecutor, maxSpriteBytes, MAX_PARALLEL_FETCHES, new SpritePrefetcher.Listener() {
+            @Override
+            public void onSpriteLoaded(final String uri, final byte[] data) {
+                eventHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        ThumbnailLoader.this.onSpriteLoaded(uri, data != null);
+                    }
+                });
+            }
+        });
+        prefetcher.setPosition(positionMs);
+        if (pendingCallback != null) {
+            load(pendingPositionMs, pendingCallback);
+        }
+    }
+
+    private void onSpriteLoaded(String uri, boolean loaded) {
+        if (released || pendingTile == null || !pendingTile.imageUri.equals(uri)) {
+            return;
+        }
+        if (loaded) {
+            maybeDecode(pendingTile);
+        } else {
+            deliver(null);
+        }
+    }
+
+    private void maybeDecode(final ThumbnailTile tile) {
+        final byte[] image = prefetcher.get(tile.imageUri);
+        if (image == null) {
+            // The image is the nearest one, so it is being fetched unless it failed before.
+            prefetcher.retry(tile.imageUri);
+            return;
+        }
+        decodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = cache.decode(tile, image);
+                eventHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!released && tile == pendingTile) {
+                            deliver(bitmap);
+                        } else if (bitmap != null) {
+                            cache.release(bitmap);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void deliver(Bitmap bitmap) {
+        final Callback callback = pendingCallback;
+        final long positionMs = pendingPositionMs;
+        pendingCallback = null;
+        pendingTile = null;
+        if (callback != null) {
+            callback.onThumbnail(positionMs, bitmap);
+        } else if (bitmap != null) {
+            cache.release(bitmap);
+        }
+    }
+
+    private ThumbnailTrack loadTrack() throws IOException {
+        String uri = trackUri.toString();
+        String text = new String(fetch(uri), "UTF-8");
+        final String imagePlaylist = ThumbnailTrackParser.findImagePlaylist(uri, text);
+        if (imagePlaylist != null) {
+            uri = imagePlaylist;
+            text = new String(fetch(uri), "UTF-8");
+        }
+        return ThumbnailTrackParser.parse(uri, text);
+    }
+
+    private byte[] fetch(String uri) throws IOException {
+        final DataSource dataSource = dataSourceCreator != null
+                ? dataSourceCreator.create(context, null, userAgent)
+                : new DefaultUriDataSource(context, userAgent);
+        try {
+            dataSource.open(new DataSpec(Uri.parse(uri)));
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int read;
+            while ((read = dataSource.read(buffer, 0, buffer.length))
+                    != C.RESULT_END_OF_INPUT) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        } finally {
+            dataSource.close();
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_MS,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), THREAD_FACTORY);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public static class Builder {
+
+        final Context context;
+        final VideoSource source;
+        final Uri trackUri;
+        DataSourceCreator dataSourceCreator;
+        long maxSpriteBytes = DEFAULT_MAX_SPRITE_BYTES;
+        long maxCacheBytes = DEFAULT_MAX_CACHE_BYTES;
+
+        private Builder(Context context, VideoSource source, Uri trackUri) {
+            this.context = context;
+            this.source = source;
+            this.trackUri = trackUri;
+        }
+
+        /**
+         * Sets the creator of the data sources the track and the images are read with, for
+         * example the one of the source so that they share its http stack.
+         */
+        public Builder dataSourceCreator(DataSourceCreator creator) {
+            dataSourceCreator = creator;
+            return this;
+        }
+
+        /**
+         * Sets the most bytes of sprite sheets kept around the seek position.
+         */
+        public Builder maxSpriteBytes(long bytes) {
+            maxSpriteBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Sets the most bytes of decoded thumbnails kept.
+         */
+        public Builder maxCacheBytes(long bytes) {
+            maxCacheBytes = bytes;
+            return this;
+        }
+
+        public ThumbnailLoader build() {
+            if (context == null) {
+                throw new IllegalArgumentException("Context must not be null.");
+            }
+            if (source == null || trackUri == null) {
+                throw new IllegalArgumentException("Source and track uri must not be null.");
+            }
+            if (maxSpriteBytes <= 0 || maxCacheBytes <= 0) {
+                throw new IllegalArgumentException("Byte budgets must be positive.");
+            }
+            return new ThumbnailLoader(this);
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package jp.satorufujiwara.player.thumbnail;
+
+/**
+ * A thumbnail for a time range, which is a region of a sprite sheet or a whole image.
+ */
+public final class ThumbnailTile {
+
+    public final long startTimeMs;
+    public final long endTimeMs;
+    public final String imageUri;
+    public final int x;
+    public final int y;
+    /** The width of the region, or -1 for the whole image. */
+    public final int width;
+    /** The height of the region, or -1 for the whole image. */
+    public final int height;
+
+    ThumbnailTile(long startTimeMs, long endTimeMs, String imageUri, int x, int y, int width,
+            int height) {
+        this.startTimeMs = startTimeMs;
+        this.endTimeMs = endTimeMs;
+        this.imageUri = imageUri;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns whether the thumbnail is a region of its image rather than the whole image.
+     */
+    public boolean hasRegion() {
+        return width > 0 && height > 0;
+    }
+
+}
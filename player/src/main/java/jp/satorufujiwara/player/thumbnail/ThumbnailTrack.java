@@ -0,0 +1,96 @@
+package jp.satorufujiwara.player.thumbnail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The thumbnails of a video, ordered by time, and the images they are cut from.
+ */
+public final class ThumbnailTrack {
+
+    public final List<ThumbnailTile> tiles;
+    private final LinkedHashMap<String, long[]> imageRanges = new LinkedHashMap<>();
+
+    ThumbnailTrack(List<ThumbnailTile> tiles) {
+        List<ThumbnailTile> sorted = new ArrayList<>(tiles);
+        Collections.sort(sorted, new Comparator<ThumbnailTile>() {
+            @Override
+            public int compare(ThumbnailTile lhs, ThumbnailTile rhs) {
+                return lhs.startTimeMs < rhs.startTimeMs ? -1
+                        : (lhs.startTimeMs == rhs.startTimeMs ? 0 : 1);
+            }
+        });
+        this.tiles = Collections.unmodifiableList(sorted);
+        for (ThumbnailTile tile : sorted) {
+            long[] range = imageRanges.get(tile.imageUri);
+            if (range == null) {
+                imageRanges.put(tile.imageUri, new long[]{tile.startTimeMs, tile.endTimeMs});
+            } else {
+                range[0] = Math.min(range[0], tile.startTimeMs);
+                range[1] = Math.max(range[1], tile.endTimeMs);
+            }
+        }
+    }
+
+    /**
+     * Returns the thumbnail shown at {@code positionMs}, which is the last one starting at or
+     * before it, or null if it is before the first one.
+     */
+    public ThumbnailTile getTile(long positionMs) {
+        int low = 0;
+        int high = tiles.size() - 1;
+        ThumbnailTile tile = null;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (tiles.get(mid).startTimeMs <= positionMs) {
+                tile = tiles.get(mid);
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Returns the uris of the images, in the order of their first thumbnail.
+     */
+    public List<String> getImageUris() {
+        return new ArrayList<>(imageRanges.keySet());
+    }
+
+    /**
+     * Returns how far {@code positionMs} is from the time range covered by the image of
+     * {@code imageUri}, which is 0 within it.
+     */
+    long getDistanceMs(String imageUri, long positionMs) {
+        final long[] range = imageRanges.get(imageUri);
+        if (range == null) {
+            return Long.MAX_VALUE;
+        }
+        if (positionMs < range[0]) {
+            return range[0] - positionMs;
+        }
+        return positionMs < range[1] ? 0 : positionMs - range[1];
+    }
+
+    /**
+     * Returns the uris of the images, nearest to {@code positionMs} first.
+     */
+    List<String> getImageUrisByDistance(final long positionMs) {
+        List<String> uris = getImageUris();
+        Collections.sort(uris, new Comparator<String>() {
+            @Override
+            public int compare(String lhs, String rhs) {
+                final long l = getDistanceMs(lhs, positionMs);
+                final long r = getDistanceMs(rhs, positionMs);
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        return uris;
+    }
+
+}
@@ -0,0 +1,283 @@
+package jp.satorufujiwara.player.thumbnail;
+
+import com.google.android.exoplayer.ParserException;
+import com.google.android.exoplayer.util.UriUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses thumbnail tracks: WebVTT files whose cues point at images, optionally at a region
+ * with a {@code #xywh=} fragment, and HLS image media playlists with {@code EXT-X-IMAGES-ONLY}
+ * and {@code EXT-X-TILES}.
+ */
+public final class ThumbnailTrackParser {
+
+    private static final String WEBVTT_HEADER = "WEBVTT";
+    private static final String CUE_ARROW = "-->";
+    private static final String XYWH_FRAGMENT = "#xywh=";
+    private static final String IMAGES_ONLY_TAG = "#EXT-X-IMAGES-ONLY";
+    private static final String IMAGE_STREAM_INF_TAG = "#EXT-X-IMAGE-STREAM-INF:";
+    private static final String EXTINF_TAG = "#EXTINF:";
+    private static final String TILES_TAG = "#EXT-X-TILES:";
+
+    private ThumbnailTrackParser() {
+    }
+
+    /**
+     * Parses a WebVTT thumbnail track or an HLS image media playlist.
+     *
+     * @param baseUri The uri the track was loaded from, which relative image uris resolve
+     *                against.
+     */
+    public static ThumbnailTrack parse(String baseUri, String text) throws ParserException {
+        if (text.startsWith("\uFEFF")) {
+            text = text.substring(1);
+        }
+        if (text.startsWith(WEBVTT_HEADER)) {
+            return parseWebVtt(baseUri, text);
+        } else if (text.contains(IMAGES_ONLY_TAG)) {
+            return parseImagePlaylist(baseUri, text);
+        }
+        throw new ParserException("Not a thumbnail track.");
+    }
+
+    /**
+     * Returns the uri of the image media playlist with the lowest bandwidth listed by an
+     * {@code EXT-X-IMAGE-STREAM-INF} tag of a master playlist, or null if there is none.
+     */
+    public static String findImagePlaylist(String baseUri, String masterPlaylist) {
+        String uri = null;
+        long lowestBandwidth = Long.MAX_VALUE;
+        for (String line : masterPlaylist.split("\r?\n")) {
+            line = line.trim();
+            if (!line.startsWith(IMAGE_STREAM_INF_TAG)) {
+                continue;
+            }
+            final String attributes = line.substring(IMAGE_STREAM_INF_TAG.length());
+            final String value = getAttribute(attributes, "URI");
+            if (value == null) {
+                continue;
+            }
+            final long bandwidth = parseLong(getAttribute(attributes, "BANDWIDTH"), 0);
+            if (uri == null || bandwidth < lowestBandwidth) {
+                uri = UriUtil.resolve(baseUri, value);
+                lowestBandwidth = bandwidth;
+            }
+        }
+        return uri;
+    }
+
+    static ThumbnailTrack parseWebVtt(String baseUri, String text) throws ParserException {
+        final String[] lines = text.split("\r?\n");
+        List<ThumbnailTile> tiles = new ArrayList<>();
+        for (int i = 0; i < lines.length; i++) {
+            final String line = lines[i].trim();
+            final int arrow = line.indexOf(CUE_ARROW);
+            if (arrow == -1) {
+                continue;
+            }
+            final long startMs = parseVttTimestampMs(line.substring(0, arrow).trim());
+            String end = line.substring(arrow + CUE_ARROW.length()).trim();
+            final int space = end.indexOf(' ');
+            if (space != -1) {
+                // Cue settings.
+                end = end.substring(0, space);
+            }
+            final long endMs = parseVttTimestampMs(end);
+            if (i + 1 >= lines.length || lines[i + 1].trim().isEmpty()) {
+                continue;
+            }
+            tiles.add(parseVttPayload(baseUri, lines[++i].trim(), startMs, endMs));
+        }
+        if (tiles.isEmpty()) {
+            throw new ParserException("No thumbnails in WebVTT track.");
+        }
+        return new ThumbnailTrack(tiles);
+    }
+
+    static ThumbnailTrack parseImagePlaylist(String baseUri, String text) throws ParserException {
+        List<ThumbnailTile> tiles = new ArrayList<>();
+        long startUs = 0;
+        long durationUs = 0;
+        int tileWidth = -1;
+        int tileHeight = -1;
+        int columns = 1;
+        int rows = 1;
+        long tileDurationUs = 0;
+        for (String line : text.split("\r?\n")) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith(EXTINF_TAG)) {
+                String value = line.substring(EXTINF_TAG.length());
+                final int comma = value.indexOf(',');
+                durationUs = parseSecondsUs(comma == -1 ? value : value.substring(0, comma));
+            } else if (line.startsWith(TILES_TAG)) {
+                final String attributes = line.substring(TILES_TAG.length());
+                final int[] resolution = parseDimensions(getAttribute(attributes, "RESOLUTION"));
+                final int[] layout = parseDimensions(getAttribute(attributes, "LAYOUT"));
+                if (resolution == null || layout == null) {
+                    throw new ParserException("Invalid EXT-X-TILES: " + line);
+                }
+                tileWidth = resolution[0];
+                tileHeight = resolution[1];
+                columns = layout[0];
+                rows = layout[1];
+                final String duration = getAttribute(attributes, "DURATION");
+                tileDurationUs = duration != null ? parseSecondsUs(duration) : 0;
+            } else if (!line.startsWith("#")) {
+                final String imageUri = UriUtil.resolve(baseUri, line);
+                final long endUs = startUs + durationUs;
+                if (tileWidth <= 0) {
+                    tiles.add(new ThumbnailTile(startUs / 1000, endUs / 1000, imageUri, 0, 0,
+                            -1, -1));
+                } else {
+                    final int count = columns * rows;
+                    final long perTileUs = tileDurationUs > 0 ? tileDurationUs
+                            : durationUs / count;
+                    for (int i = 0; i < count; i++) {
+                        final long tileStartUs = startUs + i * perTileUs;
+                        if (perTileUs <= 0 || tileStartUs >= endUs) {
+                            break;
+                        }
+                        tiles.add(new ThumbnailTile(tileStartUs / 1000,
+                                Math.min(endUs, tileStartUs + perTileUs) / 1000, imageUri,
+                                (i % columns) * tileWidth, (i / columns) * tileHeight,
+                                tileWidth, tileHeight));
+                    }
+                }
+                startUs = endUs;
+                durationUs = 0;
+                tileWidth = -1;
+                tileHeight = -1;
+                tileDurationUs = 0;
+            }
+        }
+        if (tiles.isEmpty()) {
+            throw new ParserException("No thumbnails in image playlist.");
+        }
+        return new ThumbnailTrack(tiles);
+    }
+
+    private static ThumbnailTile parseVttPayload(String baseUri, String payload, long startMs,
+            long endMs) throws ParserException {
+        final int fragment = payload.indexOf(XYWH_FRAGMENT);
+        if (fragment == -1) {
+            return new ThumbnailTile(startMs, endMs, UriUtil.resolve(baseUri, payload), 0, 0,
+                    -1, -1);
+        }
+        final String imageUri = UriUtil.resolve(baseUri, payload.substring(0, fragment));
+        String xywh = payload.substring(fragment + XYWH_FRAGMENT.length());
+        if (xywh.startsWith("pixel:")) {
+            xywh = xywh.substring("pixel:".length());
+        }
+        final String[] values = xywh.split(",");
+        if (values.length != 4) {
+            throw new ParserException("Invalid xywh fragment: " + payload);
+        }
+        try {
+            return new ThumbnailTile(startMs, endMs, imageUri,
+                    Integer.parseInt(values[0].trim()), Integer.parseInt(values[1].trim()),
+                    Integer.parseInt(values[2].trim()), Integer.parseInt(values[3].trim()));
+        } catch (NumberFormatException e) {
+            throw new ParserException(e);
+        }
+    }
+
+    /**
+     * Parses {@code [hh:]mm:ss.ttt}.
+     */
+    private static long parseVttTimestampMs(String timestamp) throws ParserException {
+        final String[] parts = timestamp.split(":");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new ParserException("Invalid WebVTT timestamp: " + timestamp);
+        }
+        try {
+            long minutes = 0;
+            for (int i = 0; i < parts.length - 1; i++) {
+                minutes = minutes * 60 + Long.parseLong(parts[i]);
+            }
+            return minutes * 60 * 1000
+                    + Math.round(Double.parseDouble(parts[parts.length - 1]) * 1000);
+        } catch (NumberFormatException e) {
+            throw new ParserException(e);
+        }
+    }
+
+    private static long parseSecondsUs(String value) throws ParserException {
+        try {
+            return (long) (Double.parseDouble(value.trim()) * 1000000);
+        } catch (NumberFormatException e) {
+            throw new ParserException(e);
+        }
+    }
+
+    /**
+     * Parses {@code <width>x<height>}, or returns null.
+     */
+    private static int[] parseDimensions(String value) {
+        if (value == null) {
+            return null;
+        }
+        final int x = value.indexOf('x');
+        if (x == -1) {
+            return null;
+        }
+        try {
+            final int[] dimensions = new int[]{Integer.parseInt(value.substring(0, x).trim()),
+                    Integer.parseInt(value.substring(x + 1).trim())};
+            return dimensions[0] > 0 && dimensions[1] > 0 ? dimensions : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the value of {@code name} in an attribute list, without quotes, or null.
+     */
+    private static String getAttribute(String attributes, String name) {
+        int start = 0;
+        while (start < attributes.length()) {
+            final int equals = attributes.indexOf('=', start);
+            if (equals == -1) {
+                return null;
+            }
+            final String key = attributes.substring(start, equals).trim();
+            int end;
+            String value;
+            if (equals + 1 < attributes.length() && attributes.charAt(equals + 1) == '"') {
+                end = attributes.indexOf('"', equals + 2);
+                if (end == -1) {
+                    return null;
+                }
+                value = attributes.substring(equals + 2, end);
+                end = attributes.indexOf(',', end);
+            } else {
+                end = attributes.indexOf(',', equals);
+                value = attributes.substring(equals + 1, end == -1 ? attributes.length() : end);
+            }
+            if (key.equals(name)) {
+                return value;
+            }
+            if (end == -1) {
+                return null;
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package jp.satorufujiwara.player;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveBufferPolicyTest {
+
+    private static final long INTERVAL_MS = AdaptiveBufferPolicy.RECOVERY_INTERVAL_MS;
+
+    @Test
+    public void runningTrimRecoversOverTime() {
+        AdaptiveBufferPolicy policy = new AdaptiveBufferPolicy(128, false);
+        policy.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL, 0);
+
+        assertEquals(0.25f, policy.getTrimScale(INTERVAL_MS - 1), 0f);
+        assertEquals(0.5f, policy.getTrimScale(INTERVAL_MS), 0f);
+        assertEquals(1f, policy.getTrimScale(2 * INTERVAL_MS), 0f);
+        assertEquals(1f, policy.getTrimScale(10 * INTERVAL_MS), 0f);
+    }
+
+    @Test
+    public void newTrimRestartsRecovery() {
+        AdaptiveBufferPolicy policy = new AdaptiveBufferPolicy(128, false);
+        policy.trim(0.25f, 0);
+        policy.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE, INTERVAL_MS);
+
+        // Recovered to 0.5 by then, which is below the moderate share.
+        assertEquals(0.5f, policy.getTrimScale(INTERVAL_MS), 0f);
+        assertEquals(1f, policy.getTrimScale(2 * INTERVAL_MS), 0f);
+    }
+
+    @Test
+    public void backgroundTrimHoldsUntilReset() {
+        AdaptiveBufferPolicy policy = new AdaptiveBufferPolicy(128, false);
+        policy.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND, 0);
+
+        assertEquals(0.25f, policy.getTrimScale(100 * INTERVAL_MS), 0f);
+        policy.reset();
+        assertEquals(1f, policy.getTrimScale(100 * INTERVAL_MS), 0f);
+    }
+
+    @Test
+    public void uiHiddenDoesNotTrim() {
+        AdaptiveBufferPolicy policy = new AdaptiveBufferPolicy(128, false);
+        policy.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN, 0);
+
+        assertEquals(1f, policy.getTrimScale(0), 0f);
+    }
+
+    @Test
+    public void scalesSegmentCountByMemoryClass() {
+        assertEquals(64, new AdaptiveBufferPolicy(48, false).scaleSegmentCount(256));
+        assertEquals(128, new AdaptiveBufferPolicy(96, false).scaleSegmentCount(256));
+        assertEquals(64, new AdaptiveBufferPolicy(512, true).scaleSegmentCount(256));
+        assertEquals(384, new AdaptiveBufferPolicy(512, false).scaleSegmentCount(256));
+        assertEquals(2, new AdaptiveBufferPolicy(48, false).scaleSegmentCount(2));
+    }
+
+}
@@ -0,0 +1,121 @@
+package jp.satorufujiwara.player;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Asserts that the per-event paths do not allocate once warmed up, by measuring the bytes the
+ * test thread allocates over many events. A fixed allowance covers the measurement itself; a
+ * single object per event would exceed it many times over.
+ */
+public class AllocationFreeDispatchTest {
+
+    private static final int EVENTS = 10000;
+    private static final long ALLOWED_BYTES = 1024;
+
+    private com.sun.management.ThreadMXBean threadBean;
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void bandwidthSampleDoesNotAllocate() {
+        assertSamplesDoNotAllocate(new LimitedBandwidthMeter(null, null, new FakeClock(0),
+                new EwmaBandwidthEstimator()));
+        assertSamplesDoNotAllocate(new LimitedBandwidthMeter(null, null, new FakeClock(0),
+                new HarmonicMeanBandwidthEstimator()));
+    }
+
+    @Test
+    public void concurrentBandwidthSampleDoesNotAllocate() {
+        assertSamplesDoNotAllocate(new ConcurrentBandwidthMeter(null, null, new FakeClock(0),
+                new EwmaBandwidthEstimator()));
+    }
+
+    @Test
+    public void samplePoolRecyclesSamples() {
+        final LimitedBandwidthMeter.SamplePool pool = new LimitedBandwidthMeter.SamplePool();
+        final LimitedBandwidthMeter.Sample first = pool.obtain(1, 2, 3);
+        pool.recycle(first);
+        assertSame(first, pool.obtain(4, 5, 6));
+        assertNotSame(first, pool.obtain(7, 8, 9));
+
+        final long before = allocatedBytes();
+        for (int i = 0; i < EVENTS; i++) {
+            pool.recycle(pool.obtain(i, i, i));
+        }
+        assertAllowed(allocatedBytes() - before);
+    }
+
+    @Test
+    public void listenerDispatchDoesNotAllocate() {
+        final ListenerArray<Runnable> listeners = new ListenerArray<>(new Runnable[0]);
+        final int[] calls = new int[1];
+        for (int i = 0; i < 3; i++) {
+            listeners.add(new Runnable() {
+                @Override
+                public void run() {
+                    calls[0]++;
+                }
+            });
+        }
+        dispatch(listeners);
+
+        final long before = allocatedBytes();
+        for (int i = 0; i < EVENTS; i++) {
+            dispatch(listeners);
+        }
+        assertAllowed(allocatedBytes() - before);
+        assertTrue(calls[0] == 3 * (EVENTS + 1));
+    }
+
+    private void assertSamplesDoNotAllocate(LimitedBandwidthMeter meter) {
+        final FakeClock clock = (FakeClock) meter.clock;
+        // Warm up so that class loading and the first samples are not measured.
+        transfer(meter, clock, EVENTS);
+
+        final long before = allocatedBytes();
+        transfer(meter, clock, EVENTS);
+        assertAllowed(allocatedBytes() - before);
+    }
+
+    private static void transfer(LimitedBandwidthMeter meter, FakeClock clock, int count) {
+        for (int i = 0; i < count; i++) {
+            meter.onTransferStart();
+            meter.onBytesTransferred(64 * 1024);
+            meter.onBytesTransferred(64 * 1024);
+            clock.advance(50 + i % 100);
+            meter.onTransferEnd();
+            meter.getBitrateEstimate();
+        }
+    }
+
+    private static void dispatch(ListenerArray<Runnable> listeners) {
+        final Runnable[] array = listeners.get();
+        for (int i = 0; i < array.length; i++) {
+            array[i].run();
+        }
+    }
+
+    private long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void assertAllowed(long allocatedBytes) {
+        assertTrue("Allocated " + allocatedBytes + " bytes", allocatedBytes <= ALLOWED_BYTES);
+    }
+
+}
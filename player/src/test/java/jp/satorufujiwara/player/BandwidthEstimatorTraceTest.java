@@ -0,0 +1,169 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays throughput traces through each estimator and compares how many transfers they take to
+ * follow a step in throughput and how far they overshoot it.
+ */
+public class BandwidthEstimatorTraceTest {
+
+    private static final long SEGMENT_BYTES = 500 * 1000;
+    // An estimate within this factor of the true throughput counts as converged.
+    private static final double CONVERGED_RATIO = 1.25;
+
+    @Test
+    public void followsCollapsingLink() {
+        final long[] trace = concat(constant(8000000, 20), constant(1000000, 20));
+        // The median flips once most of its window is slow.
+        assertEquals(2, samplesToConverge(new PercentileBandwidthEstimator(), trace, 20));
+        // Slow transfers weigh more in time, so the fast average follows within seconds.
+        assertEquals(3, samplesToConverge(new EwmaBandwidthEstimator(), trace, 20));
+        assertTrue(samplesToConverge(new HarmonicMeanBandwidthEstimator(), trace, 20)
+                <= HarmonicMeanBandwidthEstimator.DEFAULT_SAMPLE_COUNT);
+    }
+
+    @Test
+    public void doesNotOvershootRecoveringLink() {
+        final long[] trace = concat(constant(1000000, 20), constant(8000000, 40));
+        final BandwidthEstimator[] estimators = {new PercentileBandwidthEstimator(),
+                new EwmaBandwidthEstimator(), new HarmonicMeanBandwidthEstimator()};
+        for (BandwidthEstimator estimator : estimators) {
+            assertTrue(estimator.getClass().getSimpleName(),
+                    overshoot(replay(estimator, trace), trace, 0) <= 1.0);
+        }
+        assertEquals(2, samplesToConverge(new PercentileBandwidthEstimator(), trace, 20));
+        assertTrue(samplesToConverge(new HarmonicMeanBandwidthEstimator(), trace, 20)
+                <= HarmonicMeanBandwidthEstimator.DEFAULT_SAMPLE_COUNT);
+        // The slow average keeps a recovering link from raising the estimate at once.
+        final int ewmaSamples = samplesToConverge(new EwmaBandwidthEstimator(), trace, 20);
+        assertTrue(ewmaSamples > HarmonicMeanBandwidthEstimator.DEFAULT_SAMPLE_COUNT);
+        assertTrue(ewmaSamples <= 25);
+    }
+
+    @Test
+    public void limitsOvershootOnNoisyLink() {
+        // A link averaging 4 Mbps with transfers between 2 and 6 Mbps.
+        final Random random = new Random(1);
+        final long[] trace = new long[200];
+        for (int i = 0; i < trace.length; i++) {
+            trace[i] = 2000000 + random.nextInt(4000001);
+        }
+        final long[] average = constant(4000000, trace.length);
+        final double percentile =
+                overshoot(replay(new PercentileBandwidthEstimator(), trace), average, 20);
+        final double ewma = overshoot(replay(new EwmaBandwidthEstimator(), trace), average, 20);
+        final double harmonic =
+                overshoot(replay(new HarmonicMeanBandwidthEstimator(), trace), average, 20);
+        assertTrue(percentile < 1.5);
+        assertTrue(harmonic < 1.4);
+        assertTrue(ewma < 1.2);
+        assertTrue(ewma < harmonic && harmonic < percentile);
+    }
+
+    @Test
+    public void ewmaIgnoresTinyTransfers() {
+        EwmaBandwidthEstimator estimator = new EwmaBandwidthEstimator();
+        estimator.addSample(1000, 100);
+        assertEquals(BandwidthMeter.NO_ESTIMATE, estimator.getEstimate());
+        estimator.addSample(SEGMENT_BYTES, 1000);
+        estimator.addSample(1000, 1);
+        assertEquals(SEGMENT_BYTES * 8, estimator.getEstimate(), 1);
+    }
+
+    @Test
+    public void harmonicMeanKeepsLastSamples() {
+        HarmonicMeanBandwidthEstimator estimator = new HarmonicMeanBandwidthEstimator(2);
+        estimator.addSample(1000000, 1000);
+        estimator.addSample(1000000, 1000);
+        estimator.addSample(1000000, 4000);
+        // The harmonic mean of 8 and 2 Mbps.
+        assertEquals(3200000, estimator.getEstimate());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void harmonicMeanRejectsNoSamples() {
+        new HarmonicMeanBandwidthEstimator(0);
+    }
+
+    @Test
+    public void meterCapsEveryEstimator() {
+        final BandwidthEstimator[] estimators = {new PercentileBandwidthEstimator(),
+                new EwmaBandwidthEstimator(), new HarmonicMeanBandwidthEstimator()};
+        for (BandwidthEstimator estimator : estimators) {
+            FakeClock clock = new FakeClock(0);
+            LimitedBandwidthMeter meter = new LimitedBandwidthMeter(null, null, clock, estimator);
+            meter.setLimitBitrate(1000000);
+            meter.onTransferStart();
+            meter.onBytesTransferred((int) SEGMENT_BYTES);
+            clock.advance(100);
+            meter.onTransferEnd();
+            assertEquals(estimator.getClass().getSimpleName(), 1000000,
+                    meter.getBitrateEstimate());
+        }
+    }
+
+    /**
+     * Returns how many transfers after {@code step} the estimate takes to stay within
+     * {@link #CONVERGED_RATIO} of the trace.
+     */
+    private static int samplesToConverge(BandwidthEstimator estimator, long[] trace, int step) {
+        final long[] estimates = replay(estimator, trace);
+        int converged = trace.length - step;
+        for (int i = trace.length - 1; i >= step; i--) {
+            final double ratio = (double) estimates[i] / trace[i];
+            if (ratio > CONVERGED_RATIO || ratio < 1 / CONVERGED_RATIO) {
+                break;
+            }
+            converged = i - step + 1;
+        }
+        return converged;
+    }
+
+    /**
+     * Returns the largest ratio of estimate to true throughput from {@code from} on.
+     */
+    private static double overshoot(long[] estimates, long[] trace, int from) {
+        double max = 0;
+        for (int i = from; i < estimates.length; i++) {
+            max = Math.max(max, (double) estimates[i] / trace[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Feeds segments of {@link #SEGMENT_BYTES} transferred at the bitrates of {@code trace} and
+     * returns the estimate after each.
+     */
+    private static long[] replay(BandwidthEstimator estimator, long[] trace) {
+        final long[] estimates = new long[trace.length];
+        for (int i = 0; i < trace.length; i++) {
+            estimator.addSample(SEGMENT_BYTES, (int) (SEGMENT_BYTES * 8000 / trace[i]));
+            estimates[i] = estimator.getEstimate();
+        }
+        return estimates;
+    }
+
+    private static long[] constant(long bitrate, int count) {
+        final long[] trace = new long[count];
+        for (int i = 0; i < count; i++) {
+            trace[i] = bitrate;
+        }
+        return trace;
+    }
+
+    private static long[] concat(long[] first, long[] second) {
+        final long[] trace = new long[first.length + second.length];
+        System.arraycopy(first, 0, trace, 0, first.length);
+        System.arraycopy(second, 0, trace, first.length, second.length);
+        return trace;
+    }
+
+}
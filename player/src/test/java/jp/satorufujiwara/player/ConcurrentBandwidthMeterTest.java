@@ -0,0 +1,119 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ConcurrentBandwidthMeterTest {
+
+    private static final int LOADER_THREADS = 6;
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void estimatesMatchSynchronizedMeterUnderContention() throws Exception {
+        final FakeClock clock = new FakeClock(1000);
+        final LimitedBandwidthMeter expected = new LimitedBandwidthMeter(null, null, clock,
+                LimitedBandwidthMeter.DEFAULT_MAX_WEIGHT);
+        final ConcurrentBandwidthMeter actual = new ConcurrentBandwidthMeter(null, null, clock,
+                LimitedBandwidthMeter.DEFAULT_MAX_WEIGHT);
+        final AtomicBoolean reading = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        // Chunk sources read the estimate while loaders transfer.
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (reading.get()) {
+                    actual.getBitrateEstimate();
+                }
+            }
+        });
+        reader.start();
+        final Random random = new Random(42);
+        for (int round = 0; round < ROUNDS; round++) {
+            expected.onTransferStart();
+            actual.onTransferStart();
+            final int readSize = 1 + random.nextInt(64 * 1024);
+            final int reads = 1 + random.nextInt(50);
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread[] loaders = new Thread[LOADER_THREADS];
+            for (int i = 0; i < loaders.length; i++) {
+                loaders[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            for (int j = 0; j < reads; j++) {
+                                expected.onBytesTransferred(readSize);
+                                actual.onBytesTransferred(readSize);
+                            }
+                        } catch (Throwable t) {
+                            failure.set(t);
+                        }
+                    }
+                });
+                loaders[i].start();
+            }
+            start.countDown();
+            for (Thread loader : loaders) {
+                loader.join();
+            }
+            clock.advance(1 + random.nextInt(2000));
+            expected.onTransferEnd();
+            actual.onTransferEnd();
+            assertEquals("round " + round, expected.getBitrateEstimate(),
+                    actual.getBitrateEstimate());
+        }
+        reading.set(false);
+        reader.join();
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void overlappingTransfersMatchSynchronizedMeter() {
+        final FakeClock clock = new FakeClock(0);
+        final LimitedBandwidthMeter expected = new LimitedBandwidthMeter(null, null, clock,
+                LimitedBandwidthMeter.DEFAULT_MAX_WEIGHT);
+        final ConcurrentBandwidthMeter actual = new ConcurrentBandwidthMeter(null, null, clock,
+                LimitedBandwidthMeter.DEFAULT_MAX_WEIGHT);
+        final BandwidthMeter[] meters = {expected, actual};
+        for (BandwidthMeter meter : meters) {
+            meter.onTransferStart();
+            meter.onTransferStart();
+        }
+        clock.advance(300);
+        for (BandwidthMeter meter : meters) {
+            meter.onBytesTransferred(100000);
+            meter.onTransferEnd();
+        }
+        clock.advance(500);
+        for (BandwidthMeter meter : meters) {
+            meter.onBytesTransferred(250000);
+            meter.onTransferEnd();
+        }
+        assertEquals(expected.getBitrateEstimate(), actual.getBitrateEstimate());
+    }
+
+    @Test
+    public void limitBitrateCapsEstimate() {
+        final FakeClock clock = new FakeClock(0);
+        final ConcurrentBandwidthMeter meter = new ConcurrentBandwidthMeter(null, null, clock,
+                LimitedBandwidthMeter.DEFAULT_MAX_WEIGHT);
+        assertEquals(BandwidthMeter.NO_ESTIMATE, meter.getBitrateEstimate());
+        meter.onTransferStart();
+        meter.onBytesTransferred(1000000);
+        clock.advance(1000);
+        meter.onTransferEnd();
+        assertEquals(8000000, meter.getBitrateEstimate());
+        meter.setLimitBitrate(500000);
+        assertEquals(500000, meter.getBitrateEstimate());
+    }
+
+}
@@ -0,0 +1,25 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.util.Clock;
+
+/**
+ * A {@link Clock} that only moves when told to.
+ */
+public class FakeClock implements Clock {
+
+    private volatile long timeMs;
+
+    public FakeClock(long timeMs) {
+        this.timeMs = timeMs;
+    }
+
+    public void advance(long ms) {
+        timeMs += ms;
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return timeMs;
+    }
+
+}
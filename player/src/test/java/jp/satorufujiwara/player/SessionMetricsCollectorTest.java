@@ -0,0 +1,54 @@
+package jp.satorufujiwara.player;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SessionMetricsCollectorTest {
+
+    private FakeClock clock;
+    private SessionMetricsCollector collector;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock(1000);
+        collector = new SessionMetricsCollector(clock);
+        collector.onStateChanged(true, Player.STATE_PREPARING);
+        collector.onStateChanged(true, Player.STATE_BUFFERING);
+        collector.onStateChanged(true, Player.STATE_READY);
+    }
+
+    @Test
+    public void stallCountsAsRebuffer() {
+        collector.onStateChanged(true, Player.STATE_BUFFERING);
+        clock.advance(500);
+        collector.onStateChanged(true, Player.STATE_READY);
+
+        SessionMetrics metrics = collector.getSnapshot();
+        assertEquals(1, metrics.rebufferCount);
+        assertEquals(500, metrics.rebufferTimeMs);
+    }
+
+    @Test
+    public void seekIsNotRebuffer() {
+        collector.onSeek(20000, 5000);
+        collector.onStateChanged(true, Player.STATE_BUFFERING);
+        clock.advance(500);
+        collector.onStateChanged(true, Player.STATE_READY);
+
+        assertEquals(0, collector.getSnapshot().rebufferCount);
+    }
+
+    @Test
+    public void stallAfterSeekToCurrentPositionCounts() {
+        // ExoPlayer ignores this seek and reports no state change.
+        collector.onSeek(5000, 5000);
+        collector.onStateChanged(true, Player.STATE_BUFFERING);
+        clock.advance(500);
+        collector.onStateChanged(true, Player.STATE_READY);
+
+        assertEquals(1, collector.getSnapshot().rebufferCount);
+    }
+
+}
@@ -0,0 +1,81 @@
+package jp.satorufujiwara.player;
+
+import com.google.android.exoplayer.upstream.Allocation;
+import com.google.android.exoplayer.upstream.Allocator;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SharedAllocatorTest {
+
+    private static final int LENGTH = 100;
+
+    @Test
+    public void blockingWaitHonoursFairShare() throws InterruptedException {
+        SharedAllocator shared = new SharedAllocator(LENGTH, 4 * LENGTH);
+        Allocator first = shared.newAllocator();
+        Allocator second = shared.newAllocator();
+        second.allocate();
+        Allocation[] held = {first.allocate(), first.allocate()};
+
+        // Two active allocators share 400 bytes, so the first one is full although it holds
+        // less than the caller's limit.
+        CountDownLatch done = blockInBackground(first, Integer.MAX_VALUE);
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+
+        first.release(held[1]);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(held[1], first.allocate());
+    }
+
+    @Test
+    public void blockingWaitHonoursCallerLimit() throws InterruptedException {
+        SharedAllocator shared = new SharedAllocator(LENGTH, 10 * LENGTH);
+        Allocator allocator = shared.newAllocator();
+        Allocation allocation = allocator.allocate();
+        allocator.allocate();
+
+        CountDownLatch done = blockInBackground(allocator, LENGTH);
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+
+        allocator.release(allocation);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void fullAllocatorReportsFullBuffer() {
+        SharedAllocator shared = new SharedAllocator(LENGTH, 2 * LENGTH);
+        Allocator allocator = shared.newAllocator();
+        allocator.allocate();
+        assertEquals(LENGTH, allocator.getTotalBytesAllocated());
+
+        allocator.allocate();
+        assertEquals(Integer.MAX_VALUE, allocator.getTotalBytesAllocated());
+        assertEquals(2 * LENGTH, shared.getAllocatedBytes());
+    }
+
+    private static CountDownLatch blockInBackground(final Allocator allocator, final int limit) {
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    allocator.blockWhileTotalBytesAllocatedExceeds(limit);
+                    done.countDown();
+                } catch (InterruptedException e) {
+                    // Test finished.
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return done;
+    }
+
+}
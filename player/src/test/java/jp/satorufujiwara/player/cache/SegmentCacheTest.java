@@ -0,0 +1,122 @@
+package jp.satorufujiwara.player.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void evictsLeastRecentlyUsedBeyondMaxBytes() throws IOException {
+        SegmentCache cache = new SegmentCache(folder.getRoot(), 250);
+        put(cache, "a", 100);
+        put(cache, "b", 100);
+        assertNotNull(cache.get("a"));
+        put(cache, "c", 100);
+
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertFalse(new File(folder.getRoot(), "b").exists());
+        assertEquals(200, cache.getTotalBytes());
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void recommitReplacesEntry() throws IOException {
+        SegmentCache cache = new SegmentCache(folder.getRoot(), 1000);
+        put(cache, "a", 100);
+        put(cache, "a", 300);
+
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(300, cache.getTotalBytes());
+        assertEquals(300, cache.get("a").length());
+    }
+
+    @Test
+    public void uncommittedWriteDoesNotSurviveRestart() throws IOException {
+        SegmentCache cache = new SegmentCache(folder.getRoot(), 1000);
+        put(cache, "a", 100);
+        File tempFile = cache.createTempFile("b");
+        write(tempFile, 50);
+        // The process dies before the write completes.
+
+        SegmentCache restarted = new SegmentCache(folder.getRoot(), 1000);
+        assertFalse(tempFile.exists());
+        assertEquals(1, restarted.getEntryCount());
+        assertEquals(100, restarted.getTotalBytes());
+        assertNull(restarted.get("b"));
+        assertNotNull(restarted.get("a"));
+    }
+
+    @Test
+    public void restartKeepsAccessOrder() throws IOException {
+        SegmentCache cache = new SegmentCache(folder.getRoot(), 1000);
+        put(cache, "a", 100);
+        put(cache, "b", 100);
+        put(cache, "c", 100);
+        new File(folder.getRoot(), "b").setLastModified(1000000);
+        new File(folder.getRoot(), "a").setLastModified(2000000);
+        new File(folder.getRoot(), "c").setLastModified(3000000);
+
+        SegmentCache restarted = new SegmentCache(folder.getRoot(), 250);
+        assertEquals(1, restarted.getEvictionCount());
+        assertNull(restarted.get("b"));
+        assertNotNull(restarted.get("a"));
+        assertNotNull(restarted.get("c"));
+    }
+
+    @Test
+    public void clearDeletesEntries() throws IOException {
+        SegmentCache cache = new SegmentCache(folder.getRoot(), 1000);
+        put(cache, "a", 100);
+        cache.clear();
+
+        assertEquals(0, cache.getTotalBytes());
+        assertNull(cache.get("a"));
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void missingFileIsMiss() throws IOException {
+        SegmentCache cache = new SegmentCache(folder.getRoot(), 1000);
+        put(cache, "a", 100);
+        assertTrue(new File(folder.getRoot(), "a").delete());
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getTotalBytes());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    private static void put(SegmentCache cache, String key, int length) throws IOException {
+        File tempFile = cache.createTempFile(key);
+        write(tempFile, length);
+        cache.commit(key, tempFile);
+    }
+
+    private static void write(File file, int length) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(new byte[length]);
+        } finally {
+            output.close();
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package jp.satorufujiwara.player.hls;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import jp.satorufujiwara.player.FakeClock;
+import jp.satorufujiwara.player.okhttp.OkHttpDataSourceCreator;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LiveEdgeDataSourceTest {
+
+    private static final String PLAYLIST_PATH = "/live/index.m3u8";
+
+    private MockWebServer server;
+    private FakeClock clock;
+    private LiveEdgeTracker tracker;
+    private LiveEdgeDataSource source;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        clock = new FakeClock(1000);
+        tracker = new LiveEdgeTracker(clock);
+        OkHttpDataSourceCreator creator = new OkHttpDataSourceCreator(new OkHttpClient(), null);
+        source = new LiveEdgeDataSource(creator.createHttpDataSource(null, null, "agent"),
+                tracker);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void refreshedPlaylistsMoveLiveEdge() throws IOException {
+        enqueuePlaylist(100);
+        server.enqueue(new MockResponse().setBody("segment"));
+        enqueuePlaylist(101);
+        server.enqueue(new MockResponse().setBody("segment"));
+
+        readAll(dataSpec(PLAYLIST_PATH, 0, C.LENGTH_UNBOUNDED));
+        clock.advance(2000);
+        readAll(dataSpec("/live/segment101.ts", 0, C.LENGTH_UNBOUNDED));
+        tracker.onMediaLoadCompleted(12000);
+        // Three segments of six seconds were listed after it.
+        assertEquals(12000 + 18000 + 2000, tracker.getLiveEdgeMs());
+
+        clock.advance(4000);
+        readAll(dataSpec(PLAYLIST_PATH, 0, C.LENGTH_UNBOUNDED));
+        readAll(dataSpec("/live/segment105.ts", 0, C.LENGTH_UNBOUNDED));
+        clock.advance(1000);
+        tracker.onMediaLoadCompleted(36000);
+        assertEquals(36000 + 1000, tracker.getLiveEdgeMs());
+    }
+
+    @Test
+    public void partialReadsAreNotReported() throws IOException {
+        enqueuePlaylist(100);
+        server.enqueue(new MockResponse().setResponseCode(206).setBody("gment"));
+        server.enqueue(new MockResponse().setBody("segment"));
+
+        readAll(dataSpec(PLAYLIST_PATH, 0, C.LENGTH_UNBOUNDED));
+        readAll(dataSpec("/live/segment101.ts", 2, C.LENGTH_UNBOUNDED));
+        tracker.onMediaLoadCompleted(12000);
+        assertEquals(LiveEdgeTracker.UNKNOWN, tracker.getLiveEdgeMs());
+
+        // Closed before the end of the segment.
+        source.open(dataSpec("/live/segment102.ts", 0, C.LENGTH_UNBOUNDED));
+        source.read(new byte[3], 0, 3);
+        source.close();
+        tracker.onMediaLoadCompleted(18000);
+        assertEquals(LiveEdgeTracker.UNKNOWN, tracker.getLiveEdgeMs());
+    }
+
+    @Test
+    public void endedPlaylistStopsTracking() throws IOException {
+        enqueuePlaylist(100);
+        server.enqueue(new MockResponse().setBody("#EXTM3U\n#EXT-X-TARGETDURATION:6\n"
+                + "#EXT-X-MEDIA-SEQUENCE:100\n#EXTINF:6.0,\nsegment100.ts\n#EXT-X-ENDLIST\n"));
+        server.enqueue(new MockResponse().setBody("segment"));
+
+        readAll(dataSpec(PLAYLIST_PATH, 0, C.LENGTH_UNBOUNDED));
+        readAll(dataSpec(PLAYLIST_PATH, 0, C.LENGTH_UNBOUNDED));
+        readAll(dataSpec("/live/segment100.ts", 0, C.LENGTH_UNBOUNDED));
+        tracker.onMediaLoadCompleted(6000);
+        assertEquals(LiveEdgeTracker.UNKNOWN, tracker.getLiveEdgeMs());
+    }
+
+    /**
+     * Enqueues a live playlist of five six second segments from {@code first}.
+     */
+    private void enqueuePlaylist(long first) {
+        StringBuilder builder = new StringBuilder()
+                .append("#EXTM3U\n")
+                .append("#EXT-X-TARGETDURATION:6\n")
+                .append("#EXT-X-MEDIA-SEQUENCE:").append(first).append('\n');
+        for (long i = first; i < first + 5; i++) {
+            builder.append("#EXTINF:6.0,\n").append("segment").append(i).append(".ts\n");
+        }
+        server.enqueue(new MockResponse().setBody(builder.toString()));
+    }
+
+    private DataSpec dataSpec(String path, long position, long length) {
+        Uri uri = mock(Uri.class);
+        when(uri.toString()).thenReturn(server.url(path).toString());
+        when(uri.getPath()).thenReturn(path);
+        return new DataSpec(uri, position, length, null);
+    }
+
+    private void readAll(DataSpec dataSpec) throws IOException {
+        source.open(dataSpec);
+        byte[] buffer = new byte[64];
+        while (source.read(buffer, 0, buffer.length) != C.RESULT_END_OF_INPUT) {
+            // Read to the end, as the chunk source does.
+        }
+        source.close();
+    }
+
+}
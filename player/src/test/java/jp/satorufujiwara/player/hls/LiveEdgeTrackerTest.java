@@ -0,0 +1,133 @@
+package jp.satorufujiwara.player.hls;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import jp.satorufujiwara.player.FakeClock;
+
+import static org.junit.Assert.assertEquals;
+
+public class LiveEdgeTrackerTest {
+
+    private static final String PLAYLIST_URI = "http://example.com/live/index.m3u8";
+    private static final String SEGMENT_BASE = "http://example.com/live/";
+
+    private FakeClock clock;
+    private LiveEdgeTracker tracker;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock(1000);
+        tracker = new LiveEdgeTracker(clock);
+    }
+
+    @Test
+    public void unknownUntilLoadCompleted() {
+        tracker.onPlaylistLoaded(PLAYLIST_URI, playlist(100, 5, false));
+        assertEquals(LiveEdgeTracker.UNKNOWN, tracker.getLiveEdgeMs());
+
+        tracker.onSegmentLoaded(SEGMENT_BASE + "segment101.ts");
+        assertEquals(LiveEdgeTracker.UNKNOWN, tracker.getLiveEdgeMs());
+    }
+
+    @Test
+    public void edgeIsMediaEndPlusListedDurationAdvancedByClock() {
+        tracker.onPlaylistLoaded(PLAYLIST_URI, playlist(100, 5, false));
+        clock.advance(2000);
+        // Three segments of six seconds are listed after the second one.
+        tracker.onSegmentLoaded(SEGMENT_BASE + "segment101.ts");
+        tracker.onMediaLoadCompleted(12000);
+
+        assertEquals(12000 + 18000 + 2000, tracker.getLiveEdgeMs());
+        clock.advance(500);
+        assertEquals(12000 + 18000 + 2500, tracker.getLiveEdgeMs());
+    }
+
+    @Test
+    public void refreshedPlaylistMovesEdgeBase() {
+        tracker.onPlaylistLoaded(PLAYLIST_URI, playlist(100, 5, false));
+        tracker.onSegmentLoaded(SEGMENT_BASE + "segment104.ts");
+        tracker.onMediaLoadCompleted(30000);
+        assertEquals(30000, tracker.getLiveEdgeMs());
+
+        clock.advance(6000);
+        tracker.onPlaylistLoaded(PLAYLIST_URI, playlist(101, 5, false));
+        tracker.onSegmentLoaded(SEGMENT_BASE + "segment105.ts");
+        clock.advance(1000);
+        tracker.onMediaLoadCompleted(36000);
+
+        assertEquals(36000 + 1000, tracker.getLiveEdgeMs());
+    }
+
+    @Test
+    public void completionsMatchReadsInOrder() {
+        tracker.onPlaylistLoaded(PLAYLIST_URI, playlist(100, 5, false));
+        tracker.onSegmentLoaded(SEGMENT_BASE + "segment100.ts");
+        tracker.onSegmentLoaded(SEGMENT_BASE + "segment101.ts");
+
+        tracker.onMediaLoadCompleted(6000);
+        assertEquals(6000 + 24000, tracker.getLiveEdgeMs());
+        tracker.onMediaLoadCompleted(12000);
+        assertEquals(12000 + 18000, tracker.getLiveEdgeMs());
+        // Nothing is pending, so the edge is kept.
+        tracker.onMediaLoadCompleted(99000);
+        assertEquals(12000 + 18000, tracker.getLiveEdgeMs());
+    }
+
+    @Test
+    public void pendingReadsAreBounded() {
+        tracker.onPlaylistLoaded(PLAYLIST_URI, playlist(100, 20, false));
+        for (int i = 0; i < 10; i++) {
+            tracker.onSegmentLoaded(SEGMENT_BASE + "segment" + (100 + i) + ".ts");
+        }
+
+        // The two oldest reads were dropped, as if their loads had been canceled.
+        tracker.onMediaLoadCompleted(0);
+        assertEquals(17 * 6000, tracker.getLiveEdgeMs());
+    }
+
+    @Test
+    public void ignoresUnknownSegmentsAndEndedPlaylists() {
+        tracker.onPlaylistLoaded(PLAYLIST_URI, playlist(100, 5, false));
+        tracker.onSegmentLoaded(SEGMENT_BASE + "other.ts");
+        tracker.onMediaLoadCompleted(6000);
+        assertEquals(LiveEdgeTracker.UNKNOWN, tracker.getLiveEdgeMs());
+
+        tracker.onPlaylistLoaded(PLAYLIST_URI, playlist(100, 5, true));
+        tracker.onSegmentLoaded(SEGMENT_BASE + "segment101.ts");
+        tracker.onMediaLoadCompleted(12000);
+        assertEquals(LiveEdgeTracker.UNKNOWN, tracker.getLiveEdgeMs());
+    }
+
+    @Test
+    public void resetForgetsEdge() {
+        tracker.onPlaylistLoaded(PLAYLIST_URI, playlist(100, 5, false));
+        tracker.onSegmentLoaded(SEGMENT_BASE + "segment101.ts");
+        tracker.onMediaLoadCompleted(12000);
+
+        tracker.reset();
+        assertEquals(LiveEdgeTracker.UNKNOWN, tracker.getLiveEdgeMs());
+        tracker.onSegmentLoaded(SEGMENT_BASE + "segment102.ts");
+        tracker.onMediaLoadCompleted(18000);
+        assertEquals(LiveEdgeTracker.UNKNOWN, tracker.getLiveEdgeMs());
+    }
+
+    /**
+     * Returns a playlist of {@code count} six second segments from {@code first}, with relative
+     * uris.
+     */
+    private static SegmentList playlist(long first, int count, boolean ended) {
+        StringBuilder builder = new StringBuilder()
+                .append("#EXTM3U\n")
+                .append("#EXT-X-TARGETDURATION:6\n")
+                .append("#EXT-X-MEDIA-SEQUENCE:").append(first).append('\n');
+        for (long i = first; i < first + count; i++) {
+            builder.append("#EXTINF:6.0,\n").append("segment").append(i).append(".ts\n");
+        }
+        if (ended) {
+            builder.append("#EXT-X-ENDLIST\n");
+        }
+        return SegmentList.parse(PLAYLIST_URI, builder.toString());
+    }
+
+}
@@ -0,0 +1,107 @@
+package jp.satorufujiwara.player.hls;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import jp.satorufujiwara.player.FakeClock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LiveLatencyPolicyTest {
+
+    private static final String PLAYLIST_URI = "http://example.com/live/index.m3u8";
+    private static final long TARGET_MS = 3000;
+    private static final long CATCH_UP_MS = 1000;
+    private static final long SEEK_MS = 10000;
+
+    private FakeClock clock;
+    private LiveEdgeTracker tracker;
+    private LiveLatencyPolicy policy;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock(1000);
+        tracker = new LiveEdgeTracker(clock);
+        policy = new LiveLatencyPolicy(tracker, TARGET_MS, CATCH_UP_MS, SEEK_MS);
+        // The live edge is at 30 seconds.
+        tracker.onPlaylistLoaded(PLAYLIST_URI, SegmentList.parse(PLAYLIST_URI, "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:6\n"
+                + "#EXT-X-MEDIA-SEQUENCE:0\n"
+                + "#EXTINF:6.0,\nsegment0.ts\n"
+                + "#EXTINF:6.0,\nsegment1.ts\n"));
+        tracker.onSegmentLoaded("http://example.com/live/segment1.ts");
+        tracker.onMediaLoadCompleted(30000);
+    }
+
+    @Test
+    public void latencyFollowsTheClock() {
+        assertEquals(3000, policy.getLatencyMs(27000));
+        clock.advance(1500);
+        assertEquals(4500, policy.getLatencyMs(27000));
+        assertEquals(0, policy.getLatencyMs(40000));
+        assertEquals(31500 - TARGET_MS, policy.getTargetPositionMs());
+    }
+
+    @Test
+    public void unknownWithoutLiveEdge() {
+        tracker.reset();
+        assertEquals(LiveEdgeTracker.UNKNOWN, policy.getLatencyMs(27000));
+        assertEquals(LiveEdgeTracker.UNKNOWN, policy.getTargetPositionMs());
+    }
+
+    @Test
+    public void withinThresholdDoesNothing() {
+        assertEquals(LiveLatencyPolicy.ACTION_NONE, decideAt(27000 - CATCH_UP_MS, true));
+        assertFalse(policy.isCatchingUp());
+    }
+
+    @Test
+    public void catchesUpUntilCloseToTarget() {
+        // Playback stalled for two seconds.
+        clock.advance(2000);
+        assertEquals(LiveLatencyPolicy.ACTION_CATCH_UP, decideAt(27000, true));
+        assertTrue(policy.isCatchingUp());
+        assertEquals(LiveLatencyPolicy.ACTION_NONE, decideAt(27500, true));
+
+        // Only CAUGHT_UP_MS from the target, so that it does not oscillate.
+        assertEquals(LiveLatencyPolicy.ACTION_NONE,
+                decideAt(29000 - LiveLatencyPolicy.CAUGHT_UP_MS - 1, true));
+        assertEquals(LiveLatencyPolicy.ACTION_STOP_CATCHING_UP,
+                decideAt(29000 - LiveLatencyPolicy.CAUGHT_UP_MS, true));
+        assertFalse(policy.isCatchingUp());
+    }
+
+    @Test
+    public void seeksBeyondSeekThreshold() {
+        clock.advance(2000);
+        decideAt(27000, true);
+
+        clock.advance(SEEK_MS);
+        assertEquals(LiveLatencyPolicy.ACTION_SEEK, decideAt(27000, true));
+        assertFalse(policy.isCatchingUp());
+        assertEquals(32000 + SEEK_MS - TARGET_MS, policy.getTargetPositionMs());
+    }
+
+    @Test
+    public void seeksWhenSpeedCannotChange() {
+        clock.advance(2000);
+        assertEquals(LiveLatencyPolicy.ACTION_SEEK, decideAt(27000, false));
+        assertFalse(policy.isCatchingUp());
+    }
+
+    @Test
+    public void resetReportsWhetherCatchingUp() {
+        assertFalse(policy.reset());
+        clock.advance(2000);
+        decideAt(27000, true);
+        assertTrue(policy.reset());
+        assertFalse(policy.isCatchingUp());
+    }
+
+    private int decideAt(long positionMs, boolean canChangeSpeed) {
+        return policy.decide(policy.getLatencyMs(positionMs), canChangeSpeed);
+    }
+
+}
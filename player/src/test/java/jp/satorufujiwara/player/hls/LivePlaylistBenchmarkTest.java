@@ -0,0 +1,97 @@
+package jp.satorufujiwara.player.hls;
+
+import com.google.android.exoplayer.hls.HlsMediaPlaylist;
+import com.google.android.exoplayer.hls.HlsPlaylistParser;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the bytes transferred and the time spent in {@link HlsPlaylistParser} per refresh of
+ * a two hour DVR playlist, between a full refresh, as before {@link LivePlaylistDataSource}, and
+ * the delta and not modified refreshes it requests. Results are printed to standard output.
+ */
+public class LivePlaylistBenchmarkTest {
+
+    private static final String URI = "http://example.com/live.m3u8";
+    private static final int WINDOW = 1200;
+    private static final long FIRST = 100;
+    private static final int WARMUP_REFRESHES = 20;
+    private static final int REFRESHES = 50;
+
+    private static final int FULL = 0;
+    private static final int DELTA = 1;
+    private static final int NOT_MODIFIED = 2;
+
+    private final HlsPlaylistParser parser = new HlsPlaylistParser();
+
+    @Test
+    public void deltaAndNotModifiedRefreshesTransferLess() throws IOException {
+        Result full = run(FULL);
+        Result delta = run(DELTA);
+        Result notModified = run(NOT_MODIFIED);
+        full.print("full");
+        delta.print("delta");
+        notModified.print("304");
+
+        assertTrue(delta.bytes * 50 < full.bytes);
+        assertEquals(0, notModified.bytes);
+    }
+
+    private Result run(int mode) throws IOException {
+        LivePlaylist playlist = new LivePlaylist();
+        playlist.update(LivePlaylistTest.dvr(FIRST, WINDOW, 0, false), 0);
+        Result result = new Result();
+        for (int i = 1; i <= WARMUP_REFRESHES + REFRESHES; i++) {
+            boolean measured = i > WARMUP_REFRESHES;
+            long sequence = mode == NOT_MODIFIED ? FIRST : FIRST + i;
+            byte[] body = mode == FULL ? LivePlaylistTest.dvr(sequence, WINDOW, 0, false)
+                    : mode == DELTA ? LivePlaylistTest.dvr(sequence, WINDOW, WINDOW - 6, false)
+                    : new byte[0];
+
+            long startNs = System.nanoTime();
+            byte[] data;
+            if (mode == FULL) {
+                data = body;
+            } else if (mode == DELTA) {
+                assertTrue(playlist.update(body, i * 6000));
+                data = playlist.getData();
+            } else {
+                playlist.onNotModified(i * 6000);
+                data = playlist.getData();
+            }
+            long mergedNs = System.nanoTime();
+            HlsMediaPlaylist parsed = (HlsMediaPlaylist) parser.parse(URI,
+                    new ByteArrayInputStream(data));
+            long parsedNs = System.nanoTime();
+
+            assertEquals(WINDOW, parsed.segments.size());
+            if (measured) {
+                result.bytes += body.length;
+                result.mergeNs += mergedNs - startNs;
+                result.parseNs += parsedNs - mergedNs;
+            }
+        }
+        return result;
+    }
+
+    private static final class Result {
+
+        long bytes;
+        long mergeNs;
+        long parseNs;
+
+        void print(String name) {
+            System.out.println(String.format(Locale.US,
+                    "%s refresh: %d bytes, merge %.3f ms, parse %.3f ms", name,
+                    bytes / REFRESHES, mergeNs / 1e6 / REFRESHES, parseNs / 1e6 / REFRESHES));
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package jp.satorufujiwara.player.hls;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LivePlaylistTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // A two hour DVR window of six second segments.
+    private static final int WINDOW = 1200;
+
+    @Test
+    public void firstLoadKeepsPlaylist() {
+        LivePlaylist playlist = new LivePlaylist();
+        byte[] body = dvr(100, WINDOW, 0, false);
+
+        assertTrue(playlist.update(body, 0));
+
+        assertArrayEquals(body, playlist.getData());
+        assertEquals(WINDOW, playlist.getLastNewSegments());
+        assertTrue(playlist.isLive());
+    }
+
+    @Test
+    public void fullRefreshCopiesOnlyNewSegments() {
+        LivePlaylist playlist = new LivePlaylist();
+        playlist.update(dvr(100, WINDOW, 0, false), 0);
+
+        byte[] refresh = dvr(102, WINDOW, 0, false);
+        assertTrue(playlist.update(refresh, 6000));
+
+        assertArrayEquals(refresh, playlist.getData());
+        assertEquals(2, playlist.getLastNewSegments());
+    }
+
+    @Test
+    public void changedKnownSegmentIsTakenFromRefresh() {
+        LivePlaylist playlist = new LivePlaylist();
+        playlist.update(dvr(100, WINDOW, 0, false), 0);
+
+        // The key of the first segment is written before it once earlier segments are gone.
+        String refresh = text(dvr(101, WINDOW, 0, false)).replace(
+                "#EXT-X-PROGRAM-DATE-TIME:606\n",
+                "#EXT-X-KEY:METHOD=AES-128,URI=\"key\"\n#EXT-X-PROGRAM-DATE-TIME:606\n");
+        assertTrue(playlist.update(refresh.getBytes(UTF_8), 6000));
+
+        assertEquals(refresh, text(playlist.getData()));
+        assertEquals(1, playlist.getLastNewSegments());
+    }
+
+    @Test
+    public void deltaUpdateMergesSkippedSegments() {
+        LivePlaylist playlist = new LivePlaylist();
+        playlist.update(dvr(100, WINDOW, 0, false), 0);
+
+        // The server skips all but the last six segments of the window.
+        byte[] delta = dvr(101, WINDOW, WINDOW - 6, false);
+        assertTrue(delta.length * 50 < dvr(101, WINDOW, 0, false).length);
+        assertTrue(playlist.update(delta, 6000));
+
+        assertEquals(text(dvr(101, WINDOW, 0, false)), text(playlist.getData()));
+        assertEquals(1, playlist.getLastNewSegments());
+        assertTrue(playlist.isLive());
+    }
+
+    @Test
+    public void successiveDeltaUpdatesStayComplete() {
+        LivePlaylist playlist = new LivePlaylist();
+        playlist.update(dvr(100, WINDOW, 0, false), 0);
+
+        for (int i = 1; i <= 10; i++) {
+            assertTrue(playlist.update(dvr(100 + i, WINDOW, WINDOW - 6, false), i * 6000));
+        }
+
+        assertEquals(text(dvr(110, WINDOW, 0, false)), text(playlist.getData()));
+    }
+
+    @Test
+    public void deltaSkippingUnknownSegmentsIsRejected() {
+        LivePlaylist playlist = new LivePlaylist();
+        playlist.update(dvr(100, WINDOW, 0, false), 0);
+        byte[] data = playlist.getData();
+
+        // Skips segments that were never loaded, as after a long pause.
+        assertFalse(playlist.update(dvr(100 + WINDOW, WINDOW, WINDOW - 6, false), 6000));
+        assertSame(data, playlist.getData());
+
+        // Skips from before the known window.
+        assertFalse(playlist.update(dvr(90, WINDOW, WINDOW - 6, false), 6000));
+        assertSame(data, playlist.getData());
+    }
+
+    @Test
+    public void endedPlaylistIsNotLive() {
+        LivePlaylist playlist = new LivePlaylist();
+        playlist.update(dvr(100, WINDOW, 0, false), 0);
+
+        byte[] ended = dvr(101, WINDOW, 0, true);
+        assertTrue(playlist.update(ended, 6000));
+
+        assertArrayEquals(ended, playlist.getData());
+        assertFalse(playlist.isLive());
+        assertFalse(playlist.canRequestDelta(6000));
+    }
+
+    @Test
+    public void deltaAllowedWithinHalfOfSkipBoundary() {
+        LivePlaylist playlist = new LivePlaylist();
+        playlist.update(dvr(100, WINDOW, 0, false), 1000);
+
+        // CAN-SKIP-UNTIL is 36 seconds.
+        assertTrue(playlist.canRequestDelta(1000 + 17999));
+        assertFalse(playlist.canRequestDelta(1000 + 18000));
+
+        playlist.onNotModified(20000);
+        assertTrue(playlist.canRequestDelta(20000 + 17999));
+    }
+
+    /**
+     * Returns a live media playlist of {@code count} segments from {@code first}, of which the
+     * first {@code skipped} are left out with {@code EXT-X-SKIP}.
+     */
+    static byte[] dvr(long first, int count, int skipped, boolean end) {
+        StringBuilder builder = new StringBuilder()
+                .append("#EXTM3U\n")
+                .append("#EXT-X-VERSION:9\n")
+                .append("#EXT-X-TARGETDURATION:6\n")
+                .append("#EXT-X-SERVER-CONTROL:CAN-SKIP-UNTIL=36.0\n")
+                .append("#EXT-X-MEDIA-SEQUENCE:").append(first).append('\n');
+        if (skipped > 0) {
+            builder.append("#EXT-X-SKIP:SKIPPED-SEGMENTS=").append(skipped).append('\n');
+        }
+        for (long i = first + skipped; i < first + count; i++) {
+            builder.append("#EXT-X-PROGRAM-DATE-TIME:").append(i * 6).append('\n')
+                    .append("#EXTINF:6.000,\n")
+                    .append("segment").append(i).append(".ts\n");
+        }
+        if (end) {
+            builder.append("#EXT-X-ENDLIST\n");
+        }
+        return builder.toString().getBytes(UTF_8);
+    }
+
+    private static String text(byte[] data) {
+        return new String(data, UTF_8);
+    }
+
+}
@@ -0,0 +1,141 @@
+package jp.satorufujiwara.player.hls;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class LookaheadStoreTest {
+
+    private static final int SEGMENT_BYTES = 500;
+
+    private static final LookaheadStore.Fetcher FETCHER = new LookaheadStore.Fetcher() {
+        @Override
+        public byte[] fetch(String uri, long maxLength) throws IOException {
+            return new byte[SEGMENT_BYTES];
+        }
+    };
+
+    private QueueExecutor executor;
+    private LookaheadStore store;
+
+    @Before
+    public void setUp() {
+        executor = new QueueExecutor();
+        // Starts with an estimate of 500 bytes per segment.
+        store = new LookaheadStore(executor, 2, 1000);
+    }
+
+    @Test
+    public void segmentsOfReleasedOwnerMakeRoomForOthers() throws IOException {
+        Object released = new Object();
+        store.fetch("a.ts", released, FETCHER);
+        store.fetch("b.ts", released, FETCHER);
+        executor.runAll();
+        assertEquals(1000, store.getBytes());
+
+        Object playing = new Object();
+        store.fetch("c.ts", playing, FETCHER);
+        store.fetch("d.ts", playing, FETCHER);
+        executor.runAll();
+
+        assertEquals(1000, store.getBytes());
+        assertNull(store.take("a.ts"));
+        assertNull(store.take("b.ts"));
+        assertEquals(SEGMENT_BYTES, store.take("c.ts").await().length);
+        assertNotNull(store.take("d.ts"));
+        assertEquals(0, store.getBytes());
+    }
+
+    @Test
+    public void ownSegmentsAreNotDroppedToFetchFurther() {
+        Object owner = new Object();
+        store.fetch("a.ts", owner, FETCHER);
+        store.fetch("b.ts", owner, FETCHER);
+        executor.runAll();
+
+        store.fetch("c.ts", owner, FETCHER);
+        assertEquals(0, executor.size());
+        assertNotNull(store.take("a.ts"));
+        assertNull(store.take("c.ts"));
+    }
+
+    @Test
+    public void fetchesInFlightAreNotDropped() {
+        Object released = new Object();
+        store.fetch("a.ts", released, FETCHER);
+        store.fetch("b.ts", released, FETCHER);
+
+        store.fetch("c.ts", new Object(), FETCHER);
+        assertEquals(2, executor.size());
+        assertNull(store.take("c.ts"));
+    }
+
+    @Test
+    public void retainDropsOnlyOwnSegments() {
+        Object first = new Object();
+        Object second = new Object();
+        store.fetch("a.ts", first, FETCHER);
+        store.fetch("b.ts", second, FETCHER);
+        executor.runAll();
+
+        store.retain(first, Collections.<String>emptyList());
+        assertEquals(SEGMENT_BYTES, store.getBytes());
+        assertNull(store.take("a.ts"));
+        assertNotNull(store.take("b.ts"));
+    }
+
+    private static final class QueueExecutor extends AbstractExecutorService {
+
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            queue.add(command);
+        }
+
+        int size() {
+            return queue.size();
+        }
+
+        void runAll() {
+            while (!queue.isEmpty()) {
+                queue.poll().run();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+package jp.satorufujiwara.player.okhttp;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpDataSource.InvalidResponseCodeException;
+import com.google.android.exoplayer.upstream.TransferListener;
+
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OkHttpDataSourceTest {
+
+    private MockWebServer server;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void readsBodyWithHeadersAndReportsTransfer() throws IOException {
+        server.enqueue(new MockResponse().setBody("0123456789"));
+        CountingListener listener = new CountingListener();
+        OkHttpDataSource source = new OkHttpDataSource(client, "agent", listener);
+        source.setRequestProperty("X-Test", "1");
+
+        assertEquals(10, source.open(dataSpec("/a.ts", 0, C.LENGTH_UNBOUNDED, 0)));
+        assertEquals("0123456789", readAll(source));
+        assertEquals(server.url("/a.ts").toString(), source.getUri());
+        source.close();
+
+        RecordedRequest request = takeRequest();
+        assertEquals("agent", request.getHeader("User-Agent"));
+        assertEquals("1", request.getHeader("X-Test"));
+        assertEquals("identity", request.getHeader("Accept-Encoding"));
+        assertEquals(null, request.getHeader("Range"));
+        assertEquals(1, listener.starts);
+        assertEquals(10, listener.bytes);
+        assertEquals(1, listener.ends);
+    }
+
+    @Test
+    public void requestsRange() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(206).setBody("56789"));
+        OkHttpDataSource source = new OkHttpDataSource(client, "agent", null);
+
+        assertEquals(5, source.open(dataSpec("/a.ts", 5, 5, 0)));
+        assertEquals("56789", readAll(source));
+        source.close();
+
+        assertEquals("bytes=5-9", takeRequest().getHeader("Range"));
+    }
+
+    @Test
+    public void skipsToPositionWhenServerIgnoresRange() throws IOException {
+        server.enqueue(new MockResponse().setBody("0123456789"));
+        CountingListener listener = new CountingListener();
+        OkHttpDataSource source = new OkHttpDataSource(client, "agent", listener);
+
+        assertEquals(6, source.open(dataSpec("/a.ts", 4, C.LENGTH_UNBOUNDED, 0)));
+        assertEquals("456789", readAll(source));
+        source.close();
+
+        assertEquals("bytes=4-", takeRequest().getHeader("Range"));
+        assertEquals(10, listener.bytes);
+    }
+
+    @Test
+    public void leavesEncodingToClientWhenGzipAllowed() throws IOException {
+        server.enqueue(new MockResponse().setBody("#EXTM3U"));
+        OkHttpDataSource source = new OkHttpDataSource(client, "agent", null);
+
+        source.open(dataSpec("/a.m3u8", 0, C.LENGTH_UNBOUNDED, DataSpec.FLAG_ALLOW_GZIP));
+        assertEquals("#EXTM3U", readAll(source));
+        source.close();
+
+        assertEquals("gzip", takeRequest().getHeader("Accept-Encoding"));
+    }
+
+    @Test
+    public void throwsOnErrorResponse() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(404).setHeader("X-Error", "missing"));
+        CountingListener listener = new CountingListener();
+        OkHttpDataSource source = new OkHttpDataSource(client, "agent", listener);
+
+        try {
+            source.open(dataSpec("/a.ts", 0, C.LENGTH_UNBOUNDED, 0));
+            fail();
+        } catch (InvalidResponseCodeException e) {
+            assertEquals(404, e.responseCode);
+            assertEquals("missing", e.headerFields.get("X-Error").get(0));
+        }
+        source.close();
+        assertEquals(0, listener.starts);
+        assertEquals(0, listener.ends);
+    }
+
+    @Test
+    public void reusesPooledConnection() throws IOException {
+        server.enqueue(new MockResponse().setBody("first"));
+        server.enqueue(new MockResponse().setBody("second"));
+
+        OkHttpDataSource source = new OkHttpDataSource(client, "agent", null);
+        source.open(dataSpec("/1.ts", 0, C.LENGTH_UNBOUNDED, 0));
+        assertEquals("first", readAll(source));
+        source.close();
+        OkHttpDataSource other = new OkHttpDataSource(client, "agent", null);
+        other.open(dataSpec("/2.ts", 0, C.LENGTH_UNBOUNDED, 0));
+        assertEquals("second", readAll(other));
+        other.close();
+
+        assertEquals(0, takeRequest().getSequenceNumber());
+        assertEquals(1, takeRequest().getSequenceNumber());
+    }
+
+    private DataSpec dataSpec(String path, long position, long length, int flags) {
+        Uri uri = mock(Uri.class);
+        when(uri.toString()).thenReturn(server.url(path).toString());
+        return new DataSpec(uri, position, length, null, flags);
+    }
+
+    private RecordedRequest takeRequest() throws IOException {
+        try {
+            return server.takeRequest();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String readAll(OkHttpDataSource source) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[3];
+        int read;
+        while ((read = source.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+            output.write(buffer, 0, read);
+        }
+        return output.toString("UTF-8");
+    }
+
+    private static final class CountingListener implements TransferListener {
+
+        int starts;
+        int bytes;
+        int ends;
+
+        @Override
+        public void onTransferStart() {
+            starts++;
+        }
+
+        @Override
+        public void onBytesTransferred(int bytes) {
+            this.bytes += bytes;
+        }
+
+        @Override
+        public void onTransferEnd() {
+            ends++;
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package jp.satorufujiwara.player.thumbnail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SizedLruCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsedFirst() {
+        RecordingCache cache = new RecordingCache(10);
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        cache.get("a");
+        cache.put("c", "cccc");
+
+        assertNull(cache.get("b"));
+        assertEquals("aaaa", cache.get("a"));
+        assertEquals("cccc", cache.get("c"));
+        assertEquals(8, cache.size());
+        assertEquals(2, cache.count());
+        assertEquals(list("b=bbbb"), cache.evicted);
+    }
+
+    @Test
+    public void replacedValueIsEvicted() {
+        RecordingCache cache = new RecordingCache(10);
+        cache.put("a", "aaaa");
+        cache.put("a", "aa");
+        String same = "a1";
+        cache.put("b", same);
+        cache.put("b", same);
+
+        assertEquals(4, cache.size());
+        assertEquals(list("a=aaaa"), cache.evicted);
+    }
+
+    @Test
+    public void valueLargerThanCacheIsEvictedOnInsert() {
+        RecordingCache cache = new RecordingCache(4);
+        cache.put("a", "aa");
+        cache.put("b", "bbbbbb");
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.count());
+        assertEquals(list("a=aa", "b=bbbbbb"), cache.evicted);
+    }
+
+    @Test
+    public void removeDoesNotEvict() {
+        RecordingCache cache = new RecordingCache(10);
+        cache.put("a", "aaaa");
+
+        assertEquals("aaaa", cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertEquals(0, cache.size());
+        assertEquals(list(), cache.evicted);
+    }
+
+    @Test
+    public void clearEvictsAllInOrder() {
+        RecordingCache cache = new RecordingCache(10);
+        cache.put("a", "a");
+        cache.put("b", "b");
+        cache.get("a");
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals(list("b=b", "a=a"), cache.evicted);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveSize() {
+        new RecordingCache(0);
+    }
+
+    private static List<String> list(String... values) {
+        List<String> list = new ArrayList<>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static final class RecordingCache extends SizedLruCache<String, String> {
+
+        final List<String> evicted = new ArrayList<>();
+
+        RecordingCache(long maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected long sizeOf(String key, String value) {
+            return value.length();
+        }
+
+        @Override
+        protected void onEvicted(String key, String value) {
+            evicted.add(key + "=" + value);
+        }
+    }
+
+}
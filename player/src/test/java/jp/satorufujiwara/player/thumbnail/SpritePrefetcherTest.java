@@ -0,0 +1,199 @@
+package jp.satorufujiwara.player.thumbnail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpritePrefetcherTest {
+
+    private static final int IMAGE_BYTES = 100;
+
+    private ThumbnailTrack track;
+    private QueueExecutor executor;
+    private FakeFetcher fetcher;
+    private List<String> loaded;
+
+    @Before
+    public void setUp() {
+        // Five sprite sheets of ten seconds each.
+        List<ThumbnailTile> tiles = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tiles.add(new ThumbnailTile(i * 10000, (i + 1) * 10000, uri(i), 0, 0, -1, -1));
+        }
+        track = new ThumbnailTrack(tiles);
+        executor = new QueueExecutor();
+        fetcher = new FakeFetcher();
+        loaded = new ArrayList<>();
+    }
+
+    @Test
+    public void fetchesNearestImagesFirstUpToParallelism() {
+        SpritePrefetcher prefetcher = create(1000);
+        prefetcher.setPosition(25000);
+
+        assertEquals(2, executor.size());
+        assertTrue(prefetcher.isLoading(uri(2)));
+        assertTrue(prefetcher.isLoading(uri(1)));
+
+        executor.runNext();
+        assertArrayEquals(new byte[IMAGE_BYTES], prefetcher.get(uri(2)));
+        assertTrue(prefetcher.isLoading(uri(3)));
+        assertEquals(list(uri(2)), loaded);
+    }
+
+    @Test
+    public void plansBudgetWithAverageImageSize() {
+        SpritePrefetcher prefetcher = create(250);
+        prefetcher.setPosition(25000);
+        executor.runAll();
+
+        // A third image of the average size would exceed the budget.
+        assertNotNull(prefetcher.get(uri(2)));
+        assertNotNull(prefetcher.get(uri(1)));
+        assertFalse(fetcher.fetched.contains(uri(3)));
+        assertEquals(200, prefetcher.getBytes());
+    }
+
+    @Test
+    public void dropsFarthestImagesWhenPositionMoves() {
+        SpritePrefetcher prefetcher = create(250);
+        prefetcher.setPosition(25000);
+        executor.runAll();
+
+        prefetcher.setPosition(45000);
+        executor.runAll();
+
+        assertNotNull(prefetcher.get(uri(4)));
+        assertNull(prefetcher.get(uri(1)));
+        assertTrue(prefetcher.getBytes() <= 250);
+    }
+
+    @Test
+    public void fetchesNearestImageEvenOverBudget() {
+        SpritePrefetcher prefetcher = create(50);
+        prefetcher.setPosition(5000);
+        executor.runAll();
+
+        assertNotNull(prefetcher.get(uri(0)));
+        assertEquals(IMAGE_BYTES, prefetcher.getBytes());
+        assertEquals(0, executor.size());
+    }
+
+    @Test
+    public void failedImageIsFetchedAgainOnlyOnRetry() {
+        fetcher.failing.add(uri(0));
+        SpritePrefetcher prefetcher = create(50);
+        prefetcher.setPosition(5000);
+        executor.runAll();
+
+        assertNull(prefetcher.get(uri(0)));
+        assertEquals(uri(0), loaded.get(0));
+        prefetcher.setPosition(6000);
+        executor.runAll();
+        assertEquals(1, count(fetcher.fetched, uri(0)));
+
+        fetcher.failing.clear();
+        prefetcher.retry(uri(0));
+        executor.runAll();
+        assertEquals(2, count(fetcher.fetched, uri(0)));
+        assertNotNull(prefetcher.get(uri(0)));
+    }
+
+    @Test
+    public void dropsImagesFetchedAfterRelease() {
+        SpritePrefetcher prefetcher = create(1000);
+        prefetcher.setPosition(25000);
+        prefetcher.release();
+        executor.runAll();
+
+        assertNull(prefetcher.get(uri(2)));
+        assertEquals(0, prefetcher.getBytes());
+        assertEquals(0, executor.size());
+        assertEquals(list(), loaded);
+    }
+
+    private SpritePrefetcher create(long maxBytes) {
+        return new SpritePrefetcher(track, fetcher, executor, maxBytes, 2,
+                new SpritePrefetcher.Listener() {
+                    @Override
+                    public void onSpriteLoaded(String uri, byte[] data) {
+                        loaded.add(uri);
+                    }
+                });
+    }
+
+    private static String uri(int index) {
+        return "http://example.com/sprite" + index + ".jpg";
+    }
+
+    private static int count(List<String> values, String value) {
+        int count = 0;
+        for (String v : values) {
+            if (v.equals(value)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static List<String> list(String... values) {
+        List<String> list = new ArrayList<>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static final class QueueExecutor implements Executor {
+
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            queue.add(command);
+        }
+
+        int size() {
+            return queue.size();
+        }
+
+        void runNext() {
+            queue.poll().run();
+        }
+
+        void runAll() {
+            while (!queue.isEmpty()) {
+                runNext();
+            }
+        }
+    }
+
+    private static final class FakeFetcher implements SpritePrefetcher.Fetcher {
+
+        final List<String> fetched = new ArrayList<>();
+        final HashSet<String> failing = new HashSet<>();
+
+        @Override
+        public byte[] fetch(String uri) throws IOException {
+            fetched.add(uri);
+            if (failing.contains(uri)) {
+                throw new IOException("Failed: " + uri);
+            }
+            return new byte[IMAGE_BYTES];
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+package jp.satorufujiwara.player.thumbnail;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ThumbnailCacheTest {
+
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 90;
+    // Tiles are the instances of their track, so they are compared by identity.
+    private static final ThumbnailTile[] TILES = new ThumbnailTile[3];
+
+    static {
+        for (int i = 0; i < TILES.length; i++) {
+            TILES[i] = new ThumbnailTile(i * 10000, (i + 1) * 10000, "sprite.jpg", i * WIDTH, 0,
+                    WIDTH, HEIGHT);
+        }
+    }
+
+    @Test
+    public void evictedBitmapIsNotReusedWhileInUse() {
+        ThumbnailCache cache = new ThumbnailCache(200);
+        Bitmap first = bitmap();
+        cache.put(tile(0), first);
+        cache.put(tile(1), bitmap());
+        cache.put(tile(2), bitmap());
+
+        assertNull(cache.acquire(tile(0)));
+        assertNull(cache.takeReusable(WIDTH, HEIGHT));
+
+        cache.release(first);
+        assertSame(first, cache.takeReusable(WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void releasedBitmapIsReusedOnceEvicted() {
+        ThumbnailCache cache = new ThumbnailCache(200);
+        Bitmap first = bitmap();
+        cache.put(tile(0), first);
+        cache.release(first);
+
+        // Still cached, so it may be given out again.
+        assertNull(cache.takeReusable(WIDTH, HEIGHT));
+
+        putReleased(cache, tile(1));
+        putReleased(cache, tile(2));
+        assertSame(first, cache.takeReusable(WIDTH, HEIGHT));
+        assertNull(cache.takeReusable(WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void bitmapLargerThanCacheIsNotReusedOnInsert() {
+        ThumbnailCache cache = new ThumbnailCache(50);
+        Bitmap bitmap = bitmap();
+        cache.put(tile(0), bitmap);
+
+        assertNull(cache.acquire(tile(0)));
+        assertNull(cache.takeReusable(WIDTH, HEIGHT));
+
+        cache.release(bitmap);
+        assertSame(bitmap, cache.takeReusable(WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void everyUseMustBeReleased() {
+        ThumbnailCache cache = new ThumbnailCache(200);
+        Bitmap first = bitmap();
+        cache.put(tile(0), first);
+        assertSame(first, cache.acquire(tile(0)));
+        cache.put(tile(1), bitmap());
+        cache.put(tile(2), bitmap());
+
+        cache.release(first);
+        assertNull(cache.takeReusable(WIDTH, HEIGHT));
+        cache.release(first);
+        assertSame(first, cache.takeReusable(WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void onlyMatchingBitmapsAreReused() {
+        ThumbnailCache cache = new ThumbnailCache(100);
+        Bitmap first = bitmap();
+        cache.put(tile(0), first);
+        cache.release(first);
+        cache.put(tile(1), bitmap());
+
+        assertNull(cache.takeReusable(WIDTH * 2, HEIGHT));
+        assertSame(first, cache.takeReusable(WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        ThumbnailCache cache = new ThumbnailCache(100);
+        Bitmap first = bitmap();
+        cache.put(tile(0), first);
+        cache.put(tile(1), bitmap());
+        cache.clear();
+
+        cache.release(first);
+        assertNull(cache.acquire(tile(1)));
+        assertNull(cache.takeReusable(WIDTH, HEIGHT));
+    }
+
+    private static void putReleased(ThumbnailCache cache, ThumbnailTile tile) {
+        Bitmap bitmap = bitmap();
+        cache.put(tile, bitmap);
+        cache.release(bitmap);
+    }
+
+    private static ThumbnailTile tile(int index) {
+        return TILES[index];
+    }
+
+    private static Bitmap bitmap() {
+        Bitmap bitmap = mock(Bitmap.class);
+        when(bitmap.getByteCount()).thenReturn(100);
+        when(bitmap.getWidth()).thenReturn(WIDTH);
+        when(bitmap.getHeight()).thenReturn(HEIGHT);
+        when(bitmap.getConfig()).thenReturn(Bitmap.Config.RGB_565);
+        when(bitmap.isMutable()).thenReturn(true);
+        return bitmap;
+    }
+
+}
@@ -0,0 +1,118 @@
+package jp.satorufujiwara.player.thumbnail;
+
+import com.google.android.exoplayer.ParserException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ThumbnailTrackParserTest {
+
+    private static final String BASE_URI = "http://example.com/video/thumbnails.vtt";
+
+    @Test
+    public void parsesWebVttSpriteRegions() throws ParserException {
+        ThumbnailTrack track = ThumbnailTrackParser.parse(BASE_URI, "\uFEFFWEBVTT\n"
+                + "\n"
+                + "1\n"
+                + "00:00.000 --> 00:05.000\n"
+                + "sprite.jpg#xywh=0,0,160,90\n"
+                + "\n"
+                + "00:00:05.000 --> 00:00:10.000 align:start\n"
+                + "sprite.jpg#xywh=pixel:160,0,160,90\n"
+                + "\n"
+                + "01:00:00.500 --> 01:00:05.000\r\n"
+                + "http://cdn.example.com/last.jpg\r\n");
+
+        assertEquals(3, track.tiles.size());
+        assertTile(track.tiles.get(0), 0, 5000, "http://example.com/video/sprite.jpg", 0, 0);
+        assertTile(track.tiles.get(1), 5000, 10000, "http://example.com/video/sprite.jpg", 160,
+                0);
+        assertTrue(track.tiles.get(1).hasRegion());
+        ThumbnailTile last = track.tiles.get(2);
+        assertEquals(3600500, last.startTimeMs);
+        assertEquals("http://cdn.example.com/last.jpg", last.imageUri);
+        assertFalse(last.hasRegion());
+        assertEquals(2, track.getImageUris().size());
+    }
+
+    @Test
+    public void parsesImagePlaylistTiles() throws ParserException {
+        ThumbnailTrack track = ThumbnailTrackParser.parse("http://example.com/images.m3u8",
+                "#EXTM3U\n"
+                        + "#EXT-X-TARGETDURATION:20\n"
+                        + "#EXT-X-IMAGES-ONLY\n"
+                        + "#EXTINF:20.0,\n"
+                        + "#EXT-X-TILES:RESOLUTION=320x180,LAYOUT=2x2,DURATION=5.0\n"
+                        + "sheet0.jpg\n"
+                        + "#EXTINF:8.0,\n"
+                        + "#EXT-X-TILES:RESOLUTION=320x180,LAYOUT=2x2\n"
+                        + "sheet1.jpg\n"
+                        + "#EXTINF:10.0,\n"
+                        + "single.jpg\n"
+                        + "#EXT-X-ENDLIST\n");
+
+        assertEquals(9, track.tiles.size());
+        assertTile(track.tiles.get(0), 0, 5000, "http://example.com/sheet0.jpg", 0, 0);
+        assertTile(track.tiles.get(3), 15000, 20000, "http://example.com/sheet0.jpg", 320, 180);
+        // Without DURATION the segment is split evenly across the layout.
+        assertTile(track.tiles.get(4), 20000, 22000, "http://example.com/sheet1.jpg", 0, 0);
+        assertTile(track.tiles.get(5), 22000, 24000, "http://example.com/sheet1.jpg", 320, 0);
+        ThumbnailTile single = track.tiles.get(8);
+        assertEquals(28000, single.startTimeMs);
+        assertEquals(38000, single.endTimeMs);
+        assertFalse(single.hasRegion());
+    }
+
+    @Test
+    public void findsLowestBandwidthImagePlaylist() {
+        String master = "#EXTM3U\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=800000\n"
+                + "video.m3u8\n"
+                + "#EXT-X-IMAGE-STREAM-INF:BANDWIDTH=20000,RESOLUTION=640x360,"
+                + "CODECS=\"jpeg\",URI=\"images/high.m3u8\"\n"
+                + "#EXT-X-IMAGE-STREAM-INF:BANDWIDTH=10000,URI=\"images/low.m3u8\"\n";
+
+        assertEquals("http://example.com/images/low.m3u8",
+                ThumbnailTrackParser.findImagePlaylist("http://example.com/master.m3u8", master));
+        assertNull(ThumbnailTrackParser.findImagePlaylist("http://example.com/master.m3u8",
+                "#EXTM3U\n#EXT-X-STREAM-INF:BANDWIDTH=800000\nvideo.m3u8\n"));
+    }
+
+    @Test
+    public void getTileFindsLastTileStartingBefore() throws ParserException {
+        ThumbnailTrack track = ThumbnailTrackParser.parse(BASE_URI, "WEBVTT\n\n"
+                + "00:05.000 --> 00:10.000\na.jpg\n\n"
+                + "00:10.000 --> 00:15.000\nb.jpg\n");
+
+        assertNull(track.getTile(4999));
+        assertSame(track.tiles.get(0), track.getTile(5000));
+        assertSame(track.tiles.get(0), track.getTile(9999));
+        assertSame(track.tiles.get(1), track.getTile(60000));
+    }
+
+    @Test(expected = ParserException.class)
+    public void rejectsInvalidRegion() throws ParserException {
+        ThumbnailTrackParser.parse(BASE_URI, "WEBVTT\n\n00:00.000 --> 00:05.000\n"
+                + "sprite.jpg#xywh=0,0,160\n");
+    }
+
+    @Test(expected = ParserException.class)
+    public void rejectsOtherPlaylists() throws ParserException {
+        ThumbnailTrackParser.parse(BASE_URI, "#EXTM3U\n#EXTINF:6.0,\nsegment.ts\n");
+    }
+
+    private static void assertTile(ThumbnailTile tile, long startMs, long endMs, String imageUri,
+            int x, int y) {
+        assertEquals(startMs, tile.startTimeMs);
+        assertEquals(endMs, tile.endTimeMs);
+        assertEquals(imageUri, tile.imageUri);
+        assertEquals(x, tile.x);
+        assertEquals(y, tile.y);
+    }
+
+}